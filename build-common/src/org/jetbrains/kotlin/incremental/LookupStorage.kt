@@ -18,6 +18,7 @@ package org.jetbrains.kotlin.incremental
 
 import com.intellij.util.containers.MultiMap
 import com.intellij.util.containers.StringInterner
+import gnu.trove.TIntHashSet
 import org.jetbrains.annotations.TestOnly
 import org.jetbrains.kotlin.incremental.components.LookupTracker
 import org.jetbrains.kotlin.incremental.components.Position
@@ -35,6 +36,9 @@ open class LookupStorage(targetDataDir: File) : BasicMapsOwner(targetDataDir) {
         private val MINIMUM_GARBAGE_COLLECTIBLE_SIZE = 10000
     }
 
+    // New lookups are kept in memory and appended to the stored file ids on flush, so adding them doesn't read the map
+    private val pendingLookups = HashMap<LookupSymbolKey, TIntHashSet>()
+
     private val countersFile = "counters".storageFile
     private val idToFile = registerMap(IdToFileMap("id-to-file".storageFile))
     private val fileToId = registerMap(FileToIdMap("file-to-id".storageFile))
@@ -46,20 +50,39 @@ open class LookupStorage(targetDataDir: File) : BasicMapsOwner(targetDataDir) {
     @Volatile
     private var deletedCount: Int = 0
 
+    // Number of chunks appended to the lookup map since the last compaction and number of keys after it
+    @Volatile
+    private var appendedCount: Int = 0
+
+    @Volatile
+    private var compactedKeysCount: Int = 0
+
+    // Lookups of a new storage are appended as a single chunk per key, i.e. they are already compact
+    private var isNewStorage = true
+
     init {
         if (countersFile.exists()) {
             val lines = countersFile.readLines()
             size = lines[0].toInt()
             deletedCount = lines[1].toInt()
+            appendedCount = lines.getOrNull(2)?.toInt() ?: 0
+            compactedKeysCount = lines.getOrNull(3)?.toInt() ?: 0
+            isNewStorage = false
         }
     }
 
     @Synchronized
     fun get(lookupSymbol: LookupSymbol): Collection<String> {
         val key = LookupSymbolKey(lookupSymbol.name, lookupSymbol.scope)
-        val fileIds = lookupMap[key] ?: return emptySet()
+        val storedFileIds = lookupMap[key]
+        val pendingFileIds = pendingLookups[key]
+        if (storedFileIds == null && pendingFileIds == null) return emptySet()
+
+        val fileIds = TIntHashSet()
+        storedFileIds?.forEach { fileIds.add(it) }
+        pendingFileIds?.let { fileIds.addAll(it.toArray()) }
 
-        return fileIds.mapNotNull {
+        return fileIds.toArray().mapNotNull {
             // null means it's outdated
             idToFile[it]?.path
         }
@@ -71,9 +94,8 @@ open class LookupStorage(targetDataDir: File) : BasicMapsOwner(targetDataDir) {
 
         for ((lookupSymbol, paths) in lookups) {
             val key = LookupSymbolKey(lookupSymbol.name, lookupSymbol.scope)
-            val fileIds = paths.mapTo(HashSet<Int>()) { pathToId[it]!! }
-            fileIds.addAll(lookupMap[key] ?: emptySet())
-            lookupMap[key] = fileIds
+            val fileIds = pendingLookups.getOrPut(key) { TIntHashSet(paths.size) }
+            paths.forEach { fileIds.add(pathToId[it]!!) }
         }
     }
 
@@ -95,6 +117,10 @@ open class LookupStorage(targetDataDir: File) : BasicMapsOwner(targetDataDir) {
 
         size = 0
         deletedCount = 0
+        appendedCount = 0
+        compactedKeysCount = 0
+        isNewStorage = true
+        pendingLookups.clear()
 
         super.clean()
     }
@@ -102,7 +128,8 @@ open class LookupStorage(targetDataDir: File) : BasicMapsOwner(targetDataDir) {
     @Synchronized
     override fun flush(memoryCachesOnly: Boolean) {
         try {
-            removeGarbageIfNeeded()
+            appendPendingLookups()
+            compactIfNeeded()
 
             if (size > 0) {
                 if (!countersFile.exists()) {
@@ -110,7 +137,7 @@ open class LookupStorage(targetDataDir: File) : BasicMapsOwner(targetDataDir) {
                     countersFile.createNewFile()
                 }
 
-                countersFile.writeText("$size\n$deletedCount")
+                countersFile.writeText("$size\n$deletedCount\n$appendedCount\n$compactedKeysCount")
             }
         }
         finally {
@@ -128,17 +155,34 @@ open class LookupStorage(targetDataDir: File) : BasicMapsOwner(targetDataDir) {
         return id
     }
 
-    private fun removeGarbageIfNeeded(force: Boolean = false) {
-        if (force || (size > MINIMUM_GARBAGE_COLLECTIBLE_SIZE && deletedCount.toDouble() / size > DELETED_TO_SIZE_TRESHOLD)) {
-            doRemoveGarbage()
+    private fun appendPendingLookups() {
+        if (pendingLookups.isEmpty()) return
+
+        for ((key, fileIds) in pendingLookups) {
+            lookupMap.append(key, fileIds.toArray())
+        }
+        if (isNewStorage) {
+            compactedKeysCount = pendingLookups.size
+            isNewStorage = false
+        }
+        else {
+            appendedCount += pendingLookups.size
         }
+        pendingLookups.clear()
     }
 
-    private fun doRemoveGarbage() {
-        for (hash in lookupMap.keys) {
-            lookupMap[hash] = lookupMap[hash]!!.filter { it in idToFile }.toSet()
+    private fun compactIfNeeded(force: Boolean = false) {
+        val tooManyDeletedFiles = size > MINIMUM_GARBAGE_COLLECTIBLE_SIZE && deletedCount.toDouble() / size > DELETED_TO_SIZE_TRESHOLD
+        // On average, each key has more than one extra chunk with possibly duplicated file ids
+        val tooManyAppendedChunks = appendedCount > maxOf(MINIMUM_GARBAGE_COLLECTIBLE_SIZE, compactedKeysCount)
+
+        if (force || tooManyDeletedFiles || tooManyAppendedChunks) {
+            compact()
         }
+    }
 
+    // Renumbers files without gaps, and rewrites each lookup as a single chunk of existing files
+    private fun compact() {
         val oldFileToId = fileToId.toMap()
         val oldIdToNewId = HashMap<Int, Int>(oldFileToId.size)
         idToFile.clean()
@@ -151,20 +195,27 @@ open class LookupStorage(targetDataDir: File) : BasicMapsOwner(targetDataDir) {
             oldIdToNewId[oldId] = newId
         }
 
+        var keysCount = 0
         for (lookup in lookupMap.keys) {
-            val fileIds = lookupMap[lookup]!!.mapNotNull { oldIdToNewId[it] }.toSet()
+            // removed files don't have a new id
+            val fileIds = lookupMap[lookup]!!.mapNotNull { oldIdToNewId[it] }
 
             if (fileIds.isEmpty()) {
                 lookupMap.remove(lookup)
             }
             else {
                 lookupMap[lookup] = fileIds
+                keysCount++
             }
         }
+
+        appendedCount = 0
+        compactedKeysCount = keysCount
     }
 
     @TestOnly fun forceGC() {
-        removeGarbageIfNeeded(force = true)
+        appendPendingLookups()
+        compactIfNeeded(force = true)
         flush(false)
     }
 
@@ -116,7 +116,7 @@ class LazyStorage<K, V>(
     private fun createMap(): PersistentHashMap<K, V> =
             PersistentHashMap(storageFile, keyDescriptor, valueExternalizer)
 
-    private fun append(key: K, append: (DataOutput)->Unit) {
+    fun append(key: K, append: (DataOutput)->Unit) {
         getStorageOrCreateNew().appendData(key, append)
     }
 }
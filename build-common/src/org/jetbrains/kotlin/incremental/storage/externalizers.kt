@@ -18,6 +18,7 @@ package org.jetbrains.kotlin.incremental.storage
 
 import com.intellij.openapi.util.io.FileUtil
 import com.intellij.util.io.DataExternalizer
+import com.intellij.util.io.DataInputOutputUtil
 import com.intellij.util.io.EnumeratorStringDescriptor
 import com.intellij.util.io.IOUtil
 import com.intellij.util.io.KeyDescriptor
@@ -214,3 +215,57 @@ open class CollectionExternalizer<T>(
 object StringCollectionExternalizer : CollectionExternalizer<String>(EnumeratorStringDescriptor(), { HashSet() })
 
 object IntCollectionExternalizer : CollectionExternalizer<Int>(IntExternalizer, { HashSet() })
+
+/**
+ * Stores a set of non-negative ints as chunks of sorted delta-encoded varints: the number of elements followed by the deltas.
+ * A chunk can be appended to a stored value without reading it; duplicates from different chunks are merged on read.
+ */
+object DeltaEncodedIntSetExternalizer : DataExternalizer<Collection<Int>> {
+    override fun save(output: DataOutput, value: Collection<Int>) {
+        save(output, value.toIntArray())
+    }
+
+    fun save(output: DataOutput, value: IntArray) {
+        value.sort()
+        DataInputOutputUtil.writeINT(output, value.size)
+
+        var previous = 0
+        for (element in value) {
+            DataInputOutputUtil.writeINT(output, element - previous)
+            previous = element
+        }
+    }
+
+    override fun read(input: DataInput): Collection<Int> {
+        val stream = input as DataInputStream
+        var elements = IntArray(16)
+        var size = 0
+
+        while (stream.available() > 0) {
+            val count = DataInputOutputUtil.readINT(stream)
+            var previous = 0
+            repeat(count) {
+                previous += DataInputOutputUtil.readINT(stream)
+                if (size == elements.size) {
+                    elements = elements.copyOf(size * 2)
+                }
+                elements[size++] = previous
+            }
+        }
+
+        return elements.sortedDistinct(size).asList()
+    }
+
+    private fun IntArray.sortedDistinct(size: Int): IntArray {
+        if (size == 0) return IntArray(0)
+
+        sort(0, size)
+        var distinct = 1
+        for (i in 1 until size) {
+            if (this[i] != this[distinct - 1]) {
+                this[distinct++] = this[i]
+            }
+        }
+        return copyOf(distinct)
+    }
+}
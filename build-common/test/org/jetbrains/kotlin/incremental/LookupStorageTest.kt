@@ -0,0 +1,133 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.incremental
+
+import org.jetbrains.kotlin.TestWithWorkingDir
+import org.jetbrains.kotlin.incremental.storage.DeltaEncodedIntSetExternalizer
+import java.io.*
+
+class LookupStorageTest : TestWithWorkingDir() {
+    private val a by lazy { File(workingDir, "src/a.kt").path }
+    private val b by lazy { File(workingDir, "src/b.kt").path }
+    private val cacheDir by lazy { File(workingDir, "cache") }
+
+    fun testDeltaEncodedIntSetRoundTrip() {
+        val bytes = ByteArrayOutputStream()
+        DataOutputStream(bytes).use { output ->
+            DeltaEncodedIntSetExternalizer.save(output, listOf(5, 1, 1000000, 3, 0))
+        }
+
+        assertEquals(listOf(0, 1, 3, 5, 1000000), DeltaEncodedIntSetExternalizer.read(DataInputStream(ByteArrayInputStream(bytes.toByteArray()))))
+    }
+
+    fun testDeltaEncodedIntSetMergesChunks() {
+        val bytes = ByteArrayOutputStream()
+        DataOutputStream(bytes).use { output ->
+            DeltaEncodedIntSetExternalizer.save(output, intArrayOf(3, 1))
+            DeltaEncodedIntSetExternalizer.save(output, intArrayOf())
+            DeltaEncodedIntSetExternalizer.save(output, intArrayOf(10, 3, 2))
+        }
+
+        assertEquals(listOf(1, 2, 3, 10), DeltaEncodedIntSetExternalizer.read(DataInputStream(ByteArrayInputStream(bytes.toByteArray()))))
+    }
+
+    fun testLookupsAreMergedAcrossFlushes() {
+        withStorage {
+            addLookups(mapOf(symbol(1) to listOf(a)))
+        }
+        withStorage {
+            addLookups(mapOf(symbol(1) to listOf(b), symbol(2) to listOf(a)))
+            // Pending lookups are merged with the stored ones before the flush
+            assertEquals(setOf(a, b), get(symbol(1)).toSet())
+        }
+        withStorage {
+            assertEquals(setOf(a, b), get(symbol(1)).toSet())
+            assertEquals(setOf(a), get(symbol(2)).toSet())
+            assertEquals(emptySet<String>(), get(symbol(3)).toSet())
+        }
+    }
+
+    fun testCompactionDropsRemovedFiles() {
+        withStorage {
+            addLookups(mapOf(symbol(1) to listOf(a, b), symbol(2) to listOf(a)))
+        }
+        withStorage {
+            removeLookupsFrom(sequenceOf(File(a)))
+            forceGC()
+            assertEquals(setOf(b), get(symbol(1)).toSet())
+            assertEquals(emptySet<String>(), get(symbol(2)).toSet())
+        }
+        withStorage {
+            assertEquals(setOf(b), get(symbol(1)).toSet())
+            assertEquals(emptySet<String>(), get(symbol(2)).toSet())
+        }
+        assertEquals(listOf("1", "0", "0", "1"), readCounters())
+    }
+
+    fun testNewStorageIsNotCompacted() {
+        val manySymbols = (1..COMPACTION_THRESHOLD + 1).associate { symbol(it) to listOf(b) }
+        withStorage {
+            addLookups(manySymbols + (symbol(0) to listOf(a)))
+            removeLookupsFrom(sequenceOf(File(a)))
+        }
+
+        // Compaction would have renumbered the remaining file and reset the number of deleted ones
+        val counters = readCounters()
+        assertEquals(listOf("2", "1", "0"), counters.take(3))
+        val keysCount = counters[3].toInt()
+
+        // Less appended chunks than keys in the storage don't trigger compaction either
+        withStorage {
+            addLookups((1..keysCount).associate { symbol(-it) to listOf(b) })
+        }
+        assertEquals(listOf("2", "1", keysCount.toString()), readCounters().take(3))
+
+        withStorage {
+            addLookups(mapOf(symbol(1) to listOf(b)))
+            assertEquals(setOf(b), get(symbol(1)).toSet())
+        }
+        assertEquals("1", readCounters()[0])
+        withStorage {
+            assertEquals(setOf(b), get(symbol(1)).toSet())
+            assertEquals(emptySet<String>(), get(symbol(0)).toSet())
+        }
+    }
+
+    private fun symbol(i: Int) = LookupSymbol("f$i", "foo.bar")
+
+    private fun LookupStorage.addLookups(lookups: Map<LookupSymbol, List<String>>) {
+        addAll(lookups.entries, lookups.values.flatten().toSet())
+    }
+
+    private fun withStorage(body: LookupStorage.() -> Unit) {
+        val storage = LookupStorage(cacheDir)
+        try {
+            storage.body()
+            storage.flush(false)
+        }
+        finally {
+            storage.close()
+        }
+    }
+
+    private fun readCounters(): List<String> = File(cacheDir, "counters.tab").readLines()
+
+    companion object {
+        // Minimum number of appended chunks which triggers compaction, see LookupStorage
+        private val COMPACTION_THRESHOLD = 10000
+    }
+}
@@ -115,6 +115,8 @@ extra["versions.junit"] = "4.12"
 extra["versions.javaslang"] = "2.0.6"
 extra["versions.ant"] = "1.8.2"
 extra["versions.android"] = "2.3.1"
+extra["versions.jmh-core"] = "1.19"
+extra["versions.jmh-generator-annprocess"] = "1.19"
 
 extra["ideaCoreSdkJars"] = arrayOf("annotations", "asm-all", "guava", "intellij-core", "jdom", "jna", "log4j", "picocontainer",
                                    "snappy-in-java", "streamex", "trove4j", "xpp3-1.1.4-min", "xstream")
@@ -17,6 +17,7 @@
 package org.jetbrains.kotlin.codegen;
 
 import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiFile;
 import kotlin.collections.CollectionsKt;
 import kotlin.io.FilesKt;
@@ -25,12 +26,14 @@ import org.jetbrains.annotations.Nullable;
 import org.jetbrains.annotations.TestOnly;
 import org.jetbrains.kotlin.backend.common.output.OutputFile;
 import org.jetbrains.kotlin.backend.common.output.OutputFileCollection;
+import org.jetbrains.kotlin.backend.common.output.SimpleOutputBinaryFile;
 import org.jetbrains.kotlin.codegen.state.GenerationState;
+import org.jetbrains.kotlin.lexer.KtTokens;
 import org.jetbrains.kotlin.load.kotlin.ModuleMapping;
 import org.jetbrains.kotlin.load.kotlin.PackagePartClassUtils;
 import org.jetbrains.kotlin.load.kotlin.PackageParts;
 import org.jetbrains.kotlin.name.FqName;
-import org.jetbrains.kotlin.psi.KtFile;
+import org.jetbrains.kotlin.psi.*;
 import org.jetbrains.kotlin.resolve.CompilerDeserializationConfiguration;
 import org.jetbrains.kotlin.resolve.jvm.diagnostics.JvmDeclarationOrigin;
 import org.jetbrains.kotlin.serialization.jvm.JvmPackageTable;
@@ -52,6 +55,12 @@ public class ClassFileFactory implements OutputFileCollection {
     private final Set<File> packagePartSourceFiles = new HashSet<>();
     private final Map<String, PackageParts> partsGroupedByPackage = new LinkedHashMap<>();
 
+    @Nullable private StreamingOutputWriter streamingWriter;
+    // Classes registered by the independent part which is being generated in the current thread
+    private final ThreadLocal<List<String>> currentPartOutput = ThreadLocal.withInitial(ArrayList::new);
+    // Streamed classes which the inliner may still need to read, see isNeededForInlining
+    private final Map<String, OutputFile> retainedOutput = new HashMap<>();
+
     public ClassFileFactory(@NotNull GenerationState state, @NotNull ClassBuilderFactory builderFactory) {
         this.state = state;
         this.builderFactory = builderFactory;
@@ -76,22 +85,119 @@ public class ClassFileFactory implements OutputFileCollection {
             @NotNull Collection<? extends PsiFile> sourceFiles
     ) {
         ClassBuilder answer = builderFactory.newClassBuilder(origin);
-        generators.put(
-                asmType.getInternalName() + ".class",
-                new ClassBuilderAndSourceFileList(answer, toIoFilesIgnoringNonPhysical(sourceFiles))
-        );
+        ClassBuilderAndSourceFileList generator = new ClassBuilderAndSourceFileList(answer, toIoFilesIgnoringNonPhysical(sourceFiles));
+        String outputFilePath = asmType.getInternalName() + ".class";
+        synchronized (generators) {
+            generators.put(outputFilePath, generator);
+        }
+        if (streamingWriter != null) {
+            generator.isRetained = isNeededForInlining(origin);
+            currentPartOutput.get().add(outputFilePath);
+            return new DoneTrackingClassBuilder(answer, generator);
+        }
         return answer;
     }
 
+    /**
+     * Hands each class file to {@code writer} once the independent part (e.g. a file) which has generated it is finished,
+     * instead of keeping it until {@link #asList()}. Only the package parts needed for the module mapping are retained.
+     */
+    public void streamTo(@NotNull StreamingOutputWriter writer) {
+        synchronized (generators) {
+            assert generators.isEmpty() : "Streaming should be enabled before generation: " + generators.keySet();
+            streamingWriter = writer;
+        }
+    }
+
+    // Anonymous objects and lambdas declared in inline functions are read again when these functions are inlined in other files.
+    // Classes without an origin are regenerated anonymous objects and when mappings, which may belong to an inline function as well
+    private static boolean isNeededForInlining(@NotNull JvmDeclarationOrigin origin) {
+        PsiElement element = origin.getElement();
+        if (element == null) return true;
+
+        for (PsiElement parent = element.getParent(); parent != null && !(parent instanceof KtFile); parent = parent.getParent()) {
+            if ((parent instanceof KtNamedFunction || parent instanceof KtProperty || parent instanceof KtPropertyAccessor) &&
+                ((KtDeclaration) parent).hasModifier(KtTokens.INLINE_KEYWORD)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Classes may be removed until the end of the part which has generated them, e.g. regenerated anonymous objects after inlining,
+    // so they are not written as soon as their class builder is done
+    public void afterIndependentPart() {
+        if (streamingWriter == null) return;
+
+        // Classes which are still being generated, e.g. a multifile class facade, are written after one of the next parts
+        Iterator<String> paths = currentPartOutput.get().iterator();
+        while (paths.hasNext()) {
+            String path = paths.next();
+            OutAndSourceFileList generator;
+            synchronized (generators) {
+                generator = generators.get(path);
+            }
+            if (generator == null || generator.isDone) {
+                streamOutputFile(path);
+                paths.remove();
+            }
+        }
+    }
+
+    private void streamOutputFile(@NotNull String relativePath) {
+        OutAndSourceFileList generator;
+        synchronized (generators) {
+            generator = generators.remove(relativePath);
+        }
+        if (generator == null) return;
+
+        byte[] bytes;
+        try {
+            bytes = generator.asBytes(builderFactory);
+        }
+        catch (RuntimeException e) {
+            throw new RuntimeException("Error generating class file " + relativePath + ": " + e.getMessage(), e);
+        }
+        SimpleOutputBinaryFile file = new SimpleOutputBinaryFile(generator.sourceFiles, relativePath, bytes);
+        if (generator.isRetained) {
+            synchronized (generators) {
+                retainedOutput.put(relativePath, file);
+            }
+        }
+        streamingWriter.write(file);
+    }
+
     public void done() {
-        if (!isDone) {
-            isDone = true;
-            writeModuleMappings();
+        synchronized (generators) {
+            if (!isDone) {
+                isDone = true;
+                if (state.getBackendThreadCount() > 1) {
+                    sortGeneratedOutput();
+                }
+                writeModuleMappings();
+                if (streamingWriter != null) {
+                    currentPartOutput.remove();
+                    for (String path : new ArrayList<>(generators.keySet())) {
+                        streamOutputFile(path);
+                    }
+                }
+            }
         }
     }
 
-    public void releaseGeneratedOutput() {
+    // When classes are generated in parallel, the order of registration depends on scheduling,
+    // so the output is sorted by path to keep it reproducible
+    private void sortGeneratedOutput() {
+        Map<String, OutAndSourceFileList> sorted = new TreeMap<>(generators);
         generators.clear();
+        generators.putAll(sorted);
+    }
+
+    public void releaseGeneratedOutput() {
+        synchronized (generators) {
+            generators.clear();
+            retainedOutput.clear();
+        }
     }
 
     private void writeModuleMappings() {
@@ -131,13 +237,17 @@ public class ClassFileFactory implements OutputFileCollection {
 
     @NotNull
     public List<OutputFile> getCurrentOutput() {
-        return CollectionsKt.map(generators.keySet(), OutputClassFile::new);
+        synchronized (generators) {
+            return CollectionsKt.map(generators.keySet(), OutputClassFile::new);
+        }
     }
 
     @Override
     @Nullable
     public OutputFile get(@NotNull String relativePath) {
-        return generators.containsKey(relativePath) ? new OutputClassFile(relativePath) : null;
+        synchronized (generators) {
+            return generators.containsKey(relativePath) ? new OutputClassFile(relativePath) : retainedOutput.get(relativePath);
+        }
     }
 
     @NotNull
@@ -198,8 +308,10 @@ public class ClassFileFactory implements OutputFileCollection {
     private PackagePartRegistry buildNewPackagePartRegistry(@NotNull FqName packageFqName) {
         String packageFqNameAsString = packageFqName.asString();
         return (partInternalName, facadeInternalName) -> {
-            PackageParts packageParts = partsGroupedByPackage.computeIfAbsent(packageFqNameAsString, PackageParts::new);
-            packageParts.addPart(partInternalName, facadeInternalName);
+            synchronized (partsGroupedByPackage) {
+                PackageParts packageParts = partsGroupedByPackage.computeIfAbsent(packageFqNameAsString, PackageParts::new);
+                packageParts.addPart(partInternalName, facadeInternalName);
+            }
         };
     }
 
@@ -293,10 +405,36 @@ public class ClassFileFactory implements OutputFileCollection {
         }
     }
 
+    private static final class DoneTrackingClassBuilder extends DelegatingClassBuilder {
+        private final ClassBuilder delegate;
+        private final OutAndSourceFileList generator;
+
+        private DoneTrackingClassBuilder(ClassBuilder delegate, OutAndSourceFileList generator) {
+            this.delegate = delegate;
+            this.generator = generator;
+        }
+
+        @NotNull
+        @Override
+        protected ClassBuilder getDelegate() {
+            return delegate;
+        }
+
+        @Override
+        public void done() {
+            super.done();
+            generator.isDone = true;
+        }
+    }
+
     private static abstract class OutAndSourceFileList {
 
         protected final List<File> sourceFiles;
 
+        // Only tracked when the output is streamed
+        private boolean isDone = false;
+        private boolean isRetained = false;
+
         private OutAndSourceFileList(List<File> sourceFiles) {
             this.sourceFiles = sourceFiles;
         }
@@ -307,8 +445,10 @@ public class ClassFileFactory implements OutputFileCollection {
     }
 
     public void removeClasses(Set<String> classNamesToRemove) {
-        for (String classInternalName : classNamesToRemove) {
-            generators.remove(classInternalName + ".class");
+        synchronized (generators) {
+            for (String classInternalName : classNamesToRemove) {
+                generators.remove(classInternalName + ".class");
+            }
         }
     }
 
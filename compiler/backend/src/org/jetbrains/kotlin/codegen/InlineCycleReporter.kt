@@ -25,7 +25,11 @@ import org.jetbrains.kotlin.resolve.calls.model.ResolvedCall
 
 class InlineCycleReporter(private val diagnostics: DiagnosticSink) {
 
-    private val processingFunctions = linkedMapOf<PsiElement, CallableDescriptor>()
+    // Inlining stack is tracked per thread, because class files may be generated in parallel (see KotlinCodegenFacade)
+    private val processingFunctionsByThread = ThreadLocal.withInitial { linkedMapOf<PsiElement, CallableDescriptor>() }
+
+    private val processingFunctions: LinkedHashMap<PsiElement, CallableDescriptor>
+        get() = processingFunctionsByThread.get()
 
     fun enterIntoInlining(call: ResolvedCall<*>?): Boolean {
         //null call for default method inlining
@@ -25,10 +25,15 @@ import org.jetbrains.kotlin.fileClasses.JvmFileClassUtil;
 import org.jetbrains.kotlin.name.FqName;
 import org.jetbrains.kotlin.progress.ProgressIndicatorAndCompilationCanceledStatus;
 import org.jetbrains.kotlin.psi.KtFile;
+import org.jetbrains.kotlin.utils.ParallelUtils;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 public class KotlinCodegenFacade {
 
@@ -66,6 +71,11 @@ public class KotlinCodegenFacade {
             }
         }
 
+        if (state.getBackendThreadCount() > 1) {
+            doGenerateFilesInParallel(filesInPackages, filesInMultifileClasses, state, errorHandler);
+            return;
+        }
+
         Set<FqName> obsoleteMultifileClasses = new HashSet<>(state.getObsoleteMultifileClasses());
         for (FqName multifileClassFqName : SetsKt.plus(filesInMultifileClasses.keySet(), obsoleteMultifileClasses)) {
             doCheckCancelled(state);
@@ -82,6 +92,52 @@ public class KotlinCodegenFacade {
         state.getFactory().done();
     }
 
+    // Codegens are created sequentially (this registers package parts in the factory), while the generation itself is performed
+    // on a pool of worker threads. The resulting class files are sorted in ClassFileFactory.done(), so the output is deterministic
+    private static void doGenerateFilesInParallel(
+            @NotNull MultiMap<FqName, KtFile> filesInPackages,
+            @NotNull MultiMap<FqName, KtFile> filesInMultifileClasses,
+            @NotNull GenerationState state,
+            @NotNull CompilationErrorHandler errorHandler
+    ) {
+        List<Runnable> tasks = new ArrayList<>();
+
+        Set<FqName> obsoleteMultifileClasses = new HashSet<>(state.getObsoleteMultifileClasses());
+        for (FqName multifileClassFqName : SetsKt.plus(filesInMultifileClasses.keySet(), obsoleteMultifileClasses)) {
+            MultifileClassCodegen codegen =
+                    state.getFactory().forMultifileClass(multifileClassFqName, filesInMultifileClasses.get(multifileClassFqName));
+            tasks.add(() -> codegen.generate(errorHandler));
+        }
+
+        Set<FqName> packagesWithObsoleteParts = new HashSet<>(state.getPackagesWithObsoleteParts());
+        for (FqName packageFqName : SetsKt.plus(packagesWithObsoleteParts, filesInPackages.keySet())) {
+            PackageCodegen codegen = state.getFactory().forPackage(packageFqName, filesInPackages.get(packageFqName));
+            tasks.add(() -> codegen.generate(errorHandler));
+        }
+
+        ExecutorService executor = ParallelUtils.newDaemonThreadPool(
+                Math.min(state.getBackendThreadCount(), Math.max(tasks.size(), 1)), "Kotlin backend");
+        try {
+            List<Future<?>> futures = new ArrayList<>(tasks.size());
+            for (Runnable task : tasks) {
+                futures.add(executor.submit(() -> {
+                    doCheckCancelled(state);
+                    task.run();
+                }));
+            }
+
+            for (Future<?> future : futures) {
+                ParallelUtils.await(future);
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+
+        doCheckCancelled(state);
+        state.getFactory().done();
+    }
+
     private static void doCheckCancelled(GenerationState state) {
         if (state.getClassBuilderMode().generateBodies) {
             ProgressIndicatorAndCompilationCanceledStatus.checkCanceled();
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.codegen
+
+import org.jetbrains.kotlin.backend.common.output.OutputFile
+import org.jetbrains.kotlin.backend.common.output.SimpleOutputBinaryFile
+import java.util.concurrent.ArrayBlockingQueue
+
+/**
+ * Writes output files to [sink] on a background thread, so that [ClassFileFactory] doesn't have to keep the bytes of all classes
+ * until the end of the compilation.
+ *
+ * At most [maxQueuedFiles] files wait to be written, [write] blocks when the sink falls behind.
+ * A failure of the sink is rethrown from the next [write] or from [finish].
+ */
+class StreamingOutputWriter @JvmOverloads constructor(
+        private val sink: (OutputFile) -> Unit,
+        maxQueuedFiles: Int = DEFAULT_MAX_QUEUED_FILES
+) {
+    init {
+        assert(maxQueuedFiles > 0) { "Queue size should be positive: $maxQueuedFiles" }
+    }
+
+    private val queue = ArrayBlockingQueue<OutputFile>(maxQueuedFiles)
+
+    @Volatile
+    private var failure: Throwable? = null
+
+    private val thread = Thread(this::writeQueuedFiles, "Kotlin output writer").apply {
+        isDaemon = true
+        start()
+    }
+
+    fun write(file: OutputFile) {
+        rethrowFailure()
+        queue.put(file)
+    }
+
+    /**
+     * Waits until all files are written and stops the writer thread.
+     */
+    fun finish() {
+        queue.put(END)
+        thread.join()
+        rethrowFailure()
+    }
+
+    private fun writeQueuedFiles() {
+        while (true) {
+            val file = queue.take()
+            if (file === END) return
+
+            // After a failure the remaining files are dropped, so that producers are not blocked on the full queue
+            if (failure != null) continue
+
+            try {
+                sink(file)
+            }
+            catch (e: Throwable) {
+                failure = e
+            }
+        }
+    }
+
+    private fun rethrowFailure() {
+        val cause = failure ?: return
+        when (cause) {
+            is RuntimeException -> throw cause
+            is Error -> throw cause
+            else -> throw RuntimeException(cause)
+        }
+    }
+
+    companion object {
+        const val DEFAULT_MAX_QUEUED_FILES = 256
+
+        private val END = SimpleOutputBinaryFile(emptyList(), "", ByteArray(0))
+    }
+}
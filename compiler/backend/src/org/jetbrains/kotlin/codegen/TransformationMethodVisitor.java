@@ -60,11 +60,31 @@ public abstract class TransformationMethodVisitor extends MethodVisitor {
 
         super.visitEnd();
 
+        transformAndEmit();
+    }
+
+    /**
+     * Called when the whole method has been visited. Subclasses may defer the transformation,
+     * in that case they should eventually call {@link #transform()} and then {@link #emit()}.
+     */
+    protected void transformAndEmit() {
+        transform();
+        emit();
+    }
+
+    protected final void transform() {
         try {
             if (shouldBeTransformed(methodNode)) {
                 performTransformations(methodNode);
             }
+        }
+        catch (Throwable t) {
+            throw new CompilationException("Couldn't transform method node: " + getNodeText(methodNode), t, null);
+        }
+    }
 
+    protected final void emit() {
+        try {
             methodNode.accept(new EndIgnoringMethodVisitorDecorator(Opcodes.ASM5, delegate));
 
 
@@ -89,6 +109,11 @@ public abstract class TransformationMethodVisitor extends MethodVisitor {
         }
     }
 
+    @NotNull
+    protected MethodNode getMethodNode() {
+        return methodNode;
+    }
+
     protected abstract void performTransformations(@NotNull MethodNode methodNode);
 
     /**
@@ -23,16 +23,18 @@ import org.jetbrains.org.objectweb.asm.commons.Method
 
 data class MethodId(val containingFqName: FqName, val method: Method)
 
-class InlineCache {
+class InlineCache(val shared: SharedInlineCache? = null) {
     val classBytes: SLRUMap<ClassId, ByteArray> = SLRUMap(30, 20)
     val methodNodeById: SLRUMap<MethodId, SMAPAndMethodNode> = SLRUMap(60, 50)
 }
 
+// The cache is shared between threads when class files are generated in parallel, so the map itself is used as a lock.
+// The value is computed outside of the lock; in the rare case of a race the same value is just computed twice
 inline fun <K, V> SLRUMap<K, V>.getOrPut(key: K, defaultValue: () -> V): V {
-    val value = get(key)
+    val value = synchronized(this) { get(key) }
     return if (value == null) {
         val answer = defaultValue()
-        put(key, answer)
+        synchronized(this) { put(key, answer) }
         answer
     }
     else {
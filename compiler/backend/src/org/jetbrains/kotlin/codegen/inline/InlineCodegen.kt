@@ -29,6 +29,7 @@ import org.jetbrains.kotlin.codegen.intrinsics.classId
 import org.jetbrains.kotlin.codegen.state.GenerationState
 import org.jetbrains.kotlin.descriptors.*
 import org.jetbrains.kotlin.descriptors.annotations.isInlineOnly
+import org.jetbrains.kotlin.name.ClassId
 import org.jetbrains.kotlin.name.Name
 import org.jetbrains.kotlin.psi.KtCallableReferenceExpression
 import org.jetbrains.kotlin.psi.KtExpression
@@ -495,7 +496,8 @@ abstract class InlineCodegen<out T: BaseExpressionCodegen>(
                 ?: throw IllegalStateException("Couldn't obtain compiled function body for " + functionDescriptor)
             }
 
-            return resultInCache.copyWithNewNode(cloneMethodNode(resultInCache.node))
+            // Cloning resets labels of the cached node, so it should not be performed concurrently
+            return resultInCache.copyWithNewNode(synchronized(resultInCache.node) { cloneMethodNode(resultInCache.node) })
         }
 
         private fun getDirectMemberAndCallableFromObject(functionDescriptor: FunctionDescriptor): CallableMemberDescriptor {
@@ -528,11 +530,24 @@ abstract class InlineCodegen<out T: BaseExpressionCodegen>(
 
             val containerId = containingClasses.implClassId
 
-            val bytes = state.inlineCache.classBytes.getOrPut(containerId) {
-                findVirtualFile(state, containerId)?.contentsToByteArray() ?:
-                throw IllegalStateException("Couldn't find declaration file for " + containerId)
+            val file = findVirtualFile(state, containerId) ?: throw IllegalStateException("Couldn't find declaration file for " + containerId)
+
+            val classBytes = { state.inlineCache.classBytes.getOrPut(containerId) { file.contentsToByteArray() } }
+
+            val sharedCache = state.inlineCache.shared
+                              ?: return doCreateMethodNodeFromClassBytes(classBytes(), callableDescriptor, containerId, asmMethod)
+
+            return sharedCache.getOrPut(file, asmMethod, classBytes) { bytes ->
+                doCreateMethodNodeFromClassBytes(bytes, callableDescriptor, containerId, asmMethod)
             }
+        }
 
+        private fun doCreateMethodNodeFromClassBytes(
+                bytes: ByteArray,
+                callableDescriptor: DeserializedCallableMemberDescriptor,
+                containerId: ClassId,
+                asmMethod: Method
+        ): SMAPAndMethodNode? {
             val methodNode = getMethodNode(bytes, asmMethod.name, asmMethod.descriptor, AsmUtil.asmTypeByClassId(containerId)) ?: return null
 
             // KLUDGE: Inline suspend function built with compiler version less than 1.1.4/1.2-M1 did not contain proper
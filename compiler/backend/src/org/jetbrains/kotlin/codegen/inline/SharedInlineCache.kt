@@ -0,0 +1,126 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.codegen.inline
+
+import com.intellij.openapi.vfs.StandardFileSystems
+import com.intellij.openapi.vfs.VfsUtilCore
+import com.intellij.openapi.vfs.VirtualFile
+import com.intellij.util.containers.SLRUMap
+import com.intellij.util.io.URLUtil
+import org.jetbrains.kotlin.config.CompilerConfigurationKey
+import org.jetbrains.kotlin.util.PerformanceCounter
+import org.jetbrains.org.objectweb.asm.commons.Method
+import java.io.File
+import java.security.MessageDigest
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Bodies of compiled inline functions which outlive a single [org.jetbrains.kotlin.codegen.state.GenerationState],
+ * e.g. are shared by all compilations in one daemon.
+ *
+ * A body is keyed by the method signature and the identity of its class file: the path, size and modification time of the containing jar,
+ * or the SHA-1 of the class file itself if it's not in a jar. So a rebuilt library or output directory is never served from the cache.
+ * The SHA-1 of a local class file is computed once per its path, size and modification time.
+ */
+class SharedInlineCache @JvmOverloads constructor(maxSize: Int = DEFAULT_MAX_SIZE) {
+    private val methodNodes: SLRUMap<MethodKey, SMAPAndMethodNode>
+    private val classFileDigests: SLRUMap<String, ClassFileDigest>
+
+    private val hitCount = AtomicLong()
+    private val missCount = AtomicLong()
+
+    init {
+        assert(maxSize > 0) { "Cache size should be positive: $maxSize" }
+        methodNodes = SLRUMap(maxSize / 2, maxSize - maxSize / 2)
+        classFileDigests = SLRUMap(maxSize / 2, maxSize - maxSize / 2)
+    }
+
+    val hits: Long get() = hitCount.get()
+
+    val misses: Long get() = missCount.get()
+
+    /**
+     * [classBytes] is only read if the class file is not in a jar or the body is not cached yet.
+     * [compute] may return null if there's no such method, in that case nothing is cached.
+     */
+    fun getOrPut(
+            file: VirtualFile,
+            method: Method,
+            classBytes: () -> ByteArray,
+            compute: (ByteArray) -> SMAPAndMethodNode?
+    ): SMAPAndMethodNode? {
+        val key = MethodKey(file.path, classFileStamp(file) ?: classFileDigest(file, classBytes), method.name, method.descriptor)
+
+        synchronized(methodNodes) { methodNodes.get(key) }?.let { cached ->
+            hitCount.incrementAndGet()
+            HIT_COUNTER.increment()
+            return cached
+        }
+
+        missCount.incrementAndGet()
+        val result = MISS_COUNTER.time { compute(classBytes()) } ?: return null
+        synchronized(methodNodes) { methodNodes.put(key, result) }
+        return result
+    }
+
+    fun clear() {
+        synchronized(methodNodes) { methodNodes.clear() }
+        synchronized(classFileDigests) { classFileDigests.clear() }
+    }
+
+    private fun classFileStamp(file: VirtualFile): String? {
+        val separator = file.path.indexOf(URLUtil.JAR_SEPARATOR)
+        if (separator < 0) return null
+
+        val jar = File(file.path.substring(0, separator))
+        if (!jar.isFile) return null
+
+        return "${jar.length()}:${jar.lastModified()}"
+    }
+
+    private fun classFileDigest(file: VirtualFile, classBytes: () -> ByteArray): String {
+        if (file.fileSystem.protocol != StandardFileSystems.FILE_PROTOCOL) return sha1(classBytes())
+
+        val ioFile = VfsUtilCore.virtualToIoFile(file)
+        val length = ioFile.length()
+        val lastModified = ioFile.lastModified()
+        synchronized(classFileDigests) { classFileDigests.get(file.path) }?.let { cached ->
+            if (cached.length == length && cached.lastModified == lastModified) return cached.sha1
+        }
+
+        val digest = ClassFileDigest(length, lastModified, sha1(classBytes()))
+        synchronized(classFileDigests) { classFileDigests.put(file.path, digest) }
+        return digest.sha1
+    }
+
+    private fun sha1(bytes: ByteArray): String =
+            MessageDigest.getInstance("SHA-1").digest(bytes).joinToString("") { "%02x".format(it) }
+
+    private class ClassFileDigest(val length: Long, val lastModified: Long, val sha1: String)
+
+    private data class MethodKey(val path: String, val stamp: String, val name: String, val descriptor: String)
+
+    companion object {
+        const val DEFAULT_MAX_SIZE = 1000
+
+        @JvmField
+        val CONFIGURATION_KEY = CompilerConfigurationKey.create<SharedInlineCache>("inline function bodies shared between compilations")
+
+        private val HIT_COUNTER = PerformanceCounter.create("Shared inline cache hit")
+        private val MISS_COUNTER = PerformanceCounter.create("Shared inline cache miss")
+    }
+}
@@ -34,6 +34,9 @@ class ConstantConditionEliminationMethodTransformer : MethodTransformer() {
     private val deadCodeElimination = DeadCodeEliminationMethodTransformer()
 
     override fun transform(internalClassName: String, methodNode: MethodNode) {
+        // Only integer comparisons may be folded, so there's no need to analyze a method without them
+        if (methodNode.instructions.toArray().none { it.opcode in Opcodes.IFEQ..Opcodes.IF_ICMPLE }) return
+
         do {
             val changes = ConstantConditionsOptimization(internalClassName, methodNode).run()
             if (changes) deadCodeElimination.transform(internalClassName, methodNode)
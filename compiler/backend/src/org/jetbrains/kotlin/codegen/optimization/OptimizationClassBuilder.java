@@ -28,15 +28,19 @@ public class OptimizationClassBuilder extends DelegatingClassBuilder {
     private final ClassBuilder delegate;
     private final boolean disableOptimization;
     private final JVMConstructorCallNormalizationMode constructorCallNormalizationMode;
+    @Nullable
+    private final ParallelMethodOptimizer.ClassMethods parallelMethods;
 
     public OptimizationClassBuilder(
             @NotNull ClassBuilder delegate,
             boolean disableOptimization,
-            JVMConstructorCallNormalizationMode constructorCallNormalizationMode
+            JVMConstructorCallNormalizationMode constructorCallNormalizationMode,
+            @Nullable ParallelMethodOptimizer parallelOptimizer
     ) {
         this.delegate = delegate;
         this.disableOptimization = disableOptimization;
         this.constructorCallNormalizationMode = constructorCallNormalizationMode;
+        this.parallelMethods = parallelOptimizer != null ? parallelOptimizer.new ClassMethods() : null;
     }
 
     @NotNull
@@ -58,7 +62,15 @@ public class OptimizationClassBuilder extends DelegatingClassBuilder {
         return new OptimizationMethodVisitor(
                 super.newMethod(origin, access, name, desc, signature, exceptions),
                 disableOptimization, constructorCallNormalizationMode,
-                access, name, desc, signature, exceptions
+                access, name, desc, signature, exceptions, parallelMethods
         );
     }
+
+    @Override
+    public void done() {
+        if (parallelMethods != null) {
+            parallelMethods.emitAll();
+        }
+        super.done();
+    }
 }
@@ -17,6 +17,7 @@
 package org.jetbrains.kotlin.codegen.optimization;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.jetbrains.kotlin.codegen.ClassBuilderFactory;
 import org.jetbrains.kotlin.codegen.DelegatingClassBuilderFactory;
 import org.jetbrains.kotlin.config.JVMConstructorCallNormalizationMode;
@@ -25,22 +26,37 @@ import org.jetbrains.kotlin.resolve.jvm.diagnostics.JvmDeclarationOrigin;
 public class OptimizationClassBuilderFactory extends DelegatingClassBuilderFactory {
     private final boolean disableOptimization;
     private final JVMConstructorCallNormalizationMode constructorCallNormalizationMode;
+    @Nullable
+    private final ParallelMethodOptimizer parallelOptimizer;
 
     public OptimizationClassBuilderFactory(
             ClassBuilderFactory delegate,
             boolean disableOptimization,
             JVMConstructorCallNormalizationMode constructorCallNormalizationMode
+    ) {
+        this(delegate, disableOptimization, constructorCallNormalizationMode, null);
+    }
+
+    /**
+     * @param parallelOptimizer if not null, bodies of methods are transformed on its worker threads
+     */
+    public OptimizationClassBuilderFactory(
+            ClassBuilderFactory delegate,
+            boolean disableOptimization,
+            JVMConstructorCallNormalizationMode constructorCallNormalizationMode,
+            @Nullable ParallelMethodOptimizer parallelOptimizer
     ) {
         super(delegate);
         this.disableOptimization = disableOptimization;
         this.constructorCallNormalizationMode = constructorCallNormalizationMode;
+        this.parallelOptimizer = parallelOptimizer;
     }
 
     @NotNull
     @Override
     public OptimizationClassBuilder newClassBuilder(@NotNull JvmDeclarationOrigin origin) {
         return new OptimizationClassBuilder(
-                getDelegate().newClassBuilder(origin), disableOptimization, constructorCallNormalizationMode
+                getDelegate().newClassBuilder(origin), disableOptimization, constructorCallNormalizationMode, parallelOptimizer
         );
     }
 }
@@ -20,6 +20,7 @@ import org.jetbrains.kotlin.codegen.TransformationMethodVisitor
 import org.jetbrains.kotlin.codegen.optimization.boxing.PopBackwardPropagationTransformer
 import org.jetbrains.kotlin.codegen.optimization.boxing.RedundantBoxingMethodTransformer
 import org.jetbrains.kotlin.codegen.optimization.boxing.StackPeepholeOptimizationsTransformer
+import org.jetbrains.kotlin.codegen.optimization.common.MethodAnalysisCache
 import org.jetbrains.kotlin.codegen.optimization.common.prepareForEmitting
 import org.jetbrains.kotlin.codegen.optimization.nullCheck.RedundantNullCheckMethodTransformer
 import org.jetbrains.kotlin.codegen.optimization.transformer.CompositeMethodTransformer
@@ -35,17 +36,28 @@ class OptimizationMethodVisitor(
         name: String,
         desc: String,
         signature: String?,
-        exceptions: Array<String>?
+        exceptions: Array<String>?,
+        private val parallelMethods: ParallelMethodOptimizer.ClassMethods? = null
 ) : TransformationMethodVisitor(delegate, access, name, desc, signature, exceptions) {
     private val constructorCallNormalizationTransformer =
             UninitializedStoresMethodTransformer(constructorCallNormalizationMode)
 
+    override fun transformAndEmit() {
+        if (parallelMethods == null) {
+            super.transformAndEmit()
+        }
+        else {
+            parallelMethods.submit(methodNode, { transform() }, { emit() })
+        }
+    }
+
     override fun performTransformations(methodNode: MethodNode) {
         normalizationMethodTransformer.transform("fake", methodNode)
         constructorCallNormalizationTransformer.transform("fake", methodNode)
 
-        if (canBeOptimized(methodNode) && !disableOptimization) {
-            optimizationTransformer.transform("fake", methodNode)
+        if (!disableOptimization) {
+            val transformer = if (canBeOptimized(methodNode)) optimizationTransformer else largeMethodOptimizationTransformer
+            transformer.transform("fake", methodNode, MethodAnalysisCache("fake", methodNode))
         }
 
         methodNode.prepareForEmitting()
@@ -73,6 +85,15 @@ class OptimizationMethodVisitor(
                 MethodVerifier("AFTER optimizations")
         )
 
+        // Transformers which don't keep a frame for each instruction, so they are applied to methods too large for the ones above
+        val largeMethodOptimizationTransformer = CompositeMethodTransformer(
+                RedundantCheckCastEliminationMethodTransformer(),
+                StackPeepholeOptimizationsTransformer(),
+                DeadCodeEliminationMethodTransformer(),
+                RedundantGotoMethodTransformer(),
+                RedundantNopsCleanupMethodTransformer()
+        )
+
         fun canBeOptimized(node: MethodNode): Boolean {
             val totalFramesSizeMb = node.instructions.size() * (node.maxLocals + node.maxStack) / (1024 * 1024)
             return totalFramesSizeMb < MEMORY_LIMIT_BY_METHOD_MB
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.codegen.optimization
+
+import org.jetbrains.kotlin.utils.ParallelUtils
+import org.jetbrains.org.objectweb.asm.tree.MethodNode
+import java.util.*
+import java.util.concurrent.Future
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.Semaphore
+
+/**
+ * Transforms generated method bodies on a pool of [threadCount] worker threads.
+ *
+ * Methods of a class are transformed in parallel, but are written to the class in the order they were generated,
+ * once the class is done (see [ClassMethods.emitAll]), so the output doesn't depend on scheduling.
+ *
+ * Method nodes waiting for or undergoing transformation may hold at most [memoryBudgetPerThreadMb] per worker in total
+ * (estimated by the size of frames of the data flow analysis), generation of further methods waits until memory is released.
+ */
+class ParallelMethodOptimizer(threadCount: Int, memoryBudgetPerThreadMb: Int = DEFAULT_MEMORY_BUDGET_PER_THREAD_MB) {
+    private val executor = ParallelUtils.newDaemonThreadPool(threadCount, "Kotlin method optimization")
+
+    private val memoryBudgetKb = threadCount * memoryBudgetPerThreadMb * 1024
+    private val memory = Semaphore(memoryBudgetKb)
+
+    /**
+     * Methods of a single class, used by the thread which generates the class.
+     */
+    inner class ClassMethods {
+        private val methods = ArrayList<Pair<Future<*>, () -> Unit>>()
+
+        fun submit(methodNode: MethodNode, transform: () -> Unit, emit: () -> Unit) {
+            val permits = estimateMemoryKb(methodNode).coerceIn(1L, memoryBudgetKb.toLong()).toInt()
+            memory.acquireUninterruptibly(permits)
+
+            val future = try {
+                executor.submit {
+                    try {
+                        transform()
+                    }
+                    finally {
+                        memory.release(permits)
+                    }
+                }
+            }
+            catch (e: RejectedExecutionException) {
+                memory.release(permits)
+                throw e
+            }
+
+            methods.add(future to emit)
+        }
+
+        fun emitAll() {
+            try {
+                for ((future, emit) in methods) {
+                    ParallelUtils.await(future)
+                    emit()
+                }
+            }
+            finally {
+                methods.clear()
+            }
+        }
+    }
+
+    fun shutdown() {
+        executor.shutdownNow()
+    }
+
+    // Frames of a basic analysis hold a value per local variable and stack slot for each instruction
+    private fun estimateMemoryKb(methodNode: MethodNode): Long =
+            methodNode.instructions.size().toLong() * (methodNode.maxLocals + methodNode.maxStack + 1) * BYTES_PER_FRAME_SLOT / 1024
+
+    companion object {
+        const val DEFAULT_MEMORY_BUDGET_PER_THREAD_MB = 64
+
+        private const val BYTES_PER_FRAME_SLOT = 8L
+    }
+}
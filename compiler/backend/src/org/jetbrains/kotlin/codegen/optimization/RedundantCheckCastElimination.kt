@@ -17,24 +17,36 @@
 package org.jetbrains.kotlin.codegen.optimization
 
 import org.jetbrains.kotlin.codegen.inline.ReifiedTypeInliner
+import org.jetbrains.kotlin.codegen.optimization.common.MethodAnalysisCache
 import org.jetbrains.kotlin.codegen.optimization.common.OptimizationBasicInterpreter
 import org.jetbrains.kotlin.codegen.optimization.fixStack.top
 import org.jetbrains.kotlin.codegen.optimization.transformer.MethodTransformer
 import org.jetbrains.org.objectweb.asm.Opcodes
 import org.jetbrains.org.objectweb.asm.Type
 import org.jetbrains.org.objectweb.asm.tree.*
+import org.jetbrains.org.objectweb.asm.tree.analysis.BasicValue
+import org.jetbrains.org.objectweb.asm.tree.analysis.Frame
 
 class RedundantCheckCastEliminationMethodTransformer : MethodTransformer() {
     override fun transform(internalClassName: String, methodNode: MethodNode) {
+        transform(methodNode) { analyze(internalClassName, methodNode, OptimizationBasicInterpreter())::get }
+    }
+
+    override fun transform(internalClassName: String, methodNode: MethodNode, analysisCache: MethodAnalysisCache) {
+        transform(methodNode) { analysisCache.basicFrames::get }
+    }
+
+    private inline fun transform(methodNode: MethodNode, getFrames: () -> (Int) -> Frame<BasicValue>?) {
         val insns = methodNode.instructions.toArray()
         if (!insns.any { it.opcode == Opcodes.CHECKCAST }) return
 
         val redundantCheckCasts = ArrayList<TypeInsnNode>()
 
-        val frames = analyze(internalClassName, methodNode, OptimizationBasicInterpreter())
+        val frames = getFrames()
         for (i in insns.indices) {
-            val valueType = frames[i]?.top()?.type ?: continue
             val insn = insns[i]
+            if (insn.opcode != Opcodes.CHECKCAST) continue
+            val valueType = frames(i)?.top()?.type ?: continue
             if (ReifiedTypeInliner.isOperationReifiedMarker(insn.previous)) continue
 
             if (insn is TypeInsnNode) {
@@ -0,0 +1,300 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.codegen.optimization.common
+
+import org.jetbrains.kotlin.codegen.inline.insnText
+import org.jetbrains.org.objectweb.asm.Opcodes
+import org.jetbrains.org.objectweb.asm.Type
+import org.jetbrains.org.objectweb.asm.tree.*
+import org.jetbrains.org.objectweb.asm.tree.analysis.AnalyzerException
+import org.jetbrains.org.objectweb.asm.tree.analysis.Frame
+import org.jetbrains.org.objectweb.asm.tree.analysis.Interpreter
+import org.jetbrains.org.objectweb.asm.tree.analysis.Value
+import java.util.*
+
+/**
+ * Data flow analysis of [method] which keeps frames only at entries of basic blocks, i.e. at the first instruction, at jump, switch and
+ * exception handler targets, and after instructions which don't fall through to the next one.
+ * A frame of any other instruction is recomputed on demand from the entry frame of its block,
+ * so the memory retained by the analysis is proportional to the number of blocks rather than to the number of instructions.
+ *
+ * Frames are merged only at block entries and the frames inside a block depend only on its entry frame,
+ * so the result is the same as the one of [MethodAnalyzer] with the same interpreter.
+ */
+open class BlockEntryFrames<V : Value>(
+        private val owner: String,
+        private val method: MethodNode,
+        private val interpreter: Interpreter<V>
+) {
+    private val instructions: InsnList = method.instructions
+    private val insns: Array<AbstractInsnNode> = instructions.toArray()
+
+    val size: Int = insns.size
+
+    // Index of the entry of the block containing each instruction
+    private val blockEntries = IntArray(size)
+    private val entryFrames: Array<Frame<V>?> = arrayOfNulls(size)
+    private val handlers: Array<MutableList<TryCatchBlockNode>?> = arrayOfNulls(size)
+
+    private val queued = BooleanArray(size)
+    private val queue = IntArray(size)
+    private var top = 0
+
+    // The last recomputed frame, so that iterating over the instructions of a block executes each of them once
+    private var lastIndex = -1
+    private var lastFrame: Frame<V>? = null
+
+    val storedFramesCount: Int
+        get() = entryFrames.count { it != null }
+
+    protected open fun visitControlFlowEdge(insn: Int, successor: Int) {}
+
+    protected open fun visitControlFlowExceptionEdge(insn: Int, successor: Int) {}
+
+    fun analyze(): BlockEntryFrames<V> {
+        if (size == 0) return this
+
+        computeExceptionHandlersForEachInsn()
+        computeBlockEntries()
+
+        mergeControlFlowEdge(0, createInitialFrame())
+
+        // Edges don't depend on frames, so they are visited only when a block is analyzed for the first time
+        val visited = BooleanArray(size)
+        while (top > 0) {
+            val entry = queue[--top]
+            queued[entry] = false
+            analyzeBlock(entry, !visited[entry])
+            visited[entry] = true
+        }
+
+        return this
+    }
+
+    fun isReachable(index: Int): Boolean =
+            entryFrames[blockEntries[index]] != null
+
+    /**
+     * Returns a copy of the frame before the instruction at [index], or `null` if the instruction is unreachable.
+     */
+    operator fun get(index: Int): Frame<V>? {
+        val entry = blockEntries[index]
+        val entryFrame = entryFrames[entry] ?: return null
+
+        val cachedFrame = lastFrame
+        val frame: Frame<V>
+        var current: Int
+        if (cachedFrame != null && lastIndex in entry..index) {
+            frame = cachedFrame
+            current = lastIndex
+        }
+        else {
+            frame = Frame(entryFrame)
+            current = entry
+        }
+
+        while (current < index) {
+            execute(current, frame)
+            current++
+        }
+
+        lastIndex = index
+        lastFrame = frame
+        return Frame(frame)
+    }
+
+    /**
+     * Returns frames of all instructions as [MethodAnalyzer.analyze] does, for analyses which need random access to them.
+     */
+    fun toArray(): Array<Frame<V>?> {
+        val result: Array<Frame<V>?> = arrayOfNulls(size)
+        var current: Frame<V>? = null
+        for (index in 0 until size) {
+            if (blockEntries[index] == index) {
+                current = entryFrames[index]?.let { Frame(it) }
+            }
+            else if (current != null) {
+                execute(index - 1, current)
+            }
+            result[index] = current?.let { Frame(it) }
+        }
+        return result
+    }
+
+    private fun analyzeBlock(entry: Int, visitEdges: Boolean) {
+        val current = Frame(entryFrames[entry]!!)
+        val handler = Frame(current)
+
+        var insn = entry
+        while (true) {
+            val insnNode = insns[insn]
+            try {
+                handlers[insn]?.forEach { tcb ->
+                    val jump = instructions.indexOf(tcb.handler)
+                    if (visitEdges) visitControlFlowExceptionEdge(insn, jump)
+                    handler.init(current)
+                    handler.clearStack()
+                    handler.push(interpreter.newValue(Type.getObjectType(tcb.type ?: "java/lang/Throwable")))
+                    mergeControlFlowEdge(jump, handler)
+                }
+
+                execute(insn, current)
+
+                when (insnNode) {
+                    is JumpInsnNode -> {
+                        processControlFlowEdge(insn, instructions.indexOf(insnNode.label), current, visitEdges)
+                        if (insnNode.opcode == Opcodes.GOTO) return
+                    }
+                    is TableSwitchInsnNode -> {
+                        processControlFlowEdge(insn, instructions.indexOf(insnNode.dflt), current, visitEdges)
+                        insnNode.labels.forEach { processControlFlowEdge(insn, instructions.indexOf(it), current, visitEdges) }
+                        return
+                    }
+                    is LookupSwitchInsnNode -> {
+                        processControlFlowEdge(insn, instructions.indexOf(insnNode.dflt), current, visitEdges)
+                        insnNode.labels.forEach { processControlFlowEdge(insn, instructions.indexOf(it), current, visitEdges) }
+                        return
+                    }
+                    else ->
+                        if (!insnNode.fallsThrough()) return
+                }
+
+                if (insn + 1 == size) {
+                    throw AnalyzerException(insnNode, "Execution can fall off the end of the code")
+                }
+                if (visitEdges) visitControlFlowEdge(insn, insn + 1)
+            }
+            catch (e: AnalyzerException) {
+                throw AnalyzerException(e.node, "Error at instruction #$insn ${insnNode.insnText}: ${e.message}", e)
+            }
+            catch (e: Exception) {
+                throw AnalyzerException(insnNode, "Error at instruction #$insn ${insnNode.insnText}: ${e.message}", e)
+            }
+
+            insn++
+            if (blockEntries[insn] == insn) {
+                mergeControlFlowEdge(insn, current)
+                return
+            }
+        }
+    }
+
+    private fun processControlFlowEdge(insn: Int, jump: Int, current: Frame<V>, visitEdge: Boolean) {
+        if (visitEdge) visitControlFlowEdge(insn, jump)
+        mergeControlFlowEdge(jump, current)
+    }
+
+    private fun execute(insn: Int, frame: Frame<V>) {
+        val insnNode = insns[insn]
+        val type = insnNode.type
+        if (type != AbstractInsnNode.LABEL && type != AbstractInsnNode.LINE && type != AbstractInsnNode.FRAME) {
+            frame.execute(insnNode, interpreter)
+        }
+    }
+
+    private fun AbstractInsnNode.fallsThrough(): Boolean =
+            opcode != Opcodes.ATHROW && (opcode < Opcodes.IRETURN || opcode > Opcodes.RETURN)
+
+    private fun createInitialFrame(): Frame<V> {
+        val current = Frame<V>(method.maxLocals, method.maxStack)
+        current.setReturn(interpreter.newValue(Type.getReturnType(method.desc)))
+        var local = 0
+        if ((method.access and Opcodes.ACC_STATIC) == 0) {
+            current.setLocal(local++, interpreter.newValue(Type.getObjectType(owner)))
+        }
+        for (arg in Type.getArgumentTypes(method.desc)) {
+            current.setLocal(local++, interpreter.newValue(arg))
+            if (arg.size == 2) {
+                current.setLocal(local++, interpreter.newValue(null))
+            }
+        }
+        while (local < method.maxLocals) {
+            current.setLocal(local++, interpreter.newValue(null))
+        }
+        return current
+    }
+
+    private fun computeExceptionHandlersForEachInsn() {
+        for (tcb in method.tryCatchBlocks) {
+            val begin = instructions.indexOf(tcb.start)
+            val end = instructions.indexOf(tcb.end)
+            for (j in begin until end) {
+                val insnHandlers = handlers[j] ?: ArrayList<TryCatchBlockNode>().also { handlers[j] = it }
+                insnHandlers.add(tcb)
+            }
+        }
+    }
+
+    private fun computeBlockEntries() {
+        val isEntry = BooleanArray(size)
+        isEntry[0] = true
+
+        fun markEntry(label: LabelNode) {
+            isEntry[instructions.indexOf(label)] = true
+        }
+
+        for (index in 0 until size) {
+            val insnNode = insns[index]
+            val endsBlock = when (insnNode) {
+                is JumpInsnNode -> {
+                    markEntry(insnNode.label)
+                    true
+                }
+                is TableSwitchInsnNode -> {
+                    markEntry(insnNode.dflt)
+                    insnNode.labels.forEach(::markEntry)
+                    true
+                }
+                is LookupSwitchInsnNode -> {
+                    markEntry(insnNode.dflt)
+                    insnNode.labels.forEach(::markEntry)
+                    true
+                }
+                else ->
+                    !insnNode.fallsThrough()
+            }
+            if (endsBlock && index + 1 < size) {
+                isEntry[index + 1] = true
+            }
+        }
+
+        for (tcb in method.tryCatchBlocks) {
+            markEntry(tcb.handler)
+        }
+
+        var entry = 0
+        for (index in 0 until size) {
+            if (isEntry[index]) entry = index
+            blockEntries[index] = entry
+        }
+    }
+
+    private fun mergeControlFlowEdge(insn: Int, frame: Frame<V>) {
+        val oldFrame = entryFrames[insn]
+        val changes =
+                if (oldFrame != null)
+                    oldFrame.merge(frame, interpreter)
+                else {
+                    entryFrames[insn] = Frame(frame)
+                    true
+                }
+        if (changes && !queued[insn]) {
+            queued[insn] = true
+            queue[top++] = insn
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.codegen.optimization.common
+
+import org.jetbrains.org.objectweb.asm.tree.*
+import org.jetbrains.org.objectweb.asm.tree.analysis.BasicValue
+import java.util.*
+
+/**
+ * Results of the data flow analysis of [methodNode] with [OptimizationBasicInterpreter] which are shared by several method transformers.
+ *
+ * Basic frames and the control flow graph are computed together in a single pass and are reused until the instructions of the method change,
+ * i.e. an instruction or a try-catch block is added, removed or modified in place.
+ * Frames are kept only at entries of basic blocks (see [BlockEntryFrames]), so the cache doesn't limit the size of methods it's used for.
+ */
+class MethodAnalysisCache(private val internalClassName: String, private val methodNode: MethodNode) {
+    private var snapshot: InstructionsSnapshot? = null
+    private var frames: BlockEntryFrames<BasicValue>? = null
+    private var graph: ControlFlowGraph? = null
+
+    var analysisCount: Int = 0
+        private set
+
+    val basicFrames: BlockEntryFrames<BasicValue>
+        get() {
+            ensureAnalyzed()
+            return frames!!
+        }
+
+    val controlFlowGraph: ControlFlowGraph
+        get() {
+            ensureAnalyzed()
+            return graph!!
+        }
+
+    private fun ensureAnalyzed() {
+        if (snapshot?.matches(methodNode) == true) return
+
+        val instructions = methodNode.instructions
+        val edges = Array(instructions.size()) { arrayListOf<Int>() }
+
+        frames = object : BlockEntryFrames<BasicValue>(internalClassName, methodNode, OptimizationBasicInterpreter()) {
+            override fun visitControlFlowEdge(insn: Int, successor: Int) {
+                edges[insn].add(successor)
+            }
+
+            override fun visitControlFlowExceptionEdge(insn: Int, successor: Int) {
+                edges[insn].add(successor)
+            }
+        }.analyze()
+        graph = ControlFlowGraph(instructions, edges)
+        snapshot = InstructionsSnapshot(methodNode)
+        analysisCount++
+    }
+
+    private class InstructionsSnapshot(node: MethodNode) {
+        private val insns: Array<AbstractInsnNode> = node.instructions.toArray()
+        private val tryCatchBlocks: List<TryCatchBlockNode> = ArrayList(node.tryCatchBlocks)
+        private val contentHash = node.contentHash()
+
+        fun matches(node: MethodNode): Boolean {
+            val currentInsns = node.instructions
+            if (currentInsns.size() != insns.size || node.tryCatchBlocks.size != tryCatchBlocks.size) return false
+
+            var current = currentInsns.first
+            for (insn in insns) {
+                if (current !== insn) return false
+                current = current.next
+            }
+
+            for (i in tryCatchBlocks.indices) {
+                if (node.tryCatchBlocks[i] !== tryCatchBlocks[i]) return false
+            }
+
+            return node.contentHash() == contentHash
+        }
+    }
+}
+
+// Covers operands which transformers may change without replacing an instruction
+private fun MethodNode.contentHash(): Long {
+    var hash = (maxLocals * 31L + maxStack) * 31L + desc.hashCode()
+
+    fun mix(value: Any?) {
+        hash = hash * 31 + (value?.hashCode() ?: 0)
+    }
+
+    fun mixIdentity(value: Any?) {
+        hash = hash * 31 + System.identityHashCode(value)
+    }
+
+    var insn: AbstractInsnNode? = instructions.first
+    while (insn != null) {
+        mix(insn.opcode)
+        when (insn) {
+            is VarInsnNode -> mix(insn.`var`)
+            is IincInsnNode -> { mix(insn.`var`); mix(insn.incr) }
+            is IntInsnNode -> mix(insn.operand)
+            is LdcInsnNode -> mix(insn.cst)
+            is TypeInsnNode -> mix(insn.desc)
+            is FieldInsnNode -> { mix(insn.owner); mix(insn.name); mix(insn.desc) }
+            is MethodInsnNode -> { mix(insn.owner); mix(insn.name); mix(insn.desc); mix(insn.itf) }
+            is InvokeDynamicInsnNode -> { mix(insn.name); mix(insn.desc); mix(insn.bsm) }
+            is MultiANewArrayInsnNode -> { mix(insn.desc); mix(insn.dims) }
+            is JumpInsnNode -> mixIdentity(insn.label)
+            is TableSwitchInsnNode -> { mix(insn.min); mix(insn.max); mixIdentity(insn.dflt); insn.labels.forEach { mixIdentity(it) } }
+            is LookupSwitchInsnNode -> { mix(insn.keys); mixIdentity(insn.dflt); insn.labels.forEach { mixIdentity(it) } }
+        }
+        insn = insn.next
+    }
+
+    for (tcb in tryCatchBlocks) {
+        mixIdentity(tcb.start)
+        mixIdentity(tcb.end)
+        mixIdentity(tcb.handler)
+        mix(tcb.type)
+    }
+
+    return hash
+}
@@ -16,6 +16,7 @@
 
 package org.jetbrains.kotlin.codegen.optimization.transformer
 
+import org.jetbrains.kotlin.codegen.optimization.common.MethodAnalysisCache
 import org.jetbrains.org.objectweb.asm.tree.MethodNode
 
 open class CompositeMethodTransformer(private val transformers: List<MethodTransformer>) : MethodTransformer() {
@@ -25,6 +26,10 @@ open class CompositeMethodTransformer(private val transformers: List<MethodTrans
         transformers.forEach { it.transform(internalClassName, methodNode) }
     }
 
+    override fun transform(internalClassName: String, methodNode: MethodNode, analysisCache: MethodAnalysisCache) {
+        transformers.forEach { it.transform(internalClassName, methodNode, analysisCache) }
+    }
+
     companion object {
         inline fun build(builder: MutableList<MethodTransformer>.() -> Unit) =
                 CompositeMethodTransformer(ArrayList<MethodTransformer>().apply { builder() })
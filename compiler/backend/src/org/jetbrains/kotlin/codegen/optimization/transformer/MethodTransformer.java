@@ -17,6 +17,7 @@
 package org.jetbrains.kotlin.codegen.optimization.transformer;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.kotlin.codegen.optimization.common.MethodAnalysisCache;
 import org.jetbrains.org.objectweb.asm.tree.MethodNode;
 import org.jetbrains.org.objectweb.asm.tree.analysis.*;
 
@@ -45,4 +46,12 @@ public abstract class MethodTransformer {
     }
 
     public abstract void transform(@NotNull String internalClassName, @NotNull MethodNode methodNode);
+
+    /**
+     * Transformers which need basic frames or the control flow graph of the method should override this method
+     * and take them from {@code analysisCache}, so that unchanged instructions are not analyzed again.
+     */
+    public void transform(@NotNull String internalClassName, @NotNull MethodNode methodNode, @NotNull MethodAnalysisCache analysisCache) {
+        transform(internalClassName, methodNode);
+    }
 }
@@ -32,7 +32,7 @@ class BuilderFactoryForDuplicateClassNameDiagnostics(
     private val className = hashMapOf<String, JvmDeclarationOrigin> ()
 
     override fun handleClashingNames(internalName: String, origin: JvmDeclarationOrigin) {
-        val another = className.getOrPut(internalName, { origin })
+        val another = synchronized(className) { className.getOrPut(internalName, { origin }) }
         //workaround for inlined anonymous objects
         if (origin.element != another.element) {
             reportError(internalName, origin, another)
@@ -64,7 +64,7 @@ class BuilderFactoryForDuplicateSignatureDiagnostics(
     private val typeMapper = KotlinTypeMapper(
             bindingContext, ClassBuilderMode.LIGHT_CLASSES, IncompatibleClassTracker.DoNothing, moduleName, false, false
     )
-    private val reportDiagnosticsTasks = ArrayList<() -> Unit>()
+    private val reportDiagnosticsTasks = Collections.synchronizedList(ArrayList<() -> Unit>())
 
     fun reportDiagnostics() {
         reportDiagnosticsTasks.forEach { it() }
@@ -26,8 +26,10 @@ import org.jetbrains.kotlin.codegen.context.CodegenContext
 import org.jetbrains.kotlin.codegen.context.RootContext
 import org.jetbrains.kotlin.codegen.extensions.ClassBuilderInterceptorExtension
 import org.jetbrains.kotlin.codegen.inline.InlineCache
+import org.jetbrains.kotlin.codegen.inline.SharedInlineCache
 import org.jetbrains.kotlin.codegen.intrinsics.IntrinsicMethods
 import org.jetbrains.kotlin.codegen.optimization.OptimizationClassBuilderFactory
+import org.jetbrains.kotlin.codegen.optimization.ParallelMethodOptimizer
 import org.jetbrains.kotlin.config.*
 import org.jetbrains.kotlin.descriptors.ModuleDescriptor
 import org.jetbrains.kotlin.descriptors.ScriptDescriptor
@@ -45,6 +47,7 @@ import org.jetbrains.kotlin.resolve.jvm.JvmClassName
 import org.jetbrains.kotlin.resolve.jvm.diagnostics.JvmDeclarationOrigin
 import org.jetbrains.kotlin.resolve.jvm.diagnostics.JvmDeclarationOriginKind.*
 import org.jetbrains.kotlin.serialization.deserialization.DeserializationConfiguration
+import org.jetbrains.kotlin.storage.LockBasedLazyResolveStorageManager
 import org.jetbrains.kotlin.storage.LockBasedStorageManager
 import java.io.File
 
@@ -87,7 +90,7 @@ class GenerationState @JvmOverloads constructor(
         }
     }
 
-    val inlineCache: InlineCache = InlineCache()
+    val inlineCache: InlineCache = InlineCache(configuration.get(SharedInlineCache.CONFIGURATION_KEY))
 
     val incrementalCacheForThisTarget: IncrementalCache?
     val packagesWithObsoleteParts: Set<FqName>
@@ -120,7 +123,10 @@ class GenerationState @JvmOverloads constructor(
     private val interceptedBuilderFactory: ClassBuilderFactory
     private var used = false
 
-    val diagnostics: DiagnosticSink get() = extraJvmDiagnosticsTrace
+    val backendThreadCount: Int = configuration.get(JVMConfigurationKeys.PARALLEL_BACKEND_THREADS, 1)
+
+    val diagnostics: DiagnosticSink =
+            if (backendThreadCount > 1) SynchronizedDiagnosticSink(extraJvmDiagnosticsTrace) else extraJvmDiagnosticsTrace
     val collectedExtraJvmDiagnostics: Diagnostics = LazyJvmDiagnostics {
         duplicateSignatureFactory.reportDiagnostics()
         extraJvmDiagnosticsTrace.bindingContext.diagnostics
@@ -137,6 +143,10 @@ class GenerationState @JvmOverloads constructor(
     val classBuilderMode: ClassBuilderMode = builderFactory.classBuilderMode
     val bindingTrace: BindingTrace = DelegatingBindingTrace(bindingContext, "trace in GenerationState",
                                                             filter = if (wantsDiagnostics) BindingTraceFilter.ACCEPT_ALL else BindingTraceFilter.NO_DIAGNOSTICS)
+            .let { trace ->
+                // codegen records closures and other data into the trace, which is shared by all threads of parallel codegen
+                if (backendThreadCount > 1) LockBasedLazyResolveStorageManager(LockBasedStorageManager()).createSafeTrace(trace) else trace
+            }
     val bindingContext: BindingContext = bindingTrace.bindingContext
     val typeMapper: KotlinTypeMapper = KotlinTypeMapper(
             this.bindingContext, classBuilderMode, IncompatibleClassTrackerImpl(extraJvmDiagnosticsTrace),
@@ -184,12 +194,15 @@ class GenerationState @JvmOverloads constructor(
     val constructorCallNormalizationMode = configuration.get(JVMConfigurationKeys.CONSTRUCTOR_CALL_NORMALIZATION_MODE,
                                                              JVMConstructorCallNormalizationMode.DEFAULT)
 
+    private val parallelMethodOptimizer: ParallelMethodOptimizer? =
+            configuration.get(JVMConfigurationKeys.PARALLEL_OPTIMIZATION_THREADS, 1).takeIf { it > 1 }?.let { ParallelMethodOptimizer(it) }
+
     init {
         val disableOptimization = configuration.get(JVMConfigurationKeys.DISABLE_OPTIMIZATION, false)
 
         this.interceptedBuilderFactory = builderFactory
                 .wrapWith(
-                    { OptimizationClassBuilderFactory(it, disableOptimization, constructorCallNormalizationMode) },
+                    { OptimizationClassBuilderFactory(it, disableOptimization, constructorCallNormalizationMode, parallelMethodOptimizer) },
                     { BuilderFactoryForDuplicateSignatureDiagnostics(
                             it, this.bindingContext, diagnostics, this.moduleName,
                             shouldGenerate = { !shouldOnlyCollectSignatures(it) }
@@ -212,6 +225,7 @@ class GenerationState @JvmOverloads constructor(
     }
 
     fun afterIndependentPart() {
+        factory.afterIndependentPart()
         onIndependentPartCompilationEnd(this)
     }
 
@@ -223,6 +237,7 @@ class GenerationState @JvmOverloads constructor(
 
     fun destroy() {
         interceptedBuilderFactory.close()
+        parallelMethodOptimizer?.shutdown()
     }
 
     private fun shouldOnlyCollectSignatures(origin: JvmDeclarationOrigin)
@@ -231,6 +246,15 @@ class GenerationState @JvmOverloads constructor(
 
 private val doNotGenerateInLightClassMode = setOf(CLASS_MEMBER_DELEGATION_TO_DEFAULT_IMPL, BRIDGE, COLLECTION_STUB, AUGMENTED_BUILTIN_API)
 
+private class SynchronizedDiagnosticSink(private val delegate: DiagnosticSink) : DiagnosticSink {
+    @Synchronized
+    override fun report(diagnostic: Diagnostic) {
+        delegate.report(diagnostic)
+    }
+
+    override fun wantsDiagnostics() = delegate.wantsDiagnostics()
+}
+
 private class LazyJvmDiagnostics(compute: () -> Diagnostics): Diagnostics {
     private val delegate by lazy(LazyThreadSafetyMode.SYNCHRONIZED, compute)
 
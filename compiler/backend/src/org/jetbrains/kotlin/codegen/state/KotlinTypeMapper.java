@@ -70,13 +70,12 @@ import org.jetbrains.kotlin.resolve.jvm.jvmSignature.JvmMethodSignature;
 import org.jetbrains.kotlin.serialization.deserialization.descriptors.DeserializedCallableMemberDescriptor;
 import org.jetbrains.kotlin.types.*;
 import org.jetbrains.kotlin.util.OperatorNameConventions;
+import org.jetbrains.kotlin.util.PerformanceCounter;
 import org.jetbrains.org.objectweb.asm.Type;
 import org.jetbrains.org.objectweb.asm.commons.Method;
 
-import java.util.Collection;
-import java.util.Collections;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static org.jetbrains.kotlin.codegen.AsmUtil.isStaticMethod;
 import static org.jetbrains.kotlin.codegen.JvmCodegenUtil.*;
@@ -97,6 +96,17 @@ public class KotlinTypeMapper {
     private final boolean isJvm8Target;
     private final boolean isJvm8TargetWithDefaults;
 
+    // Signatures of functions and types of classes depend only on the descriptor and the binding context,
+    // so they're mapped once for the lifetime of the type mapper, i.e. of a GenerationState.
+    // The type mapper is shared by all threads of parallel codegen. Class descriptors don't override equals, so they're compared by identity
+    private final Map<SignatureKey, JvmMethodGenericSignature> signatureCache = new ConcurrentHashMap<>();
+    private final Map<ClassDescriptor, Type> classTypeCache = new ConcurrentHashMap<>();
+
+    private static final PerformanceCounter SIGNATURE_CACHE_HIT = PerformanceCounter.create("Type mapper signature cache hit");
+    private static final PerformanceCounter SIGNATURE_CACHE_MISS = PerformanceCounter.create("Type mapper signature cache miss");
+    private static final PerformanceCounter CLASS_TYPE_CACHE_HIT = PerformanceCounter.create("Type mapper class type cache hit");
+    private static final PerformanceCounter CLASS_TYPE_CACHE_MISS = PerformanceCounter.create("Type mapper class type cache miss");
+
     private final TypeMappingConfiguration<Type> typeMappingConfiguration = new TypeMappingConfiguration<Type>() {
         @NotNull
         @Override
@@ -412,7 +422,20 @@ public class KotlinTypeMapper {
 
     @NotNull
     public Type mapClass(@NotNull ClassifierDescriptor classifier) {
-        return mapType(classifier.getDefaultType(), null, TypeMappingMode.DEFAULT);
+        if (!(classifier instanceof ClassDescriptor)) {
+            return mapType(classifier.getDefaultType(), null, TypeMappingMode.DEFAULT);
+        }
+
+        Type cached = classTypeCache.get(classifier);
+        if (cached != null) {
+            CLASS_TYPE_CACHE_HIT.increment();
+            return cached;
+        }
+
+        CLASS_TYPE_CACHE_MISS.increment();
+        Type type = mapType(classifier.getDefaultType(), null, TypeMappingMode.DEFAULT);
+        classTypeCache.put((ClassDescriptor) classifier, type);
+        return type;
     }
 
     @NotNull
@@ -437,7 +460,7 @@ public class KotlinTypeMapper {
 
     @NotNull
     public Type mapType(@NotNull ClassifierDescriptor descriptor) {
-        return mapType(descriptor.getDefaultType());
+        return mapClass(descriptor);
     }
 
     @NotNull
@@ -1023,6 +1046,32 @@ public class KotlinTypeMapper {
             @NotNull OwnerKind kind,
             boolean skipGenericSignature,
             boolean hasSpecialBridge
+    ) {
+        // Parameters of constructors include captured variables which are only known after the class body is generated,
+        // and synthetic accessors are created anew for each usage
+        if (f instanceof ConstructorDescriptor || f instanceof AccessorForCallableDescriptor) {
+            return computeSignature(f, kind, skipGenericSignature, hasSpecialBridge);
+        }
+
+        SignatureKey key = new SignatureKey(f, kind, skipGenericSignature, hasSpecialBridge);
+        JvmMethodGenericSignature cached = signatureCache.get(key);
+        if (cached != null) {
+            SIGNATURE_CACHE_HIT.increment();
+            return cached;
+        }
+
+        SIGNATURE_CACHE_MISS.increment();
+        JvmMethodGenericSignature signature = computeSignature(f, kind, skipGenericSignature, hasSpecialBridge);
+        signatureCache.put(key, signature);
+        return signature;
+    }
+
+    @NotNull
+    private JvmMethodGenericSignature computeSignature(
+            @NotNull FunctionDescriptor f,
+            @NotNull OwnerKind kind,
+            boolean skipGenericSignature,
+            boolean hasSpecialBridge
     ) {
         if (f.getInitialSignatureDescriptor() != null && f != f.getInitialSignatureDescriptor()) {
             // Overrides of special builtin in Kotlin classes always have special signature
@@ -1529,4 +1578,37 @@ public class KotlinTypeMapper {
             return name.substring(0, indexOfDollar) + '$';
         }
     }
+
+    private static final class SignatureKey {
+        private final FunctionDescriptor descriptor;
+        private final OwnerKind kind;
+        private final boolean skipGenericSignature;
+        private final boolean hasSpecialBridge;
+
+        private SignatureKey(@NotNull FunctionDescriptor descriptor, @NotNull OwnerKind kind, boolean skipGenericSignature, boolean hasSpecialBridge) {
+            this.descriptor = descriptor;
+            this.kind = kind;
+            this.skipGenericSignature = skipGenericSignature;
+            this.hasSpecialBridge = hasSpecialBridge;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof SignatureKey)) return false;
+
+            SignatureKey other = (SignatureKey) o;
+            return descriptor == other.descriptor && kind == other.kind &&
+                   skipGenericSignature == other.skipGenericSignature && hasSpecialBridge == other.hasSpecialBridge;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = System.identityHashCode(descriptor);
+            result = 31 * result + kind.hashCode();
+            result = 31 * result + (skipGenericSignature ? 1 : 0);
+            result = 31 * result + (hasSpecialBridge ? 1 : 0);
+            return result;
+        }
+    }
 }
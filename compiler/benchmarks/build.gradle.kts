@@ -0,0 +1,38 @@
+
+description = "JMH benchmarks of compiler phases"
+
+apply { plugin("kotlin") }
+
+dependencies {
+    compile(project(":core"))
+    compile(project(":compiler:util"))
+    compile(project(":compiler:frontend"))
+    compile(project(":compiler:frontend.java"))
+    compile(project(":compiler:backend"))
+    compile(project(":compiler:cli"))
+    compile(project(":compiler.tests-common"))
+    compile(ideaSdkCoreDeps("intellij-core"))
+    compile(ideaSdkDeps("asm-all"))
+    compile(commonDep("org.openjdk.jmh", "jmh-core"))
+    compileOnly(commonDep("org.openjdk.jmh", "jmh-generator-annprocess"))
+    runtime(projectDist(":kotlin-stdlib"))
+    runtime(projectDist(":kotlin-script-runtime"))
+    runtime(projectDist(":kotlin-reflect"))
+    runtime(ideaSdkCoreDeps("*.jar"))
+    runtime(ideaSdkDeps("*.jar"))
+}
+
+sourceSets {
+    "main" { projectDefault() }
+    "test" {}
+}
+
+// Usage: ./gradlew :compiler:benchmarks:benchmark -PbenchmarkArgs="ParsingBenchmark -f 1 -wi 5 -i 5"
+// Benchmarks read test data relative to the working directory, which is the repository root
+val benchmark by task<JavaExec> {
+    dependsOnTaskIfExistsRec("dist", project = rootProject)
+    classpath = the<JavaPluginConvention>().sourceSets["main"].runtimeClasspath
+    main = "org.openjdk.jmh.Main"
+    workingDir = rootDir
+    args(findProperty("benchmarkArgs")?.toString()?.split(' ')?.filter { it.isNotEmpty() } ?: emptyList<String>())
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.benchmarks;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.util.Disposer;
+import org.jetbrains.kotlin.cli.jvm.compiler.EnvironmentConfigFiles;
+import org.jetbrains.kotlin.cli.jvm.compiler.KotlinCoreEnvironment;
+import org.jetbrains.kotlin.config.CompilerConfiguration;
+import org.jetbrains.kotlin.psi.KtFile;
+import org.jetbrains.kotlin.test.ConfigurationKind;
+import org.jetbrains.kotlin.test.KotlinTestUtils;
+import org.jetbrains.kotlin.test.TestJdkKind;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Base class for benchmarks which need a project: creates an environment with the mock JDK and the Kotlin runtime
+ * once per trial, so that only the measured phase is included in the score.
+ */
+@State(Scope.Benchmark)
+public abstract class AbstractEnvironmentBenchmark {
+    private Disposable disposable;
+    protected KotlinCoreEnvironment environment;
+
+    @Setup(Level.Trial)
+    public void setUpEnvironment() {
+        disposable = Disposer.newDisposable();
+        CompilerConfiguration configuration = KotlinTestUtils.newConfiguration(
+                ConfigurationKind.ALL, TestJdkKind.MOCK_JDK, KotlinTestUtils.getAnnotationsJar()
+        );
+        configure(configuration);
+        environment = KotlinCoreEnvironment.createForTests(disposable, configuration, EnvironmentConfigFiles.JVM_CONFIG_FILES);
+    }
+
+    @TearDown(Level.Trial)
+    public void disposeEnvironment() {
+        Disposer.dispose(disposable);
+    }
+
+    protected void configure(CompilerConfiguration configuration) {
+    }
+
+    protected List<KtFile> createFiles(Map<String, String> sources) {
+        List<KtFile> files = new ArrayList<KtFile>(sources.size());
+        for (Map.Entry<String, String> entry : sources.entrySet()) {
+            files.add(KotlinTestUtils.createFile(entry.getKey(), entry.getValue(), environment.getProject()));
+        }
+        return files;
+    }
+}
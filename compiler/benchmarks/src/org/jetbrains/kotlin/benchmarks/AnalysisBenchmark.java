@@ -0,0 +1,47 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.benchmarks;
+
+import org.jetbrains.kotlin.psi.KtFile;
+import org.jetbrains.kotlin.resolve.BindingContext;
+import org.jetbrains.kotlin.resolve.lazy.JvmResolveUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+
+/**
+ * Resolves a synthetic project from scratch with {@link org.jetbrains.kotlin.resolve.LazyTopDownAnalyzer}.
+ * Parsing is not included, the files are created once per trial.
+ */
+public class AnalysisBenchmark extends AbstractEnvironmentBenchmark {
+    @Param({"10", "100"})
+    public int fileCount;
+
+    private List<KtFile> files;
+
+    @Setup(Level.Trial)
+    public void createProject() {
+        files = createFiles(SyntheticProject.generate(fileCount));
+        // Fail early if the generated sources don't compile
+        JvmResolveUtil.analyzeAndCheckForErrors(files, environment);
+    }
+
+    @Benchmark
+    public BindingContext analyze() {
+        return JvmResolveUtil.analyze(files, environment).getBindingContext();
+    }
+}
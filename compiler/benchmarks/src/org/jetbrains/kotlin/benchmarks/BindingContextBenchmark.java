@@ -0,0 +1,141 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.benchmarks;
+
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.kotlin.psi.KtFile;
+import org.jetbrains.kotlin.resolve.BindingTraceContext;
+import org.jetbrains.kotlin.resolve.lazy.JvmResolveUtil;
+import org.jetbrains.kotlin.util.slicedMap.CompactSlicedMap;
+import org.jetbrains.kotlin.util.slicedMap.MutableSlicedMap;
+import org.jetbrains.kotlin.util.slicedMap.SlicedMapImpl;
+import org.jetbrains.kotlin.util.slicedMap.WritableSlice;
+import org.openjdk.jmh.annotations.*;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * Compares the storage of the binding context built for the compiler's own sources by {@link SlicedMapImpl} and {@link CompactSlicedMap}.
+ * Sources are analyzed once per trial, the benchmark replays all recorded entries into a new map.
+ * <p>
+ * After the setup, the heap retained by one map is printed as a difference of class histograms of live objects
+ * (the same as {@code jcmd <pid> GC.class_histogram}) taken before and after the map is built.
+ * Allocations are measured by the gc profiler:
+ * {@code ./gradlew :compiler:benchmarks:benchmark -PbenchmarkArgs="BindingContextBenchmark -f 1 -wi 5 -i 5 -prof gc"},
+ * see {@code gc.alloc.rate.norm} (bytes allocated per replay).
+ */
+public class BindingContextBenchmark extends AbstractEnvironmentBenchmark {
+    @Param("compiler/frontend/src/org/jetbrains/kotlin/resolve/calls")
+    public String sourcesPath;
+
+    @Param({"default", "compact"})
+    public String map;
+
+    private final List<Object[]> entries = new ArrayList<Object[]>();
+    // Keeps the measured map reachable while the heap is measured
+    private MutableSlicedMap retained;
+
+    @Setup(Level.Trial)
+    public void analyzeSources() throws IOException, JMException {
+        Map<String, String> sources = new LinkedHashMap<String, String>();
+        for (File file : FileUtil.findFilesByMask(Pattern.compile(".*\\.kt"), new File(sourcesPath))) {
+            sources.put(FileUtil.getRelativePath(new File(sourcesPath), file), FileUtil.loadFile(file, true));
+        }
+        if (sources.isEmpty()) {
+            throw new IllegalStateException("No Kotlin files in " + new File(sourcesPath).getAbsolutePath());
+        }
+        List<KtFile> files = createFiles(sources);
+
+        // Dependencies of the compiler are not on the classpath, but unresolved references are recorded as well
+        BindingTraceContext recorder = new BindingTraceContext() {
+            @Override
+            public <K, V> void record(WritableSlice<K, V> slice, K key, V value) {
+                entries.add(new Object[] {slice, key, value});
+            }
+        };
+        JvmResolveUtil.analyze(files, environment).getBindingContext().addOwnDataTo(recorder, false);
+
+        Map<String, long[]> before = classHistogram();
+        retained = replay();
+        Map<String, long[]> after = classHistogram();
+        printRetainedHeap(before, after);
+        retained = null;
+    }
+
+    @Benchmark
+    public MutableSlicedMap replay() {
+        MutableSlicedMap result = "compact".equals(map)
+                                  ? new CompactSlicedMap(false, BindingTraceContext.HOT_SLICES)
+                                  : new SlicedMapImpl(false);
+        for (Object[] entry : entries) {
+            //noinspection unchecked
+            result.put((WritableSlice<Object, Object>) entry[0], entry[1], entry[2]);
+        }
+        return result;
+    }
+
+    private void printRetainedHeap(Map<String, long[]> before, Map<String, long[]> after) {
+        List<Map.Entry<String, long[]>> retainedByClass = new ArrayList<Map.Entry<String, long[]>>();
+        long totalInstances = 0;
+        long totalBytes = 0;
+        for (Map.Entry<String, long[]> entry : after.entrySet()) {
+            long[] old = before.get(entry.getKey());
+            long instances = entry.getValue()[0] - (old != null ? old[0] : 0);
+            long bytes = entry.getValue()[1] - (old != null ? old[1] : 0);
+            if (bytes <= 0) continue;
+
+            retainedByClass.add(new AbstractMap.SimpleEntry<String, long[]>(entry.getKey(), new long[] {instances, bytes}));
+            totalInstances += instances;
+            totalBytes += bytes;
+        }
+        Collections.sort(retainedByClass, new Comparator<Map.Entry<String, long[]>>() {
+            @Override
+            public int compare(Map.Entry<String, long[]> o1, Map.Entry<String, long[]> o2) {
+                return Long.compare(o2.getValue()[1], o1.getValue()[1]);
+            }
+        });
+
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("%n%s map of %d entries retains %d KB in %d objects%n", map, entries.size(), totalBytes / 1024, totalInstances));
+        for (Map.Entry<String, long[]> entry : retainedByClass.subList(0, Math.min(10, retainedByClass.size()))) {
+            report.append(String.format("%12d KB %10d  %s%n", entry.getValue()[1] / 1024, entry.getValue()[0], entry.getKey()));
+        }
+        System.out.print(report);
+    }
+
+    // Instance count and size of live objects by class name, a full GC is done by the diagnostic command before counting
+    private static Map<String, long[]> classHistogram() throws JMException {
+        String histogram = (String) ManagementFactory.getPlatformMBeanServer().invoke(
+                new ObjectName("com.sun.management:type=DiagnosticCommand"), "gcClassHistogram",
+                new Object[] {null}, new String[] {String[].class.getName()});
+
+        Map<String, long[]> result = new HashMap<String, long[]>();
+        for (String line : histogram.split("\n")) {
+            // num:  #instances  #bytes  class name [(module)]
+            String[] columns = line.trim().split("\\s+");
+            if (columns.length < 4 || !columns[0].endsWith(":")) continue;
+            result.put(columns[3], new long[] {Long.parseLong(columns[1]), Long.parseLong(columns[2])});
+        }
+        return result;
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.benchmarks;
+
+import org.jetbrains.kotlin.backend.common.output.OutputFile;
+import org.jetbrains.kotlin.codegen.ClassBuilderFactories;
+import org.jetbrains.kotlin.codegen.GenerationUtils;
+import org.jetbrains.kotlin.codegen.optimization.OptimizationMethodVisitor;
+import org.jetbrains.kotlin.codegen.state.GenerationState;
+import org.jetbrains.kotlin.config.CompilerConfiguration;
+import org.jetbrains.kotlin.config.JVMConfigurationKeys;
+import org.jetbrains.org.objectweb.asm.ClassReader;
+import org.jetbrains.org.objectweb.asm.Opcodes;
+import org.jetbrains.org.objectweb.asm.tree.ClassNode;
+import org.jetbrains.org.objectweb.asm.tree.MethodNode;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs the optimization passes of {@link OptimizationMethodVisitor} over all methods of a synthetic project
+ * which is compiled with optimizations disabled once per trial.
+ * The passes modify methods in place, so each method is copied first; the copying is included in the score.
+ */
+public class BytecodeOptimizationBenchmark extends AbstractEnvironmentBenchmark {
+    @Param({"10", "100"})
+    public int fileCount;
+
+    private List<MethodNode> methods;
+
+    @Override
+    protected void configure(CompilerConfiguration configuration) {
+        configuration.put(JVMConfigurationKeys.DISABLE_OPTIMIZATION, true);
+    }
+
+    @Setup(Level.Trial)
+    public void compileProject() {
+        GenerationState state = GenerationUtils.compileFiles(
+                createFiles(SyntheticProject.generate(fileCount)), environment, ClassBuilderFactories.binaries(false)
+        );
+
+        methods = new ArrayList<MethodNode>();
+        for (OutputFile file : state.getFactory().asList()) {
+            if (!file.getRelativePath().endsWith(".class")) continue;
+
+            ClassNode classNode = new ClassNode();
+            new ClassReader(file.asByteArray()).accept(classNode, ClassReader.SKIP_FRAMES);
+            for (MethodNode method : classNode.methods) {
+                if ((method.access & (Opcodes.ACC_ABSTRACT | Opcodes.ACC_NATIVE)) == 0) {
+                    methods.add(method);
+                }
+            }
+        }
+        state.destroy();
+    }
+
+    @Benchmark
+    public int optimize() {
+        int instructions = 0;
+        for (MethodNode method : methods) {
+            MethodNode copy = copy(method);
+            if (OptimizationMethodVisitor.Companion.canBeOptimized(copy)) {
+                OptimizationMethodVisitor.Companion.getOptimizationTransformer().transform("fake", copy);
+            }
+            instructions += copy.instructions.size();
+        }
+        return instructions;
+    }
+
+    private static MethodNode copy(MethodNode method) {
+        String[] exceptions = method.exceptions.toArray(new String[method.exceptions.size()]);
+        MethodNode copy = new MethodNode(Opcodes.ASM5, method.access, method.name, method.desc, method.signature, exceptions);
+        method.accept(copy);
+        return copy;
+    }
+}
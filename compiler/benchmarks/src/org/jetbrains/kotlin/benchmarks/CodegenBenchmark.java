@@ -0,0 +1,68 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.benchmarks;
+
+import org.jetbrains.kotlin.analyzer.AnalysisResult;
+import org.jetbrains.kotlin.backend.common.output.OutputFile;
+import org.jetbrains.kotlin.codegen.ClassBuilderFactories;
+import org.jetbrains.kotlin.codegen.CompilationErrorHandler;
+import org.jetbrains.kotlin.codegen.KotlinCodegenFacade;
+import org.jetbrains.kotlin.codegen.state.GenerationState;
+import org.jetbrains.kotlin.psi.KtFile;
+import org.jetbrains.kotlin.resolve.lazy.JvmResolveUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+
+/**
+ * Generates bytecode for a synthetic project which is analyzed once per trial.
+ * Every class calls inline functions with lambdas, both from the project and from the standard library,
+ * so a large part of the time is spent in {@link org.jetbrains.kotlin.codegen.inline.InlineCodegen}.
+ */
+public class CodegenBenchmark extends AbstractEnvironmentBenchmark {
+    @Param({"10", "100"})
+    public int fileCount;
+
+    private List<KtFile> files;
+    private AnalysisResult analysisResult;
+
+    @Setup(Level.Trial)
+    public void analyzeProject() {
+        files = createFiles(SyntheticProject.generate(fileCount));
+        analysisResult = JvmResolveUtil.analyzeAndCheckForErrors(files, environment);
+    }
+
+    @Benchmark
+    public int generate() {
+        GenerationState state = new GenerationState(
+                environment.getProject(), ClassBuilderFactories.binaries(false), analysisResult.getModuleDescriptor(),
+                analysisResult.getBindingContext(), files, environment.getConfiguration()
+        );
+        try {
+            KotlinCodegenFacade.compileCorrectFiles(state, CompilationErrorHandler.THROW_EXCEPTION);
+
+            int size = 0;
+            for (OutputFile file : state.getFactory().asList()) {
+                size += file.asByteArray().length;
+            }
+            return size;
+        }
+        finally {
+            state.destroy();
+        }
+    }
+}
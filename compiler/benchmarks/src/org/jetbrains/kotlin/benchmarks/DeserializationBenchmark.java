@@ -0,0 +1,82 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.benchmarks;
+
+import org.jetbrains.kotlin.builtins.KotlinBuiltIns;
+import org.jetbrains.kotlin.descriptors.*;
+import org.jetbrains.kotlin.name.FqName;
+import org.jetbrains.kotlin.resolve.DescriptorUtils;
+import org.jetbrains.kotlin.resolve.scopes.MemberScope;
+import org.jetbrains.kotlin.storage.LockBasedStorageManager;
+import org.jetbrains.kotlin.types.KotlinType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Creates descriptors of all built-in declarations with {@link org.jetbrains.kotlin.serialization.deserialization.MemberDeserializer}
+ * and resolves their types. Protos of built-ins are read once per process, so it's the deserialization of descriptors
+ * from protos which is measured, not the reading of protos from resources.
+ */
+@State(Scope.Benchmark)
+public class DeserializationBenchmark {
+    @Benchmark
+    public int builtIns() {
+        KotlinBuiltIns builtIns = new BenchmarkBuiltIns();
+        int count = 0;
+        for (FqName fqName : KotlinBuiltIns.BUILT_INS_PACKAGE_FQ_NAMES) {
+            count += visitScope(builtIns.getBuiltInsModule().getPackage(fqName).getMemberScope());
+        }
+        return count;
+    }
+
+    private static int visitScope(MemberScope scope) {
+        int count = 0;
+        for (DeclarationDescriptor descriptor : DescriptorUtils.getAllDescriptors(scope)) {
+            if (descriptor instanceof ClassDescriptor) {
+                ClassDescriptor classDescriptor = (ClassDescriptor) descriptor;
+                count += classDescriptor.getTypeConstructor().getSupertypes().size();
+                for (ClassConstructorDescriptor constructor : classDescriptor.getConstructors()) {
+                    count += visitCallable(constructor);
+                }
+                count += visitScope(classDescriptor.getUnsubstitutedMemberScope());
+            }
+            else if (descriptor instanceof CallableDescriptor) {
+                count += visitCallable((CallableDescriptor) descriptor);
+            }
+            count++;
+        }
+        return count;
+    }
+
+    private static int visitCallable(CallableDescriptor descriptor) {
+        KotlinType returnType = descriptor.getReturnType();
+        int count = returnType != null ? returnType.getArguments().size() : 0;
+        for (ValueParameterDescriptor parameter : descriptor.getValueParameters()) {
+            count += parameter.getType().getArguments().size();
+        }
+        return count + descriptor.getTypeParameters().size();
+    }
+
+    // Fresh built-ins with their own storage manager, so that nothing is cached between invocations
+    private static class BenchmarkBuiltIns extends KotlinBuiltIns {
+        BenchmarkBuiltIns() {
+            super(new LockBasedStorageManager());
+            createBuiltInsModule();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.benchmarks;
+
+import com.intellij.lang.ASTNode;
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.kotlin.cli.jvm.compiler.ParallelSourceParser;
+import org.jetbrains.kotlin.lexer.KotlinLexer;
+import org.jetbrains.kotlin.psi.KtFile;
+import org.jetbrains.kotlin.test.KotlinTestUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Lexes and parses all Kotlin files in a test data directory, by default the PSI test data which covers most of the grammar.
+ * {@link #parallelParser} builds the same trees with {@link ParallelSourceParser}, its score should be compared to {@link #parser}.
+ */
+public class ParsingBenchmark extends AbstractEnvironmentBenchmark {
+    @Param("compiler/testData/psi")
+    public String testDataPath;
+
+    // Number of threads used by parallelParser()
+    @Param("4")
+    public int threads;
+
+    private List<String> texts;
+
+    @Setup(Level.Trial)
+    public void loadTestData() throws IOException {
+        texts = new ArrayList<String>();
+        for (File file : FileUtil.findFilesByMask(Pattern.compile(".*\\.kts?"), new File(testDataPath))) {
+            texts.add(FileUtil.loadFile(file, true));
+        }
+        if (texts.isEmpty()) {
+            throw new IllegalStateException("No Kotlin files in " + new File(testDataPath).getAbsolutePath());
+        }
+    }
+
+    @Benchmark
+    public int lexer() {
+        KotlinLexer lexer = new KotlinLexer();
+        int tokens = 0;
+        for (String text : texts) {
+            lexer.start(text);
+            while (lexer.getTokenType() != null) {
+                tokens++;
+                lexer.advance();
+            }
+        }
+        return tokens;
+    }
+
+    @Benchmark
+    public int parser() {
+        int nodes = 0;
+        for (int i = 0; i < texts.size(); i++) {
+            nodes += countNodes(KotlinTestUtils.createFile("file" + i + ".kt", texts.get(i), environment.getProject()).getNode());
+        }
+        return nodes;
+    }
+
+    @Benchmark
+    public int parallelParser() {
+        List<KtFile> files = new ArrayList<KtFile>(texts.size());
+        for (int i = 0; i < texts.size(); i++) {
+            files.add(KotlinTestUtils.createFile("file" + i + ".kt", texts.get(i), environment.getProject()));
+        }
+        ParallelSourceParser.parse(files, threads);
+        return files.size();
+    }
+
+    // Traversing the tree forces parsing of lazy elements as well
+    private static int countNodes(ASTNode node) {
+        int count = 1;
+        for (ASTNode child = node.getFirstChildNode(); child != null; child = child.getTreeNext()) {
+            count += countNodes(child);
+        }
+        return count;
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.benchmarks;
+
+import org.jetbrains.kotlin.builtins.KotlinBuiltIns;
+import org.jetbrains.kotlin.incremental.components.NoLookupLocation;
+import org.jetbrains.kotlin.name.Name;
+import org.jetbrains.kotlin.resolve.lazy.JvmResolveUtil;
+import org.jetbrains.kotlin.resolve.scopes.MemberScope;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+
+/**
+ * Looks up functions with a single name in {@code kotlin.collections} of the standard library in a fresh module,
+ * i.e. measures how much of the huge facade parts like {@code CollectionsKt} is processed to find a few overloads.
+ * The module is created before each invocation and nothing is deserialized from it until the lookup, so only the lookup is measured.
+ */
+public class StdlibLookupBenchmark extends AbstractEnvironmentBenchmark {
+    @Param({"map", "first"})
+    public String functionName;
+
+    private MemberScope collectionsScope;
+
+    @Setup(Level.Invocation)
+    public void createModule() {
+        collectionsScope = JvmResolveUtil.analyze(environment).getModuleDescriptor()
+                .getPackage(KotlinBuiltIns.COLLECTIONS_PACKAGE_FQ_NAME).getMemberScope();
+    }
+
+    @Benchmark
+    public int lookup() {
+        return collectionsScope.getContributedFunctions(Name.identifier(functionName), NoLookupLocation.FROM_TEST).size();
+    }
+}
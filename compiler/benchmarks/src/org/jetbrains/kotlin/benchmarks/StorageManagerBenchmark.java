@@ -0,0 +1,110 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.benchmarks;
+
+import kotlin.jvm.functions.Function1;
+import org.jetbrains.kotlin.storage.LockBasedStorageManager;
+import org.jetbrains.kotlin.storage.MemoizedFunctionToNotNull;
+import org.jetbrains.kotlin.storage.PerKeyLockStorageManager;
+import org.jetbrains.kotlin.storage.StorageManager;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Computes a set of memoized values from several threads at once, the way parallel body resolution requests
+ * the shared declarations of a module. {@link LockBasedStorageManager} computes one value at a time,
+ * {@link PerKeyLockStorageManager} only serializes computations of the same value.
+ * The score is the time to compute all values with a new storage manager; compare it across the thread counts.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class StorageManagerBenchmark {
+    @Param({"lock-based", "per-key"})
+    public String storageManager;
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    @Param("2000")
+    public int keys;
+
+    // Work done to compute each value, in Blackhole.consumeCPU() tokens
+    @Param("1000")
+    public int work;
+
+    private ExecutorService executor;
+
+    @Setup(Level.Trial)
+    public void createExecutor() {
+        executor = Executors.newFixedThreadPool(threads);
+    }
+
+    @TearDown(Level.Trial)
+    public void shutdownExecutor() {
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    public long computeAll() throws InterruptedException, ExecutionException {
+        StorageManager manager = "per-key".equals(storageManager) ? new PerKeyLockStorageManager() : new LockBasedStorageManager();
+        final Values values = new Values(manager, work);
+
+        // Each thread starts from its own part of the keys and then requests all the others, some of which are being computed
+        List<Future<Long>> futures = new ArrayList<Future<Long>>(threads);
+        for (int i = 0; i < threads; i++) {
+            final int start = i * keys / threads;
+            futures.add(executor.submit(new Callable<Long>() {
+                @Override
+                public Long call() {
+                    long sum = 0;
+                    for (int j = 0; j < keys; j++) {
+                        sum += values.function.invoke((start + j) % keys);
+                    }
+                    return sum;
+                }
+            }));
+        }
+
+        long result = 0;
+        for (Future<Long> future : futures) {
+            result += future.get();
+        }
+        return result;
+    }
+
+    private static class Values implements Function1<Integer, Integer> {
+        private final MemoizedFunctionToNotNull<Integer, Integer> function;
+        private final int work;
+
+        Values(StorageManager manager, int work) {
+            this.function = manager.createMemoizedFunction(this);
+            this.work = work;
+        }
+
+        @Override
+        public Integer invoke(Integer key) {
+            Blackhole.consumeCPU(work);
+            // Values depend on other values, as declarations depend on their supertypes and signatures
+            return key == 0 ? 0 : function.invoke(key / 2) + 1;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.benchmarks;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Generates sources of a project of the given size, where each file depends on the previous one.
+ * The sources are deterministic and exercise typical resolution and code generation paths:
+ * inline functions with lambdas, nullable and boxed values, data classes, 'when' with type checks and collection operations.
+ */
+final class SyntheticProject {
+    private SyntheticProject() {
+    }
+
+    // File name -> text
+    static Map<String, String> generate(int fileCount) {
+        Map<String, String> sources = new LinkedHashMap<String, String>();
+        for (int i = 0; i < fileCount; i++) {
+            sources.put("synthetic/p" + i + "/File" + i + ".kt", generateFile(i));
+        }
+        return sources;
+    }
+
+    private static String generateFile(int index) {
+        String i = String.valueOf(index);
+        String previous = String.valueOf(Math.max(index - 1, 0));
+
+        StringBuilder text = new StringBuilder();
+        text.append("package synthetic.p").append(i).append("\n\n");
+        if (index > 0) {
+            text.append("import synthetic.p").append(previous).append(".*\n\n");
+        }
+
+        text.append("inline fun <T> transform").append(i).append("(value: T, block: (T) -> Int): Int = block(value) + ").append(i).append("\n\n");
+
+        text.append("interface Shape").append(i).append(" {\n")
+            .append("    val area: Double\n")
+            .append("    fun describe(): String = \"Shape").append(i).append("(\" + area + \")\"\n")
+            .append("}\n\n");
+
+        text.append("data class Box").append(i).append("(val width: Int, val height: Int) : Shape").append(i).append(" {\n")
+            .append("    override val area: Double get() = width.toDouble() * height\n")
+            .append("}\n\n");
+
+        text.append("class Node").append(i).append("(val value: Int, val previous: Node").append(previous).append("?) {\n")
+            .append("    private val items: List<Int?> = (0..value).map { if (it % 2 == 0) it else null }\n\n")
+            .append("    fun sum(): Int {\n")
+            .append("        var result = 0\n")
+            .append("        for (item in items) {\n")
+            .append("            if (item != null) result += item\n")
+            .append("        }\n")
+            .append("        return result + (previous?.sum() ?: 0)\n")
+            .append("    }\n\n")
+            .append("    fun inlined(): Int = transform").append(i).append("(value) { v -> transform").append(previous).append("(v) { it * 2 } }\n\n")
+            .append("    fun classify(x: Any?): String = when (x) {\n")
+            .append("        null -> \"null\"\n")
+            .append("        is Int -> if (x > value) \"greater\" else \"less\"\n")
+            .append("        is String -> x.length.toString()\n")
+            .append("        is Shape").append(i).append(" -> x.describe()\n")
+            .append("        else -> x.toString()\n")
+            .append("    }\n\n")
+            .append("    fun boxes(): List<Box").append(i).append("> = items.filterNotNull().map { Box").append(i).append("(it, value) }.sortedBy { it.area }\n")
+            .append("}\n\n");
+
+        text.append("fun total").append(i).append("(nodes: List<Node").append(i).append(">): Int = nodes.sumBy { it.sum() + it.inlined() }\n");
+
+        return text.toString();
+    }
+}
@@ -113,4 +113,11 @@ class K2JSCompilerArguments : CommonCompilerArguments() {
             description = "Paths to friend modules"
     )
     var friendModules: String? by FreezableVar(null)
+
+    @Argument(
+            value = "-Xtranslation-threads",
+            valueDescription = "<N>",
+            description = "Run per-file translation passes in N parallel threads (experimental)"
+    )
+    var translationThreads: String? by FreezableVar(null)
 }
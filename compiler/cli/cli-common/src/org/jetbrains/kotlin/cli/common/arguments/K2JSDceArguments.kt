@@ -40,4 +40,11 @@ class K2JSDceArguments : CommonToolArguments() {
             description = "Print declarations marked as reachable"
     )
     var printReachabilityInfo: Boolean by FreezableVar(false)
+
+    @Argument(
+            value = "-Xthreads",
+            valueDescription = "<N>",
+            description = "Parse and print files in N parallel threads, by default the number of available processors"
+    )
+    var threads: String? by FreezableVar(null)
 }
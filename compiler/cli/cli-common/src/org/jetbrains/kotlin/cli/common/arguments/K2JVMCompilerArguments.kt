@@ -119,6 +119,46 @@ class K2JVMCompilerArguments : CommonCompilerArguments() {
     )
     var constructorCallNormalizationMode: String? by FreezableVar(JVMConstructorCallNormalizationMode.DEFAULT.description)
 
+    @Argument(
+            value = "-Xbackend-threads",
+            valueDescription = "<N>",
+            description = "Generate class files for independent packages and multifile classes in N parallel threads (experimental)"
+    )
+    var backendThreads: String? by FreezableVar(null)
+
+    @Argument(
+            value = "-Xbody-resolve-threads",
+            valueDescription = "<N>",
+            description = "Resolve bodies of functions with explicitly known return types in N parallel threads (experimental)"
+    )
+    var bodyResolveThreads: String? by FreezableVar(null)
+
+    @Argument(
+            value = "-Xoptimization-threads",
+            valueDescription = "<N>",
+            description = "Optimize bytecode of generated methods in N parallel threads (experimental)"
+    )
+    var optimizationThreads: String? by FreezableVar(null)
+
+    @Argument(
+            value = "-Xparsing-threads",
+            valueDescription = "<N>",
+            description = "Parse source files in N parallel threads before analysis (experimental)"
+    )
+    var parsingThreads: String? by FreezableVar(null)
+
+    @Argument(
+            value = "-Xcompact-binding-context",
+            description = "Store the largest slices of the binding context in per-slice maps to reduce memory usage (experimental)"
+    )
+    var compactBindingContext: Boolean by FreezableVar(false)
+
+    @Argument(value = "-Xstreaming-output", description = "Write class files as soon as they are generated to reduce memory usage (experimental)")
+    var streamingOutput: Boolean by FreezableVar(false)
+
+    @Argument(value = "-Xno-jar-compression", description = "Store entries of the output jar without compression")
+    var noJarCompression: Boolean by FreezableVar(false)
+
     @Argument(value = "-Xreport-perf", description = "Report detailed performance statistics")
     var reportPerf: Boolean by FreezableVar(false)
 
@@ -66,6 +66,7 @@ import org.jetbrains.kotlin.psi.KtFile;
 import org.jetbrains.kotlin.serialization.js.ModuleKind;
 import org.jetbrains.kotlin.utils.ExceptionUtilsKt;
 import org.jetbrains.kotlin.utils.KotlinPaths;
+import org.jetbrains.kotlin.utils.ParallelUtils;
 import org.jetbrains.kotlin.utils.PathUtil;
 import org.jetbrains.kotlin.utils.StringsKt;
 
@@ -394,6 +395,17 @@ public class K2JSCompiler extends CLICompiler<K2JSCompilerArguments> {
             configuration.put(JSConfigurationKeys.FRIEND_PATHS, friendPaths);
         }
 
+        String translationThreads = arguments.getTranslationThreads();
+        if (translationThreads != null) {
+            Integer threadCount = ParallelUtils.parseThreadCount(translationThreads);
+            if (threadCount == null) {
+                messageCollector.report(ERROR, "Number of translation threads should be a positive integer: " + translationThreads, null);
+            }
+            else {
+                configuration.put(JSConfigurationKeys.TRANSLATION_THREADS, threadCount);
+            }
+        }
+
         String moduleKindName = arguments.getModuleKind();
         ModuleKind moduleKind = moduleKindName != null ? moduleKindMap.get(moduleKindName) : ModuleKind.PLAIN;
         if (moduleKind == null) {
@@ -23,6 +23,7 @@ import org.jetbrains.kotlin.cli.common.messages.CompilerMessageSeverity
 import org.jetbrains.kotlin.cli.common.messages.MessageCollector
 import org.jetbrains.kotlin.config.Services
 import org.jetbrains.kotlin.js.dce.*
+import org.jetbrains.kotlin.utils.ParallelUtils
 import java.io.File
 
 class K2JSDce : CLITool<K2JSDceArguments>() {
@@ -48,6 +49,13 @@ class K2JSDce : CLITool<K2JSDceArguments>() {
             return ExitCode.COMPILATION_ERROR
         }
 
+        val threadCount = arguments.threads?.let { threads ->
+            ParallelUtils.parseThreadCount(threads) ?: run {
+                messageCollector.report(CompilerMessageSeverity.ERROR, "Number of threads should be a positive integer: $threads")
+                return ExitCode.COMPILATION_ERROR
+            }
+        } ?: Runtime.getRuntime().availableProcessors()
+
         val includedDeclarations = arguments.declarationsToKeep.orEmpty().toSet()
 
         val logConsumer = { level: DCELogLevel, message: String ->
@@ -58,7 +66,7 @@ class K2JSDce : CLITool<K2JSDceArguments>() {
             }
             messageCollector.report(severity, message)
         }
-        val dceResult = DeadCodeElimination.run(files, includedDeclarations, logConsumer)
+        val dceResult = DeadCodeElimination.run(files, includedDeclarations, threadCount, logConsumer)
         if (dceResult.status == DeadCodeEliminationStatus.FAILED) return ExitCode.COMPILATION_ERROR
         val nodes = dceResult.reachableNodes.filterTo(mutableSetOf()) { it.reachable }
 
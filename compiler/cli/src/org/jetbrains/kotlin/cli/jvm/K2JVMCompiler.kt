@@ -37,10 +37,12 @@ import org.jetbrains.kotlin.cli.jvm.config.JvmClasspathRoot
 import org.jetbrains.kotlin.cli.jvm.config.JvmModulePathRoot
 import org.jetbrains.kotlin.cli.jvm.config.addJavaSourceRoot
 import org.jetbrains.kotlin.cli.jvm.config.jvmClasspathRoots
+import org.jetbrains.kotlin.cli.jvm.index.SharedJarPackageIndex
 import org.jetbrains.kotlin.cli.jvm.modules.CoreJrtFileSystem
 import org.jetbrains.kotlin.cli.jvm.plugins.PluginCliParser
 import org.jetbrains.kotlin.cli.jvm.repl.ReplFromTerminal
 import org.jetbrains.kotlin.codegen.CompilationException
+import org.jetbrains.kotlin.codegen.inline.SharedInlineCache
 import org.jetbrains.kotlin.config.*
 import org.jetbrains.kotlin.incremental.components.LookupTracker
 import org.jetbrains.kotlin.javac.JavacWrapper
@@ -51,6 +53,7 @@ import org.jetbrains.kotlin.script.KotlinScriptDefinitionProvider
 import org.jetbrains.kotlin.script.StandardScriptDefinition
 import org.jetbrains.kotlin.util.PerformanceCounter
 import org.jetbrains.kotlin.utils.KotlinPaths
+import org.jetbrains.kotlin.utils.ParallelUtils
 import org.jetbrains.kotlin.utils.PathUtil
 import java.io.File
 import java.lang.management.ManagementFactory
@@ -291,6 +294,14 @@ class K2JVMCompiler : CLICompiler<K2JVMCompilerArguments>() {
             }
         }
 
+        services.get(SharedInlineCache::class.java)?.let {
+            configuration.put(SharedInlineCache.CONFIGURATION_KEY, it)
+        }
+
+        services.get(SharedJarPackageIndex::class.java)?.let {
+            configuration.put(SharedJarPackageIndex.CONFIGURATION_KEY, it)
+        }
+
         arguments.additionalJavaModules?.let { additionalJavaModules ->
             configuration.addAll(JVMConfigurationKeys.ADDITIONAL_JAVA_MODULES, additionalJavaModules.toList())
         }
@@ -359,6 +370,20 @@ class K2JVMCompiler : CLICompiler<K2JVMCompilerArguments>() {
             configuration.put(JVMConfigurationKeys.CONSTRUCTOR_CALL_NORMALIZATION_MODE,
                               constructorCallNormalizationMode ?: JVMConstructorCallNormalizationMode.DEFAULT)
 
+            putThreadCount(configuration, JVMConfigurationKeys.PARALLEL_BACKEND_THREADS, arguments.backendThreads, "backend")
+            putThreadCount(configuration, JVMConfigurationKeys.PARALLEL_OPTIMIZATION_THREADS, arguments.optimizationThreads, "optimization")
+            putThreadCount(configuration, JVMConfigurationKeys.PARALLEL_PARSING_THREADS, arguments.parsingThreads, "parsing")
+
+            val bodyResolveThreads =
+                    putThreadCount(configuration, CommonConfigurationKeys.BODY_RESOLVE_THREADS, arguments.bodyResolveThreads, "body resolve")
+            if (bodyResolveThreads != null && bodyResolveThreads > 1) {
+                // Otherwise the threads would be serialized on the single lock of the lazy resolve storage manager
+                configuration.put(CommonConfigurationKeys.USE_PER_KEY_LOCKS_IN_RESOLVE, true)
+            }
+
+            configuration.put(JVMConfigurationKeys.STREAMING_OUTPUT, arguments.streamingOutput)
+            configuration.put(JVMConfigurationKeys.DISABLE_JAR_COMPRESSION, arguments.noJarCompression)
+            configuration.put(CommonConfigurationKeys.COMPACT_BINDING_CONTEXT, arguments.compactBindingContext)
             configuration.put(JVMConfigurationKeys.INHERIT_MULTIFILE_PARTS, arguments.inheritMultifileParts)
             configuration.put(JVMConfigurationKeys.SKIP_RUNTIME_VERSION_CHECK, arguments.skipRuntimeVersionCheck)
             configuration.put(JVMConfigurationKeys.USE_FAST_CLASS_FILES_READING, !arguments.useOldClassFilesReading)
@@ -379,6 +404,25 @@ class K2JVMCompiler : CLICompiler<K2JVMCompilerArguments>() {
             arguments.declarationsOutputPath?.let { configuration.put(JVMConfigurationKeys.DECLARATIONS_JSON_PATH, it) }
         }
 
+        private fun putThreadCount(
+                configuration: CompilerConfiguration,
+                key: CompilerConfigurationKey<Int>,
+                argument: String?,
+                threadsDescription: String
+        ): Int? {
+            if (argument == null) return null
+
+            val threadCount = ParallelUtils.parseThreadCount(argument)
+            if (threadCount == null) {
+                configuration.getNotNull(CLIConfigurationKeys.MESSAGE_COLLECTOR_KEY)
+                        .report(ERROR, "Number of $threadsDescription threads should be a positive integer: $argument")
+            }
+            else {
+                configuration.put(key, threadCount)
+            }
+            return threadCount
+        }
+
         private fun configureContentRoots(paths: KotlinPaths?, arguments: K2JVMCompilerArguments, configuration: CompilerConfiguration) {
             val messageCollector = configuration.getNotNull(CLIConfigurationKeys.MESSAGE_COLLECTOR_KEY)
             for (path in arguments.classpath?.split(File.pathSeparatorChar).orEmpty()) {
@@ -200,7 +200,7 @@ class CliLightClassGenerationSupport(project: Project) : LightClassGenerationSup
     }
 
     // TODO: needs better name + list of keys to skip somewhere
-    class NoScopeRecordCliBindingTrace : CliBindingTrace() {
+    class NoScopeRecordCliBindingTrace @JvmOverloads constructor(compactHotSlices: Boolean = false) : CliBindingTrace(compactHotSlices) {
         override fun <K, V> record(slice: WritableSlice<K, V>, key: K, value: V) {
             if (slice === BindingContext.LEXICAL_SCOPE || slice == BindingContext.DATA_FLOW_INFO_BEFORE) {
                 // In the compiler there's no need to keep scopes
@@ -214,7 +214,9 @@ class CliLightClassGenerationSupport(project: Project) : LightClassGenerationSup
         }
     }
 
-    open class CliBindingTrace @TestOnly constructor() : BindingTraceContext() {
+    open class CliBindingTrace @TestOnly @JvmOverloads constructor(
+            compactHotSlices: Boolean = false
+    ) : BindingTraceContext(BindingTraceFilter.ACCEPT_ALL, false, compactHotSlices) {
         private var kotlinCodeAnalyzer: KotlinCodeAnalyzer? = null
 
         override fun toString(): String {
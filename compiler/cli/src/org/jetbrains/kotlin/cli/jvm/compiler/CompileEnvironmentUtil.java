@@ -75,7 +75,32 @@ public class CompileEnvironmentUtil {
     }
 
     // TODO: includeRuntime should be not a flag but a path to runtime
-    private static void doWriteToJar(OutputFileCollection outputFiles, OutputStream fos, @Nullable FqName mainClass, boolean includeRuntime) {
+    private static void doWriteToJar(OutputFileCollection outputFiles, ParallelJarWriter writer, boolean includeRuntime) {
+        try {
+            for (OutputFile outputFile : outputFiles.asList()) {
+                writer.addEntry(outputFile.getRelativePath(), outputFile.asByteArray());
+            }
+            finishJar(writer, includeRuntime);
+        }
+        catch (IOException e) {
+            throw new CompileEnvironmentException("Failed to generate jar file", e);
+        }
+    }
+
+    /**
+     * Creates the jar at {@code jarPath} and writes the manifest to it.
+     */
+    @NotNull
+    public static ParallelJarWriter openJar(@NotNull File jarPath, @Nullable FqName mainClass, boolean compress) {
+        FileOutputStream outputStream;
+        try {
+            outputStream = new FileOutputStream(jarPath);
+        }
+        catch (FileNotFoundException e) {
+            throw new CompileEnvironmentException("Invalid jar path " + jarPath, e);
+        }
+
+        ParallelJarWriter writer = new ParallelJarWriter(new BufferedOutputStream(outputStream), compress);
         try {
             Manifest manifest = new Manifest();
             Attributes mainAttributes = manifest.getMainAttributes();
@@ -84,48 +109,47 @@ public class CompileEnvironmentUtil {
             if (mainClass != null) {
                 mainAttributes.putValue("Main-Class", mainClass.asString());
             }
-            JarOutputStream stream = new JarOutputStream(fos, manifest);
-            for (OutputFile outputFile : outputFiles.asList()) {
-                stream.putNextEntry(new JarEntry(outputFile.getRelativePath()));
-                stream.write(outputFile.asByteArray());
-            }
-            if (includeRuntime) {
-                writeRuntimeToJar(stream);
-            }
-            stream.finish();
+            ByteArrayOutputStream manifestBytes = new ByteArrayOutputStream();
+            manifest.write(manifestBytes);
+            writer.addEntry(JarFile.MANIFEST_NAME, manifestBytes.toByteArray());
         }
         catch (IOException e) {
+            ExceptionUtilsKt.closeQuietly(writer);
             throw new CompileEnvironmentException("Failed to generate jar file", e);
         }
+        return writer;
     }
 
-    public static void writeToJar(File jarPath, boolean jarRuntime, FqName mainClass, OutputFileCollection outputFiles) {
-        FileOutputStream outputStream = null;
-        try {
-            outputStream = new FileOutputStream(jarPath);
-            doWriteToJar(outputFiles, outputStream, mainClass, jarRuntime);
-            outputStream.close();
+    public static void finishJar(@NotNull ParallelJarWriter writer, boolean includeRuntime) throws IOException {
+        if (includeRuntime) {
+            writeRuntimeToJar(writer);
         }
-        catch (FileNotFoundException e) {
-            throw new CompileEnvironmentException("Invalid jar path " + jarPath, e);
+        writer.finish();
+    }
+
+    public static void writeToJar(File jarPath, boolean jarRuntime, boolean compress, FqName mainClass, OutputFileCollection outputFiles) {
+        ParallelJarWriter writer = openJar(jarPath, mainClass, compress);
+        try {
+            doWriteToJar(outputFiles, writer, jarRuntime);
+            writer.close();
         }
         catch (IOException e) {
             throw ExceptionUtilsKt.rethrow(e);
         }
         finally {
-            ExceptionUtilsKt.closeQuietly(outputStream);
+            ExceptionUtilsKt.closeQuietly(writer);
         }
     }
 
-    private static void writeRuntimeToJar(JarOutputStream stream) throws IOException {
+    private static void writeRuntimeToJar(ParallelJarWriter writer) throws IOException {
         File stdlibPath = PathUtil.getKotlinPathsForCompiler().getStdlibPath();
         if (!stdlibPath.exists()) {
             throw new CompileEnvironmentException("Couldn't find kotlin-stdlib at " + stdlibPath);
         }
-        copyJarImpl(stream, stdlibPath);
+        copyJarImpl(writer, stdlibPath);
     }
 
-    private static void copyJarImpl(JarOutputStream stream, File jarPath) throws IOException {
+    private static void copyJarImpl(ParallelJarWriter writer, File jarPath) throws IOException {
         try (JarInputStream jis = new JarInputStream(new FileInputStream(jarPath))) {
             while (true) {
                 JarEntry e = jis.getNextJarEntry();
@@ -133,8 +157,7 @@ public class CompileEnvironmentUtil {
                     break;
                 }
                 if (FileUtilRt.extensionEquals(e.getName(), "class")) {
-                    stream.putNextEntry(e);
-                    FileUtil.copy(jis, stream);
+                    writer.addEntry(e.getName(), FileUtil.loadBytes(jis));
                 }
             }
         }
@@ -94,6 +94,7 @@ import org.jetbrains.kotlin.load.kotlin.KotlinBinaryClassCache
 import org.jetbrains.kotlin.load.kotlin.MetadataFinderFactory
 import org.jetbrains.kotlin.load.kotlin.ModuleVisibilityManager
 import org.jetbrains.kotlin.load.kotlin.VirtualFileFinderFactory
+import org.jetbrains.kotlin.parsing.KotlinParser
 import org.jetbrains.kotlin.parsing.KotlinParserDefinition
 import org.jetbrains.kotlin.psi.KtFile
 import org.jetbrains.kotlin.resolve.CodeAnalyzerInitializer
@@ -109,6 +110,7 @@ import org.jetbrains.kotlin.script.ScriptDependenciesProvider
 import org.jetbrains.kotlin.script.ScriptReportSink
 import org.jetbrains.kotlin.utils.PathUtil
 import java.io.File
+import java.util.concurrent.TimeUnit
 import java.util.zip.ZipFile
 
 class KotlinCoreEnvironment private constructor(
@@ -181,6 +183,9 @@ class KotlinCoreEnvironment private constructor(
         val messageCollector = configuration.get(CLIConfigurationKeys.MESSAGE_COLLECTOR_KEY)
         registerProjectServices(projectEnvironment, messageCollector)
 
+        // Files of this environment are not reparsed incrementally as in the IDE, so declaration bodies may be parsed lazily
+        project.putUserData(KotlinParser.LAZY_DECLARATION_BODIES, true)
+
         sourceFiles += CompileEnvironmentUtil.getKtFiles(project, getSourceRootsCheckingForDuplicates(), this.configuration, {
             message ->
             report(ERROR, message)
@@ -236,7 +241,7 @@ class KotlinCoreEnvironment private constructor(
 
         // REPL and kapt2 update classpath dynamically
         rootsIndex = JvmDependenciesDynamicCompoundIndex().apply {
-            addIndex(JvmDependenciesIndexImpl(roots))
+            addIndex(JvmDependenciesIndexImpl(roots, configuration.get(SharedJarPackageIndex.CONFIGURATION_KEY)))
             updateClasspathFromRootsIndex(this)
         }
 
@@ -379,6 +384,13 @@ class KotlinCoreEnvironment private constructor(
         private val APPLICATION_LOCK = Object()
         private var ourApplicationEnvironment: JavaCoreApplicationEnvironment? = null
         private var ourProjectCount = 0
+        // config files of an application environment set up by prewarmApplicationEnvironment and not used by any project yet
+        private var ourPrewarmedConfigFilePaths: List<String>? = null
+
+        // time it took to set up the current application environment, which is saved by every project reusing it
+        @Volatile
+        var applicationEnvironmentSetupMillis: Long = 0L
+            private set
 
         @JvmStatic fun createForProduction(
                 parentDisposable: Disposable, configuration: CompilerConfiguration, configFiles: EnvironmentConfigFiles
@@ -426,15 +438,38 @@ class KotlinCoreEnvironment private constructor(
         // used in the daemon for jar cache cleanup
         val applicationEnvironment: JavaCoreApplicationEnvironment? get() = ourApplicationEnvironment
 
+        /**
+         * Sets up the application environment ahead of the first project, e.g. when the daemon starts.
+         * Only makes sense if the environment is kept alive between projects (see [KOTLIN_COMPILER_ENVIRONMENT_KEEPALIVE_PROPERTY]).
+         * If the first project needs other [configFiles], the prewarmed environment is replaced.
+         */
+        @JvmStatic fun prewarmApplicationEnvironment(configuration: CompilerConfiguration, configFiles: EnvironmentConfigFiles) {
+            setCompatibleBuild()
+            synchronized (APPLICATION_LOCK) {
+                if (ourApplicationEnvironment != null) return
+
+                getOrCreateApplicationEnvironmentForProduction(configuration, configFiles.files)
+                ourPrewarmedConfigFilePaths = configFiles.files
+            }
+        }
+
         private fun getOrCreateApplicationEnvironmentForProduction(
                 configuration: CompilerConfiguration, configFilePaths: List<String>
         ): JavaCoreApplicationEnvironment {
             synchronized (APPLICATION_LOCK) {
+                val prewarmedConfigFilePaths = ourPrewarmedConfigFilePaths
+                ourPrewarmedConfigFilePaths = null
+                if (prewarmedConfigFilePaths != null && prewarmedConfigFilePaths != configFilePaths) {
+                    disposeApplicationEnvironment()
+                }
+
                 if (ourApplicationEnvironment != null)
                     return ourApplicationEnvironment!!
 
+                val setupStart = System.nanoTime()
                 val parentDisposable = Disposer.newDisposable()
                 ourApplicationEnvironment = createApplicationEnvironment(parentDisposable, configuration, configFilePaths)
+                applicationEnvironmentSetupMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - setupStart)
                 ourProjectCount = 0
                 Disposer.register(parentDisposable, Disposable {
                     synchronized (APPLICATION_LOCK) {
@@ -56,6 +56,7 @@ import org.jetbrains.kotlin.modules.TargetId
 import org.jetbrains.kotlin.name.FqName
 import org.jetbrains.kotlin.progress.ProgressIndicatorAndCompilationCanceledStatus
 import org.jetbrains.kotlin.psi.KtFile
+import org.jetbrains.kotlin.resolve.BindingContext
 import org.jetbrains.kotlin.script.tryConstructClassFromStringArgs
 import org.jetbrains.kotlin.util.PerformanceCounter
 import org.jetbrains.kotlin.utils.newLinkedHashMapWithExpectedSize
@@ -86,7 +87,8 @@ object KotlinToJVMBytecodeCompiler {
         val messageCollector = configuration.get(CLIConfigurationKeys.MESSAGE_COLLECTOR_KEY, MessageCollector.NONE)
         if (jarPath != null) {
             val includeRuntime = configuration.get(JVMConfigurationKeys.INCLUDE_RUNTIME, false)
-            CompileEnvironmentUtil.writeToJar(jarPath, includeRuntime, mainClass, outputFiles)
+            val compress = !configuration.getBoolean(JVMConfigurationKeys.DISABLE_JAR_COMPRESSION)
+            CompileEnvironmentUtil.writeToJar(jarPath, includeRuntime, compress, mainClass, outputFiles)
             if (reportOutputFiles) {
                 val message = OutputMessageUtil.formatOutputMessage(outputFiles.asList().flatMap { it.sourceFiles }.distinct(), jarPath)
                 messageCollector.report(OUTPUT, message)
@@ -102,6 +104,11 @@ object KotlinToJVMBytecodeCompiler {
         if (configuration.get(JVMConfigurationKeys.OUTPUT_DIRECTORY) == null) {
             return GenerationStateEventCallback.DO_NOTHING
         }
+        // With parallel codegen a part is finished while other parts are still being generated on other threads,
+        // and the current output contains their unfinished classes, so everything is written after generation
+        if (configuration.get(JVMConfigurationKeys.PARALLEL_BACKEND_THREADS, 1) > 1) {
+            return GenerationStateEventCallback.DO_NOTHING
+        }
         return GenerationStateEventCallback { state ->
             val currentOutput = SimpleOutputFileCollection(state.factory.currentOutput)
             writeOutput(configuration, currentOutput, mainClass = null)
@@ -155,7 +162,9 @@ object KotlinToJVMBytecodeCompiler {
         try {
             for ((_, state) in outputs) {
                 ProgressIndicatorAndCompilationCanceledStatus.checkCanceled()
-                writeOutput(state.configuration, state.factory, null)
+                if (!StreamingOutput.isEnabled(state.configuration)) {
+                    writeOutput(state.configuration, state.factory, null)
+                }
             }
 
             if (projectConfiguration.getBoolean(JVMConfigurationKeys.COMPILE_JAVA)) {
@@ -222,8 +231,8 @@ object KotlinToJVMBytecodeCompiler {
         configuration.addAll(JVMConfigurationKeys.MODULES, chunk)
     }
 
-    private fun findMainClass(generationState: GenerationState, files: List<KtFile>): FqName? {
-        val mainFunctionDetector = MainFunctionDetector(generationState.bindingContext)
+    private fun findMainClass(bindingContext: BindingContext, files: List<KtFile>): FqName? {
+        val mainFunctionDetector = MainFunctionDetector(bindingContext)
         return files.asSequence()
                 .map { file ->
                     if (mainFunctionDetector.hasMain(file.declarations))
@@ -246,10 +255,11 @@ object KotlinToJVMBytecodeCompiler {
 
         val generationState = analyzeAndGenerate(environment) ?: return false
 
-        val mainClass = findMainClass(generationState, environment.getSourceFiles())
-
         try {
-            writeOutput(environment.configuration, generationState.factory, mainClass)
+            if (!StreamingOutput.isEnabled(environment.configuration)) {
+                val mainClass = findMainClass(generationState.bindingContext, environment.getSourceFiles())
+                writeOutput(environment.configuration, generationState.factory, mainClass)
+            }
             return true
         }
         finally {
@@ -363,6 +373,10 @@ object KotlinToJVMBytecodeCompiler {
         val collector = environment.messageCollector
 
         val analysisStart = PerformanceCounter.currentTime()
+        environment.configuration.get(JVMConfigurationKeys.PARALLEL_PARSING_THREADS)?.let { threadCount ->
+            ParallelSourceParser.parse(sourceFiles, threadCount)
+        }
+
         val analyzerWithCompilerReport = AnalyzerWithCompilerReport(collector)
         analyzerWithCompilerReport.analyzeAndReport(sourceFiles) {
             val project = environment.project
@@ -376,7 +390,9 @@ object KotlinToJVMBytecodeCompiler {
             TopDownAnalyzerFacadeForJVM.analyzeFilesWithJavaIntegration(
                     project,
                     sourceFiles,
-                    CliLightClassGenerationSupport.NoScopeRecordCliBindingTrace(),
+                    CliLightClassGenerationSupport.NoScopeRecordCliBindingTrace(
+                            environment.configuration.getBoolean(CommonConfigurationKeys.COMPACT_BINDING_CONTEXT)
+                    ),
                     environment.configuration,
                     environment::createPackagePartProvider,
                     sourceModuleSearchScope = scope
@@ -429,6 +445,10 @@ object KotlinToJVMBytecodeCompiler {
             module: Module?
     ): GenerationState {
         val isKapt2Enabled = environment.project.getUserData(IS_KAPT2_ENABLED_KEY) ?: false
+        val streamingOutput =
+                if (StreamingOutput.isEnabled(configuration))
+                    StreamingOutput(configuration, if (module == null) findMainClass(result.bindingContext, sourceFiles) else null)
+                else null
         val generationState = GenerationState(
                 environment.project,
                 ClassBuilderFactories.binaries(isKapt2Enabled),
@@ -441,13 +461,27 @@ object KotlinToJVMBytecodeCompiler {
                 module?.let(::TargetId),
                 module?.let(Module::getModuleName),
                 module?.let { File(it.getOutputDirectory()) },
-                createOutputFilesFlushingCallbackIfPossible(configuration)
+                if (streamingOutput != null) GenerationStateEventCallback.DO_NOTHING else createOutputFilesFlushingCallbackIfPossible(configuration)
         )
+        streamingOutput?.let { generationState.factory.streamTo(it.writer) }
         ProgressIndicatorAndCompilationCanceledStatus.checkCanceled()
 
         val generationStart = PerformanceCounter.currentTime()
 
-        KotlinCodegenFacade.compileCorrectFiles(generationState, CompilationErrorHandler.THROW_EXCEPTION)
+        try {
+            KotlinCodegenFacade.compileCorrectFiles(generationState, CompilationErrorHandler.THROW_EXCEPTION)
+        }
+        catch (e: Throwable) {
+            // The output is closed anyway, but a failure of the writer should not hide the original exception
+            try {
+                streamingOutput?.finish()
+            }
+            catch (writerFailure: Throwable) {
+                e.addSuppressed(writerFailure)
+            }
+            throw e
+        }
+        streamingOutput?.finish()
 
         val generationNanos = PerformanceCounter.currentTime() - generationStart
         val desc = if (module != null) "target " + module.getModuleName() + "-" + module.getModuleType() + " " else ""
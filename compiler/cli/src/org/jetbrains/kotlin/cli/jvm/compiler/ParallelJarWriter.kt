@@ -0,0 +1,257 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.cli.jvm.compiler
+
+import org.jetbrains.kotlin.utils.ParallelUtils
+import java.io.ByteArrayOutputStream
+import java.io.Closeable
+import java.io.IOException
+import java.io.OutputStream
+import java.util.*
+import java.util.concurrent.*
+import java.util.zip.CRC32
+import java.util.zip.Deflater
+import java.util.zip.ZipException
+
+/**
+ * Writes a jar file, deflating entries in parallel on [threadCount] threads, or storing them without compression if [compress] is false.
+ *
+ * Entries are written in the order they are added, and all of them have the same modification time,
+ * so the jar only depends on its contents. The manifest, if any, should be added first.
+ * Like [java.util.zip.ZipOutputStream], the writer switches to Zip64 records when there are too many entries or the jar is larger
+ * than 4 GB, and rejects duplicate entry names.
+ */
+class ParallelJarWriter @JvmOverloads constructor(
+        output: OutputStream,
+        private val compress: Boolean = true,
+        threadCount: Int = Runtime.getRuntime().availableProcessors()
+) : Closeable {
+    private class Entry(val name: ByteArray, val method: Int, val crc: Long, val size: Int, var data: ByteArray?) {
+        val compressedSize = data!!.size
+        var offset = 0L
+    }
+
+    private val output = CountingOutputStream(output)
+
+    private val executor: ExecutorService? =
+            if (compress && threadCount > 1)
+                ParallelUtils.newDaemonThreadPool(threadCount, "Kotlin jar writer")
+            else
+                null
+
+    // At most this number of compressed entries wait to be written, addEntry() blocks after that
+    private val maxPendingEntries = 2 * maxOf(threadCount, 1)
+    private val pending = ArrayDeque<Future<Entry>>()
+    private val written = ArrayList<Entry>()
+    private val names = HashSet<String>()
+    private var isFinished = false
+
+    @Throws(IOException::class)
+    fun addEntry(name: String, bytes: ByteArray) {
+        assert(!isFinished) { "Jar is already finished" }
+        if (!names.add(name)) throw ZipException("duplicate entry: $name")
+
+        val task = Callable { createEntry(name, bytes) }
+        pending.add(executor?.submit(task) ?: FutureTask(task).apply { run() })
+
+        while (pending.isNotEmpty() && (pending.size > maxPendingEntries || pending.peek().isDone)) {
+            writeEntry(ParallelUtils.await(pending.poll()))
+        }
+    }
+
+    /**
+     * Writes all pending entries and the central directory. The underlying stream is not closed.
+     */
+    @Throws(IOException::class)
+    fun finish() {
+        if (isFinished) return
+
+        while (pending.isNotEmpty()) {
+            writeEntry(ParallelUtils.await(pending.poll()))
+        }
+
+        val centralDirectoryOffset = output.count
+        for (entry in written) {
+            // Sizes of entries always fit into 32 bits, only the offset may need the Zip64 extra field
+            val isZip64 = entry.offset >= ZIP64_MAGIC_VALUE
+            output.writeInt(CENTRAL_FILE_HEADER_SIGNATURE)
+            output.writeShort(if (isZip64) ZIP64_VERSION else VERSION) // version made by
+            output.writeEntryHeader(entry, if (isZip64) ZIP64_VERSION else VERSION, if (isZip64) ZIP64_OFFSET_EXTRA_SIZE else 0)
+            output.writeShort(0) // comment length
+            output.writeShort(0) // disk number
+            output.writeShort(0) // internal attributes
+            output.writeInt(0) // external attributes
+            output.writeInt(if (isZip64) ZIP64_MAGIC_VALUE.toInt() else entry.offset.toInt())
+            output.write(entry.name)
+            if (isZip64) {
+                output.writeShort(ZIP64_EXTRA_ID)
+                output.writeShort(ZIP64_OFFSET_EXTRA_SIZE - 4)
+                output.writeLong(entry.offset)
+            }
+        }
+        val centralDirectorySize = output.count - centralDirectoryOffset
+
+        val isZip64 = written.size >= ZIP64_MAGIC_COUNT ||
+                      centralDirectorySize >= ZIP64_MAGIC_VALUE || centralDirectoryOffset >= ZIP64_MAGIC_VALUE
+        if (isZip64) {
+            val zip64EndOffset = output.count
+            output.writeInt(ZIP64_END_OF_CENTRAL_DIRECTORY_SIGNATURE)
+            output.writeLong(ZIP64_END_OF_CENTRAL_DIRECTORY_SIZE)
+            output.writeShort(ZIP64_VERSION) // version made by
+            output.writeShort(ZIP64_VERSION) // version needed to extract
+            output.writeInt(0) // disk number
+            output.writeInt(0) // disk with the central directory
+            output.writeLong(written.size.toLong())
+            output.writeLong(written.size.toLong())
+            output.writeLong(centralDirectorySize)
+            output.writeLong(centralDirectoryOffset)
+
+            output.writeInt(ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_SIGNATURE)
+            output.writeInt(0) // disk with the Zip64 end of central directory
+            output.writeLong(zip64EndOffset)
+            output.writeInt(1) // total number of disks
+        }
+
+        // Values which don't fit are replaced with the magic values, the actual ones are in the Zip64 record
+        output.writeInt(END_OF_CENTRAL_DIRECTORY_SIGNATURE)
+        output.writeShort(0) // disk number
+        output.writeShort(0) // disk with the central directory
+        output.writeShort(minOf(written.size, ZIP64_MAGIC_COUNT))
+        output.writeShort(minOf(written.size, ZIP64_MAGIC_COUNT))
+        output.writeInt(minOf(centralDirectorySize, ZIP64_MAGIC_VALUE).toInt())
+        output.writeInt(minOf(centralDirectoryOffset, ZIP64_MAGIC_VALUE).toInt())
+        output.writeShort(0) // comment length
+        output.flush()
+
+        isFinished = true
+    }
+
+    override fun close() {
+        try {
+            pending.forEach { it.cancel(false) }
+            executor?.shutdownNow()
+        }
+        finally {
+            output.close()
+        }
+    }
+
+    private fun createEntry(name: String, bytes: ByteArray): Entry {
+        val crc = CRC32().apply { update(bytes) }.value
+        val nameBytes = name.toByteArray(Charsets.UTF_8)
+        if (!compress) return Entry(nameBytes, STORED, crc, bytes.size, bytes)
+
+        val deflater = Deflater(Deflater.DEFAULT_COMPRESSION, true)
+        try {
+            deflater.setInput(bytes)
+            deflater.finish()
+            val result = ByteArrayOutputStream(bytes.size / 2 + 64)
+            val buffer = ByteArray(8192)
+            while (!deflater.finished()) {
+                result.write(buffer, 0, deflater.deflate(buffer))
+            }
+            return Entry(nameBytes, DEFLATED, crc, bytes.size, result.toByteArray())
+        }
+        finally {
+            deflater.end()
+        }
+    }
+
+    private fun writeEntry(entry: Entry) {
+        entry.offset = output.count
+        output.writeInt(LOCAL_FILE_HEADER_SIGNATURE)
+        output.writeEntryHeader(entry, VERSION, 0)
+        output.write(entry.name)
+        output.write(entry.data!!)
+        // Only the header is needed for the central directory
+        entry.data = null
+        written.add(entry)
+    }
+
+    // The part of the header which is common for the local file header and the central directory
+    private fun CountingOutputStream.writeEntryHeader(entry: Entry, versionNeeded: Int, extraFieldLength: Int) {
+        writeShort(versionNeeded)
+        writeShort(UTF8_FLAG)
+        writeShort(entry.method)
+        writeShort(DOS_TIME)
+        writeShort(DOS_DATE)
+        writeInt(entry.crc.toInt())
+        writeInt(entry.compressedSize)
+        writeInt(entry.size)
+        writeShort(entry.name.size)
+        writeShort(extraFieldLength)
+    }
+
+    private class CountingOutputStream(private val delegate: OutputStream) : OutputStream() {
+        var count = 0L
+            private set
+
+        override fun write(b: Int) {
+            delegate.write(b)
+            count++
+        }
+
+        override fun write(b: ByteArray, off: Int, len: Int) {
+            delegate.write(b, off, len)
+            count += len
+        }
+
+        override fun flush() = delegate.flush()
+
+        override fun close() = delegate.close()
+
+        fun writeShort(value: Int) {
+            write(value and 0xFF)
+            write((value ushr 8) and 0xFF)
+        }
+
+        fun writeInt(value: Int) {
+            writeShort(value and 0xFFFF)
+            writeShort((value ushr 16) and 0xFFFF)
+        }
+
+        fun writeLong(value: Long) {
+            writeInt(value.toInt())
+            writeInt((value ushr 32).toInt())
+        }
+    }
+
+    private companion object {
+        private const val LOCAL_FILE_HEADER_SIGNATURE = 0x04034b50
+        private const val CENTRAL_FILE_HEADER_SIGNATURE = 0x02014b50
+        private const val END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50
+        private const val ZIP64_END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06064b50
+        private const val ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_SIGNATURE = 0x07064b50
+
+        // Size of the Zip64 end of central directory record after the size field
+        private const val ZIP64_END_OF_CENTRAL_DIRECTORY_SIZE = 44L
+        private const val ZIP64_EXTRA_ID = 0x0001
+        private const val ZIP64_OFFSET_EXTRA_SIZE = 12
+        private const val ZIP64_MAGIC_COUNT = 0xFFFF
+        private const val ZIP64_MAGIC_VALUE = 0xFFFFFFFFL
+
+        private const val VERSION = 20
+        private const val ZIP64_VERSION = 45
+        private const val UTF8_FLAG = 0x800
+        private const val STORED = 0
+        private const val DEFLATED = 8
+
+        // 1980-02-01 00:00, a month after the earliest time representable in a zip file, so that it's valid in all time zones
+        private const val DOS_TIME = 0
+        private const val DOS_DATE = (2 shl 5) or 1
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.cli.jvm.compiler
+
+import com.intellij.lang.ASTNode
+import org.jetbrains.kotlin.psi.KtFile
+import org.jetbrains.kotlin.utils.ParallelUtils
+import java.util.*
+
+/**
+ * Builds complete syntax trees of source files in parallel before analysis, including lazily parsed
+ * function bodies and lambdas, which are otherwise parsed one by one on the analysis thread.
+ */
+object ParallelSourceParser {
+    @JvmStatic
+    fun parse(files: Collection<KtFile>, threadCount: Int) {
+        if (threadCount <= 1 || files.size <= 1) return
+
+        val executor = ParallelUtils.newDaemonThreadPool(minOf(threadCount, files.size), "Kotlin parser")
+        try {
+            val futures = files.map { file -> executor.submit { ensureParsed(file.node) } }
+            futures.forEach { ParallelUtils.await(it) }
+        }
+        finally {
+            executor.shutdownNow()
+        }
+    }
+
+    private fun ensureParsed(root: ASTNode) {
+        // Getting the first child of a lazy node parses it
+        val nodes = ArrayList<ASTNode>()
+        nodes.add(root)
+        while (nodes.isNotEmpty()) {
+            var child = nodes.removeAt(nodes.size - 1).firstChildNode
+            while (child != null) {
+                nodes.add(child)
+                child = child.treeNext
+            }
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.cli.jvm.compiler
+
+import com.intellij.openapi.util.io.FileUtil
+import org.jetbrains.kotlin.backend.common.output.OutputFile
+import org.jetbrains.kotlin.cli.common.CLIConfigurationKeys
+import org.jetbrains.kotlin.cli.common.messages.CompilerMessageSeverity.OUTPUT
+import org.jetbrains.kotlin.cli.common.messages.MessageCollector
+import org.jetbrains.kotlin.cli.common.messages.OutputMessageUtil
+import org.jetbrains.kotlin.codegen.StreamingOutputWriter
+import org.jetbrains.kotlin.config.CommonConfigurationKeys
+import org.jetbrains.kotlin.config.CompilerConfiguration
+import org.jetbrains.kotlin.config.JVMConfigurationKeys
+import org.jetbrains.kotlin.name.FqName
+import java.io.File
+
+/**
+ * Writes class files to the output jar or directory of [configuration] while the module is being generated,
+ * see [org.jetbrains.kotlin.codegen.ClassFileFactory.streamTo].
+ *
+ * Output files are reported to the message collector in [finish], on the compiler thread.
+ */
+internal class StreamingOutput(configuration: CompilerConfiguration, mainClass: FqName?) {
+    private val reportOutputFiles = configuration.getBoolean(CommonConfigurationKeys.REPORT_OUTPUT_FILES)
+    private val messageCollector = configuration.get(CLIConfigurationKeys.MESSAGE_COLLECTOR_KEY, MessageCollector.NONE)
+    private val includeRuntime = configuration.get(JVMConfigurationKeys.INCLUDE_RUNTIME, false)
+    private val jarPath = configuration.get(JVMConfigurationKeys.OUTPUT_JAR)
+    private val outputDir = configuration.get(JVMConfigurationKeys.OUTPUT_DIRECTORY) ?: File(".")
+
+    private val jar: ParallelJarWriter? = jarPath?.let { path ->
+        CompileEnvironmentUtil.openJar(path, mainClass, !configuration.getBoolean(JVMConfigurationKeys.DISABLE_JAR_COMPRESSION))
+    }
+
+    // Source files and outputs to report, accessed only by the writer thread until it's finished
+    private val writtenFiles = ArrayList<Pair<List<File>, File>>()
+
+    val writer = StreamingOutputWriter(this::write)
+
+    private fun write(file: OutputFile) {
+        if (jar != null) {
+            jar.addEntry(file.relativePath, file.asByteArray())
+            if (reportOutputFiles) {
+                writtenFiles.add(file.sourceFiles to jarPath!!)
+            }
+        }
+        else {
+            val output = File(outputDir, file.relativePath)
+            FileUtil.writeToFile(output, file.asByteArray())
+            if (reportOutputFiles) {
+                writtenFiles.add(file.sourceFiles to output)
+            }
+        }
+    }
+
+    fun finish() {
+        try {
+            writer.finish()
+            jar?.let { CompileEnvironmentUtil.finishJar(it, includeRuntime) }
+        }
+        finally {
+            jar?.close()
+        }
+
+        if (jarPath != null) {
+            if (reportOutputFiles) {
+                val sources = writtenFiles.flatMap { it.first }.distinct()
+                messageCollector.report(OUTPUT, OutputMessageUtil.formatOutputMessage(sources, jarPath))
+            }
+            return
+        }
+
+        for ((sources, output) in writtenFiles) {
+            messageCollector.report(OUTPUT, OutputMessageUtil.formatOutputMessage(sources, output))
+        }
+    }
+
+    companion object {
+        // Scripts and the REPL load classes from memory right after generation
+        fun isEnabled(configuration: CompilerConfiguration): Boolean =
+                configuration.getBoolean(JVMConfigurationKeys.STREAMING_OUTPUT) &&
+                !configuration.getBoolean(JVMConfigurationKeys.RETAIN_OUTPUT_IN_MEMORY)
+    }
+}
@@ -18,18 +18,24 @@ package org.jetbrains.kotlin.cli.jvm.index
 
 import com.intellij.ide.highlighter.JavaClassFileType
 import com.intellij.ide.highlighter.JavaFileType
+import com.intellij.openapi.vfs.StandardFileSystems
 import com.intellij.openapi.vfs.VfsUtilCore
 import com.intellij.openapi.vfs.VirtualFile
 import com.intellij.util.containers.IntArrayList
+import com.intellij.util.io.URLUtil
 import gnu.trove.THashMap
 import org.jetbrains.kotlin.name.ClassId
 import org.jetbrains.kotlin.name.FqName
+import java.io.File
 import java.util.*
 
 // speeds up finding files/classes in classpath/java source roots
 // NOT THREADSAFE, needs to be adapted/removed if we want compiler to be multithreaded
 // the main idea of this class is for each package to store roots which contains it to avoid excessive file system traversal
-class JvmDependenciesIndexImpl(_roots: List<JavaRoot>): JvmDependenciesIndex {
+class JvmDependenciesIndexImpl @JvmOverloads constructor(
+        _roots: List<JavaRoot>,
+        private val sharedJarIndex: SharedJarPackageIndex? = null
+): JvmDependenciesIndex {
     //these fields are computed based on _roots passed to constructor which are filled in later
     private val roots: List<JavaRoot> by lazy { _roots.toList() }
 
@@ -68,6 +74,15 @@ class JvmDependenciesIndexImpl(_roots: List<JavaRoot>): JvmDependenciesIndex {
         Array(roots.size) { THashMap<String, VirtualFile?>() }
     }
 
+    // packages of jar roots known to the shared index, lets us skip jars not containing a package without traversing them
+    private val jarPackages: Array<out Set<String>?> by lazy {
+        if (sharedJarIndex == null) return@lazy arrayOfNulls<Set<String>>(roots.size)
+
+        val jars = roots.map { root -> if (root.type == JavaRoot.RootType.BINARY) root.file.localJarFile() else null }
+        sharedJarIndex.prepare(jars.filterNotNull())
+        Array(roots.size) { index -> jars[index]?.let(sharedJarIndex::getPackages) }
+    }
+
     override fun traverseDirectoriesInPackage(
             packageFqName: FqName,
             acceptedRootTypes: Set<JavaRoot.RootType>,
@@ -176,6 +191,8 @@ class JvmDependenciesIndexImpl(_roots: List<JavaRoot>): JvmDependenciesIndex {
         val prefixPathSegments = pathRoot.prefixFqName?.pathSegments()
 
         var currentFile = pathRoot.file
+        val knownPackages = jarPackages[rootIndex]
+        var packageFqName = ""
 
         for (pathIndex in packagesPath.indices) {
             val subPackageName = packagesPath[pathIndex]
@@ -186,6 +203,11 @@ class JvmDependenciesIndexImpl(_roots: List<JavaRoot>): JvmDependenciesIndex {
                 }
             }
             else {
+                if (knownPackages != null) {
+                    packageFqName = if (pathIndex == 0) subPackageName else "$packageFqName.$subPackageName"
+                    if (packageFqName !in knownPackages) return null
+                }
+
                 currentFile = currentFile.findChildPackage(subPackageName, pathRoot.type) ?: return null
             }
 
@@ -218,6 +240,11 @@ class JvmDependenciesIndexImpl(_roots: List<JavaRoot>): JvmDependenciesIndex {
         return childDirectory
     }
 
+    private fun VirtualFile.localJarFile(): File? {
+        if (fileSystem.protocol != StandardFileSystems.JAR_PROTOCOL || parent != null) return null
+        return File(path.substringBefore(URLUtil.JAR_SEPARATOR))
+    }
+
     private fun cachesPath(path: List<String>): List<Cache> {
         val caches = ArrayList<Cache>(path.size + 1)
         caches.add(rootCache)
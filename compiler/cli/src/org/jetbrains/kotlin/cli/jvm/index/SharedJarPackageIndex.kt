@@ -0,0 +1,158 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.cli.jvm.index
+
+import org.jetbrains.kotlin.config.CompilerConfigurationKey
+import org.jetbrains.kotlin.utils.ParallelUtils
+import java.io.File
+import java.io.IOException
+import java.util.*
+import java.util.concurrent.Callable
+import java.util.concurrent.atomic.AtomicLong
+import java.util.zip.ZipFile
+
+/**
+ * Packages contained in classpath jars, shared by all compilations in one process (e.g. the daemon),
+ * so that [JvmDependenciesIndexImpl] can skip jars which don't contain a package without traversing them.
+ *
+ * A jar is identified by its path, size and modification time, so a rebuilt jar is indexed again.
+ * Least recently used jars are evicted once the estimated size of the index exceeds [maxSizeBytes].
+ */
+class SharedJarPackageIndex @JvmOverloads constructor(private val maxSizeBytes: Long = DEFAULT_MAX_SIZE_BYTES) {
+    private class JarKey(val path: String, val length: Long, val lastModified: Long) {
+        override fun equals(other: Any?): Boolean =
+                other is JarKey && path == other.path && length == other.length && lastModified == other.lastModified
+
+        override fun hashCode(): Int =
+                (path.hashCode() * 31 + length.hashCode()) * 31 + lastModified.hashCode()
+    }
+
+    private class JarPackages(val packages: Set<String>, val sizeBytes: Long)
+
+    // access-ordered, i.e. iteration starts from the least recently used jar
+    private val jars = LinkedHashMap<JarKey, JarPackages>(16, 0.75f, true)
+    private var sizeBytes = 0L
+
+    private val hitCount = AtomicLong()
+    private val missCount = AtomicLong()
+
+    val hits: Long get() = hitCount.get()
+
+    val misses: Long get() = missCount.get()
+
+    /**
+     * Returns FqNames of all packages in [jar], including the root package, or null if the jar can't be read.
+     */
+    fun getPackages(jar: File): Set<String>? {
+        val key = jar.toKey() ?: return null
+
+        synchronized(jars) { jars[key] }?.let {
+            hitCount.incrementAndGet()
+            return it.packages
+        }
+
+        missCount.incrementAndGet()
+        val packages = indexJar(jar) ?: return null
+        put(key, packages)
+        return packages.packages
+    }
+
+    /**
+     * Indexes [jars] which are not in the index yet using up to [threadCount] threads.
+     */
+    fun prepare(jars: Collection<File>, threadCount: Int = Runtime.getRuntime().availableProcessors()) {
+        val missing = jars.mapNotNull { jar -> jar.toKey()?.let { key -> key to jar } }.filter { (key) -> synchronized(this.jars) { key !in this.jars } }
+        val threads = minOf(threadCount, missing.size)
+        if (threads <= 1) {
+            missing.forEach { (_, jar) -> getPackages(jar) }
+            return
+        }
+
+        val executor = ParallelUtils.newDaemonThreadPool(threads, "Kotlin jar indexer")
+        try {
+            missing.map { (_, jar) -> executor.submit(Callable { getPackages(jar) }) }.forEach { ParallelUtils.await(it) }
+        }
+        finally {
+            executor.shutdownNow()
+        }
+    }
+
+    fun clear() {
+        synchronized(jars) {
+            jars.clear()
+            sizeBytes = 0
+        }
+    }
+
+    private fun put(key: JarKey, packages: JarPackages) {
+        synchronized(jars) {
+            jars.put(key, packages)?.let { sizeBytes -= it.sizeBytes }
+            sizeBytes += packages.sizeBytes
+
+            val iterator = jars.values.iterator()
+            while (sizeBytes > maxSizeBytes && iterator.hasNext()) {
+                sizeBytes -= iterator.next().sizeBytes
+                iterator.remove()
+            }
+        }
+    }
+
+    private fun File.toKey(): JarKey? {
+        if (!isFile) return null
+        return JarKey(canonicalPath, length(), lastModified())
+    }
+
+    private fun indexJar(jar: File): JarPackages? {
+        val packages = HashSet<String>()
+        packages.add("")
+
+        try {
+            ZipFile(jar).use { zip ->
+                for (entry in zip.entries()) {
+                    var dir = entry.name.substringBeforeLast('/', "")
+                    // Add all parent packages as well, stopping at one already added
+                    while (dir.isNotEmpty() && packages.add(dir.replace('/', '.'))) {
+                        dir = dir.substringBeforeLast('/', "")
+                    }
+                }
+            }
+        }
+        catch (e: IOException) {
+            return null
+        }
+
+        return JarPackages(packages, packages.sumByLong { ENTRY_OVERHEAD_BYTES + 2L * it.length })
+    }
+
+    private inline fun <T> Iterable<T>.sumByLong(selector: (T) -> Long): Long {
+        var sum = 0L
+        for (element in this) {
+            sum += selector(element)
+        }
+        return sum
+    }
+
+    companion object {
+        const val DEFAULT_MAX_SIZE_BYTES = 32L * 1024 * 1024
+
+        // rough size of a String and of a HashSet entry referencing it
+        private const val ENTRY_OVERHEAD_BYTES = 80L
+
+        @JvmField
+        val CONFIGURATION_KEY = CompilerConfigurationKey.create<SharedJarPackageIndex>("packages of classpath jars shared between compilations")
+    }
+}
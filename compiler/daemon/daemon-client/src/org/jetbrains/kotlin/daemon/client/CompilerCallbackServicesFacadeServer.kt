@@ -17,6 +17,7 @@
 package org.jetbrains.kotlin.daemon.client
 
 import org.jetbrains.kotlin.daemon.common.CompilerCallbackServicesFacade
+import org.jetbrains.kotlin.daemon.common.IncrementalCacheTargetData
 import org.jetbrains.kotlin.daemon.common.LoopbackNetworkInterface
 import org.jetbrains.kotlin.daemon.common.RmiFriendlyCompilationCanceledException
 import org.jetbrains.kotlin.daemon.common.SOCKET_ANY_FREE_PORT
@@ -63,6 +64,20 @@ open class CompilerCallbackServicesFacadeServer(
 
     override fun incrementalCache_getClassFilePath(target: TargetId, internalClassName: String): String = incrementalCompilationComponents!!.getIncrementalCache(target).getClassFilePath(internalClassName)
 
+    override fun incrementalCache_getTargetData(target: TargetId): IncrementalCacheTargetData {
+        val cache = incrementalCompilationComponents!!.getIncrementalCache(target)
+        return IncrementalCacheTargetData(cache.getObsoletePackageParts(), cache.getObsoleteMultifileClasses(), cache.getModuleMappingData())
+    }
+
+    override fun incrementalCache_getPackagePartsData(target: TargetId, partInternalNames: Collection<String>): Map<String, JvmPackagePartProto> {
+        val cache = incrementalCompilationComponents!!.getIncrementalCache(target)
+        val result = HashMap<String, JvmPackagePartProto>()
+        for (name in partInternalNames) {
+            cache.getPackagePartData(name)?.let { result[name] = it }
+        }
+        return result
+    }
+
     override fun incrementalCache_close(target: TargetId) {
         incrementalCompilationComponents!!.getIncrementalCache(target).close()
     }
@@ -67,6 +67,15 @@ interface CompilerCallbackServicesFacade : Remote {
     @Throws(RemoteException::class)
     fun incrementalCache_getMultifileFacadeParts(target: TargetId, internalName: String): Collection<String>?
 
+    // batched requests, allowing the daemon to query the cache in fewer round-trips
+
+    @Throws(RemoteException::class)
+    fun incrementalCache_getTargetData(target: TargetId): IncrementalCacheTargetData
+
+    // parts without data are absent from the result
+    @Throws(RemoteException::class)
+    fun incrementalCache_getPackagePartsData(target: TargetId, partInternalNames: Collection<String>): Map<String, JvmPackagePartProto>
+
     // ----------------------------------------------------
     // LookupTracker
     @Throws(RemoteException::class)
@@ -85,6 +94,20 @@ interface CompilerCallbackServicesFacade : Remote {
 }
 
 
+/**
+ * Data of the incremental cache that doesn't depend on the queried class, requested at once in the beginning of a compilation
+ */
+class IncrementalCacheTargetData(
+        val obsoletePackageParts: Collection<String>,
+        val obsoleteMultifileClasses: Collection<String>,
+        val moduleMappingData: ByteArray?
+) : Serializable {
+    companion object {
+        private val serialVersionUID: Long = 0L
+    }
+}
+
+
 class RmiFriendlyCompilationCanceledException : Exception(), Serializable {
     companion object {
         private val serialVersionUID: Long = 8228357578L // just a random number, but should never be changed to avoid deserialization problems
@@ -22,6 +22,7 @@ import com.intellij.openapi.vfs.impl.ZipHandler
 import com.intellij.openapi.vfs.impl.jar.CoreJarFileSystem
 import org.jetbrains.kotlin.build.JvmSourceRoot
 import org.jetbrains.kotlin.cli.common.CLICompiler
+import org.jetbrains.kotlin.cli.common.CLIConfigurationKeys
 import org.jetbrains.kotlin.cli.common.ExitCode
 import org.jetbrains.kotlin.cli.common.KOTLIN_COMPILER_ENVIRONMENT_KEEPALIVE_PROPERTY
 import org.jetbrains.kotlin.cli.common.arguments.*
@@ -36,8 +37,12 @@ import org.jetbrains.kotlin.cli.common.repl.ReplCompileResult
 import org.jetbrains.kotlin.cli.common.repl.ReplEvalResult
 import org.jetbrains.kotlin.cli.js.K2JSCompiler
 import org.jetbrains.kotlin.cli.jvm.K2JVMCompiler
+import org.jetbrains.kotlin.cli.jvm.compiler.EnvironmentConfigFiles
 import org.jetbrains.kotlin.cli.jvm.compiler.KotlinCoreEnvironment
+import org.jetbrains.kotlin.cli.jvm.index.SharedJarPackageIndex
 import org.jetbrains.kotlin.cli.metadata.K2MetadataCompiler
+import org.jetbrains.kotlin.codegen.inline.SharedInlineCache
+import org.jetbrains.kotlin.config.CompilerConfiguration
 import org.jetbrains.kotlin.config.Services
 import org.jetbrains.kotlin.daemon.common.*
 import org.jetbrains.kotlin.daemon.incremental.RemoteAnnotationsFileUpdater
@@ -50,7 +55,10 @@ import org.jetbrains.kotlin.daemon.report.RemoteICReporter
 import org.jetbrains.kotlin.incremental.*
 import org.jetbrains.kotlin.load.kotlin.incremental.components.IncrementalCompilationComponents
 import org.jetbrains.kotlin.modules.Module
+import org.jetbrains.kotlin.platform.JvmBuiltIns
 import org.jetbrains.kotlin.progress.CompilationCanceledStatus
+import org.jetbrains.kotlin.storage.LockBasedStorageManager
+import org.jetbrains.kotlin.utils.PathUtil
 import java.io.BufferedOutputStream
 import java.io.ByteArrayOutputStream
 import java.io.File
@@ -67,6 +75,7 @@ import java.util.logging.Level
 import java.util.logging.Logger
 import kotlin.concurrent.read
 import kotlin.concurrent.schedule
+import kotlin.concurrent.thread
 import kotlin.concurrent.write
 
 const val REMOTE_STREAM_BUFFER_SIZE = 4096
@@ -125,6 +134,21 @@ class CompileServiceImpl(
 
     private val classpathWatcher = LazyClasspathWatcher(compilerId.compilerClasspath)
 
+    // bodies of library inline functions are reused by all compilations in this daemon
+    private val sharedInlineCache = daemonOptions.inlineCacheSize.takeIf { it > 0 }?.let(::SharedInlineCache)
+
+    // packages of classpath jars, so that every compilation doesn't traverse the same JDK and library jars again
+    private val sharedJarPackageIndex = SharedJarPackageIndex()
+
+    // time it took to parse the compiler's built-ins ahead of the first compilation, they're reused by all compilations afterwards
+    @Volatile private var builtInsSetupMillis = 0L
+
+    init {
+        if (daemonOptions.prewarmEnvironment) {
+            thread(isDaemon = true, name = "environment prewarm") { prewarmEnvironment() }
+        }
+    }
+
     enum class Aliveness {
         // !!! ordering of values is used in state comparison
         Dying, LastSession, Alive
@@ -321,10 +345,10 @@ class CompileServiceImpl(
                                serviceOutputStream: RemoteOutputStream,
                                operationsTracer: RemoteOperationsTracer?
     ): CompileService.CallResult<Int> =
-            doCompile(sessionId, args, compilerOutputStream, serviceOutputStream, operationsTracer) { printStream, eventManager, profiler ->
+            doCompile(sessionId, args, compilerOutputStream, serviceOutputStream, operationsTracer) { printStream, eventManager, profiler, cacheStatistics ->
                 when (outputFormat) {
                     CompileService.OutputFormat.PLAIN -> compiler[targetPlatform].exec(printStream, *args)
-                    CompileService.OutputFormat.XML -> compiler[targetPlatform].execAndOutputXml(printStream, createCompileServices(servicesFacade, eventManager, profiler), *args)
+                    CompileService.OutputFormat.XML -> compiler[targetPlatform].execAndOutputXml(printStream, createCompileServices(servicesFacade, eventManager, profiler, cacheStatistics), *args)
                 }
             }
 
@@ -337,10 +361,10 @@ class CompileServiceImpl(
                                           serviceOutputStream: RemoteOutputStream,
                                           operationsTracer: RemoteOperationsTracer?
     ): CompileService.CallResult<Int> =
-            doCompile(sessionId, args, compilerOutputStream, serviceOutputStream, operationsTracer) { printStream, eventManager, profiler ->
+            doCompile(sessionId, args, compilerOutputStream, serviceOutputStream, operationsTracer) { printStream, eventManager, profiler, cacheStatistics ->
                 when (compilerOutputFormat) {
                     CompileService.OutputFormat.PLAIN -> throw NotImplementedError("Only XML output is supported in remote incremental compilation")
-                    CompileService.OutputFormat.XML -> compiler[targetPlatform].execAndOutputXml(printStream, createCompileServices(servicesFacade, eventManager, profiler), *args)
+                    CompileService.OutputFormat.XML -> compiler[targetPlatform].execAndOutputXml(printStream, createCompileServices(servicesFacade, eventManager, profiler, cacheStatistics), *args)
                 }
             }
 
@@ -375,15 +399,15 @@ class CompileServiceImpl(
                 val jpsServicesFacade = servicesFacade as JpsCompilerServicesFacade
 
                 withIC(enabled = servicesFacade.hasIncrementalCaches()) {
-                    doCompile(sessionId, daemonReporter, tracer = null) { eventManger, profiler ->
-                        val services = createCompileServices(jpsServicesFacade, eventManger, profiler)
+                    doCompile(sessionId, daemonReporter, tracer = null) { eventManger, profiler, cacheStatistics ->
+                        val services = createCompileServices(jpsServicesFacade, eventManger, profiler, cacheStatistics)
                         compiler.exec(messageCollector, services, k2PlatformArgs)
                     }
                 }
             }
             CompilerMode.NON_INCREMENTAL_COMPILER -> {
-                doCompile(sessionId, daemonReporter, tracer = null) { _, _ ->
-                    compiler.exec(messageCollector, Services.EMPTY, k2PlatformArgs)
+                doCompile(sessionId, daemonReporter, tracer = null) { _, _, _ ->
+                    compiler.exec(messageCollector, createSharedServices().build(), k2PlatformArgs)
                 }
             }
             CompilerMode.INCREMENTAL_COMPILER -> {
@@ -395,7 +419,7 @@ class CompileServiceImpl(
                         val k2jvmArgs = k2PlatformArgs as K2JVMCompilerArguments
 
                         withIC {
-                            doCompile(sessionId, daemonReporter, tracer = null) { _, _ ->
+                            doCompile(sessionId, daemonReporter, tracer = null) { _, _, _ ->
                                 execIncrementalCompiler(k2jvmArgs, gradleIncrementalArgs, gradleIncrementalServicesFacade, compilationResults!!,
                                                         messageCollector, daemonReporter)
                             }
@@ -405,7 +429,7 @@ class CompileServiceImpl(
                         val k2jsArgs = k2PlatformArgs as K2JSCompilerArguments
 
                         withJsIC {
-                            doCompile(sessionId, daemonReporter, tracer = null) { _, _ ->
+                            doCompile(sessionId, daemonReporter, tracer = null) { _, _, _ ->
                                 execJsIncrementalCompiler(k2jsArgs, gradleIncrementalArgs, gradleIncrementalServicesFacade, compilationResults!!, messageCollector)
                             }
                         }
@@ -511,7 +535,9 @@ class CompileServiceImpl(
                                                     reporter, annotationFileUpdater,
                                                     artifactChanges, changesRegistry,
                                                     buildHistoryFile = incrementalCompilationOptions.resultDifferenceFile,
-                                                    friendBuildHistoryFile = incrementalCompilationOptions.friendDifferenceFile)
+                                                    friendBuildHistoryFile = incrementalCompilationOptions.friendDifferenceFile,
+                                                    sharedInlineCache = sharedInlineCache,
+                                                    sharedJarPackageIndex = sharedJarPackageIndex)
         return compiler.compile(allKotlinFiles, k2jvmArgs, compilerMessageCollector, { changedFiles })
     }
 
@@ -851,11 +877,12 @@ class CompileServiceImpl(
                           compilerMessagesStreamProxy: RemoteOutputStream,
                           serviceOutputStreamProxy: RemoteOutputStream,
                           operationsTracer: RemoteOperationsTracer?,
-                          body: (PrintStream, EventManager, Profiler) -> ExitCode): CompileService.CallResult<Int> =
+                          body: (PrintStream, EventManager, Profiler, RemoteIncrementalCacheClient.Statistics) -> ExitCode): CompileService.CallResult<Int> =
             ifAlive {
                 withValidClientOrSessionProxy(sessionId) {
                     operationsTracer?.before("compile")
                     val rpcProfiler = if (daemonOptions.reportPerf) WallAndThreadTotalProfiler() else DummyProfiler()
+                    val cacheStatistics = RemoteIncrementalCacheClient.Statistics()
                     val eventManger = EventManagerImpl()
                     val compilerMessagesStream = PrintStream(BufferedOutputStream(RemoteOutputStreamClient(compilerMessagesStreamProxy, rpcProfiler), REMOTE_STREAM_BUFFER_SIZE))
                     val serviceOutputStream = PrintStream(BufferedOutputStream(RemoteOutputStreamClient(serviceOutputStreamProxy, rpcProfiler), REMOTE_STREAM_BUFFER_SIZE))
@@ -864,8 +891,8 @@ class CompileServiceImpl(
                         if (args.none())
                             throw IllegalArgumentException("Error: empty arguments list.")
                         log.info("Starting compilation with args: " + args.joinToString(" "))
-                        val exitCode = checkedCompile(compileServiceReporter, rpcProfiler) {
-                            body(compilerMessagesStream, eventManger, rpcProfiler).code
+                        val exitCode = checkedCompile(compileServiceReporter, rpcProfiler, cacheStatistics) {
+                            body(compilerMessagesStream, eventManger, rpcProfiler, cacheStatistics).code
                         }
                         CompileService.CallResult.Good(exitCode)
                     }
@@ -881,15 +908,16 @@ class CompileServiceImpl(
     private fun doCompile(sessionId: Int,
                           daemonMessageReporter: DaemonMessageReporter,
                           tracer: RemoteOperationsTracer?,
-                          body: (EventManager, Profiler) -> ExitCode): CompileService.CallResult<Int> =
+                          body: (EventManager, Profiler, RemoteIncrementalCacheClient.Statistics) -> ExitCode): CompileService.CallResult<Int> =
             ifAlive {
                 withValidClientOrSessionProxy(sessionId) {
                     tracer?.before("compile")
                     val rpcProfiler = if (daemonOptions.reportPerf) WallAndThreadTotalProfiler() else DummyProfiler()
+                    val cacheStatistics = RemoteIncrementalCacheClient.Statistics()
                     val eventManger = EventManagerImpl()
                     try {
-                        val exitCode = checkedCompile(daemonMessageReporter, rpcProfiler) {
-                            body(eventManger, rpcProfiler).code
+                        val exitCode = checkedCompile(daemonMessageReporter, rpcProfiler, cacheStatistics) {
+                            body(eventManger, rpcProfiler, cacheStatistics).code
                         }
                         CompileService.CallResult.Good(exitCode)
                     }
@@ -900,10 +928,22 @@ class CompileServiceImpl(
                 }
             }
 
-    private fun createCompileServices(facade: CompilerCallbackServicesFacade, eventManager: EventManager, rpcProfiler: Profiler): Services {
+    private fun createSharedServices(): Services.Builder {
         val builder = Services.Builder()
+        sharedInlineCache?.let { builder.register(SharedInlineCache::class.java, it) }
+        builder.register(SharedJarPackageIndex::class.java, sharedJarPackageIndex)
+        return builder
+    }
+
+    private fun createCompileServices(
+            facade: CompilerCallbackServicesFacade,
+            eventManager: EventManager,
+            rpcProfiler: Profiler,
+            cacheStatistics: RemoteIncrementalCacheClient.Statistics
+    ): Services {
+        val builder = createSharedServices()
         if (facade.hasIncrementalCaches() || facade.hasLookupTracker()) {
-            builder.register(IncrementalCompilationComponents::class.java, RemoteIncrementalCompilationComponentsClient(facade, eventManager, rpcProfiler))
+            builder.register(IncrementalCompilationComponents::class.java, RemoteIncrementalCompilationComponentsClient(facade, eventManager, rpcProfiler, cacheStatistics))
         }
         if (facade.hasCompilationCanceledStatus()) {
             builder.register(CompilationCanceledStatus::class.java, RemoteCompilationCanceledStatusClient(facade, rpcProfiler))
@@ -912,9 +952,36 @@ class CompileServiceImpl(
     }
 
 
-    private fun<R> checkedCompile(daemonMessageReporter: DaemonMessageReporter, rpcProfiler: Profiler, body: () -> R): R {
+    // sets up everything shared by compilations ahead of the first one: the application environment, built-ins and the JDK index
+    private fun prewarmEnvironment() {
+        try {
+            val configuration = CompilerConfiguration().apply {
+                put(CLIConfigurationKeys.MESSAGE_COLLECTOR_KEY, MessageCollector.NONE)
+            }
+            KotlinCoreEnvironment.prewarmApplicationEnvironment(configuration, EnvironmentConfigFiles.JVM_CONFIG_FILES)
+
+            val builtInsStart = System.nanoTime()
+            JvmBuiltIns(LockBasedStorageManager())
+            builtInsSetupMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - builtInsStart)
+
+            sharedJarPackageIndex.prepare(PathUtil.getJdkClassesRootsFromCurrentJre())
+
+            log.info("Environment prewarmed: application environment in ${KotlinCoreEnvironment.applicationEnvironmentSetupMillis} ms, built-ins in $builtInsSetupMillis ms")
+        }
+        catch (e: Throwable) {
+            log.log(Level.WARNING, "Unable to prewarm the environment", e)
+        }
+    }
+
+    private fun<R> checkedCompile(
+            daemonMessageReporter: DaemonMessageReporter,
+            rpcProfiler: Profiler,
+            cacheStatistics: RemoteIncrementalCacheClient.Statistics,
+            body: () -> R
+    ): R {
         try {
             val profiler = if (daemonOptions.reportPerf) WallAndThreadAndMemoryTotalProfiler(withGC = false) else DummyProfiler()
+            val reusesEnvironment = KotlinCoreEnvironment.applicationEnvironment != null
 
             val res = profiler.withMeasure(null, body)
 
@@ -940,6 +1007,31 @@ class CompileServiceImpl(
                         log.info(it)
                     }
                 }
+
+                sharedInlineCache?.let { cache ->
+                    "PERF: shared inline cache: ${cache.hits} hits, ${cache.misses} misses".let {
+                        daemonMessageReporter.report(ReportSeverity.INFO, it)
+                        log.info(it)
+                    }
+                }
+
+                "PERF: shared jar package index: ${sharedJarPackageIndex.hits} hits, ${sharedJarPackageIndex.misses} misses".let {
+                    daemonMessageReporter.report(ReportSeverity.INFO, it)
+                    log.info(it)
+                }
+
+                "PERF: remote incremental caches: ${cacheStatistics.calls} calls, ${cacheStatistics.roundTripsSaved} round-trips saved".let {
+                    daemonMessageReporter.report(ReportSeverity.INFO, it)
+                    log.info(it)
+                }
+
+                if (reusesEnvironment) {
+                    val applicationEnvironmentMillis = KotlinCoreEnvironment.applicationEnvironmentSetupMillis
+                    "PERF: environment setup saved: ${applicationEnvironmentMillis + builtInsSetupMillis} ms (application environment $applicationEnvironmentMillis ms, built-ins $builtInsSetupMillis ms)".let {
+                        daemonMessageReporter.report(ReportSeverity.INFO, it)
+                        log.info(it)
+                    }
+                }
             }
             return res
         }
@@ -953,6 +1045,8 @@ class CompileServiceImpl(
     override fun clearJarCache() {
         ZipHandler.clearFileAccessorCache()
         (KotlinCoreEnvironment.applicationEnvironment?.jarFileSystem as? CoreJarFileSystem)?.clearHandlersCache()
+        sharedInlineCache?.clear()
+        sharedJarPackageIndex.clear()
     }
 
     private inline fun<R> ifAlive(minAliveness: Aliveness = Aliveness.LastSession, body: () -> CompileService.CallResult<R>): CompileService.CallResult<R> = rwlock.read {
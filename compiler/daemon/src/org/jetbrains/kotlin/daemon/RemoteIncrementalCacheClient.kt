@@ -18,24 +18,144 @@ package org.jetbrains.kotlin.daemon
 
 import org.jetbrains.kotlin.daemon.common.CompilerCallbackServicesFacade
 import org.jetbrains.kotlin.daemon.common.DummyProfiler
+import org.jetbrains.kotlin.daemon.common.IncrementalCacheTargetData
 import org.jetbrains.kotlin.daemon.common.Profiler
 import org.jetbrains.kotlin.load.kotlin.incremental.components.IncrementalCache
 import org.jetbrains.kotlin.load.kotlin.incremental.components.JvmPackagePartProto
 import org.jetbrains.kotlin.modules.TargetId
+import org.jetbrains.kotlin.utils.ParallelUtils
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicLong
 
-class RemoteIncrementalCacheClient(val facade: CompilerCallbackServicesFacade, val target: TargetId, val profiler: Profiler = DummyProfiler()): IncrementalCache {
+/**
+ * Answers of the client's incremental cache are kept until the end of the compilation, when [RemoteIncrementalCompilationComponentsClient]
+ * drops this object, so every query is sent to the client at most once.
+ *
+ * The data which doesn't depend on the queried class is requested in one call on first use. Parts of a multifile class are loaded
+ * together with its facade, so the data of all parts returned by [getStableMultifileFacadeParts] is requested in one call as well.
+ * Queries are answered concurrently: only the threads which need the same answer wait for the one remote call requesting it.
+ */
+class RemoteIncrementalCacheClient @JvmOverloads constructor(
+        val facade: CompilerCallbackServicesFacade,
+        val target: TargetId,
+        val profiler: Profiler = DummyProfiler(),
+        private val statistics: Statistics = Statistics()
+) : IncrementalCache {
+
+    // counted per compilation
+    class Statistics {
+        private val callCount = AtomicLong()
+        private val savedCount = AtomicLong()
+
+        // remote calls made
+        val calls: Long get() = callCount.get()
+
+        // queries answered without a remote call of their own
+        val roundTripsSaved: Long get() = savedCount.get()
+
+        internal fun call() = callCount.incrementAndGet()
+
+        internal fun saved() = savedCount.incrementAndGet()
+    }
+
+    private val targetData = lazy { remoteCall { facade.incrementalCache_getTargetData(target) } }
+
+    private val multifileFacadeParts = ConcurrentHashMap<String, CompletableFuture<Collection<String>?>>()
+
+    // parts returned by getStableMultifileFacadeParts share one batch, their data is requested together with the first of them
+    private val packagePartBatches = ConcurrentHashMap<String, PackagePartsBatch>()
+
+    private val classFilePaths = ConcurrentHashMap<String, String>()
+
+    override fun getObsoletePackageParts(): Collection<String> = targetData().obsoletePackageParts
+
+    override fun getObsoleteMultifileClasses(): Collection<String> = targetData().obsoleteMultifileClasses
+
+    override fun getModuleMappingData(): ByteArray? = targetData().moduleMappingData
+
+    override fun getStableMultifileFacadeParts(facadeInternalName: String): Collection<String>? {
+        val future = CompletableFuture<Collection<String>?>()
+        multifileFacadeParts.putIfAbsent(facadeInternalName, future)?.let {
+            statistics.saved()
+            return ParallelUtils.await(it)
+        }
+
+        try {
+            val parts = remoteCall { facade.incrementalCache_getMultifileFacadeParts(target, facadeInternalName) }
+            if (parts != null) {
+                val batch = PackagePartsBatch(parts.filterNot { packagePartBatches.containsKey(it) })
+                for (part in batch.names) {
+                    packagePartBatches.putIfAbsent(part, batch)
+                }
+            }
+            future.complete(parts)
+            return parts
+        }
+        catch (e: Throwable) {
+            // the next query requests the parts again
+            multifileFacadeParts.remove(facadeInternalName, future)
+            future.completeExceptionally(e)
+            throw e
+        }
+    }
 
-    override fun getObsoletePackageParts(): Collection<String> = profiler.withMeasure(this) { facade.incrementalCache_getObsoletePackageParts(target) }
+    override fun getPackagePartData(partInternalName: String): JvmPackagePartProto? {
+        val batch = packagePartBatches[partInternalName] ?: PackagePartsBatch(listOf(partInternalName)).let {
+            packagePartBatches.putIfAbsent(partInternalName, it) ?: it
+        }
+        return batch.get(partInternalName)
+    }
 
-    override fun getObsoleteMultifileClasses(): Collection<String> = profiler.withMeasure(this) { facade.incrementalCache_getObsoleteMultifileClassFacades(target) }
+    override fun getClassFilePath(internalClassName: String): String {
+        classFilePaths[internalClassName]?.let {
+            statistics.saved()
+            return it
+        }
+        // several threads may request the same path, which is harmless
+        return remoteCall { facade.incrementalCache_getClassFilePath(target, internalClassName) }.also {
+            classFilePaths[internalClassName] = it
+        }
+    }
 
-    override fun getStableMultifileFacadeParts(facadeInternalName: String): Collection<String>? = profiler.withMeasure(this) { facade.incrementalCache_getMultifileFacadeParts(target, facadeInternalName) }
+    override fun close(): Unit = remoteCall { facade.incrementalCache_close(target) }
 
-    override fun getPackagePartData(partInternalName: String): JvmPackagePartProto? = profiler.withMeasure(this) { facade.incrementalCache_getPackagePartData(target, partInternalName) }
+    private fun targetData(): IncrementalCacheTargetData {
+        if (targetData.isInitialized()) {
+            statistics.saved()
+        }
+        return targetData.value
+    }
 
-    override fun getModuleMappingData(): ByteArray? = profiler.withMeasure(this) { facade.incrementalCache_getModuleMappingData(target) }
+    private inner class PackagePartsBatch(val names: List<String>) {
+        private val requested = AtomicBoolean()
+        private val data = CompletableFuture<Map<String, JvmPackagePartProto>>()
 
-    override fun getClassFilePath(internalClassName: String): String = profiler.withMeasure(this) { facade.incrementalCache_getClassFilePath(target,internalClassName) }
+        fun get(partInternalName: String): JvmPackagePartProto? {
+            if (requested.compareAndSet(false, true)) {
+                try {
+                    data.complete(remoteCall { facade.incrementalCache_getPackagePartsData(target, names) })
+                }
+                catch (e: Throwable) {
+                    // the next query of any of the parts requests its data again
+                    for (name in names) {
+                        packagePartBatches.remove(name, this)
+                    }
+                    data.completeExceptionally(e)
+                    throw e
+                }
+            }
+            else {
+                // answered by the call already made for the batch
+                statistics.saved()
+            }
+            return ParallelUtils.await(data)[partInternalName]
+        }
+    }
 
-    override fun close(): Unit = profiler.withMeasure(this) { facade.incrementalCache_close(target) }
+    private fun <T> remoteCall(body: () -> T): T {
+        statistics.call()
+        return profiler.withMeasure(this, body)
+    }
 }
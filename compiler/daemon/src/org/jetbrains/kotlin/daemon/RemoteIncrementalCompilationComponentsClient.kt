@@ -22,7 +22,21 @@ import org.jetbrains.kotlin.modules.TargetId
 import org.jetbrains.kotlin.daemon.common.CompilerCallbackServicesFacade
 import org.jetbrains.kotlin.daemon.common.DummyProfiler
 import org.jetbrains.kotlin.daemon.common.Profiler
+import java.util.concurrent.ConcurrentHashMap
 
-class RemoteIncrementalCompilationComponentsClient(val facade: CompilerCallbackServicesFacade, eventManager: EventManager, val profiler: Profiler = DummyProfiler()) : IncrementalCompilationComponents {
-    override fun getIncrementalCache(target: TargetId): IncrementalCache = RemoteIncrementalCacheClient(facade, target, profiler)
+class RemoteIncrementalCompilationComponentsClient @JvmOverloads constructor(
+        val facade: CompilerCallbackServicesFacade,
+        eventManager: EventManager,
+        val profiler: Profiler = DummyProfiler(),
+        private val cacheStatistics: RemoteIncrementalCacheClient.Statistics = RemoteIncrementalCacheClient.Statistics()
+) : IncrementalCompilationComponents {
+    // the client's caches may change after the compilation, so the answers are not reused by the next one
+    private val caches = ConcurrentHashMap<TargetId, RemoteIncrementalCacheClient>()
+
+    init {
+        eventManager.onCompilationFinished { caches.clear() }
+    }
+
+    override fun getIncrementalCache(target: TargetId): IncrementalCache =
+            caches.getOrPut(target) { RemoteIncrementalCacheClient(facade, target, profiler, cacheStatistics) }
 }
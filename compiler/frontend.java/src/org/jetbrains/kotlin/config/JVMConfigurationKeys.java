@@ -63,6 +63,16 @@ public class JVMConfigurationKeys {
             CompilerConfigurationKey.create("do not throw NPE on explicit 'equals' call for null receiver of platform boxed primitive type");
     public static final CompilerConfigurationKey<Boolean> DISABLE_OPTIMIZATION =
             CompilerConfigurationKey.create("disable optimization");
+    public static final CompilerConfigurationKey<Integer> PARALLEL_BACKEND_THREADS =
+            CompilerConfigurationKey.create("number of threads used to generate class files");
+    public static final CompilerConfigurationKey<Integer> PARALLEL_OPTIMIZATION_THREADS =
+            CompilerConfigurationKey.create("number of threads used to optimize bytecode of methods");
+    public static final CompilerConfigurationKey<Integer> PARALLEL_PARSING_THREADS =
+            CompilerConfigurationKey.create("number of threads used to parse source files before analysis");
+    public static final CompilerConfigurationKey<Boolean> DISABLE_JAR_COMPRESSION =
+            CompilerConfigurationKey.create("store entries of the output jar without compression");
+    public static final CompilerConfigurationKey<Boolean> STREAMING_OUTPUT =
+            CompilerConfigurationKey.create("write class files while generating, instead of after the whole module is generated");
     public static final CompilerConfigurationKey<Boolean> INHERIT_MULTIFILE_PARTS =
             CompilerConfigurationKey.create("compile multifile classes to a hierarchy of parts and facade");
     public static final CompilerConfigurationKey<Boolean> USE_TYPE_TABLE =
@@ -82,7 +82,8 @@ fun createContainerForLazyResolveWithJava(
         jvmTarget: JvmTarget,
         languageVersionSettings: LanguageVersionSettings,
         useBuiltInsProvider: Boolean,
-        configureJavaClassFinder: (StorageComponentContainer.() -> Unit)? = null
+        configureJavaClassFinder: (StorageComponentContainer.() -> Unit)? = null,
+        bodyResolveParallelism: BodyResolveParallelism = BodyResolveParallelism.Sequential
 ): StorageComponentContainer = createContainer("LazyResolveWithJava", JvmPlatform) {
     configureModule(moduleContext, JvmPlatform, jvmTarget, bindingTrace)
     configureJavaTopDownAnalysis(moduleContentScope, moduleContext.project, lookupTracker)
@@ -104,6 +105,8 @@ fun createContainerForLazyResolveWithJava(
 
     useInstance(languageVersionSettings.getFlag(AnalysisFlag.jsr305))
 
+    useInstance(bodyResolveParallelism)
+
     if (useBuiltInsProvider) {
         useInstance((moduleContext.module.builtIns as JvmBuiltIns).settings)
         useImpl<JvmBuiltInsPackageFragmentProvider>()
@@ -127,11 +130,12 @@ fun createContainerForTopDownAnalyzerForJvm(
         moduleClassResolver: ModuleClassResolver,
         jvmTarget: JvmTarget,
         languageVersionSettings: LanguageVersionSettings,
-        configureJavaClassFinder: (StorageComponentContainer.() -> Unit)? = null
+        configureJavaClassFinder: (StorageComponentContainer.() -> Unit)? = null,
+        bodyResolveParallelism: BodyResolveParallelism = BodyResolveParallelism.Sequential
 ): ComponentProvider = createContainerForLazyResolveWithJava(
         moduleContext, bindingTrace, declarationProviderFactory, moduleContentScope, moduleClassResolver,
         CompilerEnvironment, lookupTracker, packagePartProvider, jvmTarget, languageVersionSettings,
-        useBuiltInsProvider = true, configureJavaClassFinder = configureJavaClassFinder
+        useBuiltInsProvider = true, configureJavaClassFinder = configureJavaClassFinder, bodyResolveParallelism = bodyResolveParallelism
 )
 
 
@@ -0,0 +1,370 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.load.kotlin;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.kotlin.load.java.JvmAnnotationNames;
+import org.jetbrains.org.objectweb.asm.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.jetbrains.org.objectweb.asm.ClassReader.*;
+import static org.jetbrains.org.objectweb.asm.Opcodes.ASM5;
+
+/**
+ * Part of a class file which is needed to load annotations and constants of a Kotlin class: annotations of the class,
+ * signatures of its fields and methods with their annotations, and constant initializers of fields.
+ * Method bodies and debug information are not kept, so the structure is much smaller than the class file,
+ * and it can be replayed to any {@link ClassVisitor} instead of reading the class file again.
+ * <p>
+ * Visibility of annotations is not kept, all annotations are replayed as visible.
+ */
+public final class BinaryClassStructure {
+    private static final RecordedAnnotation[] NO_ANNOTATIONS = new RecordedAnnotation[0];
+    private static final Member[] NO_MEMBERS = new Member[0];
+
+    // Header annotations of Kotlin classes compiled before 1.0, see ReadKotlinClassHeaderAnnotationVisitor
+    private static final String OLD_KOTLIN_HEADER_DESC_PREFIX = "Lkotlin/jvm/internal/Kotlin";
+
+    // Rough size of an object header with a few fields
+    private static final long OBJECT_SIZE_BYTES = 32L;
+
+    private final RecordedAnnotation[] classAnnotations;
+    private final Member[] fields;
+    private final Member[] methods;
+    private final long estimatedSizeBytes;
+
+    private BinaryClassStructure(
+            @NotNull RecordedAnnotation[] classAnnotations,
+            @NotNull Member[] fields,
+            @NotNull Member[] methods,
+            long estimatedSizeBytes
+    ) {
+        this.classAnnotations = classAnnotations;
+        this.fields = fields;
+        this.methods = methods;
+        this.estimatedSizeBytes = estimatedSizeBytes;
+    }
+
+    @NotNull
+    public static BinaryClassStructure read(@NotNull byte[] fileContents) {
+        Builder builder = new Builder(true);
+        new ClassReader(fileContents).accept(builder, SKIP_CODE | SKIP_DEBUG | SKIP_FRAMES);
+        return builder.build();
+    }
+
+    /**
+     * Rough size of this structure in memory, used to bound caches of structures.
+     */
+    public long getEstimatedSizeBytes() {
+        return estimatedSizeBytes;
+    }
+
+    public void accept(@NotNull ClassVisitor visitor) {
+        for (RecordedAnnotation annotation : classAnnotations) {
+            annotation.accept(visitor.visitAnnotation(annotation.desc, true));
+        }
+
+        for (Member field : fields) {
+            FieldVisitor fieldVisitor = visitor.visitField(field.access, field.name, field.desc, null, field.value);
+            if (fieldVisitor == null) continue;
+
+            for (RecordedAnnotation annotation : field.annotations) {
+                annotation.accept(fieldVisitor.visitAnnotation(annotation.desc, true));
+            }
+            fieldVisitor.visitEnd();
+        }
+
+        for (Member method : methods) {
+            MethodVisitor methodVisitor = visitor.visitMethod(method.access, method.name, method.desc, null, null);
+            if (methodVisitor == null) continue;
+
+            for (RecordedAnnotation annotation : method.annotations) {
+                annotation.accept(methodVisitor.visitAnnotation(annotation.desc, true));
+            }
+            for (int i = 0; i < method.parameterAnnotations.length; i++) {
+                for (RecordedAnnotation annotation : method.parameterAnnotations[i]) {
+                    annotation.accept(methodVisitor.visitParameterAnnotation(i, annotation.desc, true));
+                }
+            }
+            methodVisitor.visitEnd();
+        }
+
+        visitor.visitEnd();
+    }
+
+    private static final class Member {
+        final int access;
+        final String name;
+        final String desc;
+        // Constant initializer of a field
+        final Object value;
+        final RecordedAnnotation[] annotations;
+        final RecordedAnnotation[][] parameterAnnotations;
+
+        Member(
+                int access,
+                @NotNull String name,
+                @NotNull String desc,
+                @Nullable Object value,
+                @NotNull RecordedAnnotation[] annotations,
+                @NotNull RecordedAnnotation[][] parameterAnnotations
+        ) {
+            this.access = access;
+            this.name = name;
+            this.desc = desc;
+            this.value = value;
+            this.annotations = annotations;
+            this.parameterAnnotations = parameterAnnotations;
+        }
+    }
+
+    private static final class EnumValue {
+        final String desc;
+        final String value;
+
+        EnumValue(@NotNull String desc, @NotNull String value) {
+            this.desc = desc;
+            this.value = value;
+        }
+    }
+
+    /**
+     * Arguments of an annotation or elements of an array argument, exactly as they were passed to {@link AnnotationVisitor}.
+     * Unlike {@link org.jetbrains.org.objectweb.asm.tree.AnnotationNode}, primitive arrays are kept as is and not converted to lists.
+     */
+    private static final class RecordedAnnotation extends AnnotationVisitor {
+        // null for array arguments
+        final String desc;
+
+        private List<Object> recording = new ArrayList<>(4);
+        // Names (null for array elements) alternating with values: constants, EnumValues and RecordedAnnotations
+        private Object[] namesAndValues;
+
+        RecordedAnnotation(@Nullable String desc) {
+            super(ASM5);
+            this.desc = desc;
+        }
+
+        @Override
+        public void visit(String name, Object value) {
+            recording.add(name);
+            recording.add(value);
+        }
+
+        @Override
+        public void visitEnum(String name, String desc, String value) {
+            recording.add(name);
+            recording.add(new EnumValue(desc, value));
+        }
+
+        @Override
+        public AnnotationVisitor visitAnnotation(String name, String desc) {
+            RecordedAnnotation annotation = new RecordedAnnotation(desc);
+            recording.add(name);
+            recording.add(annotation);
+            return annotation;
+        }
+
+        @Override
+        public AnnotationVisitor visitArray(String name) {
+            RecordedAnnotation array = new RecordedAnnotation(null);
+            recording.add(name);
+            recording.add(array);
+            return array;
+        }
+
+        @Override
+        public void visitEnd() {
+            namesAndValues = recording.toArray();
+            recording = null;
+        }
+
+        void accept(@Nullable AnnotationVisitor visitor) {
+            if (visitor == null) return;
+
+            for (int i = 0; i < namesAndValues.length; i += 2) {
+                String name = (String) namesAndValues[i];
+                Object value = namesAndValues[i + 1];
+                if (value instanceof EnumValue) {
+                    visitor.visitEnum(name, ((EnumValue) value).desc, ((EnumValue) value).value);
+                }
+                else if (value instanceof RecordedAnnotation) {
+                    RecordedAnnotation nested = (RecordedAnnotation) value;
+                    nested.accept(nested.desc == null ? visitor.visitArray(name) : visitor.visitAnnotation(name, nested.desc));
+                }
+                else {
+                    visitor.visit(name, value);
+                }
+            }
+            visitor.visitEnd();
+        }
+
+        long sizeBytes() {
+            long size = OBJECT_SIZE_BYTES + sizeOf(desc) + 8L * namesAndValues.length;
+            for (Object value : namesAndValues) {
+                size += value instanceof RecordedAnnotation ? ((RecordedAnnotation) value).sizeBytes() : sizeOf(value);
+            }
+            return size;
+        }
+    }
+
+    /**
+     * Reads a structure in the same pass over a class file as other visitors, e.g. the one reading the Kotlin header.
+     * Members are only read if {@code readMembers} is true and the class has a Kotlin header, structures of other classes are never used.
+     */
+    static final class Builder extends ClassVisitor {
+        private final boolean readMembers;
+        private final List<RecordedAnnotation> classAnnotations = new ArrayList<>(2);
+        private final List<Member> fields = new ArrayList<>();
+        private final List<Member> methods = new ArrayList<>();
+        private boolean hasKotlinHeader = false;
+        private long estimatedSizeBytes = OBJECT_SIZE_BYTES;
+
+        Builder(boolean readMembers) {
+            super(ASM5);
+            this.readMembers = readMembers;
+        }
+
+        @Override
+        public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+            if (JvmAnnotationNames.METADATA_DESC.equals(desc) || desc.startsWith(OLD_KOTLIN_HEADER_DESC_PREFIX)) {
+                hasKotlinHeader = true;
+            }
+            RecordedAnnotation annotation = new RecordedAnnotation(desc);
+            classAnnotations.add(annotation);
+            return annotation;
+        }
+
+        @Override
+        public FieldVisitor visitField(int access, String name, String desc, String signature, Object value) {
+            if (!readMembers || !hasKotlinHeader) return null;
+
+            List<RecordedAnnotation> annotations = new ArrayList<>(0);
+            return new FieldVisitor(ASM5) {
+                @Override
+                public AnnotationVisitor visitAnnotation(String annotationDesc, boolean visible) {
+                    RecordedAnnotation annotation = new RecordedAnnotation(annotationDesc);
+                    annotations.add(annotation);
+                    return annotation;
+                }
+
+                @Override
+                public void visitEnd() {
+                    fields.add(createMember(access, name, desc, value, annotations, null));
+                }
+            };
+        }
+
+        @Override
+        public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+            if (!readMembers || !hasKotlinHeader) return null;
+
+            List<RecordedAnnotation> annotations = new ArrayList<>(0);
+            List<List<RecordedAnnotation>> parameterAnnotations = new ArrayList<>(0);
+            return new MethodVisitor(ASM5) {
+                @Override
+                public AnnotationVisitor visitAnnotation(String annotationDesc, boolean visible) {
+                    RecordedAnnotation annotation = new RecordedAnnotation(annotationDesc);
+                    annotations.add(annotation);
+                    return annotation;
+                }
+
+                @Override
+                public AnnotationVisitor visitParameterAnnotation(int parameter, String annotationDesc, boolean visible) {
+                    while (parameterAnnotations.size() <= parameter) {
+                        parameterAnnotations.add(new ArrayList<>(1));
+                    }
+                    RecordedAnnotation annotation = new RecordedAnnotation(annotationDesc);
+                    parameterAnnotations.get(parameter).add(annotation);
+                    return annotation;
+                }
+
+                @Override
+                public void visitEnd() {
+                    methods.add(createMember(access, name, desc, null, annotations, parameterAnnotations));
+                }
+            };
+        }
+
+        @NotNull
+        private Member createMember(
+                int access,
+                @NotNull String name,
+                @NotNull String desc,
+                @Nullable Object value,
+                @NotNull List<RecordedAnnotation> annotations,
+                @Nullable List<List<RecordedAnnotation>> parameterAnnotations
+        ) {
+            RecordedAnnotation[][] parameters = new RecordedAnnotation[parameterAnnotations == null ? 0 : parameterAnnotations.size()][];
+            for (int i = 0; i < parameters.length; i++) {
+                parameters[i] = toArray(parameterAnnotations.get(i));
+            }
+
+            estimatedSizeBytes += OBJECT_SIZE_BYTES + sizeOf(name) + sizeOf(desc) + sizeOf(value) +
+                                  sizeOfAll(annotations);
+            if (parameterAnnotations != null) {
+                for (List<RecordedAnnotation> annotationsOfParameter : parameterAnnotations) {
+                    estimatedSizeBytes += sizeOfAll(annotationsOfParameter);
+                }
+            }
+
+            return new Member(access, name, desc, value, toArray(annotations), parameters);
+        }
+
+        @NotNull
+        BinaryClassStructure build() {
+            estimatedSizeBytes += sizeOfAll(classAnnotations);
+            return new BinaryClassStructure(
+                    toArray(classAnnotations),
+                    fields.isEmpty() ? NO_MEMBERS : fields.toArray(new Member[fields.size()]),
+                    methods.isEmpty() ? NO_MEMBERS : methods.toArray(new Member[methods.size()]),
+                    estimatedSizeBytes
+            );
+        }
+
+        @NotNull
+        private static RecordedAnnotation[] toArray(@NotNull List<RecordedAnnotation> annotations) {
+            return annotations.isEmpty() ? NO_ANNOTATIONS : annotations.toArray(new RecordedAnnotation[annotations.size()]);
+        }
+
+        private static long sizeOfAll(@NotNull List<RecordedAnnotation> annotations) {
+            long size = 0;
+            for (RecordedAnnotation annotation : annotations) {
+                size += annotation.sizeBytes();
+            }
+            return size;
+        }
+    }
+
+    private static long sizeOf(@Nullable Object value) {
+        if (value == null) return 0;
+        if (value instanceof String) return OBJECT_SIZE_BYTES + 2L * ((String) value).length();
+        if (value instanceof Object[]) {
+            long size = OBJECT_SIZE_BYTES;
+            for (Object element : (Object[]) value) {
+                size += 8 + sizeOf(element);
+            }
+            return size;
+        }
+        if (value instanceof int[]) return OBJECT_SIZE_BYTES + 4L * ((int[]) value).length;
+        if (value instanceof EnumValue) return OBJECT_SIZE_BYTES + sizeOf(((EnumValue) value).desc) + sizeOf(((EnumValue) value).value);
+        return OBJECT_SIZE_BYTES;
+    }
+}
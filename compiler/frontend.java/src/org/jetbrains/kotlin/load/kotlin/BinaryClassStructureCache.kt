@@ -0,0 +1,101 @@
+/*
+ * Copyright 2010-2015 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.load.kotlin
+
+import com.intellij.openapi.vfs.VirtualFile
+import com.intellij.util.io.URLUtil
+import org.jetbrains.kotlin.util.PerformanceCounter
+import java.io.File
+import java.util.*
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * [BinaryClassStructure]s of Kotlin classes, shared by all compilations which use the same application environment
+ * (e.g. all compilations in one daemon), so that annotations and constants of library classes are loaded without reading class files.
+ *
+ * A structure is keyed by the path of its class file and a stamp: the size and modification time of the containing jar,
+ * or of the class file itself if it's not in a jar. So a rebuilt library or output directory is never served from the cache.
+ * Least recently used structures are evicted once their estimated size exceeds [maxSizeBytes].
+ */
+class BinaryClassStructureCache @JvmOverloads constructor(private val maxSizeBytes: Long = DEFAULT_MAX_SIZE_BYTES) {
+    private data class Key(val path: String, val length: Long, val lastModified: Long)
+
+    // access-ordered, i.e. iteration starts from the least recently used structure
+    private val structures = LinkedHashMap<Key, BinaryClassStructure>(16, 0.75f, true)
+    private var sizeBytes = 0L
+
+    private val hitCount = AtomicLong()
+    private val missCount = AtomicLong()
+
+    val hits: Long get() = hitCount.get()
+
+    val misses: Long get() = missCount.get()
+
+    fun getOrPut(file: VirtualFile, compute: () -> BinaryClassStructure): BinaryClassStructure {
+        val key = file.toKey() ?: return compute()
+
+        synchronized(structures) { structures[key] }?.let {
+            hitCount.incrementAndGet()
+            HIT_COUNTER.increment()
+            return it
+        }
+
+        missCount.incrementAndGet()
+        return MISS_COUNTER.time { compute() }.also { put(key, it) }
+    }
+
+    fun put(file: VirtualFile, structure: BinaryClassStructure) {
+        put(file.toKey() ?: return, structure)
+    }
+
+    fun clear() {
+        synchronized(structures) {
+            structures.clear()
+            sizeBytes = 0
+        }
+    }
+
+    private fun put(key: Key, structure: BinaryClassStructure) {
+        if (structure.estimatedSizeBytes > maxSizeBytes) return
+
+        synchronized(structures) {
+            structures.put(key, structure)?.let { sizeBytes -= it.estimatedSizeBytes }
+            sizeBytes += structure.estimatedSizeBytes
+
+            val iterator = structures.values.iterator()
+            while (sizeBytes > maxSizeBytes && iterator.hasNext()) {
+                sizeBytes -= iterator.next().estimatedSizeBytes
+                iterator.remove()
+            }
+        }
+    }
+
+    private fun VirtualFile.toKey(): Key? {
+        val separator = path.indexOf(URLUtil.JAR_SEPARATOR)
+        val file = File(if (separator < 0) path else path.substring(0, separator))
+        if (!file.isFile) return null
+
+        return Key(path, file.length(), file.lastModified())
+    }
+
+    companion object {
+        const val DEFAULT_MAX_SIZE_BYTES = 64L * 1024 * 1024
+
+        private val HIT_COUNTER = PerformanceCounter.create("Binary class structure cache hit")
+        private val MISS_COUNTER = PerformanceCounter.create("Binary class structure cache miss")
+    }
+}
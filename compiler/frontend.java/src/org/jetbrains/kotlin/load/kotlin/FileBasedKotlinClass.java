@@ -89,11 +89,23 @@ public abstract class FileBasedKotlinClass implements KotlinJvmBinaryClass {
             @NotNull byte[] fileContents,
             @NotNull Function4<ClassId, Integer, KotlinClassHeader, InnerClassesInfo, T> factory
     ) {
-        ReadKotlinClassHeaderAnnotationVisitor readHeaderVisitor = new ReadKotlinClassHeaderAnnotationVisitor();
+        return create(fileContents, null, factory);
+    }
+
+    /**
+     * If {@code structure} is not null, it receives the structure of the created class, which is read in the same pass as the header.
+     */
+    @Nullable
+    public static <T extends FileBasedKotlinClass> T create(
+            @NotNull byte[] fileContents,
+            @Nullable Ref<BinaryClassStructure> structure,
+            @NotNull Function4<ClassId, Integer, KotlinClassHeader, InnerClassesInfo, T> factory
+    ) {
         Ref<String> classNameRef = Ref.create();
         Ref<Integer> classVersion = Ref.create();
         InnerClassesInfo innerClasses = new InnerClassesInfo();
-        new ClassReader(fileContents).accept(new ClassVisitor(ASM5) {
+        BinaryClassStructure.Builder structureBuilder = new BinaryClassStructure.Builder(structure != null);
+        new ClassReader(fileContents).accept(new ClassVisitor(ASM5, structureBuilder) {
             @Override
             public void visit(int version, int access, @NotNull String name, String signature, String superName, String[] interfaces) {
                 classNameRef.set(name);
@@ -104,24 +116,22 @@ public abstract class FileBasedKotlinClass implements KotlinJvmBinaryClass {
             public void visitInnerClass(@NotNull String name, String outerName, String innerName, int access) {
                 innerClasses.add(name, outerName, innerName);
             }
-
-            @Override
-            public org.jetbrains.org.objectweb.asm.AnnotationVisitor visitAnnotation(@NotNull String desc, boolean visible) {
-                return convertAnnotationVisitor(readHeaderVisitor, desc, innerClasses);
-            }
-
-            @Override
-            public void visitEnd() {
-                readHeaderVisitor.visitEnd();
-            }
         }, SKIP_CODE | SKIP_DEBUG | SKIP_FRAMES);
 
         String className = classNameRef.get();
         if (className == null) return null;
 
+        BinaryClassStructure classStructure = structureBuilder.build();
+        ReadKotlinClassHeaderAnnotationVisitor readHeaderVisitor = new ReadKotlinClassHeaderAnnotationVisitor();
+        loadClassAnnotations(classStructure, readHeaderVisitor, innerClasses);
+
         KotlinClassHeader header = readHeaderVisitor.createHeader();
         if (header == null) return null;
 
+        if (structure != null) {
+            structure.set(classStructure);
+        }
+
         ClassId id = resolveNameByInternalName(className, innerClasses);
         return factory.invoke(id, classVersion.get(), header, innerClasses);
     }
@@ -142,10 +152,25 @@ public abstract class FileBasedKotlinClass implements KotlinJvmBinaryClass {
         return classHeader;
     }
 
+    /**
+     * Structure of this class, which is the only thing needed to load its annotations and members.
+     * It's read from {@code cachedContents} if they're given, or from the file contents otherwise.
+     * Subclasses may cache structures to avoid reading the file again.
+     */
+    @NotNull
+    protected BinaryClassStructure getStructure(@Nullable byte[] cachedContents) {
+        return BinaryClassStructure.read(cachedContents != null ? cachedContents : getFileContents());
+    }
+
     @Override
     public void loadClassAnnotations(@NotNull AnnotationVisitor annotationVisitor, @Nullable byte[] cachedContents) {
-        byte[] fileContents = cachedContents != null ? cachedContents : getFileContents();
-        new ClassReader(fileContents).accept(new ClassVisitor(ASM5) {
+        loadClassAnnotations(getStructure(cachedContents), annotationVisitor, innerClasses);
+    }
+
+    private static void loadClassAnnotations(
+            @NotNull BinaryClassStructure structure, @NotNull AnnotationVisitor annotationVisitor, @NotNull InnerClassesInfo innerClasses
+    ) {
+        structure.accept(new ClassVisitor(ASM5) {
             @Override
             public org.jetbrains.org.objectweb.asm.AnnotationVisitor visitAnnotation(@NotNull String desc, boolean visible) {
                 return convertAnnotationVisitor(annotationVisitor, desc, innerClasses);
@@ -155,7 +180,7 @@ public abstract class FileBasedKotlinClass implements KotlinJvmBinaryClass {
             public void visitEnd() {
                 annotationVisitor.visitEnd();
             }
-        }, SKIP_CODE | SKIP_DEBUG | SKIP_FRAMES);
+        });
     }
 
     @Nullable
@@ -217,8 +242,7 @@ public abstract class FileBasedKotlinClass implements KotlinJvmBinaryClass {
 
     @Override
     public void visitMembers(@NotNull MemberVisitor memberVisitor, @Nullable byte[] cachedContents) {
-        byte[] fileContents = cachedContents != null ? cachedContents : getFileContents();
-        new ClassReader(fileContents).accept(new ClassVisitor(ASM5) {
+        getStructure(cachedContents).accept(new ClassVisitor(ASM5) {
             @Override
             public FieldVisitor visitField(int access, @NotNull String name, @NotNull String desc, String signature, Object value) {
                 AnnotationVisitor v = memberVisitor.visitField(Name.identifier(name), desc, value);
@@ -260,7 +284,7 @@ public abstract class FileBasedKotlinClass implements KotlinJvmBinaryClass {
                     }
                 };
             }
-        }, SKIP_CODE | SKIP_DEBUG | SKIP_FRAMES);
+        });
     }
 
     @NotNull
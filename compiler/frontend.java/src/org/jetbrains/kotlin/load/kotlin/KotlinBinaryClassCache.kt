@@ -39,6 +39,9 @@ class KotlinBinaryClassCache : Disposable {
         }
     }
 
+    // The application environment is kept between compilations in the daemon, so structures of library classes are reused
+    private val structureCache = BinaryClassStructureCache()
+
     private val cache = object : ThreadLocal<RequestCache>() {
         override fun initialValue(): RequestCache {
             return RequestCache()
@@ -67,7 +70,7 @@ class KotlinBinaryClassCache : Disposable {
 
             val aClass = ApplicationManager.getApplication().runReadAction(Computable {
                 @Suppress("DEPRECATION")
-                VirtualFileKotlinClass.create(file, fileContent)
+                VirtualFileKotlinClass.create(file, fileContent, service.structureCache)
             })
 
             return requestCache.cache(file, aClass)
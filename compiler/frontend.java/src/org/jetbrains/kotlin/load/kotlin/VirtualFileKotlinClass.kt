@@ -18,6 +18,7 @@ package org.jetbrains.kotlin.load.kotlin
 
 import com.intellij.ide.highlighter.JavaClassFileType
 import com.intellij.openapi.diagnostic.Logger
+import com.intellij.openapi.util.Ref
 import com.intellij.openapi.vfs.VirtualFile
 import org.jetbrains.kotlin.load.kotlin.header.KotlinClassHeader
 import org.jetbrains.kotlin.name.ClassId
@@ -31,7 +32,8 @@ class VirtualFileKotlinClass private constructor(
         className: ClassId,
         classVersion: Int,
         classHeader: KotlinClassHeader,
-        innerClasses: InnerClassesInfo
+        innerClasses: InnerClassesInfo,
+        private val structureCache: BinaryClassStructureCache?
 ) : FileBasedKotlinClass(className, classVersion, classHeader, innerClasses) {
 
     override val location: String
@@ -47,6 +49,12 @@ class VirtualFileKotlinClass private constructor(
         }
     }
 
+    override fun getStructure(cachedContents: ByteArray?): BinaryClassStructure {
+        if (cachedContents != null || structureCache == null) return super.getStructure(cachedContents)
+
+        return structureCache.getOrPut(file) { super.getStructure(null) }
+    }
+
     override fun equals(other: Any?) = other is VirtualFileKotlinClass && other.file == file
     override fun hashCode() = file.hashCode()
     override fun toString() = "${this::class.java.simpleName}: $file"
@@ -56,16 +64,20 @@ class VirtualFileKotlinClass private constructor(
         private val perfCounter = PerformanceCounter.create("Binary class from Kotlin file")
 
         @Deprecated("Use KotlinBinaryClassCache")
-        fun create(file: VirtualFile, fileContent: ByteArray?): VirtualFileKotlinClass? {
+        fun create(file: VirtualFile, fileContent: ByteArray?, structureCache: BinaryClassStructureCache? = null): VirtualFileKotlinClass? {
             return perfCounter.time {
                 assert(file.fileType == JavaClassFileType.INSTANCE) { "Trying to read binary data from a non-class file $file" }
 
                 try {
                     val byteContent = fileContent ?: file.contentsToByteArray(false)
                     if (!byteContent.isEmpty()) {
-                        return@time FileBasedKotlinClass.create(byteContent) {
+                        val structure = if (structureCache != null) Ref.create<BinaryClassStructure>() else null
+                        return@time FileBasedKotlinClass.create(byteContent, structure) {
                             name, classVersion, header, innerClasses ->
-                            VirtualFileKotlinClass(file, name, classVersion, header, innerClasses)
+                            VirtualFileKotlinClass(file, name, classVersion, header, innerClasses, structureCache)
+                        }?.also {
+                            // The structure is read along with the header, so that loading annotations won't read the file again
+                            structure?.get()?.let { structureCache?.put(file, it) }
                         }
                     }
                 }
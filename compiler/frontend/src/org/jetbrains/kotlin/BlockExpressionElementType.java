@@ -0,0 +1,90 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin;
+
+import com.intellij.lang.ASTNode;
+import com.intellij.lang.Language;
+import com.intellij.lang.PsiBuilder;
+import com.intellij.lang.PsiBuilderFactory;
+import com.intellij.openapi.project.Project;
+import com.intellij.psi.impl.source.tree.CompositeElement;
+import com.intellij.psi.impl.source.tree.LazyParseableElement;
+import com.intellij.psi.tree.ICompositeElementType;
+import com.intellij.psi.tree.IElementType;
+import com.intellij.psi.tree.IErrorCounterReparseableElementType;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.kotlin.idea.KotlinLanguage;
+import org.jetbrains.kotlin.parsing.KotlinParser;
+import org.jetbrains.kotlin.psi.stubs.elements.KtStubElementTypes;
+
+/**
+ * In batch mode (see {@link KotlinParser#LAZY_DECLARATION_BODIES}), bodies of functions, property accessors, initializers
+ * and secondary constructors are collapsed by the parser and parsed on the first access to their children.
+ * Other blocks, e.g. in try expressions, and all blocks in the IDE are parsed eagerly.
+ *
+ * Only a collapsed body is a {@link LazyParseableElement}, blocks built by the parser are plain composite elements as before.
+ * The psi of both is {@link org.jetbrains.kotlin.psi.KtBlockExpression} created by {@link org.jetbrains.kotlin.parsing.KotlinParserDefinition}.
+ */
+class BlockExpressionElementType extends IErrorCounterReparseableElementType implements ICompositeElementType {
+    public BlockExpressionElementType() {
+        super("BLOCK", KotlinLanguage.INSTANCE);
+    }
+
+    @Override
+    public ASTNode parseContents(ASTNode chameleon) {
+        Project project = chameleon.getPsi().getProject();
+        PsiBuilder builder = PsiBuilderFactory.getInstance().createBuilder(
+                project, chameleon, null, KotlinLanguage.INSTANCE, chameleon.getChars());
+        // Bodies are only collapsed in batch mode, so bodies of local declarations are lazy as well
+        builder.putUserData(KotlinParser.LAZY_DECLARATION_BODIES, true);
+        return KotlinParser.parseBlockExpression(builder).getFirstChildNode();
+    }
+
+    @Override
+    public ASTNode createNode(CharSequence text) {
+        return new LazyParseableElement(this, text);
+    }
+
+    @NotNull
+    @Override
+    public ASTNode createCompositeNode() {
+        return new CompositeElement(this);
+    }
+
+    @Override
+    public boolean isParsable(@Nullable ASTNode parent, CharSequence buffer, Language fileLanguage, Project project) {
+        return Boolean.TRUE.equals(project.getUserData(KotlinParser.LAZY_DECLARATION_BODIES)) &&
+               isLazyBlockParent(parent) && super.isParsable(parent, buffer, fileLanguage, project);
+    }
+
+    // Blocks in other places may turn into lambdas after modification, e.g. '{ a -> b }' in an 'if' branch
+    private static boolean isLazyBlockParent(@Nullable ASTNode parent) {
+        if (parent == null) return false;
+
+        IElementType type = parent.getElementType();
+        return type == KtStubElementTypes.FUNCTION ||
+               type == KtStubElementTypes.PROPERTY_ACCESSOR ||
+               type == KtStubElementTypes.CLASS_INITIALIZER ||
+               type == KtStubElementTypes.SECONDARY_CONSTRUCTOR;
+    }
+
+    @Override
+    public int getErrorsCount(CharSequence seq, Language fileLanguage, Project project) {
+        return ElementTypeUtils.getBlockImbalanceCount(seq);
+    }
+}
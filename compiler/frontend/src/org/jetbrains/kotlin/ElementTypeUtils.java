@@ -0,0 +1,56 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin;
+
+import com.intellij.lexer.Lexer;
+import com.intellij.psi.tree.IElementType;
+import com.intellij.psi.tree.IErrorCounterReparseableElementType;
+import org.jetbrains.kotlin.lexer.KotlinLexer;
+import org.jetbrains.kotlin.lexer.KtTokens;
+
+class ElementTypeUtils {
+    private ElementTypeUtils() {
+    }
+
+    /**
+     * Returns the number of unclosed braces in the text of a lazy block or lambda,
+     * or {@link IErrorCounterReparseableElementType#FATAL_ERROR} if the text is not a single '{ ... }' block.
+     */
+    static int getBlockImbalanceCount(CharSequence seq) {
+        Lexer lexer = new KotlinLexer();
+
+        lexer.start(seq);
+        if (lexer.getTokenType() != KtTokens.LBRACE) return IErrorCounterReparseableElementType.FATAL_ERROR;
+        lexer.advance();
+        int balance = 1;
+        while (true) {
+            IElementType type = lexer.getTokenType();
+            if (type == null) break;
+            if (balance == 0) {
+                return IErrorCounterReparseableElementType.FATAL_ERROR;
+            }
+            if (type == KtTokens.LBRACE) {
+                balance++;
+            }
+            else if (type == KtTokens.RBRACE) {
+                balance--;
+            }
+            lexer.advance();
+        }
+        return balance;
+    }
+}
@@ -33,6 +33,15 @@ object CommonConfigurationKeys {
 
     @JvmField
     val LOOKUP_TRACKER = CompilerConfigurationKey.create<LookupTracker>("lookup tracker")
+
+    @JvmField
+    val USE_PER_KEY_LOCKS_IN_RESOLVE = CompilerConfigurationKey.create<Boolean>("use per-key locks instead of a global lock in lazy resolve")
+
+    @JvmField
+    val BODY_RESOLVE_THREADS = CompilerConfigurationKey.create<Int>("number of threads used to resolve function bodies")
+
+    @JvmField
+    val COMPACT_BINDING_CONTEXT = CompilerConfigurationKey.create<Boolean>("store the largest slices of the binding context in per-slice maps")
 }
 
 var CompilerConfiguration.languageVersionSettings: LanguageVersionSettings
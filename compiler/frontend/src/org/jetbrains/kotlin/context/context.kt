@@ -25,6 +25,7 @@ import org.jetbrains.kotlin.name.Name
 import org.jetbrains.kotlin.resolve.MultiTargetPlatform
 import org.jetbrains.kotlin.storage.ExceptionTracker
 import org.jetbrains.kotlin.storage.LockBasedStorageManager
+import org.jetbrains.kotlin.storage.PerKeyLockStorageManager
 import org.jetbrains.kotlin.storage.StorageManager
 
 interface GlobalContext {
@@ -88,6 +89,15 @@ fun GlobalContext(): GlobalContextImpl {
     return GlobalContextImpl(LockBasedStorageManager.createWithExceptionHandling(tracker), tracker)
 }
 
+/**
+ * Creates a context whose lazy values and memoized functions are guarded by per-key locks instead of one global lock,
+ * which allows resolving unrelated declarations in several threads concurrently
+ */
+fun GlobalContextWithPerKeyLocks(): GlobalContext {
+    val tracker = ExceptionTracker()
+    return SimpleGlobalContext(PerKeyLockStorageManager(tracker), tracker)
+}
+
 fun ProjectContext(project: Project): ProjectContext = ProjectContextImpl(project, GlobalContext())
 fun ModuleContext(module: ModuleDescriptor, project: Project): ModuleContext =
         ModuleContextImpl(module, ProjectContext(project))
@@ -20,17 +20,26 @@ import com.intellij.lang.ASTNode;
 import com.intellij.lang.PsiBuilder;
 import com.intellij.lang.PsiParser;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Key;
 import com.intellij.psi.PsiFile;
 import com.intellij.psi.tree.IElementType;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.kotlin.script.KotlinScriptDefinitionProvider;
 
 public class KotlinParser implements PsiParser {
+    /**
+     * If set to true for a project, bodies of declarations are parsed lazily, see {@link org.jetbrains.kotlin.BlockExpressionElementType}.
+     * It's set by {@code KotlinCoreEnvironment}, i.e. in the batch compiler and in compiler tests;
+     * the IDE reparses bodies incrementally instead.
+     */
+    public static final Key<Boolean> LAZY_DECLARATION_BODIES = Key.create("LAZY_DECLARATION_BODIES");
 
     private final KotlinScriptDefinitionProvider scriptDefinitionProvider;
+    private final boolean lazyDeclarationBodies;
 
     public KotlinParser(Project project) {
         scriptDefinitionProvider = KotlinScriptDefinitionProvider.getInstance(project);
+        lazyDeclarationBodies = Boolean.TRUE.equals(project.getUserData(LAZY_DECLARATION_BODIES));
     }
 
     @Override
@@ -42,6 +51,9 @@ public class KotlinParser implements PsiParser {
     // we need this method because we need psiFile
     @NotNull
     public ASTNode parse(IElementType iElementType, PsiBuilder psiBuilder, PsiFile psiFile) {
+        if (lazyDeclarationBodies) {
+            psiBuilder.putUserData(LAZY_DECLARATION_BODIES, true);
+        }
         KotlinParsing ktParsing = KotlinParsing.createForTopLevel(new SemanticWhitespaceAwarePsiBuilderImpl(psiBuilder));
         if (scriptDefinitionProvider != null && scriptDefinitionProvider.isScript(psiFile.getName())
             || psiFile.getName().endsWith(KotlinParserDefinition.STD_SCRIPT_EXT)) {
@@ -80,4 +92,11 @@ public class KotlinParser implements PsiParser {
         ktParsing.parseLambdaExpression();
         return psiBuilder.getTreeBuilt();
     }
+
+    @NotNull
+    public static ASTNode parseBlockExpression(PsiBuilder psiBuilder) {
+        KotlinParsing ktParsing = KotlinParsing.createForTopLevel(new SemanticWhitespaceAwarePsiBuilderImpl(psiBuilder));
+        ktParsing.parseBlockExpression();
+        return psiBuilder.getTreeBuilt();
+    }
 }
@@ -162,6 +162,10 @@ public class KotlinParsing extends AbstractKotlinParsing {
         myExpressionParsing.parseFunctionLiteral(/* preferBlock = */ false, /* collapse = */false);
     }
 
+    void parseBlockExpression() {
+        parseBlock(/* collapse = */ false);
+    }
+
     void parseScript() {
         PsiBuilder.Marker fileMarker = mark();
 
@@ -1116,7 +1120,7 @@ public class KotlinParsing extends AbstractKotlinParsing {
         else if (at(INIT_KEYWORD)) {
             advance(); // init
             if (at(LBRACE)) {
-                parseBlock();
+                parseBlock(/* collapse = */ true);
             }
             else {
                 mark().error("Expecting '{' after 'init'");
@@ -1193,7 +1197,7 @@ public class KotlinParsing extends AbstractKotlinParsing {
         }
 
         if (at(LBRACE)) {
-            parseBlock();
+            parseBlock(/* collapse = */ true);
         }
     }
 
@@ -1691,7 +1695,7 @@ public class KotlinParsing extends AbstractKotlinParsing {
      */
     private void parseFunctionBody() {
         if (at(LBRACE)) {
-            parseBlock();
+            parseBlock(/* collapse = */ true);
         }
         else if (at(EQ)) {
             advance(); // EQ
@@ -1709,6 +1713,19 @@ public class KotlinParsing extends AbstractKotlinParsing {
      *   ;
      */
     void parseBlock() {
+        parseBlock(/* collapse = */ false);
+    }
+
+    /*
+     * If collapse is true and lazy bodies are enabled, a block with balanced braces is not parsed until its contents are accessed,
+     * see BlockExpressionElementType
+     */
+    private void parseBlock(boolean collapse) {
+        if (collapse && at(LBRACE) && Boolean.TRUE.equals(myBuilder.getUserData(KotlinParser.LAZY_DECLARATION_BODIES)) &&
+            parseLazyBlock()) {
+            return;
+        }
+
         PsiBuilder.Marker block = mark();
 
         myBuilder.enableNewlines();
@@ -1722,6 +1739,32 @@ public class KotlinParsing extends AbstractKotlinParsing {
         block.done(BLOCK);
     }
 
+    private boolean parseLazyBlock() {
+        PsiBuilder.Marker block = mark();
+
+        advance(); // LBRACE
+        int braceCount = 1;
+        while (!eof() && braceCount > 0) {
+            if (_at(LBRACE)) {
+                braceCount++;
+            }
+            else if (_at(RBRACE)) {
+                braceCount--;
+            }
+
+            advance();
+        }
+
+        // An unclosed block is parsed eagerly, so that error recovery doesn't depend on laziness
+        if (braceCount > 0) {
+            block.rollbackTo();
+            return false;
+        }
+
+        block.collapse(BLOCK);
+        return true;
+    }
+
     /*
      * delegationSpecifier{","}
      */
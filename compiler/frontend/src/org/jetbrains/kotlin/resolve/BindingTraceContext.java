@@ -16,6 +16,7 @@
 
 package org.jetbrains.kotlin.resolve;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -30,12 +31,18 @@ import org.jetbrains.kotlin.types.expressions.typeInfoFactory.TypeInfoFactoryKt;
 import org.jetbrains.kotlin.util.slicedMap.*;
 
 import java.util.Collection;
+import java.util.List;
 
 public class BindingTraceContext implements BindingTrace {
     // These flags are used for debugging of "Rewrite at slice..." exceptions
     /* package */ final static boolean TRACK_REWRITES = false;
     /* package */ final static boolean TRACK_WITH_STACK_TRACES = true;
 
+    // The largest slices, which are stored in separate per-slice maps if compactHotSlices is enabled, see CompactSlicedMap
+    public final static List<WritableSlice<?, ?>> HOT_SLICES = ImmutableList.of(
+            BindingContext.EXPRESSION_TYPE_INFO, BindingContext.REFERENCE_TARGET, BindingContext.RESOLVED_CALL, BindingContext.CALL
+    );
+
     private final MutableSlicedMap map;
     @Nullable private final MutableDiagnosticsWithSuppression mutableDiagnostics;
     @NotNull private final BindingTraceFilter filter;
@@ -87,8 +94,20 @@ public class BindingTraceContext implements BindingTrace {
     }
 
     public BindingTraceContext(BindingTraceFilter filter, boolean allowSliceRewrite) {
+        this(filter, allowSliceRewrite, false);
+    }
+
+    public BindingTraceContext(BindingTraceFilter filter, boolean allowSliceRewrite, boolean compactHotSlices) {
+        this(createMap(allowSliceRewrite, compactHotSlices), filter);
+    }
+
+    @NotNull
+    private static MutableSlicedMap createMap(boolean allowSliceRewrite, boolean compactHotSlices) {
         //noinspection ConstantConditions
-        this(TRACK_REWRITES && !allowSliceRewrite ? new TrackingSlicedMap(TRACK_WITH_STACK_TRACES) : new SlicedMapImpl(allowSliceRewrite), filter);
+        if (TRACK_REWRITES && !allowSliceRewrite) {
+            return new TrackingSlicedMap(TRACK_WITH_STACK_TRACES);
+        }
+        return compactHotSlices ? new CompactSlicedMap(allowSliceRewrite, HOT_SLICES) : new SlicedMapImpl(allowSliceRewrite);
     }
 
 
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.resolve
+
+import org.jetbrains.kotlin.container.DefaultImplementation
+
+/**
+ * Number of threads [BodyResolver] may use to resolve bodies of top-level and member functions.
+ * Only functions whose return type doesn't depend on their body are resolved in parallel, the rest are resolved sequentially beforehand.
+ */
+@DefaultImplementation(BodyResolveParallelism.Sequential::class)
+interface BodyResolveParallelism {
+    val threadCount: Int
+
+    object Sequential : BodyResolveParallelism {
+        override val threadCount: Int
+            get() = 1
+    }
+
+    class Fixed(override val threadCount: Int) : BodyResolveParallelism {
+        init {
+            assert(threadCount > 0) { "Thread count should be positive: $threadCount" }
+        }
+    }
+}
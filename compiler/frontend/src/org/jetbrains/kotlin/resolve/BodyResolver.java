@@ -43,6 +43,8 @@ import org.jetbrains.kotlin.resolve.calls.util.CallMaker;
 import org.jetbrains.kotlin.resolve.descriptorUtil.DescriptorUtilsKt;
 import org.jetbrains.kotlin.resolve.lazy.ForceResolveUtil;
 import org.jetbrains.kotlin.resolve.scopes.*;
+import org.jetbrains.kotlin.storage.LockBasedLazyResolveStorageManager;
+import org.jetbrains.kotlin.storage.StorageManager;
 import org.jetbrains.kotlin.types.*;
 import org.jetbrains.kotlin.types.expressions.ExpressionTypingServices;
 import org.jetbrains.kotlin.types.expressions.PreliminaryDeclarationVisitor;
@@ -50,8 +52,11 @@ import org.jetbrains.kotlin.types.expressions.ValueParameterResolver;
 import org.jetbrains.kotlin.types.expressions.typeInfoFactory.TypeInfoFactoryKt;
 import org.jetbrains.kotlin.util.Box;
 import org.jetbrains.kotlin.util.ReenteringLazyValueComputationException;
+import org.jetbrains.kotlin.utils.ParallelUtils;
 
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import static org.jetbrains.kotlin.config.LanguageFeature.TopLevelSealedInheritance;
 import static org.jetbrains.kotlin.diagnostics.Errors.*;
@@ -75,6 +80,8 @@ public class BodyResolver {
     @NotNull private final KotlinBuiltIns builtIns;
     @NotNull private final OverloadChecker overloadChecker;
     @NotNull private final LanguageVersionSettings languageVersionSettings;
+    @NotNull private final StorageManager storageManager;
+    @NotNull private final BodyResolveParallelism bodyResolveParallelism;
 
     public BodyResolver(
             @NotNull Project project,
@@ -91,7 +98,9 @@ public class BodyResolver {
             @NotNull AnnotationChecker annotationChecker,
             @NotNull KotlinBuiltIns builtIns,
             @NotNull OverloadChecker overloadChecker,
-            @NotNull LanguageVersionSettings languageVersionSettings
+            @NotNull LanguageVersionSettings languageVersionSettings,
+            @NotNull StorageManager storageManager,
+            @NotNull BodyResolveParallelism bodyResolveParallelism
     ) {
         this.project = project;
         this.annotationResolver = annotationResolver;
@@ -108,6 +117,8 @@ public class BodyResolver {
         this.valueParameterResolver = valueParameterResolver;
         this.builtIns = builtIns;
         this.languageVersionSettings = languageVersionSettings;
+        this.storageManager = storageManager;
+        this.bodyResolveParallelism = bodyResolveParallelism;
     }
 
     private void resolveBehaviorDeclarationBodies(@NotNull BodiesResolveContext c) {
@@ -829,6 +840,9 @@ public class BodyResolver {
     }
 
     private void resolveFunctionBodies(@NotNull BodiesResolveContext c) {
+        boolean parallel = bodyResolveParallelism.getThreadCount() > 1 && !c.getTopDownAnalysisMode().isLocalDeclarations();
+        List<KtNamedFunction> independentFunctions = new ArrayList<>();
+
         for (Map.Entry<KtNamedFunction, SimpleFunctionDescriptor> entry : c.getFunctions().entrySet()) {
             KtNamedFunction declaration = entry.getKey();
 
@@ -839,10 +853,52 @@ public class BodyResolver {
                 expressionTypingServices.getStatementFilter() != StatementFilter.NONE) {
                 bodyResolveCache.resolveFunctionBody(declaration).addOwnDataTo(trace, true);
             }
+            else if (parallel && !(entry.getValue().getReturnType() instanceof DeferredType)) {
+                independentFunctions.add(declaration);
+            }
             else {
                 resolveFunctionBody(c.getOuterDataFlowInfo(), trace, declaration, entry.getValue(), scope);
             }
         }
+
+        if (!independentFunctions.isEmpty()) {
+            resolveFunctionBodiesInParallel(c, independentFunctions);
+        }
+    }
+
+    // Functions with an inferred return type are resolved sequentially before this, so the bodies resolved here can only depend on
+    // the signatures of other declarations. Each body is resolved into its own trace which is merged in the declaration order,
+    // so the resulting binding context and diagnostics don't depend on the scheduling
+    private void resolveFunctionBodiesInParallel(@NotNull BodiesResolveContext c, @NotNull List<KtNamedFunction> functions) {
+        BindingContext parentContext = new LockBasedLazyResolveStorageManager(storageManager).createSafeTrace(trace).getBindingContext();
+
+        ExecutorService executor = ParallelUtils.newDaemonThreadPool(
+                Math.min(bodyResolveParallelism.getThreadCount(), functions.size()), "Kotlin body resolve");
+        try {
+            List<Future<DelegatingBindingTrace>> results = new ArrayList<>(functions.size());
+            for (KtNamedFunction declaration : functions) {
+                results.add(executor.submit(() -> {
+                    DelegatingBindingTrace functionTrace = new DelegatingBindingTrace(
+                            parentContext, "Trace for resolving body of " + declaration.getName(), false,
+                            BindingTraceFilter.Companion.getACCEPT_ALL(), false);
+                    resolveFunctionBody(c.getOuterDataFlowInfo(), functionTrace, declaration, c.getFunctions().get(declaration),
+                                        c.getDeclaringScope(declaration));
+                    return functionTrace;
+                }));
+            }
+
+            // The main trace is read by the workers, so nothing is merged into it until all of them are finished
+            List<DelegatingBindingTrace> functionTraces = new ArrayList<>(results.size());
+            for (Future<DelegatingBindingTrace> result : results) {
+                functionTraces.add(ParallelUtils.await(result));
+            }
+            for (DelegatingBindingTrace functionTrace : functionTraces) {
+                functionTrace.addOwnDataTo(trace);
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
     }
 
     public void resolveFunctionBody(
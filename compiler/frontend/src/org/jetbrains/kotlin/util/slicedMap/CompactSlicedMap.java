@@ -0,0 +1,146 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.util.slicedMap;
+
+import com.google.common.collect.ImmutableMap;
+import com.intellij.openapi.util.Key;
+import gnu.trove.THashMap;
+import kotlin.jvm.functions.Function3;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A sliced map which stores values of a few hot slices in a separate open-addressing map per slice,
+ * instead of a {@link com.intellij.util.keyFMap.KeyFMap} per key which is copied on every put.
+ * Keys of other slices are stored as in {@link SlicedMapImpl}.
+ */
+public class CompactSlicedMap extends SlicedMapImpl {
+    private final boolean alwaysAllowRewrite;
+    private final WritableSlice<?, ?>[] hotSlices;
+    private final Key<?>[] hotSliceKeys;
+    // Allocated on first put, so that short-lived maps don't pay for the hot slices they don't use
+    private final Map<Object, Object>[] hotSliceValues;
+
+    @SuppressWarnings("unchecked")
+    public CompactSlicedMap(boolean alwaysAllowRewrite, @NotNull List<? extends WritableSlice<?, ?>> hotSlices) {
+        super(alwaysAllowRewrite);
+        this.alwaysAllowRewrite = alwaysAllowRewrite;
+        this.hotSlices = hotSlices.toArray(new WritableSlice<?, ?>[hotSlices.size()]);
+        this.hotSliceKeys = new Key<?>[hotSlices.size()];
+        this.hotSliceValues = new Map[hotSlices.size()];
+
+        for (int i = 0; i < hotSlices.size(); i++) {
+            WritableSlice<?, ?> slice = hotSlices.get(i);
+            assert !slice.isCollective() : "Collective slice can't be stored separately: " + slice;
+            hotSliceKeys[i] = slice.getKey();
+        }
+    }
+
+    private int hotSliceIndex(@NotNull ReadOnlySlice<?, ?> slice) {
+        Key<?> key = slice.getKey();
+        for (int i = 0; i < hotSliceKeys.length; i++) {
+            if (hotSliceKeys[i] == key) return i;
+        }
+        return -1;
+    }
+
+    @Override
+    public <K, V> void put(WritableSlice<K, V> slice, K key, V value) {
+        int index = hotSliceIndex(slice);
+        if (index < 0) {
+            super.put(slice, key, value);
+            return;
+        }
+
+        if (!slice.check(key, value)) {
+            return;
+        }
+
+        Map<Object, Object> values = hotSliceValues[index];
+        if (values == null) {
+            values = hotSliceValues[index] = new THashMap<>();
+        }
+
+        RewritePolicy rewritePolicy = slice.getRewritePolicy();
+        if (!alwaysAllowRewrite && rewritePolicy.rewriteProcessingNeeded(key)) {
+            //noinspection unchecked
+            V oldValue = (V) values.get(key);
+            if (oldValue != null) {
+                if (!rewritePolicy.processRewrite(slice, key, oldValue, value)) {
+                    return;
+                }
+            }
+        }
+
+        values.put(key, value);
+        slice.afterPut(this, key, value);
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        for (int i = 0; i < hotSliceValues.length; i++) {
+            hotSliceValues[i] = null;
+        }
+    }
+
+    @Override
+    public <K, V> V get(ReadOnlySlice<K, V> slice, K key) {
+        int index = hotSliceIndex(slice);
+        if (index < 0) {
+            return super.get(slice, key);
+        }
+
+        Map<Object, Object> values = hotSliceValues[index];
+        //noinspection unchecked
+        V value = values == null ? null : (V) values.get(key);
+
+        return slice.computeValue(this, key, value, value == null);
+    }
+
+    @Override
+    public void forEach(@NotNull Function3<WritableSlice, Object, Object, Void> f) {
+        super.forEach(f);
+
+        for (int i = 0; i < hotSliceKeys.length; i++) {
+            Map<Object, Object> values = hotSliceValues[i];
+            if (values == null) continue;
+
+            WritableSlice<?, ?> slice = hotSlices[i];
+            for (Map.Entry<Object, Object> entry : values.entrySet()) {
+                f.invoke(slice, entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    @NotNull
+    @Override
+    public <K, V> ImmutableMap<K, V> getSliceContents(@NotNull ReadOnlySlice<K, V> slice) {
+        int index = hotSliceIndex(slice);
+        if (index < 0) {
+            return super.getSliceContents(slice);
+        }
+
+        Map<Object, Object> values = hotSliceValues[index];
+        if (values == null) return ImmutableMap.of();
+
+        //noinspection unchecked
+        return ImmutableMap.copyOf((Map<K, V>) values);
+    }
+}
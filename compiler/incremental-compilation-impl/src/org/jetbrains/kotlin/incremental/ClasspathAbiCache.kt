@@ -0,0 +1,29 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.incremental
+
+import org.jetbrains.kotlin.incremental.snapshots.ClasspathAbiSnapshotMap
+import org.jetbrains.kotlin.incremental.storage.BasicMapsOwner
+import java.io.File
+
+class ClasspathAbiCache(workingDir: File) : BasicMapsOwner(workingDir) {
+    companion object {
+        private val CLASSPATH_ABI_SNAPSHOTS = "classpath-abi-snapshot"
+    }
+
+    val snapshotMap = registerMap(ClasspathAbiSnapshotMap(CLASSPATH_ABI_SNAPSHOTS.storageFile))
+}
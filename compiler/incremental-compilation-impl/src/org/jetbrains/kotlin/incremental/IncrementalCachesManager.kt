@@ -75,6 +75,9 @@ class IncrementalJvmCachesManager(
 
     private val jvmCacheDir = File(cacheDirectory, "jvm").apply { mkdirs() }
     override val platformCache = IncrementalJvmCache(jvmCacheDir, outputDir).apply { registerCache() }
+
+    private val classpathCacheDir = File(cacheDirectory, "classpath").apply { mkdirs() }
+    val classpathAbiCache = ClasspathAbiCache(classpathCacheDir).apply { registerCache() }
 }
 
 class IncrementalJsCachesManager(
@@ -25,6 +25,8 @@ import org.jetbrains.kotlin.cli.common.ExitCode
 import org.jetbrains.kotlin.cli.common.arguments.K2JVMCompilerArguments
 import org.jetbrains.kotlin.cli.common.messages.MessageCollector
 import org.jetbrains.kotlin.cli.jvm.K2JVMCompiler
+import org.jetbrains.kotlin.cli.jvm.index.SharedJarPackageIndex
+import org.jetbrains.kotlin.codegen.inline.SharedInlineCache
 import org.jetbrains.kotlin.compilerRunner.ArgumentUtils
 import org.jetbrains.kotlin.config.IncrementalCompilation
 import org.jetbrains.kotlin.config.Services
@@ -92,7 +94,9 @@ class IncrementalJvmCompilerRunner(
         artifactChangesProvider: ArtifactChangesProvider? = null,
         changesRegistry: ChangesRegistry? = null,
         private val buildHistoryFile: File? = null,
-        private val friendBuildHistoryFile: File? = null
+        private val friendBuildHistoryFile: File? = null,
+        private val sharedInlineCache: SharedInlineCache? = null,
+        private val sharedJarPackageIndex: SharedJarPackageIndex? = null
 ) : IncrementalCompilerRunner<K2JVMCompilerArguments, IncrementalJvmCachesManager>(
         workingDir,
         "caches-jvm",
@@ -165,7 +169,7 @@ class IncrementalJvmCompilerRunner(
 
         val classpathSet = args.classpathAsList.toHashSet()
         val modifiedClasspathEntries = changedFiles.modified.filter { it in classpathSet }
-        val classpathChanges = getClasspathChanges(modifiedClasspathEntries, lastBuildInfo)
+        val classpathChanges = getClasspathChanges(caches, modifiedClasspathEntries, lastBuildInfo)
         if (classpathChanges !is ChangesEither.Known) {
             return CompilationMode.Rebuild { "could not get changes from modified classpath entries: ${reporter.pathsAsString(modifiedClasspathEntries)}" }
         }
@@ -184,6 +188,7 @@ class IncrementalJvmCompilerRunner(
     }
 
     private fun getClasspathChanges(
+            caches: IncrementalJvmCachesManager,
             modifiedClasspath: List<File>,
             lastBuildInfo: BuildInfo?
     ): ChangesEither {
@@ -195,13 +200,14 @@ class IncrementalJvmCompilerRunner(
         val lastBuildTS = lastBuildInfo?.startTS
         if (lastBuildTS == null) {
             reporter.report {"Could not determine last build timestamp"}
-            return ChangesEither.Unknown()
         }
 
         val symbols = HashSet<LookupSymbol>()
         val fqNames = HashSet<FqName>()
         for (file in modifiedClasspath) {
-            val diffs = artifactChangesProvider?.getChanges(file, lastBuildTS)
+            // Jars without Kotlin IC metadata (e.g. Java libraries) are compared with their ABI snapshots from the last build
+            val diffs = lastBuildTS?.let { artifactChangesProvider?.getChanges(file, it) }
+                        ?: caches.classpathAbiCache.snapshotMap.compareAndUpdate(file)?.let { listOf(it) }
 
             if (diffs == null) {
                 reporter.report {"Could not get changes for file: $file"}
@@ -217,7 +223,10 @@ class IncrementalJvmCompilerRunner(
         return ChangesEither.Known(symbols, fqNames)
     }
 
+    private var classpath: List<File> = emptyList()
     override fun preBuildHook(args: K2JVMCompilerArguments, compilationMode: CompilationMode) {
+        classpath = if (args.classpath != null) args.classpathAsList else emptyList()
+
         when (compilationMode) {
             is CompilationMode.Incremental -> {
                 args.classpathAsList += args.destinationAsFile.apply { mkdirs() }
@@ -251,6 +260,7 @@ class IncrementalJvmCompilerRunner(
             changesCollector: ChangesCollector
     ) {
         updateIncrementalCache(generatedFiles, caches.platformCache, changesCollector)
+        caches.classpathAbiCache.snapshotMap.update(classpath)
     }
 
     override fun additionalDirtyFiles(
@@ -324,6 +334,8 @@ class IncrementalJvmCompilerRunner(
             val targetToCache = mapOf(targetId to caches.platformCache)
             val incrementalComponents = IncrementalCompilationComponentsImpl(targetToCache)
             register(IncrementalCompilationComponents::class.java, incrementalComponents)
+            sharedInlineCache?.let { register(SharedInlineCache::class.java, it) }
+            sharedJarPackageIndex?.let { register(SharedJarPackageIndex::class.java, it) }
         }
 
     override fun runCompiler(
@@ -21,6 +21,10 @@ import java.io.File
 internal const val STANDALONE_CACHE_VERSION = 2
 internal const val STANDALONE_VERSION_FILE_NAME = "standalone-ic-format-version.txt"
 
+// Format of the inputs cache (see InputsCache), which is used by all incremental compiler runners
+internal const val INPUTS_CACHE_VERSION = 1
+internal const val INPUTS_CACHE_VERSION_FILE_NAME = "inputs-cache-format-version.txt"
+
 fun standaloneCacheVersion(dataRoot: File): CacheVersion =
         customCacheVersion(STANDALONE_CACHE_VERSION, STANDALONE_VERSION_FILE_NAME, dataRoot, enabled = true)
 
@@ -32,6 +36,10 @@ fun customCacheVersion(version: Int, fileName: String, dataRoot: File, enabled:
                 whenTurnedOff = CacheVersion.Action.REBUILD_ALL_KOTLIN,
                 isEnabled = { enabled })
 
+fun inputsCacheVersion(dataRoot: File): CacheVersion =
+        customCacheVersion(INPUTS_CACHE_VERSION, INPUTS_CACHE_VERSION_FILE_NAME, dataRoot, enabled = true)
+
 fun commonCacheVersions(cachesDir: File): List<CacheVersion> =
         listOf(normalCacheVersion(cachesDir),
-               dataContainerCacheVersion(cachesDir))
\ No newline at end of file
+               dataContainerCacheVersion(cachesDir),
+               inputsCacheVersion(cachesDir))
\ No newline at end of file
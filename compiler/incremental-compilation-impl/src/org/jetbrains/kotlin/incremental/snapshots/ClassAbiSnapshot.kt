@@ -0,0 +1,282 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.incremental.snapshots
+
+import org.jetbrains.kotlin.load.java.JvmAnnotationNames
+import org.jetbrains.kotlin.load.kotlin.header.KotlinClassHeader
+import org.jetbrains.kotlin.serialization.Flags
+import org.jetbrains.kotlin.serialization.ProtoBuf
+import org.jetbrains.kotlin.serialization.deserialization.NameResolver
+import org.jetbrains.kotlin.serialization.deserialization.TypeTable
+import org.jetbrains.kotlin.serialization.jvm.JvmProtoBuf
+import org.jetbrains.kotlin.serialization.jvm.JvmProtoBufUtil
+import org.jetbrains.org.objectweb.asm.*
+import org.jetbrains.org.objectweb.asm.util.Printer
+import org.jetbrains.org.objectweb.asm.util.Textifier
+import org.jetbrains.org.objectweb.asm.util.TraceMethodVisitor
+import java.security.MessageDigest
+import java.util.*
+
+/**
+ * ABI of a single class file from a classpath entry.
+ *
+ * [hash] covers the class header, non-private fields and methods, annotations and Kotlin metadata,
+ * plus bodies of methods which may be inlined into the caller (Kotlin inline functions and synthetic classes).
+ * [memberNames] are the names a lookup of a member of this class may be recorded with.
+ */
+class ClassAbiSnapshot(
+        val hash: Long,
+        val memberNames: Collection<String>,
+        val isPackageLevel: Boolean
+) {
+    override fun equals(other: Any?): Boolean {
+        if (this === other) return true
+        if (other !is ClassAbiSnapshot) return false
+
+        return hash == other.hash && isPackageLevel == other.isPackageLevel
+    }
+
+    override fun hashCode(): Int =
+            hash.hashCode()
+
+    override fun toString(): String =
+            "ClassAbiSnapshot(hash=${java.lang.Long.toHexString(hash)}, memberNames=$memberNames, isPackageLevel=$isPackageLevel)"
+
+    companion object {
+        fun create(bytes: ByteArray): ClassAbiSnapshot {
+            val collector = AbiCollector()
+            ClassReader(bytes).accept(collector, ClassReader.SKIP_DEBUG or ClassReader.SKIP_FRAMES)
+            return collector.toSnapshot()
+        }
+    }
+}
+
+private class AbiCollector : ClassVisitor(Opcodes.ASM5) {
+    private val abi = ArrayList<String>()
+    private val members = ArrayList<String>()
+    private val memberNames = HashSet<String>()
+    private val methodBodies = TreeMap<String, Printer>()
+
+    private var metadataKind: KotlinClassHeader.Kind? = null
+    private var metadataData: Array<String>? = null
+    private var metadataStrings: Array<String>? = null
+
+    // Class annotations are visited before members, so the metadata is already known when method bodies are visited
+    private val inlineMethods: InlineMethods? by lazy {
+        val data = metadataData ?: return@lazy null
+        val strings = metadataStrings ?: emptyArray()
+        when (metadataKind) {
+            KotlinClassHeader.Kind.CLASS -> {
+                val (nameResolver, proto) = JvmProtoBufUtil.readClassDataFrom(data, strings)
+                InlineMethods(proto.functionList, proto.propertyList, nameResolver, TypeTable(proto.typeTable))
+            }
+            KotlinClassHeader.Kind.FILE_FACADE, KotlinClassHeader.Kind.MULTIFILE_CLASS_PART -> {
+                val (nameResolver, proto) = JvmProtoBufUtil.readPackageDataFrom(data, strings)
+                InlineMethods(proto.functionList, proto.propertyList, nameResolver, TypeTable(proto.typeTable))
+            }
+            else -> null
+        }
+    }
+
+    override fun visit(version: Int, access: Int, name: String, signature: String?, superName: String?, interfaces: Array<out String>?) {
+        abi.add("${access and Opcodes.ACC_SUPER.inv()} $name $signature $superName ${interfaces?.sorted()}")
+    }
+
+    override fun visitAnnotation(desc: String, visible: Boolean): AnnotationVisitor? {
+        abi.add("@$desc")
+        return if (desc == JvmAnnotationNames.METADATA_DESC) MetadataVisitor() else AnnotationValuesVisitor(abi)
+    }
+
+    override fun visitField(access: Int, name: String, desc: String, signature: String?, value: Any?): FieldVisitor? {
+        if (access and Opcodes.ACC_PRIVATE != 0) return null
+
+        // Values of constants are inlined by the compiler
+        members.add("field $access $name $desc $signature $value")
+        memberNames.add(name)
+        return null
+    }
+
+    override fun visitMethod(access: Int, name: String, desc: String, signature: String?, exceptions: Array<out String>?): MethodVisitor? {
+        if (access and Opcodes.ACC_PRIVATE != 0) return null
+
+        members.add("method $access $name $desc $signature ${exceptions?.sorted()}")
+        if (name != "<init>" && name != "<clinit>") {
+            memberNames.add(name)
+            propertyNameByAccessorName(name)?.let { memberNames.add(it) }
+        }
+
+        if (!isBodyAbi(name, desc)) return null
+
+        val printer = Textifier()
+        methodBodies[name + desc] = printer
+        return TraceMethodVisitor(printer)
+    }
+
+    private fun isBodyAbi(methodName: String, desc: String): Boolean {
+        // Lambdas and other synthetic Kotlin classes, as well as multifile facades, may be copied into the caller on inlining
+        // and are conservatively considered to be entirely a part of ABI
+        val inlineMethods = inlineMethods ?: return metadataKind != null
+        return inlineMethods.contains(methodName, desc)
+    }
+
+    fun toSnapshot(): ClassAbiSnapshot {
+        val digest = MessageDigest.getInstance("MD5")
+        abi.forEach { digest.updateWith(it) }
+        members.sorted().forEach { digest.updateWith(it) }
+        for ((method, printer) in methodBodies) {
+            digest.updateWith(method)
+            printer.getText().forEach { digest.updateWith(it.toString()) }
+        }
+
+        val bytes = digest.digest()
+        val hash = (0..7).fold(0L) { acc, i -> (acc shl 8) or (bytes[i].toLong() and 0xFF) }
+
+        // Lookups of Kotlin members are recorded by their source names (e.g. of properties), which are in the string table
+        metadataStrings?.filterTo(memberNames) { it.isNotEmpty() && Character.isJavaIdentifierStart(it[0]) && it.all(Character::isJavaIdentifierPart) }
+
+        val isPackageLevel = metadataKind == KotlinClassHeader.Kind.FILE_FACADE ||
+                             metadataKind == KotlinClassHeader.Kind.MULTIFILE_CLASS ||
+                             metadataKind == KotlinClassHeader.Kind.MULTIFILE_CLASS_PART
+
+        return ClassAbiSnapshot(hash, memberNames.sorted(), isPackageLevel)
+    }
+
+    private fun MessageDigest.updateWith(value: String) {
+        update(value.toByteArray())
+        update(0)
+    }
+
+    private fun propertyNameByAccessorName(name: String): String? {
+        val prefix = ACCESSOR_PREFIXES.firstOrNull { name.length > it.length && name.startsWith(it) } ?: return null
+        return name.substring(prefix.length).decapitalize()
+    }
+
+    private inner class MetadataVisitor : AnnotationVisitor(Opcodes.ASM5) {
+        override fun visit(name: String?, value: Any?) {
+            abi.add("$name=${value.valueToString()}")
+            if (name == JvmAnnotationNames.KIND_FIELD_NAME && value is Int) {
+                metadataKind = KotlinClassHeader.Kind.getById(value)
+            }
+        }
+
+        override fun visitArray(name: String?): AnnotationVisitor? {
+            val strings = ArrayList<String>()
+            return object : AnnotationVisitor(Opcodes.ASM5) {
+                override fun visit(name: String?, value: Any?) {
+                    strings.add(value as? String ?: value.valueToString())
+                }
+
+                override fun visitEnd() {
+                    abi.add("$name=$strings")
+                    when (name) {
+                        JvmAnnotationNames.METADATA_DATA_FIELD_NAME -> metadataData = strings.toTypedArray()
+                        JvmAnnotationNames.METADATA_STRINGS_FIELD_NAME -> metadataStrings = strings.toTypedArray()
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * JVM signatures of inline functions and inline property accessors. They are taken from the metadata rather than
+     * from the source names, which differ from the JVM ones for accessors, functions with @JvmName and internal functions.
+     */
+    private class InlineMethods(
+            functions: List<ProtoBuf.Function>,
+            properties: List<ProtoBuf.Property>,
+            nameResolver: NameResolver,
+            typeTable: TypeTable
+    ) {
+        private val signatures = HashSet<String>()
+        // A method with default arguments has an additional mask and marker parameters, so it's only matched by name
+        private val defaultMethodNames = HashSet<String>()
+
+        init {
+            for (function in functions) {
+                if (!Flags.IS_INLINE.get(function.flags)) continue
+
+                val signature = JvmProtoBufUtil.getJvmMethodSignature(function, nameResolver, typeTable)
+                if (signature != null) {
+                    add(signature)
+                }
+                else {
+                    // The signature can't be mapped without a full type mapper, e.g. for a generic function without an explicit descriptor,
+                    // so methods with this name are conservatively considered to be inline
+                    val name = nameResolver.getString(function.name)
+                    signatures.add(name)
+                    defaultMethodNames.add(name + DEFAULT_SUFFIX)
+                }
+            }
+
+            for (property in properties) {
+                if (!property.hasExtension(JvmProtoBuf.propertySignature)) continue
+
+                val signature = property.getExtension(JvmProtoBuf.propertySignature)
+                if (property.hasGetterFlags() && Flags.IS_INLINE_ACCESSOR.get(property.getterFlags) && signature.hasGetter()) {
+                    add(signature.getter, nameResolver)
+                }
+                if (property.hasSetterFlags() && Flags.IS_INLINE_ACCESSOR.get(property.setterFlags) && signature.hasSetter()) {
+                    add(signature.setter, nameResolver)
+                }
+            }
+        }
+
+        fun contains(name: String, desc: String): Boolean =
+                name + desc in signatures || name in signatures || name in defaultMethodNames
+
+        private fun add(signature: JvmProtoBuf.JvmMethodSignature, nameResolver: NameResolver) {
+            add(nameResolver.getString(signature.name) + nameResolver.getString(signature.desc))
+        }
+
+        private fun add(nameAndDesc: String) {
+            signatures.add(nameAndDesc)
+            defaultMethodNames.add(nameAndDesc.substringBefore('(') + DEFAULT_SUFFIX)
+        }
+    }
+
+    private class AnnotationValuesVisitor(private val values: MutableList<String>) : AnnotationVisitor(Opcodes.ASM5) {
+        override fun visit(name: String?, value: Any?) {
+            values.add("$name=${value.valueToString()}")
+        }
+
+        override fun visitEnum(name: String?, desc: String, value: String) {
+            values.add("$name=$desc.$value")
+        }
+
+        override fun visitAnnotation(name: String?, desc: String): AnnotationVisitor {
+            values.add("$name=@$desc")
+            return this
+        }
+
+        override fun visitArray(name: String?): AnnotationVisitor {
+            values.add("$name=[]")
+            return this
+        }
+    }
+
+    private companion object {
+        private val DEFAULT_SUFFIX = "\$default"
+        private val ACCESSOR_PREFIXES = listOf("get", "set", "is")
+
+        private fun Any?.valueToString(): String =
+                when (this) {
+                    is IntArray -> Arrays.toString(this)
+                    is Array<*> -> Arrays.toString(this)
+                    else -> toString()
+                }
+    }
+}
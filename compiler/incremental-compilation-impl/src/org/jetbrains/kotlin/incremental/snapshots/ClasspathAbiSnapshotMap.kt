@@ -0,0 +1,96 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.incremental.snapshots
+
+import org.jetbrains.kotlin.incremental.DirtyData
+import org.jetbrains.kotlin.incremental.LookupSymbol
+import org.jetbrains.kotlin.incremental.storage.BasicStringMap
+import org.jetbrains.kotlin.incremental.storage.PathStringDescriptor
+import org.jetbrains.kotlin.name.FqName
+import org.jetbrains.kotlin.resolve.jvm.JvmClassName
+import java.io.File
+import java.util.*
+
+class ClasspathAbiSnapshotMap(storageFile: File) : BasicStringMap<ClasspathEntrySnapshot>(storageFile, PathStringDescriptor, ClasspathEntrySnapshotExternalizer) {
+    override fun dumpValue(value: ClasspathEntrySnapshot): String =
+            value.toString()
+
+    /**
+     * Snapshots [jar] and returns lookups and classes affected by ABI changes since the previous snapshot,
+     * or null if there's no previous snapshot of it.
+     */
+    fun compareAndUpdate(jar: File): DirtyData? {
+        val path = jar.canonicalPath
+        val oldSnapshot = storage[path] ?: return null
+        if (oldSnapshot.isUpToDate(jar)) return DirtyData()
+
+        val newSnapshot = ClasspathEntrySnapshot.create(jar)
+        storage[path] = newSnapshot
+        return diff(oldSnapshot.classes, newSnapshot.classes)
+    }
+
+    /**
+     * Snapshots jars from [classpath] which have no up-to-date snapshot yet, and forgets jars which are no longer on the classpath.
+     */
+    fun update(classpath: Iterable<File>) {
+        val jars = classpath.filter { it.isFile && it.extension.equals("jar", ignoreCase = true) }
+        val paths = jars.mapTo(HashSet()) { it.canonicalPath }
+
+        for (oldPath in storage.keys) {
+            if (oldPath !in paths) {
+                storage.remove(oldPath)
+            }
+        }
+
+        for (jar in jars) {
+            val path = jar.canonicalPath
+            if (storage[path]?.isUpToDate(jar) != true) {
+                storage[path] = ClasspathEntrySnapshot.create(jar)
+            }
+        }
+    }
+
+    private fun diff(oldClasses: Map<String, ClassAbiSnapshot>, newClasses: Map<String, ClassAbiSnapshot>): DirtyData {
+        val dirtyLookupSymbols = HashSet<LookupSymbol>()
+        val dirtyClassesFqNames = HashSet<FqName>()
+
+        for (internalName in oldClasses.keys + newClasses.keys) {
+            val oldClass = oldClasses[internalName]
+            val newClass = newClasses[internalName]
+            if (oldClass == newClass) continue
+
+            val className = JvmClassName.byInternalName(internalName)
+            val fqName = className.fqNameForClassNameWithoutDollars
+            if (!fqName.isRoot) {
+                // An added or removed class may change resolution of its simple name
+                dirtyLookupSymbols.add(LookupSymbol(fqName.shortName().asString(), fqName.parent().asString()))
+            }
+
+            val isPackageLevel = oldClass?.isPackageLevel == true || newClass?.isPackageLevel == true
+            if (!isPackageLevel) {
+                dirtyClassesFqNames.add(fqName)
+            }
+
+            val scope = if (isPackageLevel) className.packageFqName.asString() else fqName.asString()
+            for (memberName in oldClass?.memberNames.orEmpty() + newClass?.memberNames.orEmpty()) {
+                dirtyLookupSymbols.add(LookupSymbol(memberName, scope))
+            }
+        }
+
+        return DirtyData(dirtyLookupSymbols, dirtyClassesFqNames)
+    }
+}
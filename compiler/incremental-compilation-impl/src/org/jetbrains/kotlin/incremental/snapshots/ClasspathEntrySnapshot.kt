@@ -0,0 +1,93 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.incremental.snapshots
+
+import com.intellij.util.io.DataExternalizer
+import java.io.DataInput
+import java.io.DataOutput
+import java.io.File
+import java.util.*
+import java.util.zip.ZipFile
+
+/**
+ * ABI snapshots of all classes in a classpath jar, keyed by their internal names.
+ * [length] and [lastModified] of the jar are only used to skip snapshotting of unchanged jars.
+ */
+class ClasspathEntrySnapshot(
+        val length: Long,
+        val lastModified: Long,
+        val classes: Map<String, ClassAbiSnapshot>
+) {
+    fun isUpToDate(jar: File): Boolean =
+            length == jar.length() && lastModified == jar.lastModified()
+
+    override fun toString(): String =
+            "ClasspathEntrySnapshot(length=$length, classes=${classes.toSortedMap()})"
+
+    companion object {
+        fun create(jar: File): ClasspathEntrySnapshot {
+            // Take the stamp first, so that a jar modified while it's being read is snapshotted again next time
+            val length = jar.length()
+            val lastModified = jar.lastModified()
+            val classes = HashMap<String, ClassAbiSnapshot>()
+
+            ZipFile(jar).use { zip ->
+                for (entry in zip.entries()) {
+                    if (entry.isDirectory || !entry.name.endsWith(CLASS_FILE_SUFFIX) || entry.name.startsWith(META_INF)) continue
+
+                    val bytes = zip.getInputStream(entry).use { it.readBytes() }
+                    classes[entry.name.removeSuffix(CLASS_FILE_SUFFIX)] = ClassAbiSnapshot.create(bytes)
+                }
+            }
+
+            return ClasspathEntrySnapshot(length, lastModified, classes)
+        }
+
+        private val CLASS_FILE_SUFFIX = ".class"
+        private val META_INF = "META-INF/"
+    }
+}
+
+object ClasspathEntrySnapshotExternalizer : DataExternalizer<ClasspathEntrySnapshot> {
+    override fun save(out: DataOutput, value: ClasspathEntrySnapshot) {
+        out.writeLong(value.length)
+        out.writeLong(value.lastModified)
+        out.writeInt(value.classes.size)
+        for ((internalName, snapshot) in value.classes) {
+            out.writeUTF(internalName)
+            out.writeLong(snapshot.hash)
+            out.writeBoolean(snapshot.isPackageLevel)
+            out.writeInt(snapshot.memberNames.size)
+            snapshot.memberNames.forEach(out::writeUTF)
+        }
+    }
+
+    override fun read(input: DataInput): ClasspathEntrySnapshot {
+        val length = input.readLong()
+        val lastModified = input.readLong()
+        val classesCount = input.readInt()
+        val classes = HashMap<String, ClassAbiSnapshot>(classesCount)
+        repeat(classesCount) {
+            val internalName = input.readUTF()
+            val hash = input.readLong()
+            val isPackageLevel = input.readBoolean()
+            val memberNames = (1..input.readInt()).map { input.readUTF() }
+            classes[internalName] = ClassAbiSnapshot(hash, memberNames, isPackageLevel)
+        }
+        return ClasspathEntrySnapshot(length, lastModified, classes)
+    }
+}
@@ -19,10 +19,12 @@ package org.jetbrains.kotlin.incremental.snapshots
 import java.io.File
 import java.util.*
 
+// lastModified is only used to skip hashing of unchanged files, so it doesn't participate in equality
 class FileSnapshot(
         val file: File,
         val length: Long,
-        val hash: ByteArray
+        val hash: ByteArray,
+        val lastModified: Long
 ) {
     init {
         assert(!file.isDirectory)
@@ -27,6 +27,7 @@ object FileSnapshotExternalizer : DataExternalizer<FileSnapshot> {
         out.writeLong(value.length)
         out.writeInt(value.hash.size)
         out.write(value.hash)
+        out.writeLong(value.lastModified)
     }
 
     override fun read(input: DataInput): FileSnapshot {
@@ -35,6 +36,7 @@ object FileSnapshotExternalizer : DataExternalizer<FileSnapshot> {
         val hashSize = input.readInt()
         val hash = ByteArray(hashSize)
         input.readFully(hash)
-        return FileSnapshot(file, length, hash)
+        val lastModified = input.readLong()
+        return FileSnapshot(file, length, hash, lastModified)
     }
 }
\ No newline at end of file
@@ -19,15 +19,19 @@ package org.jetbrains.kotlin.incremental.snapshots
 import org.jetbrains.kotlin.incremental.ChangedFiles
 import org.jetbrains.kotlin.incremental.storage.BasicStringMap
 import org.jetbrains.kotlin.incremental.storage.PathStringDescriptor
+import org.jetbrains.kotlin.utils.ParallelUtils
 import java.io.File
 import java.util.*
+import java.util.concurrent.Callable
 
-class FileSnapshotMap(storageFile: File) : BasicStringMap<FileSnapshot>(storageFile, PathStringDescriptor, FileSnapshotExternalizer) {
+class FileSnapshotMap(
+        storageFile: File,
+        private val snapshotProvider: FileSnapshotProvider = FastFileSnapshotProviderImpl()
+) : BasicStringMap<FileSnapshot>(storageFile, PathStringDescriptor, FileSnapshotExternalizer) {
     override fun dumpValue(value: FileSnapshot): String =
             value.toString()
 
     fun compareAndUpdate(newFiles: Iterable<File>): ChangedFiles.Known {
-        val snapshotProvider = SimpleFileSnapshotProviderImpl()
         val newOrModified = ArrayList<File>()
         val removed = ArrayList<File>()
 
@@ -39,17 +43,42 @@ class FileSnapshotMap(storageFile: File) : BasicStringMap<FileSnapshot>(storageF
             }
         }
 
-        for (path in newPaths) {
-            val file = File(path)
-            val oldSnapshot = storage[path]
-            val newSnapshot = snapshotProvider[file]
+        // Files with the same size and timestamp as in the stored snapshot are considered unchanged without reading them
+        val filesToHash = newPaths.map(::File).filter { file ->
+            val oldSnapshot = storage[file.path]
+            oldSnapshot == null || oldSnapshot.length != file.length() || oldSnapshot.lastModified != file.lastModified()
+        }
+
+        for ((file, newSnapshot) in filesToHash.zip(takeSnapshots(filesToHash))) {
+            val oldSnapshot = storage[file.path]
 
             if (oldSnapshot == null || oldSnapshot != newSnapshot) {
                 newOrModified.add(file)
-                storage[path] = newSnapshot
+                storage[file.path] = newSnapshot
+            }
+            else if (oldSnapshot.lastModified != newSnapshot.lastModified) {
+                storage[file.path] = newSnapshot
             }
         }
 
         return ChangedFiles.Known(newOrModified, removed)
     }
-}
\ No newline at end of file
+
+    private fun takeSnapshots(files: List<File>): List<FileSnapshot> {
+        val threadCount = minOf(Runtime.getRuntime().availableProcessors(), files.size / FILES_PER_THREAD)
+        if (threadCount <= 1) return files.map { snapshotProvider[it] }
+
+        val executor = ParallelUtils.newDaemonThreadPool(threadCount, "Kotlin file snapshots")
+        try {
+            return files.map { file -> executor.submit(Callable { snapshotProvider[file] }) }.map { ParallelUtils.await(it) }
+        }
+        finally {
+            executor.shutdownNow()
+        }
+    }
+
+    private companion object {
+        // Hashing a handful of files in parallel isn't worth starting threads
+        private val FILES_PER_THREAD = 64
+    }
+}
@@ -25,7 +25,21 @@ interface FileSnapshotProvider {
 class SimpleFileSnapshotProviderImpl : FileSnapshotProvider {
     override fun get(file: File): FileSnapshot {
         val length = file.length()
+        val lastModified = file.lastModified()
         val hash = file.md5
-        return FileSnapshot(file, length, hash)
+        return FileSnapshot(file, length, hash, lastModified)
+    }
+}
+
+/**
+ * Uses a non-cryptographic 64-bit hash of the file contents read through NIO (see [fastHash]) instead of MD5.
+ * Snapshots are only comparable with snapshots of the same provider.
+ */
+class FastFileSnapshotProviderImpl : FileSnapshotProvider {
+    override fun get(file: File): FileSnapshot {
+        val length = file.length()
+        val lastModified = file.lastModified()
+        val hash = file.fastHash
+        return FileSnapshot(file, length, hash, lastModified)
     }
 }
\ No newline at end of file
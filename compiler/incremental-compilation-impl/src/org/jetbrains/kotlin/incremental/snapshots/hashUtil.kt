@@ -17,6 +17,10 @@
 package org.jetbrains.kotlin.incremental.snapshots
 
 import java.io.File
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.channels.FileChannel
+import java.nio.file.StandardOpenOption
 import java.security.MessageDigest
 
 internal val File.md5: ByteArray
@@ -34,3 +38,65 @@ internal val File.md5: ByteArray
         }
         return messageDigest.digest()
     }
+
+// Files larger than this are memory-mapped. Smaller ones are read into a per-thread buffer:
+// mapping has a fixed cost, and a mapped file stays locked on Windows until the buffer is collected
+private const val MAPPING_THRESHOLD = 1024 * 1024
+
+private val readBuffers = object : ThreadLocal<ByteBuffer>() {
+    override fun initialValue(): ByteBuffer = ByteBuffer.allocateDirect(MAPPING_THRESHOLD)
+}
+
+internal val File.fastHash: ByteArray
+    get() {
+        val hash = FileChannel.open(toPath(), StandardOpenOption.READ).use { channel ->
+            val size = channel.size()
+            val buffer = if (size > MAPPING_THRESHOLD) {
+                channel.map(FileChannel.MapMode.READ_ONLY, 0, size)
+            }
+            else {
+                readBuffers.get().apply {
+                    clear()
+                    while (channel.read(this) >= 0 && hasRemaining()) {}
+                    flip()
+                }
+            }
+            murmurHash64(buffer)
+        }
+        return ByteBuffer.allocate(8).putLong(hash).array()
+    }
+
+// MurmurHash64A by Austin Appleby
+private fun murmurHash64(buffer: ByteBuffer): Long {
+    val m = -0x395b586ca42e166bL // 0xc6a4a7935bd1e995
+    val r = 47
+    val length = buffer.remaining()
+
+    buffer.order(ByteOrder.LITTLE_ENDIAN)
+    var h = MURMUR_SEED xor (length * m)
+
+    while (buffer.remaining() >= 8) {
+        var k = buffer.long
+        k *= m
+        k = k xor (k ushr r)
+        k *= m
+
+        h = h xor k
+        h *= m
+    }
+
+    val tail = buffer.remaining()
+    if (tail > 0) {
+        for (i in tail - 1 downTo 0) {
+            h = h xor ((buffer.get(buffer.position() + i).toLong() and 0xff) shl (8 * i))
+        }
+        h *= m
+    }
+
+    h = h xor (h ushr r)
+    h *= m
+    h = h xor (h ushr r)
+    return h
+}
+
+private const val MURMUR_SEED = 0x4b6f746c696eL
@@ -0,0 +1,74 @@
+package org.jetbrains.kotlin.incremental.snapshots
+
+import org.jetbrains.kotlin.TestWithWorkingDir
+import org.jetbrains.kotlin.test.MockLibraryUtil
+import org.junit.Assert.*
+import org.junit.Test
+import java.io.File
+
+class ClassAbiSnapshotTest : TestWithWorkingDir() {
+    private var compilationCount = 0
+
+    @Test
+    fun testNonInlineFunctionBodyIsNotAbi() {
+        assertSameHash("fun foo() = 1", "fun foo() = 2")
+    }
+
+    @Test
+    fun testInlineFunctionBody() {
+        assertDifferentHash("inline fun foo() = 1", "inline fun foo() = 2")
+    }
+
+    @Test
+    fun testInlineFunctionWithDefaultArgumentsBody() {
+        assertDifferentHash("inline fun foo(x: Int = 0) = x + 1", "inline fun foo(x: Int = 0) = x + 2")
+    }
+
+    @Test
+    fun testInlinePropertyAccessorBody() {
+        assertDifferentHash("inline val foo: Int get() = 1", "inline val foo: Int get() = 2")
+    }
+
+    @Test
+    fun testInlineSetterBody() {
+        assertDifferentHash(
+                "var x = 0\nvar foo: Int get() = x\n    inline set(value) { x = value + 1 }",
+                "var x = 0\nvar foo: Int get() = x\n    inline set(value) { x = value + 2 }"
+        )
+    }
+
+    @Test
+    fun testInlineFunctionWithJvmNameBody() {
+        assertDifferentHash("@JvmName(\"bar\") inline fun foo() = 1", "@JvmName(\"bar\") inline fun foo() = 2")
+    }
+
+    @Test
+    fun testInternalInlineFunctionBody() {
+        assertDifferentHash("internal inline fun foo() = 1", "internal inline fun foo() = 2")
+    }
+
+    @Test
+    fun testInlineMemberFunctionBody() {
+        assertDifferentHash("class A { inline fun foo() = 1 }", "class A { inline fun foo() = 2 }", "a/A.class")
+    }
+
+    private fun assertSameHash(before: String, after: String, classFile: String = "a/FooKt.class") {
+        assertEquals(snapshot(before, classFile).hash, snapshot(after, classFile).hash)
+    }
+
+    private fun assertDifferentHash(before: String, after: String, classFile: String = "a/FooKt.class") {
+        assertNotEquals(snapshot(before, classFile).hash, snapshot(after, classFile).hash)
+    }
+
+    private fun snapshot(declarations: String, classFile: String): ClassAbiSnapshot {
+        val dir = File(workingDir, "compilation${compilationCount++}")
+        val source = File(dir, "src/foo.kt").apply {
+            parentFile.mkdirs()
+            writeText("package a\n\n$declarations\n")
+        }
+        val output = File(dir, "out")
+        MockLibraryUtil.compileKotlin(source.path, output)
+
+        return ClassAbiSnapshot.create(File(output, classFile).readBytes())
+    }
+}
@@ -0,0 +1,129 @@
+package org.jetbrains.kotlin.incremental.snapshots
+
+import org.jetbrains.kotlin.TestWithWorkingDir
+import org.jetbrains.kotlin.incremental.DirtyData
+import org.jetbrains.kotlin.incremental.LookupSymbol
+import org.jetbrains.kotlin.name.FqName
+import org.jetbrains.org.objectweb.asm.ClassWriter
+import org.jetbrains.org.objectweb.asm.Opcodes
+import org.junit.After
+import org.junit.Assert.*
+import org.junit.Before
+import org.junit.Test
+import java.io.File
+import java.util.zip.ZipEntry
+import java.util.zip.ZipOutputStream
+import kotlin.properties.Delegates
+
+class ClasspathAbiSnapshotMapTest : TestWithWorkingDir() {
+    private var snapshotMap: ClasspathAbiSnapshotMap by Delegates.notNull()
+    private var jar: File by Delegates.notNull()
+
+    @Before
+    override fun setUp() {
+        super.setUp()
+        val caches = File(workingDir, "caches").apply { mkdirs() }
+        snapshotMap = ClasspathAbiSnapshotMap(File(caches, "classpath-abi-snapshot.tab"))
+        jar = File(workingDir, "lib.jar")
+    }
+
+    @After
+    override fun tearDown() {
+        snapshotMap.flush(false)
+        snapshotMap.close()
+        super.tearDown()
+    }
+
+    @Test
+    fun testNoPreviousSnapshot() {
+        writeJar("a/A" to classWithMethods("a/A", "foo" to 1))
+
+        assertNull(snapshotMap.compareAndUpdate(jar))
+    }
+
+    @Test
+    fun testUnchangedJar() {
+        writeJar("a/A" to classWithMethods("a/A", "foo" to 1))
+        snapshotMap.update(listOf(jar))
+
+        assertDirtyData(DirtyData(), snapshotMap.compareAndUpdate(jar))
+    }
+
+    @Test
+    fun testMethodBodyChanged() {
+        writeJar("a/A" to classWithMethods("a/A", "foo" to 1))
+        snapshotMap.update(listOf(jar))
+
+        writeJar("a/A" to classWithMethods("a/A", "foo" to 2))
+        assertDirtyData(DirtyData(), snapshotMap.compareAndUpdate(jar))
+    }
+
+    @Test
+    fun testMethodAdded() {
+        writeJar("a/A" to classWithMethods("a/A", "foo" to 1),
+                 "a/B" to classWithMethods("a/B", "foo" to 1))
+        snapshotMap.update(listOf(jar))
+
+        writeJar("a/A" to classWithMethods("a/A", "foo" to 1, "bar" to 1),
+                 "a/B" to classWithMethods("a/B", "foo" to 1))
+        val expected = DirtyData(
+                listOf(LookupSymbol("A", "a"), LookupSymbol("foo", "a.A"), LookupSymbol("bar", "a.A")),
+                listOf(FqName("a.A")))
+        assertDirtyData(expected, snapshotMap.compareAndUpdate(jar))
+
+        // The new snapshot is stored
+        assertDirtyData(DirtyData(), snapshotMap.compareAndUpdate(jar))
+    }
+
+    @Test
+    fun testClassRemoved() {
+        writeJar("a/A" to classWithMethods("a/A", "foo" to 1),
+                 "a/B" to classWithMethods("a/B"))
+        snapshotMap.update(listOf(jar))
+
+        writeJar("a/A" to classWithMethods("a/A", "foo" to 1))
+        val expected = DirtyData(listOf(LookupSymbol("B", "a")), listOf(FqName("a.B")))
+        assertDirtyData(expected, snapshotMap.compareAndUpdate(jar))
+    }
+
+    private fun assertDirtyData(expected: DirtyData, actual: DirtyData?) {
+        assertNotNull(actual)
+        assertEquals(expected.dirtyLookupSymbols.toSet(), actual!!.dirtyLookupSymbols.toSet())
+        assertEquals(expected.dirtyClassesFqNames.toSet(), actual.dirtyClassesFqNames.toSet())
+    }
+
+    private fun writeJar(vararg classes: Pair<String, ByteArray>) {
+        val previousTimestamp = if (jar.exists()) jar.lastModified() else 0L
+
+        ZipOutputStream(jar.outputStream()).use { zip ->
+            for ((internalName, bytes) in classes) {
+                zip.putNextEntry(ZipEntry(internalName + ".class"))
+                zip.write(bytes)
+                zip.closeEntry()
+            }
+        }
+
+        // Timestamp precision may be too coarse to notice the change otherwise
+        if (jar.lastModified() <= previousTimestamp) {
+            jar.setLastModified(previousTimestamp + 1000)
+        }
+    }
+
+    // Each method returns the given constant
+    private fun classWithMethods(internalName: String, vararg methods: Pair<String, Int>): ByteArray {
+        val writer = ClassWriter(ClassWriter.COMPUTE_MAXS)
+        writer.visit(Opcodes.V1_6, Opcodes.ACC_PUBLIC or Opcodes.ACC_SUPER, internalName, null, "java/lang/Object", null)
+
+        for ((name, value) in methods) {
+            val mv = writer.visitMethod(Opcodes.ACC_PUBLIC or Opcodes.ACC_STATIC, name, "()I", null, null)
+            mv.visitCode()
+            mv.visitLdcInsn(value)
+            mv.visitInsn(Opcodes.IRETURN)
+            mv.visitMaxs(0, 0)
+            mv.visitEnd()
+        }
+
+        writer.visitEnd()
+        return writer.toByteArray()
+    }
+}
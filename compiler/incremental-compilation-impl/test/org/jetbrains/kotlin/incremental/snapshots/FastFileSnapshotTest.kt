@@ -0,0 +1,22 @@
+package org.jetbrains.kotlin.incremental.snapshots
+
+import org.junit.Assert.*
+import org.junit.Test
+import java.io.File
+
+class FastFileSnapshotTest : FileSnapshotTest() {
+    override val fileSnapshotProvider: FileSnapshotProvider
+            get() = FastFileSnapshotProviderImpl()
+
+    @Test
+    fun testEqualityMappedFile() {
+        val content = ByteArray(3 * 1024 * 1024) { it.toByte() }
+        val file = File(workingDir, "1.bin").apply { writeBytes(content) }
+        val oldSnapshot = fileSnapshotProvider[file]
+        assertEquals(oldSnapshot, fileSnapshotProvider[file])
+
+        content[content.size / 2]++
+        file.writeBytes(content)
+        assertNotEquals(oldSnapshot, fileSnapshotProvider[file])
+    }
+}
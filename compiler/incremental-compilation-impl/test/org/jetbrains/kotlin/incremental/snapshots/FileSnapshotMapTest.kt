@@ -58,6 +58,24 @@ class FileSnapshotMapTest : TestWithWorkingDir() {
                 listOf(newTxt, changedTxt).toSortedPaths())
     }
 
+    @Test
+    fun testUnchangedTimestampAndSize() {
+        val src = File(workingDir, "src").apply { mkdirs() }
+        val touchedTxt = File(src, "touched.txt").apply { writeText("touched") }
+        val sameStampTxt = File(src, "sameStamp.txt").apply { writeText("same stamp") }
+        snapshotMap.compareAndUpdate(src.filesWithExt("txt"))
+
+        // Same content with a new timestamp is not a modification
+        touchedTxt.apply { writeText("touched") }.setLastModified(touchedTxt.lastModified() + 2000)
+        // Same size and timestamp is assumed to be unchanged without reading the file
+        val timestamp = sameStampTxt.lastModified()
+        sameStampTxt.apply { writeText("SAME STAMP") }.setLastModified(timestamp)
+
+        val diff = snapshotMap.compareAndUpdate(src.filesWithExt("txt"))
+        assertArrayEquals("diff.removed", diff.removed.toSortedPaths(), emptyArray<String>())
+        assertArrayEquals("diff.newOrModified", diff.modified.toSortedPaths(), emptyArray<String>())
+    }
+
     private fun Iterable<File>.toSortedPaths(): Array<String> =
             map { it.canonicalPath }.sorted().toTypedArray()
 
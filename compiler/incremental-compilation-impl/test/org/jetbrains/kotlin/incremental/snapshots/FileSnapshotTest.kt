@@ -5,8 +5,8 @@ import org.junit.Assert.*
 import org.junit.Test
 import java.io.*
 
-class FileSnapshotTest : TestWithWorkingDir() {
-    private val fileSnapshotProvider: FileSnapshotProvider
+open class FileSnapshotTest : TestWithWorkingDir() {
+    protected open val fileSnapshotProvider: FileSnapshotProvider
             get() = SimpleFileSnapshotProviderImpl()
 
     @Test
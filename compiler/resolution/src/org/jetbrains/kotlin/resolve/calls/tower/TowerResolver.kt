@@ -26,6 +26,7 @@ import org.jetbrains.kotlin.resolve.scopes.ResolutionScope
 import org.jetbrains.kotlin.resolve.scopes.receivers.ReceiverValueWithSmartCastInfo
 import org.jetbrains.kotlin.resolve.scopes.utils.parentsWithSelf
 import org.jetbrains.kotlin.types.KotlinType
+import org.jetbrains.kotlin.types.checker.SubtypeCheckCache
 import org.jetbrains.kotlin.types.isDynamic
 import org.jetbrains.kotlin.util.OperatorNameConventions
 import java.util.*
@@ -100,7 +101,7 @@ class TowerResolver {
             resultCollector: ResultCollector<C>,
             useOrder: Boolean,
             name: Name
-    ): Collection<C> = Task(this, processor, resultCollector, useOrder, name).run()
+    ): Collection<C> = SubtypeCheckCache.runWithSessionCache { Task(this, processor, resultCollector, useOrder, name).run() }
 
     private inner class Task<out C : Candidate>(
             private val implicitScopeTower: ImplicitScopeTower,
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.cli
+
+import org.jetbrains.kotlin.cli.common.ExitCode
+import org.jetbrains.kotlin.cli.jvm.K2JVMCompiler
+import org.jetbrains.kotlin.test.TestCaseWithTmpdir
+import java.io.File
+
+class ParallelCodegenTest : TestCaseWithTmpdir() {
+    fun testOutputDirectoryIsSameAsSequential() {
+        val sources = writeSources()
+
+        val sequential = compile(sources, "sequential")
+        val parallel = compile(sources, "parallel", "-Xbackend-threads=4")
+
+        assertTrue(sequential.keys.any { "\$inlined\$" in it })
+        assertEquals(sequential.keys.sorted(), parallel.keys.sorted())
+        for ((path, bytes) in sequential) {
+            assertTrue(path, bytes.contentEquals(parallel[path]!!))
+        }
+    }
+
+    private fun compile(sources: List<File>, outputName: String, vararg extraArgs: String): Map<String, ByteArray> {
+        val output = File(tmpdir, outputName)
+        val args = listOf("-d", output.path, *extraArgs) + sources.map { it.path }
+        val (messages, exitCode) = AbstractCliTest.executeCompilerGrabOutput(K2JVMCompiler(), args)
+        assertEquals(messages, ExitCode.OK, exitCode)
+
+        return output.walkTopDown().filter { it.isFile }.associate { it.relativeTo(output).invariantSeparatorsPath to it.readBytes() }
+    }
+
+    // Several packages and a multifile class, which are generated in parallel, and inline functions with lambdas and objects
+    // which are regenerated at call sites in other packages
+    private fun writeSources(): List<File> {
+        val sources = File(tmpdir, "src")
+        val files = ArrayList<File>()
+
+        fun write(name: String, text: String) {
+            files.add(File(sources, name).apply {
+                parentFile.mkdirs()
+                writeText(text.trimIndent())
+            })
+        }
+
+        write("a/inline.kt", """
+            package a
+
+            enum class Color { RED, GREEN }
+
+            inline fun <T> withObject(crossinline f: () -> T): () -> T = object : () -> T {
+                override fun invoke() = f()
+            }
+
+            inline fun repeatTwice(f: (Int) -> Unit) {
+                f(0)
+                f(1)
+            }
+
+            fun describe(color: Color) = when (color) {
+                Color.RED -> "red"
+                Color.GREEN -> "green"
+            }
+        """)
+
+        for (i in 1..2) {
+            write("a/facade$i.kt", """
+                @file:JvmName("Facade")
+                @file:JvmMultifileClass
+                package a
+
+                fun part$i(): Int = $i
+            """)
+        }
+
+        for (i in 1..10) {
+            write("b/usage$i.kt", """
+                package b$i
+
+                import a.*
+
+                class Usage$i {
+                    fun run(): String {
+                        var sum = part1() + part2()
+                        repeatTwice { sum += it * $i }
+                        val lambda = withObject { sum.toString() }
+                        val color = if (sum > 0) Color.RED else Color.GREEN
+                        return lambda() + describe(color) + when (color) { Color.RED -> 1; Color.GREEN -> 2 }
+                    }
+                }
+            """)
+        }
+
+        return files
+    }
+}
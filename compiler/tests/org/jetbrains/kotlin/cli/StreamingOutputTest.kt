@@ -0,0 +1,105 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.cli
+
+import org.jetbrains.kotlin.cli.common.ExitCode
+import org.jetbrains.kotlin.cli.jvm.K2JVMCompiler
+import org.jetbrains.kotlin.test.TestCaseWithTmpdir
+import java.io.File
+import java.util.zip.ZipFile
+
+class StreamingOutputTest : TestCaseWithTmpdir() {
+    fun testJarIsSameAsWithoutStreaming() {
+        val sources = writeSources()
+
+        val regular = compile(sources, "regular.jar")
+        val streamed = compile(sources, "streamed.jar", "-Xstreaming-output")
+
+        assertTrue(regular.keys.any { "\$inlined\$" in it })
+        assertEquals(regular.keys.sorted(), streamed.keys.sorted())
+        for ((path, bytes) in regular) {
+            assertTrue(path, bytes.contentEquals(streamed[path]!!))
+        }
+    }
+
+    private fun compile(sources: List<File>, outputName: String, vararg extraArgs: String): Map<String, ByteArray> {
+        val output = File(tmpdir, outputName)
+        val args = listOf("-d", output.path, *extraArgs) + sources.map { it.path }
+        val (messages, exitCode) = AbstractCliTest.executeCompilerGrabOutput(K2JVMCompiler(), args)
+        assertEquals(messages, ExitCode.OK, exitCode)
+
+        return ZipFile(output).use { zip ->
+            zip.entries().asSequence().filter { !it.isDirectory }.associate { it.name to zip.getInputStream(it).readBytes() }
+        }
+    }
+
+    // Inline functions with lambdas, objects and when mappings, which are read again by the inliner at call sites in other files
+    // after the file declaring them has already been written
+    private fun writeSources(): List<File> {
+        val sources = File(tmpdir, "src")
+        val files = ArrayList<File>()
+
+        fun write(name: String, text: String) {
+            files.add(File(sources, name).apply {
+                parentFile.mkdirs()
+                writeText(text.trimIndent())
+            })
+        }
+
+        write("a/inline.kt", """
+            package a
+
+            enum class Color { RED, GREEN }
+
+            inline fun <T> withObject(crossinline f: () -> T): () -> T = object : () -> T {
+                override fun invoke() = f()
+            }
+
+            inline fun <T> withNestedObject(crossinline f: () -> T): () -> T = withObject { f() }
+
+            inline fun withDefault(f: () -> String = { "default" }): String = f()
+
+            inline fun describe(color: Color, f: (String) -> String) = when (color) {
+                Color.RED -> f("red")
+                Color.GREEN -> f("green")
+            }
+
+            inline val Color.lazyName: () -> String
+                get() = withObject { name }
+        """)
+
+        for (i in 1..5) {
+            write("b/usage$i.kt", """
+                package b$i
+
+                import a.*
+
+                class Usage$i {
+                    fun run(): String {
+                        var sum = $i
+                        val lambda = withObject { sum.toString() }
+                        val nested = withNestedObject { sum + 1 }
+                        val color = if (sum > 1) Color.RED else Color.GREEN
+                        return lambda() + nested() + withDefault() + describe(color) { it + sum } + color.lazyName()
+                    }
+                }
+            """)
+        }
+
+        return files
+    }
+}
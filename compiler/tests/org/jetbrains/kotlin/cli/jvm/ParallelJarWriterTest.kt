@@ -0,0 +1,117 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.cli.jvm
+
+import junit.framework.TestCase
+import org.jetbrains.kotlin.cli.jvm.compiler.ParallelJarWriter
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.File
+import java.util.*
+import java.util.zip.ZipEntry
+import java.util.zip.ZipException
+import java.util.zip.ZipFile
+import java.util.zip.ZipInputStream
+
+class ParallelJarWriterTest : TestCase() {
+    private val entries = (1..50).map { i -> "a/C$i.class" to ByteArray(100 * i) { (it % (i + 1)).toByte() } }
+
+    fun testCompressedEntriesInParallel() {
+        val jar = writeJar(compress = true, threadCount = 4)
+
+        assertEntries(jar, ZipEntry.DEFLATED)
+        assertTrue(jar.size < entries.sumBy { it.second.size })
+    }
+
+    fun testStoredEntries() {
+        assertEntries(writeJar(compress = false, threadCount = 4), ZipEntry.STORED)
+    }
+
+    fun testOutputIsDeterministic() {
+        assertTrue(Arrays.equals(writeJar(compress = true, threadCount = 4), writeJar(compress = true, threadCount = 1)))
+    }
+
+    fun testDuplicateEntry() {
+        ParallelJarWriter(ByteArrayOutputStream(), true, 4).use { writer ->
+            writer.addEntry("a/A.class", ByteArray(10))
+            try {
+                writer.addEntry("a/A.class", ByteArray(20))
+                fail("Duplicate entry should not be allowed")
+            }
+            catch (e: ZipException) {
+                assertEquals("duplicate entry: a/A.class", e.message)
+            }
+        }
+    }
+
+    fun testZip64ForManyEntries() {
+        val count = 0xFFFF + 100
+        val output = ByteArrayOutputStream()
+        ParallelJarWriter(output, false, 1).use { writer ->
+            for (i in 0 until count) {
+                writer.addEntry("a/C$i.class", byteArrayOf(i.toByte()))
+            }
+            writer.finish()
+        }
+
+        val names = readCentralDirectory(output.toByteArray())
+        assertEquals(count, names.size)
+        assertEquals("a/C${count - 1}.class", names.last())
+    }
+
+    private fun writeJar(compress: Boolean, threadCount: Int): ByteArray {
+        val output = ByteArrayOutputStream()
+        ParallelJarWriter(output, compress, threadCount).use { writer ->
+            for ((name, bytes) in entries) {
+                writer.addEntry(name, bytes)
+            }
+            writer.finish()
+        }
+        return output.toByteArray()
+    }
+
+    private fun assertEntries(jar: ByteArray, method: Int) {
+        val actual = ArrayList<Pair<String, ByteArray>>()
+        val times = HashSet<Long>()
+        ZipInputStream(ByteArrayInputStream(jar)).use { zip ->
+            while (true) {
+                val entry = zip.nextEntry ?: break
+                assertEquals(method, entry.method)
+                times.add(entry.time)
+                actual.add(entry.name to zip.readBytes())
+            }
+        }
+
+        assertEquals(entries.map { it.first }, actual.map { it.first })
+        assertEquals(entries.map { it.first }, readCentralDirectory(jar))
+        for ((expected, read) in entries.zip(actual)) {
+            assertTrue(expected.first, Arrays.equals(expected.second, read.second))
+        }
+        assertEquals(1, times.size)
+    }
+
+    private fun readCentralDirectory(jar: ByteArray): List<String> {
+        val file = File.createTempFile("test", ".jar")
+        try {
+            file.writeBytes(jar)
+            return ZipFile(file).use { zip -> zip.entries().toList().map { it.name } }
+        }
+        finally {
+            file.delete()
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.cli.jvm.index
+
+import com.intellij.openapi.util.io.FileUtil
+import junit.framework.TestCase
+import java.io.File
+import java.util.zip.ZipEntry
+import java.util.zip.ZipOutputStream
+
+class SharedJarPackageIndexTest : TestCase() {
+    private lateinit var tmpDir: File
+
+    override fun setUp() {
+        super.setUp()
+        tmpDir = FileUtil.createTempDirectory("sharedJarPackageIndex", null)
+    }
+
+    override fun tearDown() {
+        FileUtil.delete(tmpDir)
+        super.tearDown()
+    }
+
+    fun testPackagesIncludeParents() {
+        val jar = writeJar("a.jar", "a/b/C.class", "d/E.class", "F.class")
+
+        assertEquals(setOf("", "a", "a.b", "d"), SharedJarPackageIndex().getPackages(jar))
+    }
+
+    fun testSameJarIsIndexedOnce() {
+        val index = SharedJarPackageIndex()
+        val jar = writeJar("a.jar", "a/B.class")
+
+        index.prepare(listOf(jar))
+        index.getPackages(jar)
+
+        assertEquals(1L, index.misses)
+        assertEquals(1L, index.hits)
+    }
+
+    fun testRebuiltJarIsIndexedAgain() {
+        val index = SharedJarPackageIndex()
+        val jar = writeJar("a.jar", "a/B.class")
+        assertEquals(setOf("", "a"), index.getPackages(jar))
+
+        val lastModified = jar.lastModified()
+        writeJar("a.jar", "c/D.class")
+        jar.setLastModified(lastModified + 1000)
+
+        assertEquals(setOf("", "c"), index.getPackages(jar))
+        assertEquals(2L, index.misses)
+    }
+
+    fun testLeastRecentlyUsedJarIsEvicted() {
+        val first = writeJar("first.jar", "a/B.class")
+        val second = writeJar("second.jar", "c/D.class")
+        // Only fits a single jar
+        val index = SharedJarPackageIndex(maxSizeBytes = 200)
+
+        index.getPackages(first)
+        index.getPackages(second)
+        index.getPackages(second)
+        assertEquals(1L, index.hits)
+
+        index.getPackages(first)
+        assertEquals(1L, index.hits)
+        assertEquals(3L, index.misses)
+    }
+
+    fun testParallelPrepare() {
+        val index = SharedJarPackageIndex()
+        val jars = (1..20).map { writeJar("lib$it.jar", "p$it/C.class") }
+
+        index.prepare(jars, threadCount = 4)
+
+        jars.forEachIndexed { i, jar -> assertEquals(setOf("", "p${i + 1}"), index.getPackages(jar)) }
+        assertEquals(20L, index.misses)
+        assertEquals(20L, index.hits)
+    }
+
+    private fun writeJar(name: String, vararg entries: String): File {
+        val jar = File(tmpDir, name)
+        ZipOutputStream(jar.outputStream()).use { zip ->
+            for (entry in entries) {
+                zip.putNextEntry(ZipEntry(entry))
+                zip.closeEntry()
+            }
+        }
+        return jar
+    }
+}
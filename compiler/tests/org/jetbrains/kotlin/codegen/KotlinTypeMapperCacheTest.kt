@@ -0,0 +1,190 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.codegen
+
+import org.jetbrains.kotlin.codegen.state.GenerationState
+import org.jetbrains.kotlin.codegen.state.IncompatibleClassTracker
+import org.jetbrains.kotlin.codegen.state.KotlinTypeMapper
+import org.jetbrains.kotlin.descriptors.*
+import org.jetbrains.kotlin.psi.KtDeclaration
+import org.jetbrains.kotlin.psi.KtFile
+import org.jetbrains.kotlin.psi.psiUtil.collectDescendantsOfType
+import org.jetbrains.kotlin.resolve.BindingContext
+import org.jetbrains.kotlin.resolve.DescriptorUtils
+import org.jetbrains.kotlin.resolve.jvm.jvmSignature.JvmMethodSignature
+import org.jetbrains.kotlin.test.ConfigurationKind
+import org.jetbrains.kotlin.test.KotlinTestUtils
+import org.jetbrains.kotlin.test.KotlinTestWithEnvironment
+import java.util.*
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+class KotlinTypeMapperCacheTest : KotlinTestWithEnvironment() {
+    override fun createEnvironment() = createEnvironmentWithMockJdk(ConfigurationKind.ALL)
+
+    // The type mapper of the state is filled by codegen, while a new type mapper computes every signature
+    fun testCachedSignaturesMatchUncached() {
+        val (state, functions) = compile()
+
+        for ((function, kind, skipGeneric) in signatureRequests(functions)) {
+            val expected = newTypeMapper(state).map(function, kind, skipGeneric)
+            assertEquals("$function $kind", expected, state.typeMapper.map(function, kind, skipGeneric))
+            assertEquals("$function $kind", expected, state.typeMapper.map(function, kind, skipGeneric))
+        }
+    }
+
+    fun testCachedClassTypesMatchUncached() {
+        val (state, functions) = compile()
+        val classes = functions.mapNotNull { it.containingDeclaration as? ClassDescriptor }.distinct()
+        assertTrue(classes.size > 3)
+
+        for (classDescriptor in classes) {
+            val expected = newTypeMapper(state).mapClass(classDescriptor)
+            assertEquals(expected, state.typeMapper.mapClass(classDescriptor))
+            assertEquals(expected, state.typeMapper.mapType(classDescriptor))
+        }
+    }
+
+    fun testConcurrentMapping() {
+        val (state, functions) = compile()
+        val requests = signatureRequests(functions)
+        val expected = requests.map { (function, kind, skipGeneric) -> newTypeMapper(state).map(function, kind, skipGeneric) }
+
+        val sharedTypeMapper = newTypeMapper(state)
+        val failures = ConcurrentLinkedQueue<String>()
+        val executor = Executors.newFixedThreadPool(THREAD_COUNT)
+        try {
+            for (thread in 1..THREAD_COUNT) {
+                executor.execute {
+                    val order = requests.indices.toMutableList().apply { Collections.shuffle(this, Random(thread.toLong())) }
+                    for (index in order) {
+                        val (function, kind, skipGeneric) = requests[index]
+                        val actual = sharedTypeMapper.map(function, kind, skipGeneric)
+                        if (actual != expected[index]) failures.add("$function $kind: expected ${expected[index]}, actual $actual")
+                    }
+                }
+            }
+        }
+        finally {
+            executor.shutdown()
+            assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES))
+        }
+
+        assertEquals("", failures.joinToString("\n"))
+    }
+
+    private fun compile(): Pair<GenerationState, List<FunctionDescriptor>> {
+        val file = KotlinTestUtils.createFile("signatures.kt", SOURCE, project)
+        val state = GenerationUtils.compileFiles(listOf(file), environment)
+        val functions = collectFunctions(file, state.bindingContext)
+        assertTrue(functions.size > 20)
+        return state to functions
+    }
+
+    private fun collectFunctions(file: KtFile, bindingContext: BindingContext): List<FunctionDescriptor> {
+        val result = ArrayList<FunctionDescriptor>()
+
+        fun add(descriptor: DeclarationDescriptor?) {
+            when (descriptor) {
+                is FunctionDescriptor -> result.add(descriptor)
+                is PropertyDescriptor -> result.addAll(descriptor.accessors)
+            }
+        }
+
+        for (declaration in file.collectDescendantsOfType<KtDeclaration>()) {
+            val descriptor = bindingContext[BindingContext.DECLARATION_TO_DESCRIPTOR, declaration] ?: continue
+            if (DescriptorUtils.isLocal(descriptor)) continue
+
+            add(descriptor)
+            if (descriptor is ClassDescriptor) {
+                // Including fake overrides, e.g. of special built-in members
+                DescriptorUtils.getAllDescriptors(descriptor.unsubstitutedMemberScope).forEach(::add)
+            }
+        }
+
+        return result.distinct()
+    }
+
+    private fun signatureRequests(functions: List<FunctionDescriptor>): List<Triple<FunctionDescriptor, OwnerKind, Boolean>> =
+            functions.flatMap { function ->
+                val kinds = if (DescriptorUtils.isInterface(function.containingDeclaration) &&
+                                function.kind == CallableMemberDescriptor.Kind.DECLARATION && function.modality != Modality.ABSTRACT)
+                    listOf(OwnerKind.IMPLEMENTATION, OwnerKind.DEFAULT_IMPLS)
+                else
+                    listOf(OwnerKind.IMPLEMENTATION)
+                kinds.flatMap { kind -> listOf(Triple(function, kind, true), Triple(function, kind, false)) }
+            }
+
+    private fun newTypeMapper(state: GenerationState) = KotlinTypeMapper(
+            state.bindingContext, state.classBuilderMode, IncompatibleClassTracker.DoNothing,
+            state.moduleName, state.isJvm8Target, state.isJvm8TargetWithDefaults
+    )
+
+    private fun KotlinTypeMapper.map(function: FunctionDescriptor, kind: OwnerKind, skipGeneric: Boolean): JvmMethodSignature =
+            if (skipGeneric) mapSignatureSkipGeneric(function, kind) else mapSignatureWithGeneric(function, kind)
+
+    private companion object {
+        const val THREAD_COUNT = 8
+
+        // Generic signatures, interface members with DefaultImpls, overrides of special built-ins with bridges, inline functions,
+        // extension properties, varargs and default arguments
+        val SOURCE = """
+            package test
+
+            interface Container<T : Comparable<T>> {
+                fun get(index: Int): T
+                fun first(): T = get(0)
+                fun <R> map(f: (T) -> R): List<R> = listOf(f(first()))
+                val size: Int get() = 1
+            }
+
+            class StringList(private val items: List<String>) : AbstractList<String>(), Container<String> {
+                override val size: Int get() = items.size
+                override fun get(index: Int): String = items[index]
+                override fun contains(element: String): Boolean = items.contains(element)
+                override fun indexOf(element: String): Int = items.indexOf(element)
+            }
+
+            class Box<T>(val value: T) {
+                fun <R : Any> transform(f: (T) -> R?): Box<R>? = f(value)?.let { Box(it) }
+                fun <K, V : MutableMap<K, in T>> putInto(key: K, map: V): V {
+                    map.put(key, value)
+                    return map
+                }
+                inline fun <reified R> valueAs(): R? = value as? R
+            }
+
+            inline fun <reified T> Any?.castOrNull(): T? = this as? T
+            inline fun <T> measure(block: () -> T): T = block()
+            fun count(vararg xs: Array<out CharSequence>, default: Int = 0): Int = xs.size + default
+            val <T> List<T>.second: T get() = this[1]
+            var counter: Long = 0
+            fun Box<String>.nested(): Map<String, List<Box<Int>>> = emptyMap()
+
+            object Singleton {
+                @JvmStatic fun create(): Singleton = this
+                fun primitive(x: Char, y: Double): Boolean = x.toInt() > y
+            }
+
+            enum class E {
+                A;
+                fun e(): E = this
+            }
+        """.trimIndent()
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.codegen
+
+import junit.framework.TestCase
+import org.jetbrains.kotlin.codegen.optimization.common.MethodAnalysisCache
+import org.jetbrains.kotlin.codegen.optimization.common.MethodAnalyzer
+import org.jetbrains.kotlin.codegen.optimization.common.OptimizationBasicInterpreter
+import org.jetbrains.org.objectweb.asm.Opcodes
+import org.jetbrains.org.objectweb.asm.tree.*
+
+class MethodAnalysisCacheTest : TestCase() {
+    fun testUnchangedMethodIsAnalyzedOnce() {
+        val node = createMethod()
+        val cache = MethodAnalysisCache("A", node)
+
+        val frames = cache.basicFrames
+        cache.controlFlowGraph
+
+        assertSame(frames, cache.basicFrames)
+        assertEquals(1, cache.analysisCount)
+    }
+
+    fun testRemovedInstructionInvalidatesResults() {
+        val node = createMethod()
+        val cache = MethodAnalysisCache("A", node)
+
+        cache.basicFrames
+        node.instructions.remove(node.instructions.first { it.opcode == Opcodes.POP })
+        node.instructions.remove(node.instructions.first { it.opcode == Opcodes.ICONST_1 })
+
+        assertEquals(node.instructions.size(), cache.basicFrames.size)
+        assertEquals(2, cache.analysisCount)
+    }
+
+    fun testModifiedInstructionInvalidatesResults() {
+        val node = createMethod()
+        val cache = MethodAnalysisCache("A", node)
+
+        cache.basicFrames
+        (node.instructions.first { it is VarInsnNode } as VarInsnNode).`var` = 1
+        node.maxLocals = 2
+
+        cache.basicFrames
+        assertEquals(2, cache.analysisCount)
+    }
+
+    fun testControlFlowGraph() {
+        val node = createMethod()
+        val graph = MethodAnalysisCache("A", node).controlFlowGraph
+
+        val jump = node.instructions.first { it is JumpInsnNode } as JumpInsnNode
+        val successors = graph.getSuccessorsIndices(jump).toSet()
+        assertEquals(setOf(node.instructions.indexOf(jump.next), node.instructions.indexOf(jump.label)), successors)
+    }
+
+    fun testFramesAreStoredAtBlockEntriesOnly() {
+        val node = createMethod()
+        val frames = MethodAnalysisCache("A", node).basicFrames
+
+        // ILOAD, ICONST_1 after the jump and the jump target
+        assertEquals(3, frames.storedFramesCount)
+    }
+
+    fun testFramesAreSameAsMethodAnalyzerFrames() {
+        val node = createMethodWithTryCatch()
+        val expected = MethodAnalyzer("A", node, OptimizationBasicInterpreter()).analyze()
+        val frames = MethodAnalysisCache("A", node).basicFrames
+
+        assertTrue(frames.storedFramesCount < node.instructions.size())
+        // Backwards, so that frames are recomputed from block entries rather than from the previous instruction
+        for (i in expected.indices.reversed()) {
+            assertEquals("Frame of instruction #$i", expected[i]?.toString(), frames[i]?.toString())
+            assertEquals(expected[i] != null, frames.isReachable(i))
+        }
+        assertEquals(expected.map { it?.toString() }, frames.toArray().map { it?.toString() })
+    }
+
+    // static void foo(int x) { if (x == 0) { 1; } return; }
+    private fun createMethod(): MethodNode {
+        val node = MethodNode(Opcodes.ASM5, Opcodes.ACC_STATIC, "foo", "(I)V", null, null)
+        val end = LabelNode()
+        node.instructions.apply {
+            add(VarInsnNode(Opcodes.ILOAD, 0))
+            add(JumpInsnNode(Opcodes.IFNE, end))
+            add(InsnNode(Opcodes.ICONST_1))
+            add(InsnNode(Opcodes.POP))
+            add(end)
+            add(InsnNode(Opcodes.RETURN))
+        }
+        node.maxLocals = 1
+        node.maxStack = 1
+        return node
+    }
+
+    // static int foo(int x) { try { x = x / 0; } catch (ArithmeticException e) { x = -1; } return x; 0; }
+    private fun createMethodWithTryCatch(): MethodNode {
+        val node = MethodNode(Opcodes.ASM5, Opcodes.ACC_STATIC, "foo", "(I)I", null, null)
+        val start = LabelNode()
+        val end = LabelNode()
+        val handler = LabelNode()
+        val exit = LabelNode()
+        node.instructions.apply {
+            add(start)
+            add(VarInsnNode(Opcodes.ILOAD, 0))
+            add(InsnNode(Opcodes.ICONST_0))
+            add(InsnNode(Opcodes.IDIV))
+            add(VarInsnNode(Opcodes.ISTORE, 0))
+            add(end)
+            add(JumpInsnNode(Opcodes.GOTO, exit))
+            add(handler)
+            add(VarInsnNode(Opcodes.ASTORE, 1))
+            add(InsnNode(Opcodes.ICONST_M1))
+            add(VarInsnNode(Opcodes.ISTORE, 0))
+            add(exit)
+            add(VarInsnNode(Opcodes.ILOAD, 0))
+            add(InsnNode(Opcodes.IRETURN))
+            add(InsnNode(Opcodes.ICONST_0))
+            add(InsnNode(Opcodes.IRETURN))
+        }
+        node.tryCatchBlocks.add(TryCatchBlockNode(start, end, handler, "java/lang/ArithmeticException"))
+        node.maxLocals = 2
+        node.maxStack = 2
+        return node
+    }
+
+    private inline fun InsnList.first(predicate: (AbstractInsnNode) -> Boolean): AbstractInsnNode =
+            toArray().first(predicate)
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.codegen
+
+import junit.framework.TestCase
+import org.jetbrains.kotlin.codegen.optimization.ParallelMethodOptimizer
+import org.jetbrains.org.objectweb.asm.Opcodes
+import org.jetbrains.org.objectweb.asm.tree.InsnNode
+import org.jetbrains.org.objectweb.asm.tree.MethodNode
+import java.util.*
+
+class ParallelMethodOptimizerTest : TestCase() {
+    private val optimizer = ParallelMethodOptimizer(4)
+
+    override fun tearDown() {
+        optimizer.shutdown()
+        super.tearDown()
+    }
+
+    fun testMethodsAreEmittedInOrderOfGeneration() {
+        val methods = optimizer.ClassMethods()
+        val transformed = Collections.synchronizedList(ArrayList<Int>())
+        val emitted = ArrayList<Int>()
+
+        for (i in 0 until 8) {
+            methods.submit(createMethod(), {
+                // The first methods are transformed last
+                Thread.sleep(10L * (8 - i))
+                transformed.add(i)
+            }, {
+                assertTrue(i in transformed)
+                emitted.add(i)
+            })
+        }
+
+        methods.emitAll()
+        assertEquals((0 until 8).toList(), emitted)
+    }
+
+    fun testExceptionIsRethrownOnEmit() {
+        val methods = optimizer.ClassMethods()
+        methods.submit(createMethod(), { throw IllegalStateException("foo") }, {})
+
+        try {
+            methods.emitAll()
+            fail()
+        }
+        catch (e: IllegalStateException) {
+            assertEquals("foo", e.message)
+        }
+    }
+
+    fun testMethodLargerThanBudgetIsTransformed() {
+        val smallOptimizer = ParallelMethodOptimizer(1, memoryBudgetPerThreadMb = 1)
+        try {
+            val methods = smallOptimizer.ClassMethods()
+            val node = createMethod(size = 100000).apply { maxLocals = 10 }
+            var emitted = false
+
+            methods.submit(node, {}, { emitted = true })
+            methods.submit(node, {}, {})
+            methods.emitAll()
+
+            assertTrue(emitted)
+        }
+        finally {
+            smallOptimizer.shutdown()
+        }
+    }
+
+    private fun createMethod(size: Int = 1) =
+            MethodNode(Opcodes.ASM5, Opcodes.ACC_PUBLIC, "foo", "()V", null, null).apply {
+                repeat(size) { instructions.add(InsnNode(Opcodes.NOP)) }
+                instructions.add(InsnNode(Opcodes.RETURN))
+            }
+}
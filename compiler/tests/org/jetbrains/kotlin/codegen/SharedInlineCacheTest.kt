@@ -0,0 +1,89 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.codegen
+
+import com.intellij.openapi.util.io.FileUtil
+import com.intellij.openapi.vfs.local.CoreLocalFileSystem
+import com.intellij.testFramework.LightVirtualFile
+import junit.framework.TestCase
+import org.jetbrains.kotlin.codegen.inline.SMAPAndMethodNode
+import org.jetbrains.kotlin.codegen.inline.SMAPParser
+import org.jetbrains.kotlin.codegen.inline.SharedInlineCache
+import org.jetbrains.org.objectweb.asm.Opcodes
+import org.jetbrains.org.objectweb.asm.commons.Method
+import org.jetbrains.org.objectweb.asm.tree.MethodNode
+
+class SharedInlineCacheTest : TestCase() {
+    private val file = LightVirtualFile("A.class")
+    private val method = Method("foo", "()V")
+
+    fun testSameClassFileIsServedFromCache() {
+        val cache = SharedInlineCache()
+        var computed = 0
+
+        val first = cache.getOrPut(file, method, { byteArrayOf(1, 2, 3) }) { computed++; createNode() }
+        val second = cache.getOrPut(file, method, { byteArrayOf(1, 2, 3) }) { computed++; createNode() }
+
+        assertSame(first, second)
+        assertEquals(1, computed)
+        assertEquals(1L, cache.hits)
+        assertEquals(1L, cache.misses)
+    }
+
+    fun testChangedClassFileIsNotServedFromCache() {
+        val cache = SharedInlineCache()
+
+        val first = cache.getOrPut(file, method, { byteArrayOf(1, 2, 3) }) { createNode() }
+        val second = cache.getOrPut(file, method, { byteArrayOf(1, 2, 4) }) { createNode() }
+
+        assertNotSame(first, second)
+        assertEquals(0L, cache.hits)
+        assertEquals(2L, cache.misses)
+    }
+
+    fun testMissingMethodIsNotCached() {
+        val cache = SharedInlineCache()
+        var computed = 0
+
+        assertNull(cache.getOrPut(file, method, { byteArrayOf(1) }) { computed++; null })
+        assertNull(cache.getOrPut(file, method, { byteArrayOf(1) }) { computed++; null })
+
+        assertEquals(2, computed)
+    }
+
+    fun testLocalClassFileIsReadOnceIfNotChanged() {
+        val cache = SharedInlineCache()
+        val ioFile = FileUtil.createTempFile("A", ".class", true).apply { writeBytes(byteArrayOf(1, 2, 3)) }
+        val localFile = CoreLocalFileSystem().findFileByIoFile(ioFile)!!
+        var read = 0
+
+        cache.getOrPut(localFile, method, { read++; ioFile.readBytes() }) { createNode() }
+        val readOnMiss = read
+        cache.getOrPut(localFile, method, { read++; ioFile.readBytes() }) { createNode() }
+        assertEquals(readOnMiss, read)
+        assertEquals(1L, cache.hits)
+
+        ioFile.writeBytes(byteArrayOf(1, 2, 3, 4))
+        cache.getOrPut(localFile, method, { read++; ioFile.readBytes() }) { createNode() }
+        assertEquals(1L, cache.hits)
+        assertEquals(2L, cache.misses)
+    }
+
+    private fun createNode() =
+            SMAPAndMethodNode(MethodNode(Opcodes.ASM5, Opcodes.ACC_PUBLIC, method.name, method.descriptor, null, null),
+                              SMAPParser.parseOrCreateDefault(null, null, "fake", -1, -1))
+}
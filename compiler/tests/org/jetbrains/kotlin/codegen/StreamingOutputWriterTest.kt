@@ -0,0 +1,74 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.codegen
+
+import junit.framework.TestCase
+import org.jetbrains.kotlin.backend.common.output.OutputFile
+import org.jetbrains.kotlin.backend.common.output.SimpleOutputBinaryFile
+import java.util.*
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+class StreamingOutputWriterTest : TestCase() {
+    fun testFilesAreWrittenInOrder() {
+        val written = Collections.synchronizedList(ArrayList<String>())
+        val writer = StreamingOutputWriter({ written.add(it.relativePath) }, 2)
+
+        val paths = (1..10).map { "C$it.class" }
+        paths.forEach { writer.write(file(it)) }
+        writer.finish()
+
+        assertEquals(paths, written)
+    }
+
+    fun testWriteBlocksWhenQueueIsFull() {
+        val sinkEntered = CountDownLatch(1)
+        val release = CountDownLatch(1)
+        val writer = StreamingOutputWriter({ sinkEntered.countDown(); release.await() }, 1)
+
+        writer.write(file("A.class"))
+        assertTrue(sinkEntered.await(10, TimeUnit.SECONDS))
+        // The sink holds A, the queue holds B, so C has to wait
+        writer.write(file("B.class"))
+
+        val producer = Thread { writer.write(file("C.class")) }
+        producer.start()
+        producer.join(200)
+        assertTrue(producer.isAlive)
+
+        release.countDown()
+        producer.join(10000)
+        assertFalse(producer.isAlive)
+        writer.finish()
+    }
+
+    fun testFailureIsRethrown() {
+        val writer = StreamingOutputWriter({ throw IllegalStateException(it.relativePath) })
+        writer.write(file("A.class"))
+
+        try {
+            writer.finish()
+            fail("Exception expected")
+        }
+        catch (e: IllegalStateException) {
+            assertEquals("A.class", e.message)
+        }
+    }
+
+    private fun file(path: String): OutputFile =
+            SimpleOutputBinaryFile(emptyList(), path, ByteArray(0))
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.daemon
+
+import junit.framework.TestCase
+import org.jetbrains.kotlin.daemon.common.CompilerCallbackServicesFacade
+import org.jetbrains.kotlin.daemon.common.DummyProfiler
+import org.jetbrains.kotlin.daemon.common.IncrementalCacheTargetData
+import org.jetbrains.kotlin.load.kotlin.incremental.components.JvmPackagePartProto
+import org.jetbrains.kotlin.modules.TargetId
+import org.jetbrains.kotlin.utils.ParallelUtils
+import java.lang.reflect.Proxy
+import java.util.*
+import java.util.concurrent.Callable
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+class RemoteIncrementalCacheClientTest : TestCase() {
+    private val target = TargetId("module", "java-production")
+    private val parts = listOf("a/A__PartKt", "a/A__Part2Kt", "a/A__Part3Kt")
+
+    // names of the facade methods called, in order
+    private val calls = Collections.synchronizedList(ArrayList<String>())
+
+    // the request of facade parts waits for it
+    private var facadePartsRequestRelease = CountDownLatch(0)
+
+    @Suppress("DEPRECATION")
+    private val facade = Proxy.newProxyInstance(javaClass.classLoader, arrayOf(CompilerCallbackServicesFacade::class.java)) { _, method, args ->
+        val key = args?.getOrNull(1)
+        calls.add(method.name)
+        when (method.name) {
+            "incrementalCache_getTargetData" -> IncrementalCacheTargetData(listOf("a/ObsoleteKt"), emptyList(), byteArrayOf(1))
+            "incrementalCache_getMultifileFacadeParts" -> {
+                facadePartsRequestRelease.await(10, TimeUnit.SECONDS)
+                if (key == "a/A") parts else null
+            }
+            "incrementalCache_getPackagePartsData" -> parts.filter { it in key as Collection<*> }.associate { it to partData(it) }
+            "incrementalCache_getPackagePartData" -> throw AssertionError("Package parts should be requested in batches")
+            "incrementalCache_getClassFilePath" -> "/out/$key.class"
+            else -> throw UnsupportedOperationException(method.name)
+        }
+    } as CompilerCallbackServicesFacade
+
+    private val statistics = RemoteIncrementalCacheClient.Statistics()
+    private val client = RemoteIncrementalCacheClient(facade, target, DummyProfiler(), statistics)
+
+    fun testTargetDataIsRequestedOnce() {
+        assertEquals(listOf("a/ObsoleteKt"), client.getObsoletePackageParts())
+        assertEquals(emptyList<String>(), client.getObsoleteMultifileClasses())
+        assertEquals(1, client.getModuleMappingData()!!.single().toInt())
+
+        assertEquals(listOf("incrementalCache_getTargetData"), calls)
+        assertEquals(1, statistics.calls)
+        assertEquals(2, statistics.roundTripsSaved)
+    }
+
+    fun testPartsOfFacadeAreRequestedTogether() {
+        assertEquals(parts, client.getStableMultifileFacadeParts("a/A"))
+        for (part in parts) {
+            assertEquals(part, client.getPackagePartData(part)!!.strings.single())
+        }
+        assertNull(client.getPackagePartData("a/UnknownKt"))
+        assertNull(client.getPackagePartData("a/UnknownKt"))
+
+        assertEquals(listOf("incrementalCache_getMultifileFacadeParts",
+                            "incrementalCache_getPackagePartsData",
+                            "incrementalCache_getPackagePartsData"), calls)
+        assertEquals(3, statistics.calls)
+        assertEquals(3, statistics.roundTripsSaved)
+    }
+
+    fun testAnswersAreCached() {
+        repeat(2) {
+            assertNull(client.getStableMultifileFacadeParts("b/B"))
+            assertEquals("/out/a/C.class", client.getClassFilePath("a/C"))
+        }
+
+        assertEquals(listOf("incrementalCache_getMultifileFacadeParts", "incrementalCache_getClassFilePath"), calls)
+        assertEquals(2, statistics.roundTripsSaved)
+    }
+
+    fun testConcurrentQueriesOfSamePartMakeOneCall() {
+        val executor = ParallelUtils.newDaemonThreadPool(4, "Test query")
+        try {
+            val results = (1..4).map { executor.submit(Callable { client.getPackagePartData(parts.first()) }) }
+            for (result in results) {
+                assertEquals(parts.first(), ParallelUtils.await(result)!!.strings.single())
+            }
+        }
+        finally {
+            executor.shutdownNow()
+        }
+
+        assertEquals(listOf("incrementalCache_getPackagePartsData"), calls)
+        assertEquals(3, statistics.roundTripsSaved)
+    }
+
+    fun testOtherQueriesDontWaitForRemoteCall() {
+        facadePartsRequestRelease = CountDownLatch(1)
+        val executor = ParallelUtils.newDaemonThreadPool(1, "Test query")
+        try {
+            val facadeParts = executor.submit(Callable { client.getStableMultifileFacadeParts("a/A") })
+            while ("incrementalCache_getMultifileFacadeParts" !in calls) {
+                Thread.yield()
+            }
+
+            assertNull(client.getPackagePartData("a/UnknownKt"))
+            assertFalse(facadeParts.isDone)
+
+            facadePartsRequestRelease.countDown()
+            assertEquals(parts, ParallelUtils.await(facadeParts))
+        }
+        finally {
+            executor.shutdownNow()
+        }
+    }
+
+    fun testCachesAreDroppedWhenCompilationIsFinished() {
+        val listeners = ArrayList<() -> Unit>()
+        val eventManager = object : EventManager {
+            override fun onCompilationFinished(f: () -> Unit) {
+                listeners.add(f)
+            }
+        }
+        val components = RemoteIncrementalCompilationComponentsClient(facade, eventManager, DummyProfiler(), statistics)
+
+        components.getIncrementalCache(target).getObsoletePackageParts()
+        components.getIncrementalCache(target).getObsoletePackageParts()
+        assertEquals(1, calls.size)
+
+        listeners.forEach { it() }
+        components.getIncrementalCache(target).getObsoletePackageParts()
+        assertEquals(2, calls.size)
+    }
+
+    private fun partData(part: String) = JvmPackagePartProto(ByteArray(0), arrayOf(part))
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.jvm.compiler
+
+import junit.framework.TestCase
+import org.jetbrains.kotlin.load.java.JvmAnnotationNames
+import org.jetbrains.kotlin.load.kotlin.BinaryClassStructure
+import org.jetbrains.org.objectweb.asm.*
+
+class BinaryClassStructureTest : TestCase() {
+    fun testStructureOfKotlinClassIsReplayedAsRead() {
+        val bytes = createClass(withMetadata = true)
+        val structure = BinaryClassStructure.read(bytes)
+
+        assertEquals(textify { ClassReader(bytes).accept(it, ClassReader.SKIP_CODE) }, textify(structure::accept))
+        assertTrue(structure.estimatedSizeBytes > 0)
+    }
+
+    fun testMembersOfNonKotlinClassAreNotRead() {
+        val text = textify(BinaryClassStructure.read(createClass(withMetadata = false))::accept)
+
+        assertTrue(text, "@LAnno;(e=LE;.ENTRY nested=@LNested;(value=string )\n)" in text)
+        assertFalse(text, "constant" in text)
+        assertFalse(text, "foo" in text)
+    }
+
+    private fun createClass(withMetadata: Boolean): ByteArray {
+        val writer = ClassWriter(0)
+        writer.visit(Opcodes.V1_6, Opcodes.ACC_PUBLIC or Opcodes.ACC_SUPER, "test/A", null, "java/lang/Object", null)
+
+        if (withMetadata) {
+            writer.visitAnnotation(JvmAnnotationNames.METADATA_DESC, true).apply {
+                visit(JvmAnnotationNames.KIND_FIELD_NAME, 1)
+                visit(JvmAnnotationNames.METADATA_VERSION_FIELD_NAME, intArrayOf(1, 1, 7))
+                visitArray(JvmAnnotationNames.METADATA_DATA_FIELD_NAME).apply {
+                    visit(null, "data")
+                    visitEnd()
+                }
+                visitEnd()
+            }
+        }
+        writer.visitAnnotation("LAnno;", true).apply {
+            visitEnum("e", "LE;", "ENTRY")
+            visitAnnotation("nested", "LNested;").apply {
+                visit("value", "string")
+                visitEnd()
+            }
+            visitEnd()
+        }
+
+        writer.visitField(Opcodes.ACC_PUBLIC or Opcodes.ACC_STATIC or Opcodes.ACC_FINAL, "constant", "I", null, 42).apply {
+            visitAnnotation("LAnno;", true).visitEnd()
+            visitEnd()
+        }
+
+        writer.visitMethod(Opcodes.ACC_PUBLIC, "foo", "(ILjava/lang/String;)V", null, null).apply {
+            visitAnnotation("LAnno;", true).visitEnd()
+            visitParameterAnnotation(1, "LParam;", true).apply {
+                visit("ints", intArrayOf(1, 2))
+                visitEnd()
+            }
+            visitCode()
+            visitInsn(Opcodes.RETURN)
+            visitMaxs(0, 3)
+            visitEnd()
+        }
+
+        writer.visitEnd()
+        return writer.toByteArray()
+    }
+
+    private fun textify(accept: (ClassVisitor) -> Unit): String {
+        val result = StringBuilder()
+        accept(Recorder(result))
+        return result.toString()
+    }
+
+    // Records only the parts of a class which are kept in BinaryClassStructure
+    private class Recorder(private val result: StringBuilder) : ClassVisitor(Opcodes.ASM5) {
+        override fun visitAnnotation(desc: String, visible: Boolean): AnnotationVisitor =
+                annotation("@$desc")
+
+        override fun visitField(access: Int, name: String, desc: String, signature: String?, value: Any?): FieldVisitor {
+            result.append("field $access $name $desc $value\n")
+            return object : FieldVisitor(Opcodes.ASM5) {
+                override fun visitAnnotation(desc: String, visible: Boolean) = annotation("  @$desc")
+            }
+        }
+
+        override fun visitMethod(access: Int, name: String, desc: String, signature: String?, exceptions: Array<out String>?): MethodVisitor {
+            result.append("method $access $name $desc\n")
+            return object : MethodVisitor(Opcodes.ASM5) {
+                override fun visitAnnotation(desc: String, visible: Boolean) = annotation("  @$desc")
+
+                override fun visitParameterAnnotation(parameter: Int, desc: String, visible: Boolean) = annotation("  $parameter @$desc")
+            }
+        }
+
+        private fun annotation(prefix: String): AnnotationVisitor {
+            result.append(prefix).append("(")
+            return object : AnnotationVisitor(Opcodes.ASM5) {
+                override fun visit(name: String?, value: Any?) {
+                    result.append("$name=${if (value is IntArray) value.contentToString() else value} ")
+                }
+
+                override fun visitEnum(name: String?, desc: String, value: String) {
+                    result.append("$name=$desc.$value ")
+                }
+
+                override fun visitAnnotation(name: String?, desc: String): AnnotationVisitor =
+                        annotation("$name=@$desc")
+
+                override fun visitArray(name: String?): AnnotationVisitor =
+                        annotation("$name=")
+
+                override fun visitEnd() {
+                    result.append(")\n")
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.psi
+
+import com.intellij.psi.impl.source.tree.LazyParseableElement
+import org.jetbrains.kotlin.KtNodeTypes
+import org.jetbrains.kotlin.cli.jvm.compiler.EnvironmentConfigFiles
+import org.jetbrains.kotlin.cli.jvm.compiler.KotlinCoreEnvironment
+import org.jetbrains.kotlin.cli.jvm.compiler.ParallelSourceParser
+import org.jetbrains.kotlin.parsing.KotlinParser
+import org.jetbrains.kotlin.test.KotlinTestUtils
+import org.jetbrains.kotlin.test.KotlinTestWithEnvironment
+
+class LazyBlockExpressionTest : KotlinTestWithEnvironment() {
+    fun testFunctionBodyIsParsedOnAccess() {
+        val function = KtPsiFactory(project).createFile("fun f() {\n    val x = 1\n    g { x }\n}\n").declarations.single() as KtNamedFunction
+        val body = function.node.findChildByType(KtNodeTypes.BLOCK) as LazyParseableElement
+        assertFalse(body.isParsed)
+
+        val block = function.bodyExpression as KtBlockExpression
+        assertEquals(listOf("val x = 1", "g { x }"), block.statements.map { it.text })
+        assertTrue(body.isParsed)
+    }
+
+    fun testBodiesOfDeclarationsAreLazy() {
+        val file = KtPsiFactory(project).createFile("""
+            class A {
+                init { f() }
+                constructor(x: Int) { f() }
+                val p: Int get() { return 1 }
+            }
+        """)
+        val klass = file.declarations.single() as KtClass
+
+        assertLazy(klass.getAnonymousInitializers().single().body!!)
+        assertLazy(klass.secondaryConstructors.single().bodyExpression!!)
+        assertLazy(klass.getProperties().single().getter!!.bodyExpression!!)
+    }
+
+    fun testBlocksInExpressionsAreParsedEagerly() {
+        val function = KtPsiFactory(project).createFunction("fun f() = try { g() } finally { h() }")
+        val tryExpression = function.bodyExpression as KtTryExpression
+
+        assertEager(tryExpression.tryBlock)
+        assertEquals("h()", tryExpression.finallyBlock!!.finalExpression.statements.single().text)
+    }
+
+    fun testUnclosedBodyIsParsedEagerly() {
+        val file = KtPsiFactory(project).createFile("fun f() {\n    g()\n\nfun h() {}\n")
+        val function = file.declarations.first() as KtNamedFunction
+
+        assertEager(function.bodyExpression!!)
+        assertEquals(2, (function.bodyExpression as KtBlockExpression).statements.size)
+    }
+
+    fun testBodiesAreParsedEagerlyOutsideOfBatchMode() {
+        project.putUserData(KotlinParser.LAZY_DECLARATION_BODIES, null)
+        val function = KtPsiFactory(project).createFunction("fun f() { g() }")
+
+        assertEager(function.bodyExpression!!)
+        assertEquals("g()", (function.bodyExpression as KtBlockExpression).statements.single().text)
+    }
+
+    fun testParallelSourceParserParsesAllBodies() {
+        val files = (1..10).map { i -> KtPsiFactory(project).createFile("fun f$i() { g { h($i) } }\nclass A$i { init { f$i() } }\n") }
+        ParallelSourceParser.parse(files, 4)
+
+        for (file in files) {
+            file.accept(object : KtTreeVisitorVoid() {
+                override fun visitBlockExpression(expression: KtBlockExpression) {
+                    assertTrue(expression.text, (expression.node as? LazyParseableElement)?.isParsed ?: true)
+                    super.visitBlockExpression(expression)
+                }
+            })
+        }
+    }
+
+    private fun assertLazy(expression: KtExpression) {
+        val node = expression.node as LazyParseableElement
+        assertFalse(expression.text, node.isParsed)
+        assertEquals(1, (expression as KtBlockExpression).statements.size)
+    }
+
+    private fun assertEager(expression: KtExpression) {
+        assertFalse(expression.text, expression.node is LazyParseableElement)
+    }
+
+    override fun createEnvironment(): KotlinCoreEnvironment {
+        return KotlinCoreEnvironment.createForTests(
+                testRootDisposable, KotlinTestUtils.newConfiguration(), EnvironmentConfigFiles.JVM_CONFIG_FILES
+        )
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.resolve
+
+import org.jetbrains.kotlin.config.CommonConfigurationKeys
+import org.jetbrains.kotlin.config.CompilerConfiguration
+import org.jetbrains.kotlin.diagnostics.rendering.DefaultErrorMessages
+import org.jetbrains.kotlin.psi.KtExpression
+import org.jetbrains.kotlin.psi.KtFile
+import org.jetbrains.kotlin.psi.psiUtil.collectDescendantsOfType
+import org.jetbrains.kotlin.renderer.DescriptorRenderer
+import org.jetbrains.kotlin.resolve.lazy.JvmResolveUtil
+import org.jetbrains.kotlin.test.ConfigurationKind
+import org.jetbrains.kotlin.test.KotlinTestUtils
+import org.jetbrains.kotlin.test.KotlinTestWithEnvironment
+
+class ParallelBodyResolveTest : KotlinTestWithEnvironment() {
+    override fun createEnvironment() = createEnvironmentWithMockJdk(ConfigurationKind.JDK_ONLY)
+
+    fun testParallelResolveIsSameAsSequential() {
+        val files = (1..FILE_COUNT).map { i -> KotlinTestUtils.createFile("file$i.kt", source(i), project) }
+
+        val sequential = analyze(files, environment.configuration)
+        val parallel = analyze(files, environment.configuration.copy().apply {
+            put(CommonConfigurationKeys.BODY_RESOLVE_THREADS, 4)
+            put(CommonConfigurationKeys.USE_PER_KEY_LOCKS_IN_RESOLVE, true)
+        })
+
+        assertTrue(sequential.first.any { "TYPE_MISMATCH" in it })
+        assertTrue(sequential.first.any { "UNRESOLVED_REFERENCE" in it })
+        assertEquals(sequential.first.joinToString("\n"), parallel.first.joinToString("\n"))
+        assertEquals(sequential.second.joinToString("\n"), parallel.second.joinToString("\n"))
+    }
+
+    // Rendered diagnostics in the order they were reported and types of all expressions
+    private fun analyze(files: List<KtFile>, configuration: CompilerConfiguration): Pair<List<String>, List<String>> {
+        val bindingContext = JvmResolveUtil.analyze(files, environment, configuration).bindingContext
+
+        val diagnostics = bindingContext.diagnostics.all().map { diagnostic ->
+            "${diagnostic.psiFile.name}${diagnostic.textRanges} ${diagnostic.factory.name}: ${DefaultErrorMessages.render(diagnostic)}"
+        }
+
+        val types = files.flatMap { file ->
+            file.collectDescendantsOfType<KtExpression>().map { expression ->
+                val type = bindingContext.getType(expression)?.let(DescriptorRenderer.FQ_NAMES_IN_TYPES::renderType)
+                "${file.name}${expression.textRange} ${expression.text}: $type"
+            }
+        }
+
+        return diagnostics to types
+    }
+
+    private fun source(i: Int): String {
+        val next = i % FILE_COUNT + 1
+        return """
+            package p$i
+
+            fun f(x: Int): String {
+                val unused = x
+                return g(x) + x
+            }
+
+            fun g(x: Int): String = if (x > 0) "a" else f(x - 1)
+
+            fun h(): Int {
+                val s: String = 1
+                return f(1).length + p$next.k() + p$next.C().m(listOf(s))
+            }
+
+            fun k(): Int = 1
+
+            class C {
+                fun m(a: List<String>): Int {
+                    return a.map { it.length }.sum() + undefined$i
+                }
+
+                fun n(): List<Int> {
+                    val result = ArrayList<Int>()
+                    for (j in 1..$i) {
+                        result.add(h() + j)
+                    }
+                    return result
+                }
+            }
+        """.trimIndent()
+    }
+
+    private companion object {
+        const val FILE_COUNT = 20
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.storage;
+
+import kotlin.jvm.functions.Function0;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class PerKeyLockStorageManagerTest extends StorageManagerTest {
+    private static final long TIMEOUT_SECONDS = 10;
+
+    @Override
+    protected StorageManager createStorageManager() {
+        return new PerKeyLockStorageManager();
+    }
+
+    public void testUnrelatedKeysAreComputedConcurrently() throws Exception {
+        CountDownLatch bothStarted = new CountDownLatch(2);
+        MemoizedFunctionToNotNull<String, String> f = m.createMemoizedFunction(key -> {
+            bothStarted.countDown();
+            // With a single lock, the second computation would never start
+            await(bothStarted);
+            return key + "!";
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> a = executor.submit(() -> f.invoke("a"));
+            Future<String> b = executor.submit(() -> f.invoke("b"));
+            assertEquals("a!", a.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+            assertEquals("b!", b.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    public void testSameKeyIsComputedOnceAcrossThreads() throws Exception {
+        AtomicInteger counter = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        NotNullLazyValue<Integer> value = m.createLazyValue(() -> {
+            started.countDown();
+            await(release);
+            return counter.incrementAndGet();
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Future<Integer> first = executor.submit(value::invoke);
+            await(started);
+            Future<Integer> second = executor.submit(value::invoke);
+            Future<Integer> third = executor.submit(value::invoke);
+            release.countDown();
+
+            assertEquals(1, first.get(TIMEOUT_SECONDS, TimeUnit.SECONDS).intValue());
+            assertEquals(1, second.get(TIMEOUT_SECONDS, TimeUnit.SECONDS).intValue());
+            assertEquals(1, third.get(TIMEOUT_SECONDS, TimeUnit.SECONDS).intValue());
+            assertEquals(1, counter.get());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    public void testCycleBetweenThreadsIsReportedAsRecursion() throws Exception {
+        CountDownLatch bothStarted = new CountDownLatch(2);
+        class C {
+            final NotNullLazyValue<String> x = m.createRecursionTolerantLazyValue(() -> "x" + awaitAndGet(bothStarted, () -> this.y.invoke()), "-");
+            final NotNullLazyValue<String> y = m.createRecursionTolerantLazyValue(() -> "y" + awaitAndGet(bothStarted, () -> this.x.invoke()), "-");
+        }
+        C c = new C();
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> x = executor.submit(c.x::invoke);
+            Future<String> y = executor.submit(c.y::invoke);
+
+            // One of the threads detects the cycle and gets the recursion-tolerant value instead of deadlocking
+            String xValue = x.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            String yValue = y.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            assertTrue(xValue + ", " + yValue, xValue.equals("xy-") || yValue.equals("yx-"));
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    public void testDependentKeysAreNotReportedAsRecursion() throws Exception {
+        int threads = 4;
+        int keys = 2000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            for (int iteration = 0; iteration < 20; iteration++) {
+                // Each key depends on a smaller one, so there are no cycles, but threads often wait for each other
+                MemoizedFunctionToNotNull<Integer, Integer>[] f = new MemoizedFunctionToNotNull[1];
+                f[0] = new PerKeyLockStorageManager().createMemoizedFunction(key -> key == 0 ? 0 : f[0].invoke(key / 2) + 1);
+
+                List<Future<?>> futures = new ArrayList<Future<?>>();
+                for (int i = 0; i < threads; i++) {
+                    int start = i * keys / threads;
+                    futures.add(executor.submit(() -> {
+                        for (int j = 0; j < keys; j++) {
+                            int key = (start + j) % keys;
+                            assertEquals(32 - Integer.numberOfLeadingZeros(key), f[0].invoke(key).intValue());
+                        }
+                    }));
+                }
+                for (Future<?> future : futures) {
+                    future.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                }
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    public void testComputeDoesNotBlockOtherComputations() throws Exception {
+        CountDownLatch computing = new CountDownLatch(1);
+        NotNullLazyValue<String> value = m.createLazyValue(() -> {
+            computing.countDown();
+            // Needs the compute() lock, which is held by the other thread while it waits for this value
+            return m.compute(() -> "computed");
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> computingThread = executor.submit(value::invoke);
+            Future<String> lockHoldingThread = executor.submit(() -> m.compute(() -> {
+                await(computing);
+                return value.invoke();
+            }));
+
+            assertEquals("computed", lockHoldingThread.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+            assertEquals("computed", computingThread.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static <T> T awaitAndGet(CountDownLatch latch, Function0<T> f) {
+        latch.countDown();
+        await(latch);
+        return f.invoke();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        }
+        catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.types
+
+import junit.framework.TestCase
+import org.jetbrains.kotlin.builtins.DefaultBuiltIns
+import org.jetbrains.kotlin.types.checker.NewKotlinTypeChecker
+import org.jetbrains.kotlin.types.checker.SubtypeCheckCache
+import org.jetbrains.kotlin.types.checker.hasSupertypeWithGivenTypeConstructor
+import org.jetbrains.kotlin.types.typeUtil.makeNullable
+
+class SubtypeCheckCacheTest : TestCase() {
+    private val builtIns = DefaultBuiltIns.Instance
+
+    fun testRepeatedCheckIsServedFromCache() {
+        SubtypeCheckCache.runWithSessionCache {
+            val cache = SubtypeCheckCache.current!!
+
+            assertTrue(NewKotlinTypeChecker.isSubtypeOf(builtIns.intType, builtIns.number.defaultType))
+            assertEquals(1L, cache.misses)
+
+            assertTrue(NewKotlinTypeChecker.isSubtypeOf(builtIns.intType, builtIns.number.defaultType))
+            assertFalse(NewKotlinTypeChecker.isSubtypeOf(builtIns.stringType, builtIns.number.defaultType))
+            assertEquals(1L, cache.hits)
+            assertEquals(2L, cache.misses)
+        }
+    }
+
+    fun testNullabilityIsCheckedBeforeCache() {
+        SubtypeCheckCache.runWithSessionCache {
+            assertTrue(NewKotlinTypeChecker.isSubtypeOf(builtIns.intType, builtIns.number.defaultType))
+            assertFalse(NewKotlinTypeChecker.isSubtypeOf(builtIns.intType.makeNullable(), builtIns.number.defaultType))
+            assertTrue(NewKotlinTypeChecker.isSubtypeOf(builtIns.intType.makeNullable(), builtIns.number.defaultType.makeNullable()))
+        }
+    }
+
+    fun testSupertypePathIsServedFromCache() {
+        SubtypeCheckCache.runWithSessionCache {
+            val cache = SubtypeCheckCache.current!!
+            val comparable = builtIns.comparable.typeConstructor
+
+            assertTrue(builtIns.stringType.hasSupertypeWithGivenTypeConstructor(comparable))
+            assertTrue(builtIns.stringType.hasSupertypeWithGivenTypeConstructor(comparable))
+            assertEquals(1L, cache.hits)
+        }
+    }
+
+    fun testNoCacheOutsideOfSession() {
+        SubtypeCheckCache.runWithSessionCache {}
+        assertNull(SubtypeCheckCache.current)
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.util.slicedMap;
+
+import com.google.common.collect.ImmutableMap;
+import junit.framework.TestCase;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+public class CompactSlicedMapTest extends TestCase {
+    private static final RewritePolicy KEEP_FIRST = new RewritePolicy() {
+        @Override
+        public <K> boolean rewriteProcessingNeeded(K key) {
+            return true;
+        }
+
+        @Override
+        public <K, V> boolean processRewrite(WritableSlice<K, V> slice, K key, V oldValue, V newValue) {
+            return false;
+        }
+    };
+
+    private final WritableSlice<String, Integer> HOT = new BasicWritableSlice<>(KEEP_FIRST);
+    private final WritableSlice<String, Integer> COLD = new BasicWritableSlice<>(KEEP_FIRST);
+
+    @SuppressWarnings("unchecked")
+    private final WritableSlice<String, Integer> FALLBACK = Slices.<String, Integer>sliceBuilder()
+            .setFurtherLookupSlices(new ReadOnlySlice[] {HOT})
+            .build();
+
+    private final CompactSlicedMap map = new CompactSlicedMap(false, Collections.singletonList(HOT));
+
+    public void testHotAndColdSlices() {
+        map.put(HOT, "a", 1);
+        map.put(COLD, "a", 2);
+
+        assertEquals(1, (int) map.get(HOT, "a"));
+        assertEquals(2, (int) map.get(COLD, "a"));
+        assertNull(map.get(HOT, "b"));
+        assertEquals(ImmutableMap.of("a", 1), map.getSliceContents(HOT));
+        assertEquals(ImmutableMap.of("a", 2), map.getSliceContents(COLD));
+    }
+
+    public void testRewritePolicyIsApplied() {
+        map.put(HOT, "a", 1);
+        map.put(HOT, "a", 2);
+
+        assertEquals(1, (int) map.get(HOT, "a"));
+    }
+
+    public void testFurtherLookupSeesHotSlice() {
+        map.put(HOT, "a", 1);
+
+        assertEquals(1, (int) map.get(FALLBACK, "a"));
+    }
+
+    public void testForEachVisitsAllSlices() {
+        map.put(HOT, "a", 1);
+        map.put(COLD, "b", 2);
+
+        Map<String, Object> visited = new HashMap<>();
+        map.forEach((slice, key, value) -> {
+            visited.put((slice == HOT ? "hot " : "cold ") + key, value);
+            return null;
+        });
+
+        assertEquals(ImmutableMap.of("hot a", 1, "cold b", 2), visited);
+    }
+
+    public void testClear() {
+        map.put(HOT, "a", 1);
+        map.put(COLD, "a", 2);
+        map.clear();
+
+        assertNull(map.get(HOT, "a"));
+        assertNull(map.get(COLD, "a"));
+        assertTrue(map.getSliceContents(HOT).isEmpty());
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.utils
+
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+
+object ParallelUtils {
+    /**
+     * Creates a pool of [threadCount] daemon threads named [threadName], so that the pool doesn't keep the JVM running
+     * if compilation fails before the pool is shut down.
+     */
+    @JvmStatic
+    fun newDaemonThreadPool(threadCount: Int, threadName: String): ExecutorService =
+            Executors.newFixedThreadPool(threadCount) { runnable -> Thread(runnable, threadName).apply { isDaemon = true } }
+
+    /**
+     * Waits for [future] and throws an exception of the task as is rather than wrapped into [ExecutionException].
+     */
+    @JvmStatic
+    fun <T> await(future: Future<T>): T {
+        try {
+            return future.get()
+        }
+        catch (e: InterruptedException) {
+            Thread.currentThread().interrupt()
+            throw RuntimeException(e)
+        }
+        catch (e: ExecutionException) {
+            val cause = e.cause
+            when (cause) {
+                is RuntimeException -> throw cause
+                is Error -> throw cause
+                else -> throw RuntimeException(cause)
+            }
+        }
+    }
+
+    /**
+     * Parses a value of a `-X...-threads` argument, returns `null` if it's not a positive integer.
+     */
+    @JvmStatic
+    fun parseThreadCount(value: String): Int? =
+            value.toIntOrNull()?.takeIf { it >= 1 }
+}
@@ -79,18 +79,23 @@ object StrictEqualityTypeChecker {
 
 object ErrorTypesAreEqualToAnything : KotlinTypeChecker {
     override fun isSubtypeOf(subtype: KotlinType, supertype: KotlinType): Boolean =
-            NewKotlinTypeChecker.run { TypeCheckerContext(true).isSubtypeOf(subtype.unwrap(), supertype.unwrap()) }
+            NewKotlinTypeChecker.run {
+                TypeCheckerContext(true, subtypeCheckCache = SubtypeCheckCache.current).isSubtypeOf(subtype.unwrap(), supertype.unwrap())
+            }
 
     override fun equalTypes(a: KotlinType, b: KotlinType): Boolean =
-            NewKotlinTypeChecker.run { TypeCheckerContext(true).equalTypes(a.unwrap(), b.unwrap()) }
+            NewKotlinTypeChecker.run {
+                TypeCheckerContext(true, subtypeCheckCache = SubtypeCheckCache.current).equalTypes(a.unwrap(), b.unwrap())
+            }
 }
 
 object NewKotlinTypeChecker : KotlinTypeChecker {
     override fun isSubtypeOf(subtype: KotlinType, supertype: KotlinType): Boolean =
-            TypeCheckerContext(true).isSubtypeOf(subtype.unwrap(), supertype.unwrap()) // todo fix flag errorTypeEqualsToAnything
+            // todo fix flag errorTypeEqualsToAnything
+            TypeCheckerContext(true, subtypeCheckCache = SubtypeCheckCache.current).isSubtypeOf(subtype.unwrap(), supertype.unwrap())
 
     override fun equalTypes(a: KotlinType, b: KotlinType): Boolean =
-            TypeCheckerContext(false).equalTypes(a.unwrap(), b.unwrap())
+            TypeCheckerContext(false, subtypeCheckCache = SubtypeCheckCache.current).equalTypes(a.unwrap(), b.unwrap())
 
     fun TypeCheckerContext.equalTypes(a: UnwrappedType, b: UnwrappedType): Boolean {
         if (a === b) return true
@@ -221,6 +226,13 @@ object NewKotlinTypeChecker : KotlinTypeChecker {
         if (subType.constructor == superConstructor && superConstructor.parameters.isEmpty()) return true
         if (superType.isAnyOrNullableAny()) return true
 
+        val cache = subtypeCheckCache
+        if (cache != null && superConstructor.parameters.isEmpty() && subType.isCacheableClassType && superType.isCacheableClassType) {
+            return cache.isSubtype(subType.constructor, superConstructor) {
+                findCorrespondingSupertypes(subType, superConstructor).isNotEmpty() || hasNothingSupertype(subType)
+            }
+        }
+
         val supertypesWithSameConstructor = findCorrespondingSupertypes(subType, superConstructor)
         when (supertypesWithSameConstructor.size) {
             0 -> return hasNothingSupertype(subType) // todo Nothing & Array<Number> <: Array<String>
@@ -319,6 +331,10 @@ object NewKotlinTypeChecker : KotlinTypeChecker {
         return result
     }
 
+    // Supertypes of such types are determined by their type constructors
+    private val SimpleType.isCacheableClassType: Boolean
+        get() = isClassType && !isError
+
     private val ClassDescriptor.isCommonFinalClass: Boolean
         get() = isFinalClass && kind != ClassKind.ENUM_ENTRY
 
@@ -442,8 +458,16 @@ object NullabilityChecker {
 
 }
 
-fun UnwrappedType.hasSupertypeWithGivenTypeConstructor(typeConstructor: TypeConstructor) =
-        TypeCheckerContext(false).anySupertype(lowerIfFlexible(), { it.constructor == typeConstructor }, { SupertypesPolicy.LowerIfFlexible })
+fun UnwrappedType.hasSupertypeWithGivenTypeConstructor(typeConstructor: TypeConstructor): Boolean {
+    val start = lowerIfFlexible()
+    val hasPath = {
+        TypeCheckerContext(false).anySupertype(start, { it.constructor == typeConstructor }, { SupertypesPolicy.LowerIfFlexible })
+    }
+
+    val cache = SubtypeCheckCache.current
+    if (cache == null || !start.isClassType || start.isError) return hasPath()
+    return cache.hasSupertypePath(start.constructor, typeConstructor, hasPath)
+}
 
 fun UnwrappedType.anySuperTypeConstructor(predicate: (TypeConstructor) -> Boolean) =
         TypeCheckerContext(false).anySupertype(lowerIfFlexible(), { predicate(it.constructor) }, { SupertypesPolicy.LowerIfFlexible })
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.types.checker
+
+import org.jetbrains.kotlin.types.TypeConstructor
+import java.util.*
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Results of supertype traversals which depend only on type constructors of classes, e.g. whether `String` is a subtype of `Comparable`.
+ * Such results don't depend on type arguments, nullability or flexibility, so they can be reused by all type checks
+ * made during one resolution session, see [runWithSessionCache].
+ *
+ * Constructors are compared by identity: equal constructors of classes from different modules may have different supertypes.
+ * Only one thread may use a cache.
+ */
+class SubtypeCheckCache(private val maxSize: Int = DEFAULT_MAX_SIZE) {
+    private class Key(val subConstructor: TypeConstructor, val superConstructor: TypeConstructor) {
+        override fun equals(other: Any?): Boolean =
+                other is Key && subConstructor === other.subConstructor && superConstructor === other.superConstructor
+
+        override fun hashCode(): Int =
+                System.identityHashCode(subConstructor) * 31 + System.identityHashCode(superConstructor)
+    }
+
+    private inner class ResultMap : LinkedHashMap<Key, Boolean>(16, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<Key, Boolean>?): Boolean = size > maxSize
+    }
+
+    private val subtypes = ResultMap()
+    private val supertypePaths = ResultMap()
+
+    var hits: Long = 0L
+        private set
+
+    var misses: Long = 0L
+        private set
+
+    /**
+     * Whether a class type with [subConstructor] is a subtype of a class type with [superConstructor] without type parameters,
+     * nullability aside.
+     */
+    internal fun isSubtype(subConstructor: TypeConstructor, superConstructor: TypeConstructor, compute: () -> Boolean): Boolean =
+            subtypes.getOrCompute(Key(subConstructor, superConstructor), compute)
+
+    /**
+     * Whether [superConstructor] is reachable from the class type constructor [subConstructor] through supertypes.
+     */
+    internal fun hasSupertypePath(subConstructor: TypeConstructor, superConstructor: TypeConstructor, compute: () -> Boolean): Boolean =
+            supertypePaths.getOrCompute(Key(subConstructor, superConstructor), compute)
+
+    private fun ResultMap.getOrCompute(key: Key, compute: () -> Boolean): Boolean {
+        get(key)?.let {
+            hits++
+            TOTAL_HITS.incrementAndGet()
+            return it
+        }
+
+        misses++
+        TOTAL_MISSES.incrementAndGet()
+        return compute().also { put(key, it) }
+    }
+
+    companion object {
+        const val DEFAULT_MAX_SIZE = 2000
+
+        private val TOTAL_HITS = AtomicLong()
+        private val TOTAL_MISSES = AtomicLong()
+
+        private val CURRENT = ThreadLocal<SubtypeCheckCache>()
+
+        /** Number of type checks answered from all caches in this process. */
+        @JvmStatic
+        val totalHits: Long get() = TOTAL_HITS.get()
+
+        /** Number of supertype traversals made on behalf of all caches in this process. */
+        @JvmStatic
+        val totalMisses: Long get() = TOTAL_MISSES.get()
+
+        /** The cache of the resolution session running in the current thread, if any. */
+        @JvmStatic
+        val current: SubtypeCheckCache? get() = CURRENT.get()
+
+        /**
+         * Runs [block] as a resolution session: type checks made by [NewKotlinTypeChecker] in this thread share one cache.
+         * A nested session reuses the cache of the outer one.
+         */
+        @JvmStatic
+        fun <T> runWithSessionCache(block: () -> T): T {
+            if (CURRENT.get() != null) return block()
+
+            CURRENT.set(SubtypeCheckCache())
+            try {
+                return block()
+            }
+            finally {
+                CURRENT.remove()
+            }
+        }
+    }
+}
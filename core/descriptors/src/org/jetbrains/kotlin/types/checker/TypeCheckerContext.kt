@@ -20,7 +20,15 @@ import org.jetbrains.kotlin.types.*
 import org.jetbrains.kotlin.utils.SmartSet
 import java.util.*
 
-open class TypeCheckerContext(val errorTypeEqualsToAnything: Boolean, val allowedTypeVariable: Boolean = true) {
+/**
+ * [subtypeCheckCache] may only be passed by contexts which don't customize comparison of type constructors or add constraints,
+ * so that results for class type constructors depend on the constructors alone.
+ */
+open class TypeCheckerContext(
+        val errorTypeEqualsToAnything: Boolean,
+        val allowedTypeVariable: Boolean = true,
+        val subtypeCheckCache: SubtypeCheckCache? = null
+) {
     protected var argumentsDepth = 0
 
     private var supertypesLocked = false
@@ -25,13 +25,18 @@ import org.jetbrains.kotlin.descriptors.deserialization.ClassDescriptorFactory
 import org.jetbrains.kotlin.descriptors.deserialization.PlatformDependentDeclarationFilter
 import org.jetbrains.kotlin.incremental.components.LookupTracker
 import org.jetbrains.kotlin.name.FqName
+import org.jetbrains.kotlin.serialization.ProtoBuf
 import org.jetbrains.kotlin.serialization.deserialization.*
 import org.jetbrains.kotlin.storage.StorageManager
 import java.io.InputStream
+import java.util.concurrent.ConcurrentHashMap
 
 class BuiltInsLoaderImpl : BuiltInsLoader {
     private val classLoader = this::class.java.classLoader
 
+    // Built-ins from the compiler's own class loader never change, so they're only parsed once per process (e.g. per daemon)
+    private val ownPackageFragmentProtos = ConcurrentHashMap<String, ProtoBuf.PackageFragment>()
+
     override fun createPackageFragmentProvider(
             storageManager: StorageManager,
             builtInsModule: ModuleDescriptor,
@@ -39,7 +44,7 @@ class BuiltInsLoaderImpl : BuiltInsLoader {
             platformDependentDeclarationFilter: PlatformDependentDeclarationFilter,
             additionalClassPartsProvider: AdditionalClassPartsProvider
     ): PackageFragmentProvider {
-        return createBuiltInPackageFragmentProvider(
+        return doCreateBuiltInPackageFragmentProvider(
                 storageManager,
                 builtInsModule,
                 KotlinBuiltIns.BUILT_INS_PACKAGE_FQ_NAMES,
@@ -47,7 +52,10 @@ class BuiltInsLoaderImpl : BuiltInsLoader {
                 platformDependentDeclarationFilter,
                 additionalClassPartsProvider
         ) { path ->
-            classLoader?.getResourceAsStream(path) ?: ClassLoader.getSystemResourceAsStream(path)
+            ownPackageFragmentProtos[path] ?: run {
+                val inputStream = classLoader?.getResourceAsStream(path) ?: ClassLoader.getSystemResourceAsStream(path)
+                inputStream?.let { BuiltInsPackageFragmentImpl.readProto(it) }?.also { ownPackageFragmentProtos[path] = it }
+            }
         }
     }
 
@@ -59,11 +67,25 @@ class BuiltInsLoaderImpl : BuiltInsLoader {
             platformDependentDeclarationFilter: PlatformDependentDeclarationFilter,
             additionalClassPartsProvider: AdditionalClassPartsProvider = AdditionalClassPartsProvider.None,
             loadResource: (String) -> InputStream?
+    ): PackageFragmentProvider =
+            doCreateBuiltInPackageFragmentProvider(
+                    storageManager, module, packageFqNames, classDescriptorFactories, platformDependentDeclarationFilter,
+                    additionalClassPartsProvider
+            ) { path -> loadResource(path)?.let { BuiltInsPackageFragmentImpl.readProto(it) } }
+
+    private fun doCreateBuiltInPackageFragmentProvider(
+            storageManager: StorageManager,
+            module: ModuleDescriptor,
+            packageFqNames: Set<FqName>,
+            classDescriptorFactories: Iterable<ClassDescriptorFactory>,
+            platformDependentDeclarationFilter: PlatformDependentDeclarationFilter,
+            additionalClassPartsProvider: AdditionalClassPartsProvider,
+            loadProto: (String) -> ProtoBuf.PackageFragment?
     ): PackageFragmentProvider {
         val packageFragments = packageFqNames.map { fqName ->
             val resourcePath = BuiltInSerializerProtocol.getBuiltInsFilePath(fqName)
-            val inputStream = loadResource(resourcePath) ?: throw IllegalStateException("Resource not found in classpath: $resourcePath")
-            BuiltInsPackageFragmentImpl(fqName, storageManager, module, inputStream)
+            val proto = loadProto(resourcePath) ?: throw IllegalStateException("Resource not found in classpath: $resourcePath")
+            BuiltInsPackageFragmentImpl(fqName, storageManager, module, proto)
         }
         val provider = PackageFragmentProviderImpl(packageFragments)
 
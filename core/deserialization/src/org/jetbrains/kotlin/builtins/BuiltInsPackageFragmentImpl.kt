@@ -27,18 +27,29 @@ class BuiltInsPackageFragmentImpl(
         fqName: FqName,
         storageManager: StorageManager,
         module: ModuleDescriptor,
-        inputStream: InputStream
-) : BuiltInsPackageFragment, DeserializedPackageFragmentImpl(fqName, storageManager, module, inputStream.use { stream ->
-    val version = BuiltInsBinaryVersion.readFrom(stream)
+        proto: ProtoBuf.PackageFragment
+) : BuiltInsPackageFragment, DeserializedPackageFragmentImpl(fqName, storageManager, module, proto, containerSource = null) {
+    constructor(
+            fqName: FqName,
+            storageManager: StorageManager,
+            module: ModuleDescriptor,
+            inputStream: InputStream
+    ) : this(fqName, storageManager, module, readProto(inputStream))
 
-    if (!version.isCompatible()) {
-        // TODO: report a proper diagnostic
-        throw UnsupportedOperationException(
-                "Kotlin built-in definition format version is not supported: " +
-                "expected ${BuiltInsBinaryVersion.INSTANCE}, actual $version. " +
-                "Please update Kotlin"
-        )
-    }
+    companion object {
+        fun readProto(inputStream: InputStream): ProtoBuf.PackageFragment = inputStream.use { stream ->
+            val version = BuiltInsBinaryVersion.readFrom(stream)
+
+            if (!version.isCompatible()) {
+                // TODO: report a proper diagnostic
+                throw UnsupportedOperationException(
+                        "Kotlin built-in definition format version is not supported: " +
+                        "expected ${BuiltInsBinaryVersion.INSTANCE}, actual $version. " +
+                        "Please update Kotlin"
+                )
+            }
 
-    ProtoBuf.PackageFragment.parseFrom(stream, BuiltInSerializerProtocol.extensionRegistry)
-}, containerSource = null)
+            ProtoBuf.PackageFragment.parseFrom(stream, BuiltInSerializerProtocol.extensionRegistry)
+        }
+    }
+}
@@ -34,25 +34,23 @@ import java.util.*
 
 abstract class DeserializedMemberScope protected constructor(
         protected val c: DeserializationContext,
-        functionList: Collection<ProtoBuf.Function>,
-        propertyList: Collection<ProtoBuf.Property>,
-        typeAliasList: Collection<ProtoBuf.TypeAlias>,
+        functionList: List<ProtoBuf.Function>,
+        propertyList: List<ProtoBuf.Property>,
+        typeAliasList: List<ProtoBuf.TypeAlias>,
         classNames: () -> Collection<Name>
 ) : MemberScopeImpl() {
 
     private val functionProtos by
             c.storageManager.createLazyValue {
-                functionList.groupByName { it.name }
+                ProtosByName(functionList) { it.name }
             }
     private val propertyProtos by
             c.storageManager.createLazyValue {
-                propertyList.groupByName { it.name }
+                ProtosByName(propertyList) { it.name }
             }
     private val typeAliasProtos by
             c.storageManager.createLazyValue {
-                if (c.components.configuration.typeAliasesAllowed)
-                    typeAliasList.groupByName { it.name }
-                else emptyMap()
+                ProtosByName(if (c.components.configuration.typeAliasesAllowed) typeAliasList else emptyList()) { it.name }
             }
 
     private val functions =
@@ -63,14 +61,14 @@ abstract class DeserializedMemberScope protected constructor(
             c.storageManager.createMemoizedFunctionWithNullableValues<Name, TypeAliasDescriptor> { createTypeAlias(it) }
 
     private val functionNamesLazy by c.storageManager.createLazyValue {
-        functionProtos.keys + getNonDeclaredFunctionNames()
+        functionProtos.names + getNonDeclaredFunctionNames()
     }
 
     private val variableNamesLazy by c.storageManager.createLazyValue {
-        propertyProtos.keys + getNonDeclaredVariableNames()
+        propertyProtos.names + getNonDeclaredVariableNames()
     }
 
-    private val typeAliasNames: Set<Name> get() = typeAliasProtos.keys
+    private val typeAliasNames: Set<Name> get() = typeAliasProtos.names
 
     internal val classNames by c.storageManager.createLazyValue { classNames().toSet() }
 
@@ -82,9 +80,35 @@ abstract class DeserializedMemberScope protected constructor(
         return name !in functionNamesLazy && name !in variableNamesLazy && name !in classNames && name !in typeAliasNames
     }
 
-    private inline fun <M : MessageLite> Collection<M>.groupByName(
-            getNameIndex: (M) -> Int
-    ) = groupBy { c.nameResolver.getName(getNameIndex(it)) }
+    /**
+     * Positions of member protos grouped by name. Protos are grouped by the index of the name in the string table first,
+     * so that each distinct name is resolved once rather than once per overload (e.g. of hundreds of functions named `map`
+     * in a huge facade like `CollectionsKt`). Descriptors are only deserialized from the protos of a requested name.
+     */
+    private inner class ProtosByName<out M : MessageLite>(private val protos: List<M>, getNameIndex: (M) -> Int) {
+        private val positionsByName: Map<Name, IntArray>
+
+        init {
+            val positionsByNameIndex = LinkedHashMap<Int, MutableList<Int>>()
+            for ((position, proto) in protos.withIndex()) {
+                positionsByNameIndex.getOrPut(getNameIndex(proto)) { ArrayList(1) }.add(position)
+            }
+
+            val result = LinkedHashMap<Name, IntArray>(positionsByNameIndex.size)
+            for ((nameIndex, positions) in positionsByNameIndex) {
+                val name = c.nameResolver.getName(nameIndex)
+                // Different strings of the table are not expected to denote the same name, but protos must not be lost if they do
+                val existing = result[name]
+                result[name] = if (existing == null) positions.toIntArray() else (existing + positions).apply { sort() }
+            }
+            positionsByName = result
+        }
+
+        val names: Set<Name> get() = positionsByName.keys
+
+        operator fun get(name: Name): List<M> =
+                positionsByName[name]?.map { protos[it] }.orEmpty()
+    }
 
     private fun computeFunctions(name: Name) =
             computeDescriptors(
@@ -96,11 +120,11 @@ abstract class DeserializedMemberScope protected constructor(
 
     inline private fun <M : MessageLite, D : DeclarationDescriptor> computeDescriptors(
             name: Name,
-            protosByName: Map<Name, Collection<M>>,
+            protosByName: ProtosByName<M>,
             factory: (M) -> D,
             computeNonDeclared: (MutableCollection<D>) -> Unit
     ): Collection<D> {
-        val protos = protosByName[name].orEmpty()
+        val protos = protosByName[name]
 
         val descriptors = protos.mapTo(arrayListOf(), factory)
 
@@ -128,7 +152,7 @@ abstract class DeserializedMemberScope protected constructor(
     }
 
     private fun createTypeAlias(name: Name) =
-            typeAliasProtos[name]?.singleOrNull()?.let {
+            typeAliasProtos[name].singleOrNull()?.let {
                 c.memberDeserializer.loadTypeAlias(it)
             }
 
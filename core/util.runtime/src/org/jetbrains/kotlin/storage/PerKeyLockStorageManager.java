@@ -0,0 +1,599 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.storage;
+
+import kotlin.Unit;
+import kotlin.jvm.functions.Function0;
+import kotlin.jvm.functions.Function1;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.kotlin.utils.ExceptionUtilsKt;
+import org.jetbrains.kotlin.utils.WrappedValues;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A storage manager which does not share one lock between all the lazy values and memoized functions created by it,
+ * as opposed to {@link LockBasedStorageManager}. Each lazy value (or each key of a memoized function) is computed by at most one thread,
+ * other threads requesting it wait for that particular computation only, so unrelated declarations can be resolved concurrently.
+ *
+ * Recursion is detected per thread in the same way as in {@link LockBasedStorageManager}. Besides, if a thread is about to wait
+ * for a computation which (transitively) waits for a computation owned by this thread, the threads would deadlock. Such a situation
+ * is reported as a recursive call: this is exactly what would happen if both computations were performed in the same thread.
+ *
+ * {@link #compute} is still guarded by a single lock, which is however released while the thread is waiting
+ * for a computation performed by another thread, so that it never takes part in a deadlock. Thus {@link #compute} is only atomic
+ * as long as its computation doesn't wait for other threads: see the contract there.
+ */
+public class PerKeyLockStorageManager implements StorageManager {
+    private final LockBasedStorageManager.ExceptionHandlingStrategy exceptionHandlingStrategy;
+    private final String debugText;
+
+    private final ReentrantLock computeLock = new ReentrantLock();
+
+    // Thread -> computation it's currently waiting for, used to detect cycles between threads.
+    // A thread checks for a cycle and starts waiting atomically under the lock of this map, so the last thread closing a cycle always sees it
+    private final Map<Thread, Computation> waitingThreads = new HashMap<Thread, Computation>();
+
+    public PerKeyLockStorageManager() {
+        this(LockBasedStorageManager.ExceptionHandlingStrategy.THROW);
+    }
+
+    public PerKeyLockStorageManager(@NotNull LockBasedStorageManager.ExceptionHandlingStrategy exceptionHandlingStrategy) {
+        this("<unknown creating class>", exceptionHandlingStrategy);
+    }
+
+    public PerKeyLockStorageManager(
+            @NotNull String debugText,
+            @NotNull LockBasedStorageManager.ExceptionHandlingStrategy exceptionHandlingStrategy
+    ) {
+        this.debugText = debugText;
+        this.exceptionHandlingStrategy = exceptionHandlingStrategy;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "@" + Integer.toHexString(hashCode()) + " (" + debugText + ")";
+    }
+
+    @NotNull
+    @Override
+    public <K, V> MemoizedFunctionToNotNull<K, V> createMemoizedFunction(@NotNull Function1<? super K, ? extends V> compute) {
+        return createMemoizedFunction(compute, PerKeyLockStorageManager.<K>createConcurrentHashMap());
+    }
+
+    @NotNull
+    @Override
+    public <K, V> MemoizedFunctionToNotNull<K, V> createMemoizedFunction(
+            @NotNull Function1<? super K, ? extends V> compute,
+            @NotNull ConcurrentMap<K, Object> map
+    ) {
+        return new MapBasedMemoizedFunctionToNotNull<K, V>(this, map, compute);
+    }
+
+    @NotNull
+    @Override
+    public <K, V> MemoizedFunctionToNullable<K, V> createMemoizedFunctionWithNullableValues(
+            @NotNull Function1<? super K, ? extends V> compute
+    ) {
+        return createMemoizedFunctionWithNullableValues(compute, PerKeyLockStorageManager.<K>createConcurrentHashMap());
+    }
+
+    @NotNull
+    @Override
+    public <K, V> MemoizedFunctionToNullable<K, V> createMemoizedFunctionWithNullableValues(
+            @NotNull Function1<? super K, ? extends V> compute,
+            @NotNull ConcurrentMap<K, Object> map
+    ) {
+        return new MapBasedMemoizedFunction<K, V>(this, map, compute);
+    }
+
+    @NotNull
+    @Override
+    public <K, V> CacheWithNullableValues<K, V> createCacheWithNullableValues() {
+        final MemoizedFunctionToNullable<KeyWithComputation<K, V>, V> function = createMemoizedFunctionWithNullableValues(
+                new Function1<KeyWithComputation<K, V>, V>() {
+                    @Override
+                    public V invoke(KeyWithComputation<K, V> key) {
+                        return key.computation.invoke();
+                    }
+                }
+        );
+        return new CacheWithNullableValues<K, V>() {
+            @Nullable
+            @Override
+            public V computeIfAbsent(K key, @NotNull Function0<? extends V> computation) {
+                return function.invoke(new KeyWithComputation<K, V>(key, computation));
+            }
+        };
+    }
+
+    @NotNull
+    @Override
+    public <K, V> CacheWithNotNullValues<K, V> createCacheWithNotNullValues() {
+        final MemoizedFunctionToNotNull<KeyWithComputation<K, V>, V> function = createMemoizedFunction(
+                new Function1<KeyWithComputation<K, V>, V>() {
+                    @Override
+                    public V invoke(KeyWithComputation<K, V> key) {
+                        return key.computation.invoke();
+                    }
+                }
+        );
+        return new CacheWithNotNullValues<K, V>() {
+            @NotNull
+            @Override
+            public V computeIfAbsent(K key, @NotNull Function0<? extends V> computation) {
+                return function.invoke(new KeyWithComputation<K, V>(key, computation));
+            }
+        };
+    }
+
+    @NotNull
+    @Override
+    public <T> NotNullLazyValue<T> createLazyValue(@NotNull Function0<? extends T> computable) {
+        return new PerKeyLockNotNullLazyValue<T>(this, computable);
+    }
+
+    @NotNull
+    @Override
+    public <T> NotNullLazyValue<T> createRecursionTolerantLazyValue(
+            @NotNull Function0<? extends T> computable, @NotNull final T onRecursiveCall
+    ) {
+        return new PerKeyLockNotNullLazyValue<T>(this, computable) {
+            @Override
+            protected T recursionDetected(boolean firstTime) {
+                return onRecursiveCall;
+            }
+        };
+    }
+
+    @NotNull
+    @Override
+    public <T> NotNullLazyValue<T> createLazyValueWithPostCompute(
+            @NotNull Function0<? extends T> computable,
+            final Function1<? super Boolean, ? extends T> onRecursiveCall,
+            @NotNull final Function1<? super T, Unit> postCompute
+    ) {
+        return new PerKeyLockNotNullLazyValue<T>(this, computable) {
+            @Override
+            protected T recursionDetected(boolean firstTime) {
+                if (onRecursiveCall == null) {
+                    return super.recursionDetected(firstTime);
+                }
+                return onRecursiveCall.invoke(firstTime);
+            }
+
+            @Override
+            protected void postCompute(@NotNull T value) {
+                postCompute.invoke(value);
+            }
+        };
+    }
+
+    @NotNull
+    @Override
+    public <T> NullableLazyValue<T> createNullableLazyValue(@NotNull Function0<? extends T> computable) {
+        return new PerKeyLockLazyValue<T>(this, computable);
+    }
+
+    @NotNull
+    @Override
+    public <T> NullableLazyValue<T> createRecursionTolerantNullableLazyValue(
+            @NotNull Function0<? extends T> computable, final T onRecursiveCall
+    ) {
+        return new PerKeyLockLazyValue<T>(this, computable) {
+            @Override
+            protected T recursionDetected(boolean firstTime) {
+                return onRecursiveCall;
+            }
+        };
+    }
+
+    @NotNull
+    @Override
+    public <T> NullableLazyValue<T> createNullableLazyValueWithPostCompute(
+            @NotNull Function0<? extends T> computable, @NotNull final Function1<? super T, Unit> postCompute
+    ) {
+        return new PerKeyLockLazyValue<T>(this, computable) {
+            @Override
+            protected void postCompute(@Nullable T value) {
+                postCompute.invoke(value);
+            }
+        };
+    }
+
+    /**
+     * Unlike {@link LockBasedStorageManager#compute}, {@code computable} may be interrupted by a {@link #compute} call of another thread
+     * at a point where it waits for a lazy value or a memoized function being computed by that thread, because the lock is released
+     * while waiting (otherwise the threads would deadlock if that computation called {@link #compute} as well).
+     * So {@code computable} must keep shared state consistent at such points. This holds for the calls reachable
+     * from the CLI analysis which uses this storage manager: {@code LazyImportScope} only serializes lookups in imported scopes
+     * and doesn't mutate state, and {@code KotlinBuiltIns.setBuiltInsModule} never waits for other computations.
+     * {@code ResolverForProjectImpl}, which mutates its maps in {@link #compute}, is not used with this storage manager.
+     */
+    @Override
+    public <T> T compute(@NotNull Function0<? extends T> computable) {
+        computeLock.lock();
+        try {
+            return computable.invoke();
+        }
+        catch (Throwable throwable) {
+            throw exceptionHandlingStrategy.handleException(throwable);
+        }
+        finally {
+            computeLock.unlock();
+        }
+    }
+
+    /**
+     * Blocks until the given computation, owned by another thread, is finished.
+     * @return {@code false} if waiting would lead to a deadlock, in which case the call should be treated as a recursive one
+     */
+    private boolean await(@NotNull Computation computation) {
+        Thread currentThread = Thread.currentThread();
+        synchronized (waitingThreads) {
+            if (isWaitingForItself(currentThread, computation)) return false;
+            waitingThreads.put(currentThread, computation);
+        }
+
+        int computeLockHoldCount = computeLock.getHoldCount();
+        for (int i = 0; i < computeLockHoldCount; i++) {
+            computeLock.unlock();
+        }
+
+        try {
+            synchronized (computation) {
+                while (!computation.finished) {
+                    computation.wait();
+                }
+            }
+            return true;
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw exceptionHandlingStrategy.handleException(e);
+        }
+        finally {
+            synchronized (waitingThreads) {
+                waitingThreads.remove(currentThread);
+            }
+            for (int i = 0; i < computeLockHoldCount; i++) {
+                computeLock.lock();
+            }
+        }
+    }
+
+    // Must be called under the lock of waitingThreads
+    private boolean isWaitingForItself(@NotNull Thread currentThread, @NotNull Computation computation) {
+        List<Computation> chain = new ArrayList<Computation>();
+        Computation next = computation;
+        while (next != null && next.owner != currentThread) {
+            if (chain.contains(next)) return false; // a loop through stale entries of threads which have already been woken up
+            chain.add(next);
+            next = waitingThreads.get(next.owner);
+        }
+        if (next == null) return false;
+        // A thread which has just been woken up still refers to the computation it was waiting for,
+        // so the last one may be an already finished computation of the current thread
+        chain.add(next);
+
+        // Computations finish without the lock of waitingThreads, so the chain is a real cycle only if none of them has finished:
+        // the last one is owned by the current thread, so every unfinished computation in the chain can't be finished anymore
+        for (Computation computationInChain : chain) {
+            if (computationInChain.finished) return false;
+        }
+        return true;
+    }
+
+    @NotNull
+    private static <K> ConcurrentMap<K, Object> createConcurrentHashMap() {
+        // memory optimization: fewer segments and entries stored
+        return new ConcurrentHashMap<K, Object>(3, 1, 2);
+    }
+
+    private static boolean isValue(@Nullable Object value) {
+        return !(value instanceof NotValue) && !(value instanceof Computation);
+    }
+
+    private enum NotValue {
+        NOT_COMPUTED,
+        RECURSION_WAS_DETECTED
+    }
+
+    private static final class Computation {
+        private final Thread owner = Thread.currentThread();
+
+        private volatile boolean finished;
+        private volatile boolean recursionDetected;
+
+        // The computed value is visible to the owner thread only, while post-computation is in progress
+        private boolean hasValueForOwner;
+        private Object valueForOwner;
+
+        /**
+         * @return {@code true} if recursion has been detected for the first time
+         */
+        private boolean markRecursionDetected() {
+            synchronized (this) {
+                boolean firstTime = !recursionDetected;
+                recursionDetected = true;
+                return firstTime;
+            }
+        }
+
+        private void finish() {
+            synchronized (this) {
+                finished = true;
+                notifyAll();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "COMPUTING in " + owner.getName();
+        }
+    }
+
+    // Being static is memory optimization to prevent capturing outer-class reference at each level of inheritance hierarchy
+    private static class PerKeyLockLazyValue<T> implements NullableLazyValue<T> {
+        private final PerKeyLockStorageManager storageManager;
+        private final Function0<? extends T> computable;
+
+        @Nullable
+        private volatile Object value = NotValue.NOT_COMPUTED;
+
+        public PerKeyLockLazyValue(@NotNull PerKeyLockStorageManager storageManager, @NotNull Function0<? extends T> computable) {
+            this.storageManager = storageManager;
+            this.computable = computable;
+        }
+
+        @Override
+        public boolean isComputed() {
+            return isValue(value);
+        }
+
+        @Override
+        public boolean isComputing() {
+            return value instanceof Computation;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T invoke() {
+            while (true) {
+                Object _value = value;
+                if (isValue(_value)) return WrappedValues.unescapeThrowable(_value);
+
+                Computation computation = null;
+                synchronized (this) {
+                    _value = value;
+                    if (_value == NotValue.NOT_COMPUTED) {
+                        computation = new Computation();
+                        value = computation;
+                    }
+                }
+
+                if (computation != null) return doCompute(computation);
+                if (isValue(_value)) return WrappedValues.unescapeThrowable(_value);
+
+                if (_value == NotValue.RECURSION_WAS_DETECTED) {
+                    return recursionDetected(/* firstTime = */ false);
+                }
+
+                Computation inProgress = (Computation) _value;
+                if (inProgress.owner == Thread.currentThread()) {
+                    if (inProgress.hasValueForOwner) return (T) inProgress.valueForOwner;
+                    return recursionDetected(inProgress.markRecursionDetected());
+                }
+
+                if (!storageManager.await(inProgress)) {
+                    return recursionDetected(inProgress.markRecursionDetected());
+                }
+            }
+        }
+
+        private T doCompute(@NotNull Computation computation) {
+            try {
+                T typedValue = computable.invoke();
+                computation.valueForOwner = typedValue;
+                computation.hasValueForOwner = true;
+                postCompute(typedValue);
+                value = typedValue;
+                return typedValue;
+            }
+            catch (Throwable throwable) {
+                if (ExceptionUtilsKt.isProcessCanceledException(throwable)) {
+                    value = NotValue.NOT_COMPUTED;
+                    //noinspection ConstantConditions
+                    throw (RuntimeException) throwable;
+                }
+
+                // Store only if it's a genuine result, not something thrown through recursionDetected()
+                value = computation.recursionDetected ? NotValue.RECURSION_WAS_DETECTED : WrappedValues.escapeThrowable(throwable);
+                throw storageManager.exceptionHandlingStrategy.handleException(throwable);
+            }
+            finally {
+                computation.finish();
+            }
+        }
+
+        /**
+         * @param firstTime {@code true} when recursion has been just detected, {@code false} otherwise
+         * @return a value to be returned on a recursive call or subsequent calls
+         */
+        protected T recursionDetected(boolean firstTime) {
+            throw new IllegalStateException("Recursive call in a lazy value under " + storageManager);
+        }
+
+        protected void postCompute(T value) {
+            // Doing something in post-compute helps prevent infinite recursion
+        }
+    }
+
+    private static class PerKeyLockNotNullLazyValue<T> extends PerKeyLockLazyValue<T> implements NotNullLazyValue<T> {
+        public PerKeyLockNotNullLazyValue(@NotNull PerKeyLockStorageManager storageManager, @NotNull Function0<? extends T> computable) {
+            super(storageManager, computable);
+        }
+
+        @Override
+        @NotNull
+        public T invoke() {
+            T result = super.invoke();
+            assert result != null : "compute() returned null";
+            return result;
+        }
+    }
+
+    private static class MapBasedMemoizedFunction<K, V> implements MemoizedFunctionToNullable<K, V> {
+        private final PerKeyLockStorageManager storageManager;
+        private final ConcurrentMap<K, Object> cache;
+        private final Function1<? super K, ? extends V> compute;
+
+        public MapBasedMemoizedFunction(
+                @NotNull PerKeyLockStorageManager storageManager,
+                @NotNull ConcurrentMap<K, Object> map,
+                @NotNull Function1<? super K, ? extends V> compute
+        ) {
+            this.storageManager = storageManager;
+            this.cache = map;
+            this.compute = compute;
+        }
+
+        @Override
+        @Nullable
+        public V invoke(K input) {
+            while (true) {
+                Object value = cache.get(input);
+                if (value != null && !(value instanceof Computation)) return WrappedValues.unescapeExceptionOrNull(value);
+
+                if (value == null) {
+                    Computation computation = new Computation();
+                    if (cache.putIfAbsent(input, computation) == null) {
+                        return doCompute(input, computation);
+                    }
+                    continue;
+                }
+
+                Computation inProgress = (Computation) value;
+                if (inProgress.owner == Thread.currentThread() || !storageManager.await(inProgress)) {
+                    throw recursionDetected(input);
+                }
+            }
+        }
+
+        private V doCompute(K input, @NotNull Computation computation) {
+            try {
+                V typedValue;
+                try {
+                    typedValue = compute.invoke(input);
+                }
+                catch (Throwable throwable) {
+                    if (ExceptionUtilsKt.isProcessCanceledException(throwable)) {
+                        cache.remove(input, computation);
+                        //noinspection ConstantConditions
+                        throw (RuntimeException) throwable;
+                    }
+
+                    if (!cache.replace(input, computation, WrappedValues.escapeThrowable(throwable))) {
+                        throw raceCondition(input);
+                    }
+                    throw storageManager.exceptionHandlingStrategy.handleException(throwable);
+                }
+
+                if (!cache.replace(input, computation, WrappedValues.escapeNull(typedValue))) {
+                    throw storageManager.exceptionHandlingStrategy.handleException(raceCondition(input));
+                }
+                return typedValue;
+            }
+            finally {
+                computation.finish();
+            }
+        }
+
+        @NotNull
+        private AssertionError recursionDetected(K input) {
+            return new AssertionError("Recursion detected on input: " + input + " under " + storageManager);
+        }
+
+        @NotNull
+        private AssertionError raceCondition(K input) {
+            return new AssertionError("Race condition detected on input " + input + ". Old value is " + cache.get(input) +
+                                      " under " + storageManager);
+        }
+
+        @Override
+        public boolean isComputed(K key) {
+            Object value = cache.get(key);
+            return value != null && !(value instanceof Computation);
+        }
+
+        protected PerKeyLockStorageManager getStorageManager() {
+            return storageManager;
+        }
+    }
+
+    private static class MapBasedMemoizedFunctionToNotNull<K, V> extends MapBasedMemoizedFunction<K, V>
+            implements MemoizedFunctionToNotNull<K, V> {
+        public MapBasedMemoizedFunctionToNotNull(
+                @NotNull PerKeyLockStorageManager storageManager,
+                @NotNull ConcurrentMap<K, Object> map,
+                @NotNull Function1<? super K, ? extends V> compute
+        ) {
+            super(storageManager, map, compute);
+        }
+
+        @NotNull
+        @Override
+        public V invoke(K input) {
+            V result = super.invoke(input);
+            assert result != null : "compute() returned null under " + getStorageManager();
+            return result;
+        }
+    }
+
+    // equals and hashCode use only key
+    private static class KeyWithComputation<K, V> {
+        private final K key;
+        private final Function0<? extends V> computation;
+
+        public KeyWithComputation(K key, Function0<? extends V> computation) {
+            this.key = key;
+            this.computation = computation;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            KeyWithComputation<?, ?> that = (KeyWithComputation<?, ?>) o;
+
+            return key.equals(that.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return key.hashCode();
+        }
+    }
+}
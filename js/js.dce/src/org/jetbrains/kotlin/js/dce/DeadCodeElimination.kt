@@ -19,6 +19,7 @@ package org.jetbrains.kotlin.js.dce
 import com.google.gwt.dev.js.rhino.CodePosition
 import com.google.gwt.dev.js.rhino.ErrorReporter
 import org.jetbrains.kotlin.js.backend.JsToStringGenerationVisitor
+import org.jetbrains.kotlin.js.backend.NoOpSourceLocationConsumer
 import org.jetbrains.kotlin.js.backend.ast.*
 import org.jetbrains.kotlin.js.dce.Context.Node
 import org.jetbrains.kotlin.js.facade.SourceMapBuilderConsumer
@@ -30,11 +31,17 @@ import org.jetbrains.kotlin.js.parser.sourcemaps.SourceMapLocationRemapper
 import org.jetbrains.kotlin.js.parser.sourcemaps.SourceMapParser
 import org.jetbrains.kotlin.js.parser.sourcemaps.SourceMapSuccess
 import org.jetbrains.kotlin.js.sourceMap.SourceFilePathResolver
-import org.jetbrains.kotlin.js.sourceMap.SourceMap3Builder
+import org.jetbrains.kotlin.js.sourceMap.SourceMap3Writer
 import org.jetbrains.kotlin.js.util.TextOutputImpl
+import org.jetbrains.kotlin.utils.ParallelUtils
+import java.io.ByteArrayInputStream
+import java.io.DataInputStream
 import java.io.File
-import java.io.FileInputStream
 import java.io.InputStreamReader
+import java.io.Writer
+import java.nio.file.Files
+import java.nio.file.StandardCopyOption
+import java.util.concurrent.Callable
 
 class DeadCodeElimination(private val logConsumer: (DCELogLevel, String) -> Unit) {
     val moduleMapping = mutableMapOf<JsBlock, String>()
@@ -75,34 +82,33 @@ class DeadCodeElimination(private val logConsumer: (DCELogLevel, String) -> Unit
                 inputFiles: Collection<InputFile>,
                 rootReachableNames: Set<String>,
                 logConsumer: (DCELogLevel, String) -> Unit
+        ): DeadCodeEliminationResult = run(inputFiles, rootReachableNames, Runtime.getRuntime().availableProcessors(), logConsumer)
+
+        /**
+         * Input files are parsed, and output files are printed, in [threadCount] parallel threads.
+         * Output files and source maps which already have the expected contents are not rewritten.
+         */
+        fun run(
+                inputFiles: Collection<InputFile>,
+                rootReachableNames: Set<String>,
+                threadCount: Int,
+                logConsumer: (DCELogLevel, String) -> Unit
         ): DeadCodeEliminationResult {
             val program = JsProgram()
             val dce = DeadCodeElimination(logConsumer)
 
+            val parsedFiles = inputFiles.mapInParallel(threadCount, this::parseFile)
+
             var hasErrors = false
-            val blocks = inputFiles.map { file ->
+            val blocks = inputFiles.zip(parsedFiles).map { (file, parsedFile) ->
+                parsedFile.messages.forEach { (level, message) -> logConsumer(level, message) }
+
                 val block = JsGlobalBlock()
-                val code = File(file.path).readText()
-                val statements = parse(code, Reporter(file.path, logConsumer), program.scope, file.path) ?: run {
+                if (parsedFile.statements == null) {
                     hasErrors = true
                     return@map block
                 }
-                val sourceMapParse = file.pathToSourceMap
-                        ?.let { InputStreamReader(FileInputStream(it), "UTF-8") }
-                        ?.use { SourceMapParser.parse(it) }
-                when (sourceMapParse) {
-                    is SourceMapError -> {
-                        logConsumer(
-                                DCELogLevel.WARN,
-                                "Error parsing source map file ${file.pathToSourceMap}: ${sourceMapParse.message}")
-                    }
-                    is SourceMapSuccess -> {
-                        val sourceMap = sourceMapParse.value
-                        val remapper = SourceMapLocationRemapper(sourceMap)
-                        statements.forEach { remapper.remap(it) }
-                    }
-                }
-                block.statements += statements
+                block.statements += parsedFile.statements
                 file.moduleName?.let { dce.moduleMapping[block] = it }
                 block
             }
@@ -115,27 +121,111 @@ class DeadCodeElimination(private val logConsumer: (DCELogLevel, String) -> Unit
             dce.reachableNames += rootReachableNames
             dce.apply(program.globalBlock)
 
-            for ((file, block) in inputFiles.zip(blocks)) {
-                val sourceMapFile = File(file.outputPath + ".map")
-                val textOutput = TextOutputImpl()
-                val sourceMapBuilder = SourceMap3Builder(File(file.outputPath), textOutput, "")
-                val sourcePathResolver = SourceFilePathResolver(mutableListOf(), File(file.outputPath).parentFile)
-                val consumer = SourceMapBuilderConsumer(sourceMapBuilder, sourcePathResolver, true, true)
-                block.accept(JsToStringGenerationVisitor(textOutput, consumer))
-                val sourceMapContent = sourceMapBuilder.build()
-                sourceMapBuilder.addLink()
-
-                with(File(file.outputPath)) {
-                    parentFile.mkdirs()
-                    writeText(textOutput.toString())
+            inputFiles.zip(blocks).mapInParallel(threadCount) { (file, block) -> printFile(file, block) }
+
+            return DeadCodeEliminationResult(dce.reachableNodes, DeadCodeEliminationStatus.OK)
+        }
+
+        private class ParsedFile(val statements: List<JsStatement>?, val messages: List<Pair<DCELogLevel, String>>)
+
+        // Each file is parsed in its own scope, references to names declared in other files are bound by fixForwardNameReferences
+        private fun parseFile(file: InputFile): ParsedFile {
+            val code = File(file.path).readBytes()
+            val sourceMap = file.pathToSourceMap?.let { File(it).readBytes() }
+            val digest = ParsedInputCache.digest(code, sourceMap)
+            ParsedInputCache.get(file.path, digest)?.let { return ParsedFile(it.statements, it.messages) }
+
+            // Messages are reported on the calling thread, in the order of input files
+            val messages = mutableListOf<Pair<DCELogLevel, String>>()
+            val log = { level: DCELogLevel, message: String -> messages += level to message }
+
+            val scope = JsRootScope(JsProgram())
+            val statements = parse(String(code, Charsets.UTF_8), Reporter(file.path, log), scope, file.path) ?:
+                             return ParsedFile(null, messages)
+
+            val sourceMapParse = sourceMap?.let { SourceMapParser.parse(InputStreamReader(ByteArrayInputStream(it), "UTF-8")) }
+            when (sourceMapParse) {
+                is SourceMapError -> {
+                    log(DCELogLevel.WARN, "Error parsing source map file ${file.pathToSourceMap}: ${sourceMapParse.message}")
                 }
+                is SourceMapSuccess -> {
+                    val remapper = SourceMapLocationRemapper(sourceMapParse.value)
+                    statements.forEach { remapper.remap(it) }
+                }
+            }
 
+            ParsedInputCache.put(file.path, digest, ParsedInputCache.ParsedInput(statements, messages))
+            return ParsedFile(statements, messages)
+        }
+
+        private fun printFile(file: InputFile, block: JsBlock) {
+            val outputFile = File(file.outputPath)
+            writeIfChanged(outputFile) { writer ->
+                val textOutput = TextOutputImpl(writer, false)
                 if (file.pathToSourceMap != null) {
-                    sourceMapFile.writeText(sourceMapContent)
+                    writeIfChanged(File(file.outputPath + ".map")) { sourceMapWriter ->
+                        SourceMap3Writer(outputFile, textOutput, "", sourceMapWriter, 0).use { sourceMap ->
+                            val sourcePathResolver = SourceFilePathResolver(mutableListOf(), outputFile.parentFile)
+                            val consumer = SourceMapBuilderConsumer(sourceMap, sourcePathResolver, true, true)
+                            block.accept(JsToStringGenerationVisitor(textOutput, consumer))
+                        }
+                    }
                 }
+                else {
+                    block.accept(JsToStringGenerationVisitor(textOutput, NoOpSourceLocationConsumer))
+                }
+                SourceMap3Writer.addLink(textOutput, outputFile)
             }
+        }
 
-            return DeadCodeEliminationResult(dce.reachableNodes, DeadCodeEliminationStatus.OK)
+        // Keeps timestamps of unchanged outputs, so that tools watching them don't process them again.
+        // The output is streamed to a temporary file, so that large outputs are not kept in memory
+        private fun writeIfChanged(file: File, write: (Writer) -> Unit) {
+            file.parentFile.mkdirs()
+            val tempFile = File(file.parentFile, file.name + ".tmp")
+            try {
+                tempFile.bufferedWriter().use(write)
+                if (!file.isFile || !contentEquals(file, tempFile)) {
+                    Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING)
+                }
+            }
+            finally {
+                tempFile.delete()
+            }
+        }
+
+        private fun contentEquals(first: File, second: File): Boolean {
+            if (first.length() != second.length()) return false
+
+            val firstBuffer = ByteArray(8192)
+            val secondBuffer = ByteArray(8192)
+            DataInputStream(first.inputStream()).use { firstInput ->
+                DataInputStream(second.inputStream()).use { secondInput ->
+                    var remaining = first.length()
+                    while (remaining > 0) {
+                        val count = minOf(remaining, firstBuffer.size.toLong()).toInt()
+                        firstInput.readFully(firstBuffer, 0, count)
+                        secondInput.readFully(secondBuffer, 0, count)
+                        for (i in 0 until count) {
+                            if (firstBuffer[i] != secondBuffer[i]) return false
+                        }
+                        remaining -= count
+                    }
+                }
+            }
+            return true
+        }
+
+        private fun <T, R> Collection<T>.mapInParallel(threadCount: Int, transform: (T) -> R): List<R> {
+            if (threadCount <= 1 || size <= 1) return map(transform)
+
+            val executor = ParallelUtils.newDaemonThreadPool(minOf(threadCount, size), "Kotlin DCE")
+            try {
+                return map { executor.submit(Callable { transform(it) }) }.map { ParallelUtils.await(it) }
+            }
+            finally {
+                executor.shutdownNow()
+            }
         }
 
         private class Reporter(private val fileName: String, private val logConsumer: (DCELogLevel, String) -> Unit) : ErrorReporter {
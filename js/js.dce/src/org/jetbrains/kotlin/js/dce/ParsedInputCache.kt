@@ -0,0 +1,52 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.js.dce
+
+import org.jetbrains.kotlin.js.backend.ast.JsStatement
+import java.lang.ref.SoftReference
+import java.security.MessageDigest
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Parsed and source-mapped statements of DCE input files, kept between runs in the same process until the file or its source map
+ * changes, or memory runs low. Statements are copied on both [put] and [get], since DCE removes unused declarations from the AST.
+ */
+internal object ParsedInputCache {
+    class ParsedInput(val statements: List<JsStatement>, val messages: List<Pair<DCELogLevel, String>>)
+
+    private class Entry(val digest: String, val input: SoftReference<ParsedInput>)
+
+    private val cache = ConcurrentHashMap<String, Entry>()
+
+    fun get(path: String, digest: String): ParsedInput? {
+        val entry = cache[path] ?: return null
+        if (entry.digest != digest) return null
+        return entry.input.get()?.copy()
+    }
+
+    fun put(path: String, digest: String, input: ParsedInput) {
+        cache[path] = Entry(digest, SoftReference(input.copy()))
+    }
+
+    fun digest(code: ByteArray, sourceMap: ByteArray?): String =
+            digest(code) + ":" + (sourceMap?.let { digest(it) } ?: "")
+
+    private fun digest(bytes: ByteArray): String =
+            MessageDigest.getInstance("SHA-256").digest(bytes).joinToString("") { "%02x".format(it) }
+
+    private fun ParsedInput.copy() = ParsedInput(statements.map { it.deepCopy() }, messages)
+}
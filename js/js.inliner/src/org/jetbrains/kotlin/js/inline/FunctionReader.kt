@@ -35,25 +35,12 @@ import org.jetbrains.kotlin.js.translate.utils.JsAstUtils
 import org.jetbrains.kotlin.js.translate.utils.JsDescriptorUtils.getModuleName
 import org.jetbrains.kotlin.resolve.descriptorUtil.isExtension
 import org.jetbrains.kotlin.resolve.inline.InlineStrategy
-import org.jetbrains.kotlin.utils.JsLibraryUtils
+import org.jetbrains.kotlin.serialization.js.ast.JsAstDeserializer
+import org.jetbrains.kotlin.serialization.js.ast.JsAstProtoBuf
+import org.jetbrains.kotlin.serialization.js.ast.JsAstSerializer
 import org.jetbrains.kotlin.utils.sure
 import java.io.File
-import java.io.StringReader
-
-// TODO: add hash checksum to defineModule?
-/**
- * Matches string like Kotlin.defineModule("stdlib", _)
- * Kotlin, _ can be renamed by minifier, quotes type can be changed too (" to ')
- */
-private val JS_IDENTIFIER_START = "\\p{Lu}\\p{Ll}\\p{Lt}\\p{Lm}\\p{Lo}\\p{Nl}\\\$_"
-private val JS_IDENTIFIER_PART = "$JS_IDENTIFIER_START\\p{Pc}\\p{Mc}\\p{Mn}\\d"
-private val JS_IDENTIFIER="[$JS_IDENTIFIER_START][$JS_IDENTIFIER_PART]*"
-private val DEFINE_MODULE_PATTERN = ("($JS_IDENTIFIER)\\.defineModule\\(\\s*(['\"])([^'\"]+)\\2\\s*,\\s*(\\w+)\\s*\\)").toRegex().toPattern()
-private val DEFINE_MODULE_FIND_PATTERN = ".defineModule("
-
-private val specialFunctions = enumValues<SpecialFunction>().joinToString("|") { it.suggestedName }
-private val specialFunctionsByName = enumValues<SpecialFunction>().associateBy { it.suggestedName }
-private val SPECIAL_FUNCTION_PATTERN = Regex("var\\s+($JS_IDENTIFIER)\\s*=\\s*($JS_IDENTIFIER)\\.($specialFunctions)\\s*;").toPattern()
+import java.util.concurrent.ConcurrentHashMap
 
 class FunctionReader(
         private val reporter: JsConfig.Reporter,
@@ -70,6 +57,11 @@ class FunctionReader(
      *
      * kotlinVariable: kotlin object variable.
      *     The default variable is Kotlin, but it can be renamed by minifier.
+     *
+     * inlineFunctionOffsets: offsets of inline function bodies in fileContent by function tags, see [JsLibraryIndex].
+     *
+     * A module info lives as long as [JsLibraryIndex] keeps the index of its library, so function bodies of archives
+     * and single .js files are parsed once rather than on every compilation.
      */
     class ModuleInfo(
             val filePath: String,
@@ -77,6 +69,7 @@ class FunctionReader(
             val moduleVariable: String,
             val kotlinVariable: String,
             val specialFunctions: Map<String, SpecialFunction>,
+            val inlineFunctionOffsets: Map<String, Int>,
             offsetToSourceMappingProvider: () -> OffsetToSourceMapping,
             val sourceMap: SourceMap?,
             val outputDir: File?
@@ -86,58 +79,39 @@ class FunctionReader(
         val wrapFunctionRegex = specialFunctions.entries
                 .singleOrNull { (_, v) -> v == SpecialFunction.WRAP_FUNCTION }?.key
                 ?.let { Regex("\\s*$it\\s*\\(\\s*").toPattern() }
-    }
 
-    private val moduleNameToInfo by lazy {
-        val result = HashMultimap.create<String, ModuleInfo>()
+        // Parsed functions by offsets. They are kept serialized, since readers modify functions and their names,
+        // and every reader must get a copy with its own names.
+        private val parsedFunctions = ConcurrentHashMap<Int, JsAstProtoBuf.Chunk>()
 
-        JsLibraryUtils.traverseJsLibraries(config.libraries.map(::File)) { (content, path, sourceMapContent, file) ->
-            var current = 0
+        fun parseFunctionAt(offset: Int): JsFunction? {
+            val chunk = parsedFunctions[offset] ?: run {
+                val position = offsetToSourceMapping[offset]
+                val function = parseFunction(fileContent, filePath, position, offset, ThrowExceptionOnErrorReporter, JsRootScope(JsProgram())) ?:
+                               return null
+                function.fixForwardNameReferences()
 
-            while (true) {
-                var index = content.indexOf(DEFINE_MODULE_FIND_PATTERN, current)
-                if (index < 0) break
+                val fragment = JsProgramFragment(JsRootScope(JsProgram()))
+                fragment.declarationBlock.statements += JsExpressionStatement(function)
+                JsAstSerializer { it.path }.serialize(fragment).also { parsedFunctions.putIfAbsent(offset, it) }
+            }
 
-                current = index + 1
-                index = rewindToIdentifierStart(content, index)
-                val preciseMatcher = DEFINE_MODULE_PATTERN.matcher(offset(content, index))
-                if (!preciseMatcher.lookingAt()) continue
+            val fragment = JsAstDeserializer(JsProgram(), emptyList()).deserialize(chunk)
+            return (fragment.declarationBlock.statements.single() as JsExpressionStatement).expression as JsFunction
+        }
+    }
 
-                val moduleName = preciseMatcher.group(3)
-                val moduleVariable = preciseMatcher.group(4)
-                val kotlinVariable = preciseMatcher.group(1)
+    private val moduleNameToInfo by lazy {
+        val result = HashMultimap.create<String, ModuleInfo>()
 
-                val matcher = SPECIAL_FUNCTION_PATTERN.matcher(content)
-                val specialFunctions = mutableMapOf<String, SpecialFunction>()
-                while (matcher.find()) {
-                    if (matcher.group(2) == kotlinVariable) {
-                        specialFunctions[matcher.group(1)] = specialFunctionsByName[matcher.group(3)]!!
-                    }
+        for (library in config.libraries) {
+            for (libraryFile in JsLibraryIndex.getIndex(File(library))) {
+                libraryFile.sourceMapError?.let {
+                    reporter.warning("Error parsing source map file for ${libraryFile.path}: $it")
                 }
-
-                val sourceMap = sourceMapContent?.let {
-                    val sourceMapResult = SourceMapParser.parse(StringReader(it))
-                    when (sourceMapResult) {
-                        is SourceMapSuccess -> sourceMapResult.value
-                        is SourceMapError -> {
-                            reporter.warning("Error parsing source map file for $path: ${sourceMapResult.message}")
-                            null
-                        }
-                    }
+                for (module in libraryFile.modules) {
+                    result.put(module.name, module.info)
                 }
-
-                val moduleInfo = ModuleInfo(
-                        filePath = path,
-                        fileContent = content,
-                        moduleVariable = moduleVariable,
-                        kotlinVariable = kotlinVariable,
-                        specialFunctions = specialFunctions,
-                        offsetToSourceMappingProvider = { OffsetToSourceMapping(content) },
-                        sourceMap = sourceMap,
-                        outputDir = file?.parentFile
-                )
-
-                result.put(moduleName, moduleInfo)
             }
         }
 
@@ -159,25 +133,6 @@ class FunctionReader(
         return fragments.flatMap { it.inlineModuleMap.entries }.associate { (k, v) -> k to v }
     }
 
-    private fun rewindToIdentifierStart(text: String, index: Int): Int {
-        var result = index
-        while (result > 0 && Character.isJavaIdentifierPart(text[result - 1])) {
-            --result
-        }
-        return result
-    }
-
-    private fun offset(text: String, offset: Int) = object : CharSequence {
-        override val length: Int
-            get() = text.length - offset
-
-        override fun get(index: Int) = text[index + offset]
-
-        override fun subSequence(startIndex: Int, endIndex: Int) = text.subSequence(startIndex + offset, endIndex + offset)
-
-        override fun toString() = text.substring(offset)
-    }
-
     private val functionCache = object : SLRUCache<CallableDescriptor, FunctionWithWrapper>(50, 50) {
         override fun createValue(descriptor: CallableDescriptor): FunctionWithWrapper =
                 readFunction(descriptor).sure { "Could not read function: $descriptor" }
@@ -208,22 +163,16 @@ class FunctionReader(
         val source = info.fileContent
         var tag = Namer.getFunctionTag(descriptor, config)
         val tagForModule = tag
-        var index = source.indexOf(tag)
+        var offset = findFunctionOffset(info, tag)
 
         // Hack for compatibility with old versions of stdlib
         // TODO: remove in 1.2
-        if (index < 0 && tag == "kotlin.untypedCharArrayF") {
+        if (offset < 0 && tag == "kotlin.untypedCharArrayF") {
             tag = "kotlin.charArrayF"
-            index = source.indexOf(tag)
+            offset = findFunctionOffset(info, tag)
         }
 
-        if (index < 0) return null
-
-        // + 1 for closing quote
-        var offset = index + tag.length + 1
-        while (offset < source.length && source[offset].isWhitespaceOrComma) {
-            offset++
-        }
+        if (offset < 0) return null
 
         val sourcePart = ShallowSubSequence(source, offset, source.length)
         val wrapFunctionMatcher = info.wrapFunctionRegex?.matcher(sourcePart)
@@ -232,10 +181,7 @@ class FunctionReader(
             offset += wrapFunctionMatcher!!.end()
         }
 
-        val position = info.offsetToSourceMapping[offset]
-        val functionExpr = parseFunction(source, info.filePath, position, offset, ThrowExceptionOnErrorReporter, JsRootScope(JsProgram())) ?:
-                           return null
-        functionExpr.fixForwardNameReferences()
+        val functionExpr = info.parseFunctionAt(offset) ?: return null
         val (function, wrapper) = if (isWrapped) {
             InlineMetadata.decomposeWrapper(functionExpr) ?: return null
         }
@@ -289,6 +235,21 @@ class FunctionReader(
         return FunctionWithWrapper(function, wrapper)
     }
 
+    private fun findFunctionOffset(info: ModuleInfo, tag: String): Int {
+        info.inlineFunctionOffsets[tag]?.let { return it }
+
+        val source = info.fileContent
+        val index = source.indexOf(tag)
+        if (index < 0) return -1
+
+        // + 1 for closing quote
+        var offset = index + tag.length + 1
+        while (offset < source.length && source[offset].isWhitespaceOrComma) {
+            offset++
+        }
+        return offset
+    }
+
     private fun markDefaultParams(function: JsFunction) {
         val paramsByNames = function.parameters.associate { it.name to it }
         for (ifStatement in function.body.statements) {
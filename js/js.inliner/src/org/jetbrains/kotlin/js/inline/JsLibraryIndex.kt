@@ -0,0 +1,190 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.js.inline
+
+import org.jetbrains.kotlin.js.backend.ast.metadata.SpecialFunction
+import org.jetbrains.kotlin.js.parser.OffsetToSourceMapping
+import org.jetbrains.kotlin.js.parser.sourcemaps.SourceMap
+import org.jetbrains.kotlin.js.parser.sourcemaps.SourceMapError
+import org.jetbrains.kotlin.js.parser.sourcemaps.SourceMapParser
+import org.jetbrains.kotlin.js.parser.sourcemaps.SourceMapSuccess
+import org.jetbrains.kotlin.utils.JsLibrary
+import org.jetbrains.kotlin.utils.JsLibraryUtils
+import java.io.File
+import java.io.StringReader
+import java.lang.ref.SoftReference
+import java.util.concurrent.ConcurrentHashMap
+import java.util.regex.Pattern
+
+// TODO: add hash checksum to defineModule?
+/**
+ * Matches string like Kotlin.defineModule("stdlib", _)
+ * Kotlin, _ can be renamed by minifier, quotes type can be changed too (" to ')
+ */
+private val JS_IDENTIFIER_START = "\\p{Lu}\\p{Ll}\\p{Lt}\\p{Lm}\\p{Lo}\\p{Nl}\\\$_"
+private val JS_IDENTIFIER_PART = "$JS_IDENTIFIER_START\\p{Pc}\\p{Mc}\\p{Mn}\\d"
+private val JS_IDENTIFIER="[$JS_IDENTIFIER_START][$JS_IDENTIFIER_PART]*"
+private val DEFINE_MODULE_PATTERN = ("($JS_IDENTIFIER)\\.defineModule\\(\\s*(['\"])([^'\"]+)\\2\\s*,\\s*(\\w+)\\s*\\)").toRegex().toPattern()
+private val DEFINE_MODULE_FIND_PATTERN = ".defineModule("
+
+private val specialFunctions = enumValues<SpecialFunction>().joinToString("|") { it.suggestedName }
+private val specialFunctionsByName = enumValues<SpecialFunction>().associateBy { it.suggestedName }
+private val SPECIAL_FUNCTION_PATTERN = Regex("var\\s+($JS_IDENTIFIER)\\s*=\\s*($JS_IDENTIFIER)\\.($specialFunctions)\\s*;").toPattern()
+
+/**
+ * Module definitions of JS libraries, with special functions and offsets of inline function bodies.
+ *
+ * Indices of archives and single .js files are kept between compilations in the same process until the library file changes
+ * or memory runs low, so the text of such libraries is scanned only once, and inline function bodies read from them
+ * are parsed only once (see [FunctionReader.ModuleInfo.parseFunctionAt]). Directories are scanned on every compilation.
+ */
+object JsLibraryIndex {
+    class Module(val name: String, val info: FunctionReader.ModuleInfo)
+
+    class LibraryFile(val path: String, val modules: List<Module>, val sourceMapError: String?)
+
+    private class CachedIndex(val lastModified: Long, val length: Long, val files: SoftReference<List<LibraryFile>>)
+
+    private val cache = ConcurrentHashMap<String, CachedIndex>()
+
+    fun getIndex(library: File): List<LibraryFile> {
+        if (library.isDirectory) return buildIndex(library)
+
+        val key = library.absolutePath
+        val lastModified = library.lastModified()
+        val length = library.length()
+
+        val cached = cache[key]
+        if (cached != null && cached.lastModified == lastModified && cached.length == length) {
+            cached.files.get()?.let { return it }
+        }
+
+        val index = buildIndex(library)
+        cache[key] = CachedIndex(lastModified, length, SoftReference(index))
+        return index
+    }
+
+    private fun buildIndex(library: File): List<LibraryFile> {
+        val result = mutableListOf<LibraryFile>()
+        JsLibraryUtils.traverseJsLibrary(library) { result.add(indexFile(it)) }
+        return result
+    }
+
+    fun indexFile(library: JsLibrary): LibraryFile {
+        val (content, path, sourceMapContent, file) = library
+
+        val sourceMapResult by lazy { sourceMapContent?.let { SourceMapParser.parse(StringReader(it)) } }
+        val offsetToSourceMapping by lazy { OffsetToSourceMapping(content) }
+        val specialFunctionsByKotlinVariable = mutableMapOf<String, Map<String, SpecialFunction>>()
+        val inlineFunctionsByKotlinVariable = mutableMapOf<String, Map<String, Int>>()
+
+        val modules = mutableListOf<Module>()
+        var current = 0
+
+        while (true) {
+            var index = content.indexOf(DEFINE_MODULE_FIND_PATTERN, current)
+            if (index < 0) break
+
+            current = index + 1
+            index = rewindToIdentifierStart(content, index)
+            val preciseMatcher = DEFINE_MODULE_PATTERN.matcher(offset(content, index))
+            if (!preciseMatcher.lookingAt()) continue
+
+            val moduleName = preciseMatcher.group(3)
+            val moduleVariable = preciseMatcher.group(4)
+            val kotlinVariable = preciseMatcher.group(1)
+
+            val specialFunctions = specialFunctionsByKotlinVariable.getOrPut(kotlinVariable) {
+                findSpecialFunctions(content, kotlinVariable)
+            }
+            val inlineFunctionOffsets = inlineFunctionsByKotlinVariable.getOrPut(kotlinVariable) {
+                findInlineFunctions(content, kotlinVariable, specialFunctions)
+            }
+
+            val moduleInfo = FunctionReader.ModuleInfo(
+                    filePath = path,
+                    fileContent = content,
+                    moduleVariable = moduleVariable,
+                    kotlinVariable = kotlinVariable,
+                    specialFunctions = specialFunctions,
+                    inlineFunctionOffsets = inlineFunctionOffsets,
+                    offsetToSourceMappingProvider = { offsetToSourceMapping },
+                    sourceMap = (sourceMapResult as? SourceMapSuccess)?.value,
+                    outputDir = file?.parentFile
+            )
+
+            modules.add(Module(moduleName, moduleInfo))
+        }
+
+        val sourceMapError = if (modules.isNotEmpty()) (sourceMapResult as? SourceMapError)?.message else null
+        return LibraryFile(path, modules, sourceMapError)
+    }
+
+    private fun findSpecialFunctions(content: String, kotlinVariable: String): Map<String, SpecialFunction> {
+        val matcher = SPECIAL_FUNCTION_PATTERN.matcher(content)
+        val specialFunctions = mutableMapOf<String, SpecialFunction>()
+        while (matcher.find()) {
+            if (matcher.group(2) == kotlinVariable) {
+                specialFunctions[matcher.group(1)] = specialFunctionsByName[matcher.group(3)]!!
+            }
+        }
+        return specialFunctions
+    }
+
+    /**
+     * Finds calls like defineInlineFunction('tag', ...) and Kotlin.defineInlineFunction('tag', ...), and returns offsets
+     * of their second arguments by tags. FunctionReader searches the text for a tag which is not found here.
+     */
+    private fun findInlineFunctions(
+            content: String,
+            kotlinVariable: String,
+            specialFunctions: Map<String, SpecialFunction>
+    ): Map<String, Int> {
+        val callees = specialFunctions.filterValues { it == SpecialFunction.DEFINE_INLINE_FUNCTION }.keys +
+                      "$kotlinVariable.${SpecialFunction.DEFINE_INLINE_FUNCTION.suggestedName}"
+        val calleePattern = callees.joinToString("|") { Pattern.quote(it) }
+        val matcher = Pattern.compile("(?<![$JS_IDENTIFIER_PART.])(?:$calleePattern)\\s*\\(\\s*(['\"])([^'\"]+)\\1[\\s,]*").matcher(content)
+
+        val result = hashMapOf<String, Int>()
+        while (matcher.find()) {
+            val tag = matcher.group(2)
+            if (tag !in result) {
+                result[tag] = matcher.end()
+            }
+        }
+        return result
+    }
+
+    private fun rewindToIdentifierStart(text: String, index: Int): Int {
+        var result = index
+        while (result > 0 && Character.isJavaIdentifierPart(text[result - 1])) {
+            --result
+        }
+        return result
+    }
+
+    private fun offset(text: String, offset: Int) = object : CharSequence {
+        override val length: Int
+            get() = text.length - offset
+
+        override fun get(index: Int) = text[index + offset]
+
+        override fun subSequence(startIndex: Int, endIndex: Int) = text.subSequence(startIndex + offset, endIndex + offset)
+
+        override fun toString() = text.substring(offset)
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.js.test
+
+import com.intellij.openapi.util.io.FileUtil
+import junit.framework.TestCase
+import org.jetbrains.kotlin.js.dce.DeadCodeElimination
+import org.jetbrains.kotlin.js.dce.DeadCodeEliminationStatus
+import org.jetbrains.kotlin.js.dce.InputFile
+import java.io.File
+
+class DceOutputTest : TestCase() {
+    private lateinit var tmpDir: File
+
+    override fun setUp() {
+        super.setUp()
+        tmpDir = FileUtil.createTempDirectory("dce", null)
+    }
+
+    override fun tearDown() {
+        FileUtil.delete(tmpDir)
+        super.tearDown()
+    }
+
+    fun testParallelOutputIsTheSame() {
+        val files = createInputFiles()
+
+        runDce(files, threadCount = 1)
+        val sequential = files.map { File(it.outputPath).readText() }
+
+        runDce(files, threadCount = 4)
+        assertEquals(sequential, files.map { File(it.outputPath).readText() })
+        assertFalse(sequential[0].contains("ignore"))
+    }
+
+    fun testUnchangedOutputIsNotRewritten() {
+        val files = createInputFiles()
+        runDce(files, threadCount = 4)
+
+        val outputs = files.map { File(it.outputPath) }
+        outputs.forEach { assertTrue(it.setLastModified(OLD_TIMESTAMP)) }
+
+        runDce(files, threadCount = 4)
+        assertEquals(outputs.map { OLD_TIMESTAMP }, outputs.map { it.lastModified() })
+
+        File(files[1].path).appendText("\nconsole.log(1);\n")
+        runDce(files, threadCount = 4)
+        assertEquals(OLD_TIMESTAMP, outputs[0].lastModified())
+        assertTrue(outputs[1].lastModified() != OLD_TIMESTAMP)
+    }
+
+    private fun createInputFiles(): List<InputFile> = (0..2).map { i ->
+        val input = File(tmpDir, "module$i.js")
+        input.writeText("""
+            define(['exports'], function (exports) {
+                function foo() {
+                }
+                function ignore() {
+                }
+                exports.foo = foo;
+                exports.ignore = ignore;
+            });
+        """.trimIndent())
+        InputFile(input.path, null, File(tmpDir, "out/module$i.js").path, "module$i")
+    }
+
+    private fun runDce(files: List<InputFile>, threadCount: Int) {
+        val reachableNames = files.map { "${it.moduleName}.foo" }.toSet()
+        val result = DeadCodeElimination.run(files, reachableNames, threadCount) { _, _ -> }
+        assertEquals(DeadCodeEliminationStatus.OK, result.status)
+    }
+
+    companion object {
+        private val OLD_TIMESTAMP = 1000000000000L
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.js.test
+
+import junit.framework.TestCase
+import org.jetbrains.kotlin.js.backend.ast.JsNameRef
+import org.jetbrains.kotlin.js.backend.ast.JsReturn
+import org.jetbrains.kotlin.js.backend.ast.metadata.SpecialFunction
+import org.jetbrains.kotlin.js.inline.JsLibraryIndex
+import org.jetbrains.kotlin.utils.JsLibrary
+
+class JsLibraryIndexTest : TestCase() {
+    private val content = """
+        define(['kotlin'], function (Kotlin) {
+          var _ = {};
+          var defineInlineFunction = Kotlin.defineInlineFunction;
+          var wrapFunction = Kotlin.wrapFunction;
+          _.foo = defineInlineFunction('lib.foo_za3lpa${'$'}', function (x) { return x; });
+          _.bar = Kotlin.defineInlineFunction("lib.bar",
+              wrapFunction(function () { return function () {}; }));
+          _.baz = undefinedInlineFunction('lib.baz', function () {});
+          Kotlin.defineModule('lib', _);
+          return _;
+        });
+    """.trimIndent()
+
+    fun testModuleAndInlineFunctions() {
+        val file = JsLibraryIndex.indexFile(JsLibrary(content, "lib.js", null, null))
+        val module = file.modules.single()
+        val info = module.info
+
+        assertEquals("lib", module.name)
+        assertEquals("_", info.moduleVariable)
+        assertEquals("Kotlin", info.kotlinVariable)
+        assertEquals(SpecialFunction.DEFINE_INLINE_FUNCTION, info.specialFunctions["defineInlineFunction"])
+        assertEquals(SpecialFunction.WRAP_FUNCTION, info.specialFunctions["wrapFunction"])
+
+        assertEquals(content.indexOf("function (x)"), info.inlineFunctionOffsets["lib.foo_za3lpa$"])
+        assertEquals(content.indexOf("wrapFunction(function"), info.inlineFunctionOffsets["lib.bar"])
+        assertNull(info.inlineFunctionOffsets["lib.baz"])
+    }
+
+    fun testParsedFunctionsDontShareNames() {
+        val info = JsLibraryIndex.indexFile(JsLibrary(content, "lib.js", null, null)).modules.single().info
+        val offset = info.inlineFunctionOffsets["lib.foo_za3lpa$"]!!
+
+        val first = info.parseFunctionAt(offset)!!
+        val second = info.parseFunctionAt(offset)!!
+
+        assertEquals(first.toString(), second.toString())
+        assertNotSame(first.parameters.single().name, second.parameters.single().name)
+        for (function in listOf(first, second)) {
+            val returnedValue = (function.body.statements.single() as JsReturn).expression as JsNameRef
+            assertSame(function.parameters.single().name, returnedValue.name)
+        }
+    }
+
+    fun testInvalidSourceMapIsReported() {
+        val file = JsLibraryIndex.indexFile(JsLibrary(content, "lib.js", "{}", null))
+
+        assertNotNull(file.sourceMapError)
+        assertNull(file.modules.single().info.sourceMap)
+    }
+
+    fun testFileWithoutModules() {
+        val file = JsLibraryIndex.indexFile(JsLibrary("var x = 1;", "x.js", "{}", null))
+
+        assertTrue(file.modules.isEmpty())
+        assertNull(file.sourceMapError)
+    }
+}
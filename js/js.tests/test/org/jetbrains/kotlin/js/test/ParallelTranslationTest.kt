@@ -0,0 +1,110 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.js.test
+
+import com.intellij.openapi.util.io.FileUtil
+import com.intellij.openapi.vfs.StandardFileSystems
+import com.intellij.openapi.vfs.VirtualFileManager
+import com.intellij.psi.PsiManager
+import org.jetbrains.kotlin.cli.jvm.compiler.EnvironmentConfigFiles
+import org.jetbrains.kotlin.cli.jvm.compiler.KotlinCoreEnvironment
+import org.jetbrains.kotlin.config.CommonConfigurationKeys
+import org.jetbrains.kotlin.config.CompilerConfiguration
+import org.jetbrains.kotlin.incremental.js.IncrementalResultsConsumerImpl
+import org.jetbrains.kotlin.js.config.EcmaVersion
+import org.jetbrains.kotlin.js.config.JSConfigurationKeys
+import org.jetbrains.kotlin.js.config.JsConfig
+import org.jetbrains.kotlin.js.facade.K2JSTranslator
+import org.jetbrains.kotlin.js.facade.MainCallParameters
+import org.jetbrains.kotlin.js.facade.TranslationResult
+import org.jetbrains.kotlin.js.test.utils.ExceptionThrowingReporter
+import org.jetbrains.kotlin.psi.KtFile
+import org.jetbrains.kotlin.serialization.js.ModuleKind
+import org.jetbrains.kotlin.test.KotlinTestUtils
+import org.jetbrains.kotlin.test.KotlinTestWithEnvironment
+import java.io.File
+import java.util.*
+
+class ParallelTranslationTest : KotlinTestWithEnvironment() {
+    private lateinit var tmpDir: File
+
+    override fun setUp() {
+        super.setUp()
+        tmpDir = KotlinTestUtils.tmpDir("js-parallel-translation")
+    }
+
+    override fun tearDown() {
+        FileUtil.delete(tmpDir)
+        super.tearDown()
+    }
+
+    fun testOutputDoesNotDependOnThreadCount() {
+        val files = (1..20).map { i ->
+            createFile("file$i.kt", """
+                package p$i
+
+                class C$i
+
+                fun isC$i(x: Any?) = x is C$i? && x !is String
+
+                suspend fun s$i(x: Int): Int = x + $i
+
+                suspend fun t$i(): Int {
+                    val a = s$i(1)
+                    return s$i(a)
+                }
+            """.trimIndent())
+        }
+
+        val (sequentialCode, sequentialResults) = translate(files, 1)
+        val (parallelCode, parallelResults) = translate(files, 4)
+
+        assertEquals(sequentialCode, parallelCode)
+        assertEquals(sequentialResults.packageParts.keys, parallelResults.packageParts.keys)
+        for ((file, value) in sequentialResults.packageParts) {
+            assertTrue(file.name, Arrays.equals(value.binaryAst, parallelResults.packageParts[file]!!.binaryAst))
+            assertTrue(file.name, Arrays.equals(value.metadata, parallelResults.packageParts[file]!!.metadata))
+        }
+    }
+
+    private fun translate(files: List<KtFile>, threadCount: Int): Pair<String, IncrementalResultsConsumerImpl> {
+        val incrementalResults = IncrementalResultsConsumerImpl()
+        val configuration = environment.configuration.copy()
+        configuration.put(JSConfigurationKeys.LIBRARIES, JsConfig.JS_STDLIB)
+        configuration.put(CommonConfigurationKeys.MODULE_NAME, "test")
+        configuration.put(JSConfigurationKeys.MODULE_KIND, ModuleKind.PLAIN)
+        configuration.put(JSConfigurationKeys.TARGET, EcmaVersion.v5)
+        configuration.put(JSConfigurationKeys.INCREMENTAL_RESULTS_CONSUMER, incrementalResults)
+        configuration.put(JSConfigurationKeys.TRANSLATION_THREADS, threadCount)
+
+        val result = K2JSTranslator(JsConfig(project, configuration)).translate(ExceptionThrowingReporter, files, MainCallParameters.noCall())
+        assertTrue(result is TranslationResult.Success)
+
+        return (result as TranslationResult.Success).getCode() to incrementalResults
+    }
+
+    private fun createFile(name: String, text: String): KtFile {
+        val file = File(tmpDir, name)
+        file.writeText(text)
+
+        val fileSystem = VirtualFileManager.getInstance().getFileSystem(StandardFileSystems.FILE_PROTOCOL)
+        return PsiManager.getInstance(project).findFile(fileSystem.refreshAndFindFileByPath(file.absolutePath)!!) as KtFile
+    }
+
+    override fun createEnvironment(): KotlinCoreEnvironment =
+            KotlinCoreEnvironment.createForTests(testRootDisposable, CompilerConfiguration(), EnvironmentConfigFiles.JS_CONFIG_FILES)
+}
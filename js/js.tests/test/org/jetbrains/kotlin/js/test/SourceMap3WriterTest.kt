@@ -0,0 +1,85 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.js.test
+
+import junit.framework.TestCase
+import org.jetbrains.kotlin.js.sourceMap.SourceMap3Builder
+import org.jetbrains.kotlin.js.sourceMap.SourceMap3Writer
+import org.jetbrains.kotlin.js.sourceMap.SourceMapMappingConsumer
+import org.jetbrains.kotlin.js.util.TextOutputImpl
+import org.json.JSONObject
+import java.io.File
+import java.io.StringReader
+import java.io.StringWriter
+import java.util.*
+
+class SourceMap3WriterTest : TestCase() {
+    private val generatedFile = File("out.js")
+
+    fun testSameAsBuilder() {
+        for (seed in 0 until 20) {
+            val builderOutput = TextOutputImpl()
+            val builder = SourceMap3Builder(generatedFile, builderOutput, "prefix/")
+            printRandomCode(builderOutput, builder, seed)
+            builder.skipLinesAtBeginning(2)
+            val expected = JSONObject(builder.build())
+
+            val code = StringWriter()
+            val writerOutput = TextOutputImpl(code, false)
+            val map = StringWriter()
+            SourceMap3Writer(generatedFile, writerOutput, "prefix/", map, 2).use { printRandomCode(writerOutput, it, seed) }
+            val actual = JSONObject(map.toString())
+
+            assertEquals(builderOutput.toString(), code.toString())
+            for (key in listOf("version", "file", "sources", "sourcesContent", "names", "mappings")) {
+                assertEquals("$key, seed $seed", expected.get(key).toString(), actual.get(key).toString())
+            }
+        }
+    }
+
+    fun testContentIsEscaped() {
+        val content = "\"quoted\" \\ \n\t\u0001\u2028\u2029 \u00fcn\u00efcode"
+        val output = TextOutputImpl()
+        val map = StringWriter()
+        SourceMap3Writer(generatedFile, output, "", map, 0).use {
+            it.addMapping("a.kt", null, { StringReader(content) }, 0, 0)
+            it.addMapping("b.kt", null, { null }, 0, 0)
+        }
+
+        val sourcesContent = JSONObject(map.toString()).getJSONArray("sourcesContent")
+        assertEquals(content, sourcesContent.getString(0))
+        assertEquals(JSONObject.NULL, sourcesContent.get(1))
+    }
+
+    private fun printRandomCode(output: TextOutputImpl, mappings: SourceMapMappingConsumer, seed: Int) {
+        val random = Random(seed.toLong())
+        for (i in 0 until 500) {
+            when (random.nextInt(6)) {
+                0 -> {
+                    output.newline()
+                    mappings.newLine()
+                }
+                1 -> output.print("x" + random.nextInt(100))
+                2 -> mappings.addEmptyMapping()
+                else -> {
+                    val source = "dir/s${random.nextInt(3)}.kt"
+                    mappings.addMapping(source, null, { StringReader("content of $source") }, random.nextInt(50), random.nextInt(20))
+                }
+            }
+        }
+    }
+}
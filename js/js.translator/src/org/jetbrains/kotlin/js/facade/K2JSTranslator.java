@@ -16,6 +16,7 @@
 
 package org.jetbrains.kotlin.js.facade;
 
+import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.vfs.VfsUtilCore;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -27,27 +28,22 @@ import org.jetbrains.kotlin.js.backend.ast.JsImportedModule;
 import org.jetbrains.kotlin.js.backend.ast.JsProgramFragment;
 import org.jetbrains.kotlin.js.config.JSConfigurationKeys;
 import org.jetbrains.kotlin.js.config.JsConfig;
-import org.jetbrains.kotlin.js.coroutine.CoroutineTransformer;
 import org.jetbrains.kotlin.js.facade.exceptions.TranslationException;
 import org.jetbrains.kotlin.incremental.js.IncrementalResultsConsumer;
 import org.jetbrains.kotlin.js.inline.JsInliner;
-import org.jetbrains.kotlin.js.inline.clean.LabeledBlockToDoWhileTransformation;
 import org.jetbrains.kotlin.js.inline.clean.RemoveDuplicateImportsKt;
 import org.jetbrains.kotlin.js.inline.clean.RemoveUnusedImportsKt;
 import org.jetbrains.kotlin.js.inline.clean.ResolveTemporaryNamesKt;
 import org.jetbrains.kotlin.js.sourceMap.SourceFilePathResolver;
 import org.jetbrains.kotlin.js.translate.general.AstGenerationResult;
 import org.jetbrains.kotlin.js.translate.general.Translation;
-import org.jetbrains.kotlin.js.translate.utils.ExpandIsCallsKt;
 import org.jetbrains.kotlin.progress.ProgressIndicatorAndCompilationCanceledStatus;
 import org.jetbrains.kotlin.psi.KtFile;
 import org.jetbrains.kotlin.resolve.BindingTrace;
 import org.jetbrains.kotlin.resolve.diagnostics.Diagnostics;
 import org.jetbrains.kotlin.serialization.ProtoBuf;
 import org.jetbrains.kotlin.serialization.js.KotlinJavascriptSerializationUtil;
-import org.jetbrains.kotlin.serialization.js.ast.JsAstSerializer;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
@@ -67,9 +63,12 @@ public final class K2JSTranslator {
     @Nullable
     private final IncrementalResultsConsumer incrementalResults;
 
+    private final int threadCount;
+
     public K2JSTranslator(@NotNull JsConfig config) {
         this.config = config;
         this.incrementalResults = config.getConfiguration().get(JSConfigurationKeys.INCREMENTAL_RESULTS_CONSUMER);
+        this.threadCount = config.getConfiguration().get(JSConfigurationKeys.TRANSLATION_THREADS, 1);
     }
 
     @NotNull
@@ -141,48 +140,51 @@ public final class K2JSTranslator {
         JsInliner.process(reporter, config, analysisResult.getBindingTrace(), translationResult.getInnerModuleName(),
                           allFragments, newFragments, translationResult.getImportStatements());
 
-        LabeledBlockToDoWhileTransformation.INSTANCE.apply(newFragments);
-
-        CoroutineTransformer coroutineTransformer = new CoroutineTransformer();
-        for (JsProgramFragment fragment : newFragments) {
-            coroutineTransformer.accept(fragment.getDeclarationBlock());
-            coroutineTransformer.accept(fragment.getInitializerBlock());
-        }
-        RemoveUnusedImportsKt.removeUnusedImports(translationResult.getProgram());
-        ProgressIndicatorAndCompilationCanceledStatus.checkCanceled();
-        if (hasError(diagnostics)) return new TranslationResult.Fail(diagnostics);
-
-        ExpandIsCallsKt.expandIsCalls(newFragments);
-        ProgressIndicatorAndCompilationCanceledStatus.checkCanceled();
-        JsAstSerializer serializer = new JsAstSerializer(file -> {
-            try {
-                return pathResolver.getPathRelativeToSourceRoots(file);
-            }
-            catch (IOException e) {
-                throw new RuntimeException("IO error occurred resolving path to source file", e);
-            }
-        });
-
-        if (incrementalResults != null) {
-            KotlinJavascriptSerializationUtil serializationUtil = KotlinJavascriptSerializationUtil.INSTANCE;
-
-            for (KtFile file : files) {
-                JsProgramFragment fragment = translationResult.getFragmentMap().get(file);
-                assert fragment != null : "Could not find AST for file: " + file;
-                ByteArrayOutputStream output = new ByteArrayOutputStream();
-                serializer.serialize(fragment, output);
-                byte[] binaryAst = output.toByteArray();
+        try (ParallelFragmentProcessor fragmentProcessor = new ParallelFragmentProcessor(threadCount)) {
+            fragmentProcessor.transformCoroutines(newFragments);
+            RemoveUnusedImportsKt.removeUnusedImports(translationResult.getProgram());
+            ProgressIndicatorAndCompilationCanceledStatus.checkCanceled();
+            if (hasError(diagnostics)) return new TranslationResult.Fail(diagnostics);
 
-                List<DeclarationDescriptor> scope = translationResult.getFileMemberScopes().get(file);
-                assert scope != null : "Could not find descriptors for file: " + file;
-                ProtoBuf.PackageFragment packagePart = serializationUtil.serializeDescriptors(
-                        bindingTrace.getBindingContext(), moduleDescriptor, scope, file.getPackageFqName());
+            fragmentProcessor.expandIsCalls(newFragments);
+            ProgressIndicatorAndCompilationCanceledStatus.checkCanceled();
 
-                File ioFile = VfsUtilCore.virtualToIoFile(file.getVirtualFile());
-                incrementalResults.processPackagePart(ioFile, packagePart.toByteArray(), binaryAst);
+            if (incrementalResults != null) {
+                List<JsProgramFragment> fileFragments = new ArrayList<>();
+                List<Document> documents = new ArrayList<>();
+                for (KtFile file : files) {
+                    JsProgramFragment fragment = translationResult.getFragmentMap().get(file);
+                    assert fragment != null : "Could not find AST for file: " + file;
+                    fileFragments.add(fragment);
+                    // Locations are computed from documents, load them here so that serializer threads only read them
+                    documents.add(file.getViewProvider().getDocument());
+                }
+
+                List<byte[]> binaryAsts = fragmentProcessor.serialize(fileFragments, file -> {
+                    try {
+                        return pathResolver.getPathRelativeToSourceRoots(file);
+                    }
+                    catch (IOException e) {
+                        throw new RuntimeException("IO error occurred resolving path to source file", e);
+                    }
+                });
+                documents.clear();
+
+                KotlinJavascriptSerializationUtil serializationUtil = KotlinJavascriptSerializationUtil.INSTANCE;
+
+                for (int i = 0; i < files.size(); i++) {
+                    KtFile file = files.get(i);
+                    List<DeclarationDescriptor> scope = translationResult.getFileMemberScopes().get(file);
+                    assert scope != null : "Could not find descriptors for file: " + file;
+                    ProtoBuf.PackageFragment packagePart = serializationUtil.serializeDescriptors(
+                            bindingTrace.getBindingContext(), moduleDescriptor, scope, file.getPackageFqName());
+
+                    File ioFile = VfsUtilCore.virtualToIoFile(file.getVirtualFile());
+                    incrementalResults.processPackagePart(ioFile, packagePart.toByteArray(), binaryAsts.get(i));
+                }
+
+                incrementalResults.processHeader(serializationUtil.serializeHeader(null).toByteArray());
             }
-
-            incrementalResults.processHeader(serializationUtil.serializeHeader(null).toByteArray());
         }
 
         RemoveDuplicateImportsKt.removeDuplicateImports(translationResult.getProgram());
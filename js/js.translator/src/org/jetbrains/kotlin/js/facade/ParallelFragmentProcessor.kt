@@ -0,0 +1,103 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.js.facade
+
+import org.jetbrains.kotlin.js.backend.ast.JsFunction
+import org.jetbrains.kotlin.js.backend.ast.JsProgramFragment
+import org.jetbrains.kotlin.js.backend.ast.RecursiveJsVisitor
+import org.jetbrains.kotlin.js.backend.ast.metadata.coroutineMetadata
+import org.jetbrains.kotlin.js.coroutine.CoroutineTransformer
+import org.jetbrains.kotlin.js.inline.clean.LabeledBlockToDoWhileTransformation
+import org.jetbrains.kotlin.js.translate.utils.expandIsCalls as expandFragmentIsCalls
+import org.jetbrains.kotlin.serialization.js.ast.JsAstSerializer
+import org.jetbrains.kotlin.utils.ParallelUtils
+import java.io.ByteArrayOutputStream
+import java.io.Closeable
+import java.io.File
+import java.util.*
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutorService
+
+/**
+ * Runs the passes of [K2JSTranslator] which only touch a single fragment on [threadCount] threads.
+ *
+ * Each fragment is processed independently. The passes modify nodes of the fragment and scopes of its functions, which are
+ * not shared: the inliner inserts copies of functions into other fragments (see `FunctionInlineMutator` and `JsInliner`),
+ * and each copy gets its own scope (see [JsFunction.deepCopy]). Coroutine transformation declares names in function scopes,
+ * so [transformCoroutines] checks that coroutine functions are not shared by fragments.
+ * Results are returned in the order of fragments, program-wide passes are left to the caller.
+ */
+internal class ParallelFragmentProcessor(threadCount: Int) : Closeable {
+    private val executor: ExecutorService? =
+            if (threadCount > 1)
+                ParallelUtils.newDaemonThreadPool(threadCount, "Kotlin JS translator")
+            else
+                null
+
+    fun transformCoroutines(fragments: List<JsProgramFragment>) {
+        if (executor != null) {
+            checkCoroutinesNotShared(fragments)
+        }
+
+        map(fragments) { fragment ->
+            LabeledBlockToDoWhileTransformation.apply(fragment.declarationBlock)
+            LabeledBlockToDoWhileTransformation.apply(fragment.initializerBlock)
+
+            val coroutineTransformer = CoroutineTransformer()
+            coroutineTransformer.accept(fragment.declarationBlock)
+            coroutineTransformer.accept(fragment.initializerBlock)
+        }
+    }
+
+    fun expandIsCalls(fragments: List<JsProgramFragment>) {
+        map(fragments) { expandFragmentIsCalls(it) }
+    }
+
+    fun serialize(fragments: List<JsProgramFragment>, pathResolver: (File) -> String): List<ByteArray> =
+            map(fragments) { fragment ->
+                val output = ByteArrayOutputStream()
+                JsAstSerializer(pathResolver).serialize(fragment, output)
+                output.toByteArray()
+            }
+
+    private fun checkCoroutinesNotShared(fragments: List<JsProgramFragment>) {
+        val owners = IdentityHashMap<JsFunction, JsProgramFragment>()
+        for (fragment in fragments) {
+            val visitor = object : RecursiveJsVisitor() {
+                override fun visitFunction(x: JsFunction) {
+                    if (x.coroutineMetadata != null) {
+                        val owner = owners.put(x, fragment)
+                        check(owner == null || owner === fragment) { "Coroutine function ${x.name} is shared by several fragments" }
+                    }
+                    super.visitFunction(x)
+                }
+            }
+            visitor.accept(fragment.declarationBlock)
+            visitor.accept(fragment.initializerBlock)
+        }
+    }
+
+    override fun close() {
+        executor?.shutdownNow()
+    }
+
+    private fun <T, R> map(items: List<T>, transform: (T) -> R): List<R> {
+        if (executor == null) return items.map(transform)
+
+        return items.map { executor.submit(Callable { transform(it) }) }.map { ParallelUtils.await(it) }
+    }
+}
@@ -27,7 +27,7 @@ import org.jetbrains.kotlin.js.config.JSConfigurationKeys
 import org.jetbrains.kotlin.js.config.JsConfig
 import org.jetbrains.kotlin.js.config.SourceMapSourceEmbedding
 import org.jetbrains.kotlin.js.sourceMap.SourceFilePathResolver
-import org.jetbrains.kotlin.js.sourceMap.SourceMap3Builder
+import org.jetbrains.kotlin.js.sourceMap.SourceMap3Writer
 import org.jetbrains.kotlin.js.backend.SourceLocationConsumer
 import org.jetbrains.kotlin.js.util.TextOutput
 import org.jetbrains.kotlin.js.util.TextOutputImpl
@@ -38,6 +38,7 @@ import org.jetbrains.kotlin.serialization.js.JsModuleDescriptor
 import org.jetbrains.kotlin.serialization.js.KotlinJavascriptSerializationUtil
 import org.jetbrains.kotlin.utils.KotlinJavascriptMetadataUtils
 import java.io.File
+import java.io.StringWriter
 import java.util.*
 
 abstract class TranslationResult protected constructor(val diagnostics: Diagnostics) {
@@ -60,31 +61,37 @@ abstract class TranslationResult protected constructor(val diagnostics: Diagnost
         }
 
         fun getOutputFiles(outputFile: File, outputPrefixFile: File?, outputPostfixFile: File?): OutputFileCollection {
-            val output = TextOutputImpl()
+            val prefix = outputPrefixFile?.readText() ?: ""
+            val postfix = outputPostfixFile?.readText() ?: ""
+
+            // The code is printed right after the prefix, and mappings are encoded while it's printed,
+            // so that neither of them is copied once more
+            val code = StringBuilder(prefix)
+            val output = TextOutputImpl(code, false)
 
-            val sourceMapBuilder = SourceMap3Builder(outputFile, output, config.sourceMapPrefix)
-            val sourceMapBuilderConsumer =
-                    if (config.configuration.getBoolean(JSConfigurationKeys.SOURCE_MAP)) {
-                        val sourceMapContentEmbedding = config.sourceMapContentEmbedding
-                        val pathResolver = SourceFilePathResolver.create(config)
-                        SourceMapBuilderConsumer(
-                                sourceMapBuilder,
-                                pathResolver,
-                                sourceMapContentEmbedding == SourceMapSourceEmbedding.ALWAYS,
-                                sourceMapContentEmbedding != SourceMapSourceEmbedding.NEVER)
-                    }
-                    else {
+            val sourceMap = StringWriter()
+            val sourceMapWriter =
+                    if (config.configuration.getBoolean(JSConfigurationKeys.SOURCE_MAP))
+                        SourceMap3Writer(outputFile, output, config.sourceMapPrefix, sourceMap, StringUtil.getLineBreakCount(prefix))
+                    else
                         null
-                    }
+            val sourceMapBuilderConsumer = sourceMapWriter?.let {
+                val sourceMapContentEmbedding = config.sourceMapContentEmbedding
+                val pathResolver = SourceFilePathResolver.create(config)
+                SourceMapBuilderConsumer(
+                        it,
+                        pathResolver,
+                        sourceMapContentEmbedding == SourceMapSourceEmbedding.ALWAYS,
+                        sourceMapContentEmbedding != SourceMapSourceEmbedding.NEVER)
+            }
 
             getCode(output, sourceMapBuilderConsumer)
-            if (sourceMapBuilderConsumer != null) {
-                sourceMapBuilder.addLink()
+            if (sourceMapWriter != null) {
+                sourceMapWriter.addLink()
+                sourceMapWriter.close()
             }
-            val code = output.toString()
+            code.append(postfix)
 
-            val prefix = outputPrefixFile?.readText() ?: ""
-            val postfix = outputPostfixFile?.readText() ?: ""
             val sourceFiles = files.map {
                 val virtualFile = it.originalFile.virtualFile
 
@@ -94,7 +101,7 @@ abstract class TranslationResult protected constructor(val diagnostics: Diagnost
                 }
             }
 
-            val jsFile = SimpleOutputFile(sourceFiles, outputFile.name, prefix + code + postfix)
+            val jsFile = SimpleOutputFile(sourceFiles, outputFile.name, code.toString())
             val outputFiles = arrayListOf<OutputFile>(jsFile)
 
             if (config.configuration.getBoolean(JSConfigurationKeys.META_INFO)) {
@@ -116,11 +123,9 @@ abstract class TranslationResult protected constructor(val diagnostics: Diagnost
                 }
             }
 
-            if (sourceMapBuilderConsumer != null) {
-                sourceMapBuilder.skipLinesAtBeginning(StringUtil.getLineBreakCount(prefix))
-                val sourceMapFile = SimpleOutputFile(sourceFiles, sourceMapBuilder.outFile.name, sourceMapBuilder.build())
+            if (sourceMapWriter != null) {
+                val sourceMapFile = SimpleOutputFile(sourceFiles, sourceMapWriter.outFile.name, sourceMap.toString())
                 outputFiles.add(sourceMapFile)
-                sourceMapBuilder.addLink()
             }
 
             return SimpleOutputFileCollection(outputFiles)
@@ -26,6 +26,7 @@ import org.jetbrains.kotlin.js.inline.util.RelativePathCalculator;
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 public class SourceFilePathResolver {
@@ -36,7 +37,7 @@ public class SourceFilePathResolver {
     private final RelativePathCalculator outputDirPathResolver;
 
     @NotNull
-    private final Map<File, String> cache = new HashMap<>();
+    private final Map<File, String> cache = new ConcurrentHashMap<>();
 
     public SourceFilePathResolver(@NotNull List<File> sourceRoots) {
         this(sourceRoots, null);
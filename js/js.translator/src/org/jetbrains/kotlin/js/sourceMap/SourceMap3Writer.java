@@ -0,0 +1,172 @@
+/*
+ * Copyright 2010-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.kotlin.js.sourceMap;
+
+import com.intellij.openapi.util.text.StringUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.kotlin.js.util.TextOutput;
+
+import java.io.*;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Writes a source map v3 to {@code writer} while the generated code is printed, so that neither the mappings
+ * nor the contents of sources are kept in memory, unlike {@link SourceMap3Builder}.
+ * <p>
+ * Mappings are written first, sources and their contents are written by {@link #close()}, when all of them are known.
+ * {@code skippedLines} lines at the beginning of the generated file, e.g. the output prefix, have no mappings.
+ */
+public class SourceMap3Writer implements SourceMapMappingConsumer, Closeable {
+    private final File generatedFile;
+    private final TextOutput textOutput;
+    private final String pathPrefix;
+    private final Writer writer;
+    private final SourceMap3Mappings mappings;
+
+    public SourceMap3Writer(
+            @NotNull File generatedFile, @NotNull TextOutput textOutput, @NotNull String pathPrefix,
+            @NotNull Writer writer, int skippedLines
+    ) throws IOException {
+        this.generatedFile = generatedFile;
+        this.textOutput = textOutput;
+        this.pathPrefix = pathPrefix;
+        this.writer = writer;
+        mappings = new SourceMap3Mappings(writer, textOutput);
+
+        writer.write("{\"version\":3,\"file\":");
+        writeString(generatedFile.getName());
+        writer.write(",\"mappings\":\"");
+        writer.write(StringUtil.repeatSymbol(';', skippedLines));
+    }
+
+    @NotNull
+    public File getOutFile() {
+        return new File(generatedFile.getParentFile(), generatedFile.getName() + ".map");
+    }
+
+    @Override
+    public void newLine() {
+        mappings.newLine();
+    }
+
+    @Override
+    public void addMapping(
+            @NotNull String source, @Nullable Object identityObject, @NotNull Supplier<Reader> sourceContent,
+            int sourceLine, int sourceColumn
+    ) {
+        mappings.addMapping(source, identityObject, sourceContent, sourceLine, sourceColumn);
+    }
+
+    @Override
+    public void addEmptyMapping() {
+        mappings.addEmptyMapping();
+    }
+
+    public void addLink() {
+        addLink(textOutput, generatedFile);
+    }
+
+    /**
+     * Prints a reference to the source map of {@code generatedFile}, written by this class or by {@link SourceMap3Builder}.
+     */
+    public static void addLink(@NotNull TextOutput textOutput, @NotNull File generatedFile) {
+        textOutput.print("\n//# sourceMappingURL=");
+        textOutput.print(generatedFile.getName());
+        textOutput.print(".map\n");
+    }
+
+    /**
+     * Writes the rest of the source map and closes the writer.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            mappings.flush();
+            writer.write('"');
+
+            List<String> sources = mappings.getSources();
+            writer.write(",\"sources\":[");
+            for (int i = 0; i < sources.size(); i++) {
+                if (i > 0) writer.write(',');
+                writeString(pathPrefix + sources.get(i));
+            }
+
+            // Contents are copied through a single buffer, so that only one source is read at a time
+            char[] buffer = new char[8192];
+            List<Supplier<Reader>> contentSuppliers = mappings.getSourceContentSuppliers();
+            writer.write("],\"sourcesContent\":[");
+            for (int i = 0; i < contentSuppliers.size(); i++) {
+                if (i > 0) writer.write(',');
+                Reader reader = contentSuppliers.get(i).get();
+                if (reader == null) {
+                    writer.write("null");
+                    continue;
+                }
+                try {
+                    writer.write('"');
+                    int count;
+                    while ((count = reader.read(buffer)) >= 0) {
+                        writeEscaped(buffer, count);
+                    }
+                    writer.write('"');
+                }
+                finally {
+                    reader.close();
+                }
+            }
+
+            writer.write("],\"names\":[]}");
+        }
+        finally {
+            writer.close();
+        }
+    }
+
+    private void writeString(@NotNull String value) throws IOException {
+        writer.write('"');
+        char[] chars = value.toCharArray();
+        writeEscaped(chars, chars.length);
+        writer.write('"');
+    }
+
+    private void writeEscaped(@NotNull char[] chars, int count) throws IOException {
+        int start = 0;
+        for (int i = 0; i < count; i++) {
+            char c = chars[i];
+            String escaped;
+            switch (c) {
+                case '"': escaped = "\\\""; break;
+                case '\\': escaped = "\\\\"; break;
+                case '\n': escaped = "\\n"; break;
+                case '\r': escaped = "\\r"; break;
+                case '\t': escaped = "\\t"; break;
+                case '\b': escaped = "\\b"; break;
+                case '\f': escaped = "\\f"; break;
+                default:
+                    // Line separators are escaped too, they are not allowed in JavaScript string literals
+                    if (c >= ' ' && c != '\u2028' && c != '\u2029') continue;
+                    escaped = String.format("\\u%04x", (int) c);
+            }
+            writer.write(chars, start, i - start);
+            writer.write(escaped);
+            start = i + 1;
+        }
+        writer.write(chars, start, count - start);
+    }
+}
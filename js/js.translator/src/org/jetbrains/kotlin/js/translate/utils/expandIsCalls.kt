@@ -25,11 +25,13 @@ import org.jetbrains.kotlin.js.translate.utils.JsAstUtils.*
 import java.util.*
 
 fun expandIsCalls(fragments: List<JsProgramFragment>) {
+    fragments.forEach(::expandIsCalls)
+}
+
+fun expandIsCalls(fragment: JsProgramFragment) {
     val visitor = TypeCheckRewritingVisitor()
-    for (fragment in fragments) {
-        visitor.accept(fragment.declarationBlock)
-        visitor.accept(fragment.initializerBlock)
-    }
+    visitor.accept(fragment.declarationBlock)
+    visitor.accept(fragment.initializerBlock)
 }
 
 private class TypeCheckRewritingVisitor : JsVisitorWithContextImpl() {